@@ -21,8 +21,10 @@ package org.elasticsearch.cache.recycler;
 
 import com.google.common.base.Strings;
 import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lease.LeakTracker;
 import org.elasticsearch.common.recycler.AbstractRecyclerC;
 import org.elasticsearch.common.recycler.Recycler;
 import org.elasticsearch.common.settings.Settings;
@@ -42,6 +44,7 @@ public class PageCacheRecycler extends AbstractComponent {
     public static final String LIMIT_HEAP = "page.limit.heap";
     public static final String LIMIT_PER_THREAD = "page.limit.per_thread";
     public static final String WEIGHT = "page.weight";
+    public static final String LEAK_TRACKING_INTERVAL = "page.leak_tracking.interval";
 
     private final Recycler<byte[]> bytePage;
     private final Recycler<int[]> intPage;
@@ -49,6 +52,7 @@ public class PageCacheRecycler extends AbstractComponent {
     private final Recycler<float[]> floatPage;
     private final Recycler<double[]> doublePage;
     private final Recycler<Object[]> objectPage;
+    private final LeakTracker leakTracker;
 
     public void close() {
         bytePage.close();
@@ -87,6 +91,9 @@ public class PageCacheRecycler extends AbstractComponent {
         final long limit = componentSettings.getAsMemory(LIMIT_HEAP, "10%").bytes();
         final int availableProcessors = EsExecutors.boundedNumberOfProcessors(settings);
         final int searchThreadPoolSize = maximumSearchThreadPoolSize(threadPool, settings);
+        // 0 disables leak tracking, 1 tracks every page and N tracks one page out of N
+        final int leakTrackingInterval = componentSettings.getAsInt(LEAK_TRACKING_INTERVAL, 0);
+        leakTracker = leakTrackingInterval > 0 ? new LeakTracker("page_cache_recycler", leakTrackingInterval) : null;
 
         // We have a global amount of memory that we need to divide across data types.
         // Since some types are more useful than other ones we give them different weights.
@@ -111,7 +118,7 @@ public class PageCacheRecycler extends AbstractComponent {
 
         final double totalWeight = bytesWeight + intsWeight + longsWeight + doublesWeight + objectsWeight;
 
-        bytePage = build(type, maxCount(limit, BigArrays.BYTE_PAGE_SIZE, bytesWeight, totalWeight), searchThreadPoolSize, availableProcessors, new AbstractRecyclerC<byte[]>() {
+        bytePage = build(type, leakTracker, maxCount(limit, BigArrays.BYTE_PAGE_SIZE, bytesWeight, totalWeight), searchThreadPoolSize, availableProcessors, new AbstractRecyclerC<byte[]>() {
             @Override
             public byte[] newInstance(int sizing) {
                 return new byte[BigArrays.BYTE_PAGE_SIZE];
@@ -121,7 +128,7 @@ public class PageCacheRecycler extends AbstractComponent {
                 // nothing to do
             }
         });
-        intPage = build(type, maxCount(limit, BigArrays.INT_PAGE_SIZE, intsWeight, totalWeight), searchThreadPoolSize, availableProcessors, new AbstractRecyclerC<int[]>() {
+        intPage = build(type, leakTracker, maxCount(limit, BigArrays.INT_PAGE_SIZE, intsWeight, totalWeight), searchThreadPoolSize, availableProcessors, new AbstractRecyclerC<int[]>() {
             @Override
             public int[] newInstance(int sizing) {
                 return new int[BigArrays.INT_PAGE_SIZE];
@@ -131,7 +138,7 @@ public class PageCacheRecycler extends AbstractComponent {
                 // nothing to do
             }
         });
-        longPage = build(type, maxCount(limit, BigArrays.LONG_PAGE_SIZE, longsWeight, totalWeight), searchThreadPoolSize, availableProcessors, new AbstractRecyclerC<long[]>() {
+        longPage = build(type, leakTracker, maxCount(limit, BigArrays.LONG_PAGE_SIZE, longsWeight, totalWeight), searchThreadPoolSize, availableProcessors, new AbstractRecyclerC<long[]>() {
             @Override
             public long[] newInstance(int sizing) {
                 return new long[BigArrays.LONG_PAGE_SIZE];
@@ -141,7 +148,7 @@ public class PageCacheRecycler extends AbstractComponent {
                 // nothing to do               
             }
         });
-        floatPage = build(type, maxCount(limit, BigArrays.FLOAT_PAGE_SIZE, floatsWeight, totalWeight), searchThreadPoolSize, availableProcessors, new AbstractRecyclerC<float[]>() {
+        floatPage = build(type, leakTracker, maxCount(limit, BigArrays.FLOAT_PAGE_SIZE, floatsWeight, totalWeight), searchThreadPoolSize, availableProcessors, new AbstractRecyclerC<float[]>() {
             @Override
             public float[] newInstance(int sizing) {
                 return new float[BigArrays.FLOAT_PAGE_SIZE];
@@ -151,7 +158,7 @@ public class PageCacheRecycler extends AbstractComponent {
                 // nothing to do
             }
         });
-        doublePage = build(type, maxCount(limit, BigArrays.DOUBLE_PAGE_SIZE, doublesWeight, totalWeight), searchThreadPoolSize, availableProcessors, new AbstractRecyclerC<double[]>() {
+        doublePage = build(type, leakTracker, maxCount(limit, BigArrays.DOUBLE_PAGE_SIZE, doublesWeight, totalWeight), searchThreadPoolSize, availableProcessors, new AbstractRecyclerC<double[]>() {
             @Override
             public double[] newInstance(int sizing) {
                 return new double[BigArrays.DOUBLE_PAGE_SIZE];
@@ -161,7 +168,7 @@ public class PageCacheRecycler extends AbstractComponent {
                 // nothing to do
             }
         });
-        objectPage = build(type, maxCount(limit, BigArrays.OBJECT_PAGE_SIZE, objectsWeight, totalWeight), searchThreadPoolSize, availableProcessors, new AbstractRecyclerC<Object[]>() {
+        objectPage = build(type, leakTracker, maxCount(limit, BigArrays.OBJECT_PAGE_SIZE, objectsWeight, totalWeight), searchThreadPoolSize, availableProcessors, new AbstractRecyclerC<Object[]>() {
             @Override
             public Object[] newInstance(int sizing) {
                 return new Object[BigArrays.OBJECT_PAGE_SIZE];
@@ -218,13 +225,25 @@ public class PageCacheRecycler extends AbstractComponent {
         return objectPage.obtain();
     }
 
-    private static <T> Recycler<T> build(Type type, int limit, int estimatedThreadPoolSize, int availableProcessors, Recycler.C<T> c) {
-        final Recycler<T> recycler;
+    /**
+     * Return the tracker of pages that are never released or released twice, or <code>null</code> if leak tracking is
+     * disabled.
+     */
+    @Nullable
+    public LeakTracker leakTracker() {
+        return leakTracker;
+    }
+
+    private static <T> Recycler<T> build(Type type, @Nullable LeakTracker leakTracker, int limit, int estimatedThreadPoolSize, int availableProcessors, Recycler.C<T> c) {
+        Recycler<T> recycler;
         if (limit == 0) {
             recycler = none(c);
         } else {
             recycler = type.build(c, limit, estimatedThreadPoolSize, availableProcessors);
         }
+        if (leakTracker != null) {
+            recycler = tracking(recycler, leakTracker);
+        }
         return recycler;
     }
 
@@ -0,0 +1,323 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.bytes;
+
+import com.google.common.base.Charsets;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.io.Channels;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bytes reference that chains several {@link BytesReference}s without copying them, which is handy to assemble
+ * multi-part bodies (eg. bulk or multi-search) out of bytes that have been built independently.
+ */
+public class CompositeBytesReference implements BytesReference {
+
+    private final BytesReference[] references;
+    // offsets[i] is the offset of references[i] in this composite reference
+    private final int[] offsets;
+    private final int length;
+
+    public CompositeBytesReference(BytesReference... references) {
+        final List<BytesReference> flattened = new ArrayList<BytesReference>(references.length);
+        for (BytesReference reference : references) {
+            if (reference instanceof CompositeBytesReference) {
+                flattened.addAll(Arrays.asList(((CompositeBytesReference) reference).references));
+            } else if (reference.length() > 0) {
+                flattened.add(reference);
+            }
+        }
+        this.references = flattened.toArray(new BytesReference[flattened.size()]);
+        this.offsets = new int[this.references.length];
+        long length = 0;
+        for (int i = 0; i < this.references.length; ++i) {
+            offsets[i] = (int) length;
+            length += this.references[i].length();
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new ElasticsearchIllegalArgumentException("composite bytes reference can't hold more than [" + Integer.MAX_VALUE + "] bytes, got [" + length + "]");
+        }
+        this.length = (int) length;
+    }
+
+    /**
+     * Return the index of the reference that holds the byte at <code>index</code>.
+     */
+    private int referenceIndex(int index) {
+        final int i = Arrays.binarySearch(offsets, index);
+        // if not found, the reference is the one that starts right before index
+        return i < 0 ? -2 - i : i;
+    }
+
+    @Override
+    public byte get(int index) {
+        final int i = referenceIndex(index);
+        return references[i].get(index - offsets[i]);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public BytesReference slice(int from, int length) {
+        if (from < 0 || (from + length) > this.length) {
+            throw new ElasticsearchIllegalArgumentException("can't slice a buffer with length [" + this.length + "], with slice parameters from [" + from + "], length [" + length + "]");
+        }
+        if (length == 0) {
+            return BytesArray.EMPTY;
+        }
+        final int first = referenceIndex(from);
+        final int last = referenceIndex(from + length - 1);
+        final int inFirst = from - offsets[first];
+        if (first == last) {
+            return references[first].slice(inFirst, length);
+        }
+        final BytesReference[] slices = new BytesReference[last - first + 1];
+        slices[0] = references[first].slice(inFirst, references[first].length() - inFirst);
+        for (int i = first + 1; i < last; ++i) {
+            slices[i - first] = references[i];
+        }
+        slices[slices.length - 1] = references[last].slice(0, from + length - offsets[last]);
+        return new CompositeBytesReference(slices);
+    }
+
+    @Override
+    public StreamInput streamInput() {
+        return new CompositeBytesReferenceStreamInput();
+    }
+
+    @Override
+    public void writeTo(OutputStream os) throws IOException {
+        for (BytesReference reference : references) {
+            reference.writeTo(os);
+        }
+    }
+
+    /**
+     * Writes the bytes of all the underlying references with gathering writes, without copying them.
+     */
+    @Override
+    public void writeTo(GatheringByteChannel channel) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        Channels.writeToChannel(toChannelBuffer().toByteBuffers(), channel);
+    }
+
+    @Override
+    public byte[] toBytes() {
+        if (references.length == 1) {
+            return references[0].toBytes();
+        }
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < references.length; ++i) {
+            final BytesReference reference = references[i];
+            if (reference.hasArray()) {
+                System.arraycopy(reference.array(), reference.arrayOffset(), bytes, offsets[i], reference.length());
+            } else {
+                try {
+                    reference.streamInput().readBytes(bytes, offsets[i], reference.length());
+                } catch (IOException e) {
+                    // reading from memory
+                    throw new IllegalStateException("failed to read bytes from memory", e);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public BytesArray toBytesArray() {
+        if (references.length == 1) {
+            return references[0].toBytesArray();
+        }
+        return new BytesArray(toBytes());
+    }
+
+    @Override
+    public BytesArray copyBytesArray() {
+        if (references.length == 1) {
+            return references[0].copyBytesArray();
+        }
+        // toBytes() already materialized a fresh array
+        return new BytesArray(toBytes());
+    }
+
+    @Override
+    public ChannelBuffer toChannelBuffer() {
+        if (references.length == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        if (references.length == 1) {
+            return references[0].toChannelBuffer();
+        }
+        final ChannelBuffer[] buffers = new ChannelBuffer[references.length];
+        for (int i = 0; i < references.length; ++i) {
+            buffers[i] = references[i].toChannelBuffer();
+        }
+        return ChannelBuffers.wrappedBuffer(true, buffers);
+    }
+
+    @Override
+    public boolean hasArray() {
+        return references.length == 1 && references[0].hasArray();
+    }
+
+    @Override
+    public byte[] array() {
+        if (hasArray()) {
+            return references[0].array();
+        }
+        throw new IllegalStateException("array not available");
+    }
+
+    @Override
+    public int arrayOffset() {
+        if (hasArray()) {
+            return references[0].arrayOffset();
+        }
+        throw new IllegalStateException("array not available");
+    }
+
+    @Override
+    public String toUtf8() {
+        if (length == 0) {
+            return "";
+        }
+        return new String(toBytes(), Charsets.UTF_8);
+    }
+
+    @Override
+    public BytesRef toBytesRef() {
+        if (references.length == 1) {
+            return references[0].toBytesRef();
+        }
+        return new BytesRef(toBytes());
+    }
+
+    @Override
+    public BytesRef copyBytesRef() {
+        if (references.length == 1) {
+            return references[0].copyBytesRef();
+        }
+        return new BytesRef(toBytes());
+    }
+
+    @Override
+    public int hashCode() {
+        return Helper.bytesHashCode(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return Helper.bytesEqual(this, (BytesReference) obj);
+    }
+
+    private class CompositeBytesReferenceStreamInput extends StreamInput {
+
+        private int index;
+        private StreamInput current;
+        private int pos;
+
+        CompositeBytesReferenceStreamInput() {
+            reset();
+        }
+
+        /**
+         * Move to the next reference that has bytes left, returns <code>false</code> at the end of the stream.
+         */
+        private boolean ensureAvailable() {
+            while (current != null && pos >= offsets[index] + references[index].length()) {
+                ++index;
+                current = index < references.length ? references[index].streamInput() : null;
+            }
+            return current != null;
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            if (!ensureAvailable()) {
+                throw new EOFException();
+            }
+            pos++;
+            return current.readByte();
+        }
+
+        @Override
+        public void readBytes(byte[] b, int offset, int len) throws IOException {
+            if (len > length - pos) {
+                throw new EOFException("Cannot read " + len + " bytes from stream with length " + length + " at pos " + pos);
+            }
+            read(b, offset, len);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            pos++;
+            return current.read();
+        }
+
+        @Override
+        public int read(byte[] b, int offset, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (pos >= length) {
+                return -1;
+            }
+            int read = 0;
+            while (read < len && ensureAvailable()) {
+                final int inCurrent = Math.min(len - read, offsets[index] + references[index].length() - pos);
+                current.readBytes(b, offset + read, inCurrent);
+                read += inCurrent;
+                pos += inCurrent;
+            }
+            return read;
+        }
+
+        @Override
+        public void reset() {
+            index = 0;
+            pos = 0;
+            current = references.length == 0 ? null : references[0].streamInput();
+        }
+
+        @Override
+        public void close() throws IOException {
+            current = null;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.bytes;
+
+import com.google.common.base.Charsets;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.io.Channels;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A bytes reference over a region of a file that is mapped in memory, used to send large pre-built bodies
+ * (saved queries, bulk files) without reading them into the heap first.
+ * <p/>
+ * Writing to a {@link SocketChannel} uses {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * as long as the file channel is open, so that the bytes go from the page cache to the socket without any copy
+ * in user space. Other channels are written from the mapped buffer directly. Only {@link #toBytes()} and the
+ * methods built on top of it copy the content to the heap.
+ */
+public class MappedBytesReference implements BytesReference {
+
+    private static final int COPY_CHUNK_SIZE = 8192;
+
+    private final FileChannel channel;
+    private final long position;
+    // read-only view of the region, position is always 0 and limit is always the length
+    private final ByteBuffer buffer;
+
+    /**
+     * Map <code>length</code> bytes of the given channel starting at <code>position</code>. The channel is not
+     * closed by this reference: it must stay open for writes to socket channels to use
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, otherwise they fall back
+     * to writing the mapped buffer.
+     */
+    public static MappedBytesReference map(FileChannel channel, long position, int length) throws IOException {
+        if (position < 0 || length < 0 || position + length > channel.size()) {
+            throw new ElasticsearchIllegalArgumentException("can't map [" + length + "] bytes at position [" + position + "] of a file with size [" + channel.size() + "]");
+        }
+        return new MappedBytesReference(channel, position, channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+    }
+
+    /**
+     * Map the whole content of the given channel, which must not be larger than 2GB.
+     */
+    public static MappedBytesReference map(FileChannel channel) throws IOException {
+        final long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new ElasticsearchIllegalArgumentException("can't map a file with size [" + size + "], max is [" + Integer.MAX_VALUE + "]");
+        }
+        return map(channel, 0, (int) size);
+    }
+
+    private MappedBytesReference(FileChannel channel, long position, ByteBuffer buffer) {
+        this.channel = channel;
+        this.position = position;
+        this.buffer = buffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte get(int index) {
+        return buffer.get(index);
+    }
+
+    @Override
+    public int length() {
+        return buffer.limit();
+    }
+
+    @Override
+    public BytesReference slice(int from, int length) {
+        if (from < 0 || (from + length) > length()) {
+            throw new ElasticsearchIllegalArgumentException("can't slice a buffer with length [" + length() + "], with slice parameters from [" + from + "], length [" + length + "]");
+        }
+        final ByteBuffer dup = buffer.duplicate();
+        dup.position(from);
+        dup.limit(from + length);
+        return new MappedBytesReference(channel, position + from, dup.slice());
+    }
+
+    @Override
+    public StreamInput streamInput() {
+        return new MappedStreamInput(buffer.duplicate());
+    }
+
+    @Override
+    public void writeTo(OutputStream os) throws IOException {
+        final ByteBuffer dup = buffer.duplicate();
+        final byte[] chunk = new byte[Math.min(COPY_CHUNK_SIZE, dup.remaining())];
+        while (dup.hasRemaining()) {
+            final int len = Math.min(chunk.length, dup.remaining());
+            dup.get(chunk, 0, len);
+            os.write(chunk, 0, len);
+        }
+    }
+
+    @Override
+    public void writeTo(GatheringByteChannel channel) throws IOException {
+        if (channel instanceof SocketChannel && this.channel.isOpen()) {
+            final long length = length();
+            long written = 0;
+            while (written < length) {
+                final long transferred = this.channel.transferTo(position + written, length - written, channel);
+                if (transferred == 0) {
+                    final long size = this.channel.size();
+                    if (size < position + length) {
+                        throw new EOFException("file was truncated to [" + size + "] bytes after mapping [" + length + "] bytes at position [" + position + "]");
+                    }
+                    // the socket does not take more bytes for now (non blocking), write the rest from the mapped buffer
+                    final ByteBuffer rest = buffer.duplicate();
+                    rest.position((int) written);
+                    Channels.writeToChannel(rest, channel);
+                    return;
+                }
+                written += transferred;
+            }
+        } else {
+            // the mapped buffer is direct, so it is written without being copied to a temporary buffer
+            Channels.writeToChannel(buffer.duplicate(), channel);
+        }
+    }
+
+    @Override
+    public byte[] toBytes() {
+        final byte[] bytes = new byte[length()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public BytesArray toBytesArray() {
+        return new BytesArray(toBytes());
+    }
+
+    @Override
+    public BytesArray copyBytesArray() {
+        return new BytesArray(toBytes());
+    }
+
+    @Override
+    public ChannelBuffer toChannelBuffer() {
+        return ChannelBuffers.wrappedBuffer(buffer.duplicate());
+    }
+
+    @Override
+    public boolean hasArray() {
+        return false;
+    }
+
+    @Override
+    public byte[] array() {
+        throw new IllegalStateException("array not available");
+    }
+
+    @Override
+    public int arrayOffset() {
+        throw new IllegalStateException("array not available");
+    }
+
+    @Override
+    public String toUtf8() {
+        if (length() == 0) {
+            return "";
+        }
+        return new String(toBytes(), Charsets.UTF_8);
+    }
+
+    @Override
+    public BytesRef toBytesRef() {
+        return new BytesRef(toBytes());
+    }
+
+    @Override
+    public BytesRef copyBytesRef() {
+        return new BytesRef(toBytes());
+    }
+
+    @Override
+    public int hashCode() {
+        return Helper.bytesHashCode(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return Helper.bytesEqual(this, (BytesReference) obj);
+    }
+
+    private static class MappedStreamInput extends StreamInput {
+
+        private final ByteBuffer buffer;
+
+        MappedStreamInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            if (!buffer.hasRemaining()) {
+                throw new EOFException();
+            }
+            return buffer.get();
+        }
+
+        @Override
+        public void readBytes(byte[] b, int offset, int len) throws IOException {
+            if (len > buffer.remaining()) {
+                throw new EOFException("Cannot read " + len + " bytes from stream with length " + buffer.limit() + " at pos " + buffer.position());
+            }
+            buffer.get(b, offset, len);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int offset, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, offset, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buffer.remaining();
+        }
+
+        @Override
+        public void reset() throws IOException {
+            buffer.position(0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // nothing to do, the mapping is released by the garbage collector
+        }
+    }
+}
@@ -292,15 +292,7 @@ public class PagedBytesReference implements BytesReference {
     @Override
     public int hashCode() {
         if (hash == 0) {
-            // TODO: delegate to BigArrays via:
-            // hash = bigarrays.hashCode(bytearray);
-            // and for slices:
-            // hash = bigarrays.hashCode(bytearray, offset, length);
-            int tmphash = 1;
-            for (int i = 0; i < length; i++) {
-                tmphash = 31 * tmphash + bytearray.get(offset + i);
-            }
-            hash = tmphash;
+            hash = bigarrays.hashCode(bytearray, offset, length);
         }
         return hash;
     }
@@ -320,18 +312,7 @@ public class PagedBytesReference implements BytesReference {
             return false;
         }
 
-        // TODO: delegate to BigArrays via:
-        // return bigarrays.equals(bytearray, other.bytearray);
-        // and for slices:
-        // return bigarrays.equals(bytearray, start, other.bytearray, otherstart, len);
-        ByteArray otherArray = other.bytearray;
-        int otherOffset = other.offset;
-        for (int i = 0; i < length; i++) {
-            if (bytearray.get(offset + i) != otherArray.get(otherOffset + i)) {
-                return false;
-            }
-        }
-        return true;
+        return bigarrays.equals(bytearray, offset, other.bytearray, other.offset, length);
     }
 
     private int countRequiredBuffers(int initialCount, int numBytes) {
@@ -376,7 +357,7 @@ public class PagedBytesReference implements BytesReference {
 
         @Override
         public void readBytes(byte[] b, int bOffset, int len) throws IOException {
-            if (len > offset + length) {
+            if (len > length - pos) {
                 throw new IndexOutOfBoundsException("Cannot read " + len + " bytes from stream with length " + length + " at pos " + pos);
             }
 
@@ -385,7 +366,7 @@ public class PagedBytesReference implements BytesReference {
 
         @Override
         public int read() throws IOException {
-            return (pos < length) ? bytearray.get(offset + pos++) : -1;
+            return (pos < length) ? bytearray.get(offset + pos++) & 0xFF : -1;
         }
 
         @Override
@@ -394,7 +375,7 @@ public class PagedBytesReference implements BytesReference {
                 return 0;
             }
 
-            if (pos >= offset + length) {
+            if (pos >= length) {
                 return -1;
             }
 
@@ -49,6 +49,18 @@ public enum GeoDistance {
         public FixedSourceDistance fixedSourceDistance(double sourceLatitude, double sourceLongitude, DistanceUnit unit) {
             return new PlaneFixedSourceDistance(sourceLatitude, sourceLongitude, unit);
         }
+
+        @Override
+        public void calculate(double sourceLatitude, double sourceLongitude, double[] targetLatitudes, double[] targetLongitudes,
+                              int from, int to, DistanceUnit unit, double[] distances) {
+            checkBatch(targetLatitudes, targetLongitudes, from, to, distances);
+            final double distancePerDegree = unit.getDistancePerDegree();
+            for (int i = from; i < to; i++) {
+                double px = targetLongitudes[i] - sourceLongitude;
+                double py = targetLatitudes[i] - sourceLatitude;
+                distances[i] = Math.sqrt(px * px + py * py) * distancePerDegree;
+            }
+        }
     },
 
     /**
@@ -72,6 +84,20 @@ public enum GeoDistance {
         public FixedSourceDistance fixedSourceDistance(double sourceLatitude, double sourceLongitude, DistanceUnit unit) {
             return new FactorFixedSourceDistance(sourceLatitude, sourceLongitude, unit);
         }
+
+        @Override
+        public void calculate(double sourceLatitude, double sourceLongitude, double[] targetLatitudes, double[] targetLongitudes,
+                              int from, int to, DistanceUnit unit, double[] distances) {
+            checkBatch(targetLatitudes, targetLongitudes, from, to, distances);
+            final double a = Math.toRadians(90D - sourceLatitude);
+            final double cosA = Math.cos(a);
+            final double sinA = Math.sin(a);
+            for (int i = from; i < to; i++) {
+                double longitudeDifference = targetLongitudes[i] - sourceLongitude;
+                double c = Math.toRadians(90D - targetLatitudes[i]);
+                distances[i] = (cosA * Math.cos(c)) + (sinA * Math.sin(c) * Math.cos(Math.toRadians(longitudeDifference)));
+            }
+        }
     },
     /**
      * Calculates distance as points on a globe.
@@ -98,6 +124,23 @@ public enum GeoDistance {
         public FixedSourceDistance fixedSourceDistance(double sourceLatitude, double sourceLongitude, DistanceUnit unit) {
             return new ArcFixedSourceDistance(sourceLatitude, sourceLongitude, unit);
         }
+
+        @Override
+        public void calculate(double sourceLatitude, double sourceLongitude, double[] targetLatitudes, double[] targetLongitudes,
+                              int from, int to, DistanceUnit unit, double[] distances) {
+            checkBatch(targetLatitudes, targetLongitudes, from, to, distances);
+            final double x1 = sourceLatitude * Math.PI / 180D;
+            final double cosX1 = Math.cos(x1);
+            for (int i = from; i < to; i++) {
+                double x2 = targetLatitudes[i] * Math.PI / 180D;
+                double h1 = 1D - Math.cos(x1 - x2);
+                double h2 = 1D - Math.cos((sourceLongitude - targetLongitudes[i]) * Math.PI / 180D);
+                double h = (h1 + cosX1 * Math.cos(x2) * h2) / 2;
+                double averageLatitude = (x1 + x2) / 2;
+                double diameter = GeoUtils.earthDiameter(averageLatitude);
+                distances[i] = unit.fromMeters(diameter * Math.asin(Math.min(1, Math.sqrt(h))));
+            }
+        }
     },
     /**
      * Calculates distance as points on a globe in a sloppy way. Close to the pole areas the accuracy
@@ -119,6 +162,23 @@ public enum GeoDistance {
         public FixedSourceDistance fixedSourceDistance(double sourceLatitude, double sourceLongitude, DistanceUnit unit) {
             return new SloppyArcFixedSourceDistance(sourceLatitude, sourceLongitude, unit);
         }
+
+        @Override
+        public void calculate(double sourceLatitude, double sourceLongitude, double[] targetLatitudes, double[] targetLongitudes,
+                              int from, int to, DistanceUnit unit, double[] distances) {
+            checkBatch(targetLatitudes, targetLongitudes, from, to, distances);
+            // same steps as SloppyMath.haversin, with the terms that only depend on the source computed once
+            final double x1 = sourceLatitude * TO_RADIANS;
+            final double cosX1 = SloppyMath.cos(x1);
+            for (int i = from; i < to; i++) {
+                double x2 = targetLatitudes[i] * TO_RADIANS;
+                double h1 = 1 - SloppyMath.cos(x1 - x2);
+                double h2 = 1 - SloppyMath.cos((sourceLongitude - targetLongitudes[i]) * TO_RADIANS);
+                double h = (h1 + cosX1 * SloppyMath.cos(x2) * h2) / 2;
+                double diameter = SloppyMath.earthDiameter((x1 + x2) / 2d);
+                distances[i] = unit.fromMeters(diameter * SloppyMath.asin(Math.min(1, Math.sqrt(h))) * 1000.0);
+            }
+        }
     };
 
     /**
@@ -133,6 +193,39 @@ public enum GeoDistance {
 
     public abstract FixedSourceDistance fixedSourceDistance(double sourceLatitude, double sourceLongitude, DistanceUnit unit);
 
+    /**
+     * Calculates the distances from a source to a batch of targets, the distance to the target at index <code>i</code>
+     * is written to <code>distances[i]</code>. Terms that only depend on the source are computed once, the results
+     * are exactly the ones of {@link #calculate(double, double, double, double, DistanceUnit)}.
+     */
+    public void calculate(double sourceLatitude, double sourceLongitude, double[] targetLatitudes, double[] targetLongitudes,
+                          DistanceUnit unit, double[] distances) {
+        calculate(sourceLatitude, sourceLongitude, targetLatitudes, targetLongitudes, 0, targetLatitudes.length, unit, distances);
+    }
+
+    /**
+     * Calculates the distances from a source to the targets between index <code>from</code> inclusive and
+     * <code>to</code> exclusive, see {@link #calculate(double, double, double[], double[], DistanceUnit, double[])}.
+     */
+    public void calculate(double sourceLatitude, double sourceLongitude, double[] targetLatitudes, double[] targetLongitudes,
+                          int from, int to, DistanceUnit unit, double[] distances) {
+        checkBatch(targetLatitudes, targetLongitudes, from, to, distances);
+        for (int i = from; i < to; i++) {
+            distances[i] = calculate(sourceLatitude, sourceLongitude, targetLatitudes[i], targetLongitudes[i], unit);
+        }
+    }
+
+    private static void checkBatch(double[] targetLatitudes, double[] targetLongitudes, int from, int to, double[] distances) {
+        if (from < 0 || from > to || to > targetLatitudes.length || to > targetLongitudes.length || to > distances.length) {
+            throw new ElasticsearchIllegalArgumentException("can't compute distances from [" + from + "] to [" + to + "] with ["
+                    + targetLatitudes.length + "] latitudes, [" + targetLongitudes.length + "] longitudes and ["
+                    + distances.length + "] distances");
+        }
+    }
+
+    // same value as the factor that SloppyMath.haversin uses to convert degrees
+    private static final double TO_RADIANS = Math.PI / 180D;
+
     private static final double MIN_LAT = Math.toRadians(-90d);  // -PI/2
     private static final double MAX_LAT = Math.toRadians(90d);   //  PI/2
     private static final double MIN_LON = Math.toRadians(-180d); // -PI
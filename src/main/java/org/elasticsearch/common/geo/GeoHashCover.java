@@ -0,0 +1,300 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.geo;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.SpatialRelation;
+import com.spatial4j.core.shape.jts.JtsGeometry;
+import com.vividsolutions.jts.algorithm.locate.IndexedPointInAreaLocator;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Location;
+import com.vividsolutions.jts.geom.Polygonal;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.geo.builders.ShapeBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes a set of geohash cells of mixed precision that covers a shape, so that a filter on a shape can be
+ * turned into <code>geohash_cell</code> filters ahead of time.
+ * <p/>
+ * Cells are refined from the whole world down to the requested precision: cells that are entirely within the shape
+ * are kept as they are, cells that are outside of it are dropped, and only the cells on the boundary of the shape
+ * are split. A cell whose 32 sub cells are all part of the cover is replaced by itself. Cells are held as long
+ * geohashes (see {@link GeoHashUtils#encodeAsLong(double, double, int)}) and computed from their parent without
+ * going through strings. Deep refinements are split across a fork/join pool.
+ */
+public final class GeoHashCover {
+
+    /**
+     * Default maximum number of cells of a cover
+     */
+    public static final int DEFAULT_MAX_CELLS = 1 << 16;
+
+    // a cell is refined in parallel if there are at least this many levels left to refine below it
+    private static final int PARALLEL_LEVELS = 3;
+
+    private enum Relation {
+        DISJOINT, WITHIN, INTERSECTS
+    }
+
+    private GeoHashCover() {
+    }
+
+    /**
+     * Cover a shape with geohash cells
+     *
+     * @param shape the shape to cover
+     * @param precision the maximum length of the geohashes of the cover, between 1 and 12
+     * @return the geohashes of the cover, encoded as longs
+     */
+    public static long[] cover(ShapeBuilder shape, int precision) {
+        return cover(shape.build(), precision, DEFAULT_MAX_CELLS);
+    }
+
+    /**
+     * Cover a shape with geohash cells
+     *
+     * @param shape the shape to cover
+     * @param precision the maximum length of the geohashes of the cover, between 1 and 12
+     * @param maxCells maximum number of cells of the cover
+     * @return the geohashes of the cover, encoded as longs
+     * @throws ElasticsearchIllegalArgumentException if the cover needs more than <code>maxCells</code> cells
+     */
+    public static long[] cover(ShapeBuilder shape, int precision, int maxCells) {
+        return cover(shape.build(), precision, maxCells);
+    }
+
+    /**
+     * Cover a shape with geohash cells
+     *
+     * @param shape the shape to cover
+     * @param precision the maximum length of the geohashes of the cover, between 1 and 12
+     * @param maxCells maximum number of cells of the cover
+     * @return the geohashes of the cover, encoded as longs
+     * @throws ElasticsearchIllegalArgumentException if the cover needs more than <code>maxCells</code> cells
+     */
+    public static long[] cover(Shape shape, int precision, int maxCells) {
+        if (precision < 1 || precision > GeoHashUtils.PRECISION) {
+            throw new ElasticsearchIllegalArgumentException("Illegal precision length of " + precision
+                    + ". Long-based geohashes only support precisions between 1 and " + GeoHashUtils.PRECISION);
+        }
+        final CoverTask root = new CoverTask(new Cover(shape, precision, maxCells), 0L, 0, -180, -90, 180, 90);
+        final LongArrayList cells = root.remaining() >= PARALLEL_LEVELS ? PoolHolder.POOL.invoke(root) : root.compute();
+        if (root.cover.exceeded()) {
+            throw new ElasticsearchIllegalArgumentException("covering the shape at precision [" + precision
+                    + "] needs more than [" + maxCells + "] geohash cells");
+        }
+        final long[] result = cells.toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static final class PoolHolder {
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    /**
+     * The shape to cover and the state shared by all the tasks of a cover
+     */
+    private static final class Cover {
+
+        private final Shape shape;
+        // polygons are related to cells with their indexed boundary: a cell that doesn't cross the boundary is
+        // either entirely inside or outside of the polygon, which a single point tells
+        private final PreparedGeometry boundary;
+        private final IndexedPointInAreaLocator locator;
+        // other JTS shapes are prepared so that the relation to a cell is computed on indexed edges
+        private final PreparedGeometry geometry;
+        private final Envelope envelope;
+        private final int precision;
+        private final int maxCells;
+        private final AtomicInteger cells = new AtomicInteger();
+
+        Cover(Shape shape, int precision, int maxCells) {
+            this.shape = shape;
+            if (shape instanceof JtsGeometry) {
+                final Geometry geometry = ((JtsGeometry) shape).getGeom();
+                this.envelope = geometry.getEnvelopeInternal();
+                if (geometry instanceof Polygonal) {
+                    this.boundary = PreparedGeometryFactory.prepare(geometry.getBoundary());
+                    this.locator = new IndexedPointInAreaLocator(geometry);
+                    // the locator builds its index lazily, do it before it is shared between threads
+                    this.locator.locate(new Coordinate(0, 0));
+                    this.geometry = null;
+                } else {
+                    this.boundary = null;
+                    this.locator = null;
+                    this.geometry = PreparedGeometryFactory.prepare(geometry);
+                }
+            } else {
+                this.envelope = null;
+                this.boundary = null;
+                this.locator = null;
+                this.geometry = null;
+            }
+            this.precision = precision;
+            this.maxCells = maxCells;
+        }
+
+        Relation relate(double minLon, double minLat, double maxLon, double maxLat) {
+            if (envelope == null) {
+                final SpatialRelation relation = shape.relate(ShapeBuilder.SPATIAL_CONTEXT.makeRectangle(minLon, maxLon, minLat, maxLat));
+                if (relation == SpatialRelation.CONTAINS) {
+                    return Relation.WITHIN;
+                }
+                return relation == SpatialRelation.DISJOINT ? Relation.DISJOINT : Relation.INTERSECTS;
+            }
+            final Envelope cellEnvelope = new Envelope(minLon, maxLon, minLat, maxLat);
+            if (!envelope.intersects(cellEnvelope)) {
+                return Relation.DISJOINT;
+            }
+            final Geometry cell = ShapeBuilder.FACTORY.toGeometry(cellEnvelope);
+            if (boundary != null) {
+                if (boundary.intersects(cell)) {
+                    return Relation.INTERSECTS;
+                }
+                final Coordinate center = new Coordinate((minLon + maxLon) / 2, (minLat + maxLat) / 2);
+                return locator.locate(center) == Location.EXTERIOR ? Relation.DISJOINT : Relation.WITHIN;
+            }
+            if (geometry.covers(cell)) {
+                return Relation.WITHIN;
+            }
+            return geometry.intersects(cell) ? Relation.INTERSECTS : Relation.DISJOINT;
+        }
+
+        void count(int cells) {
+            this.cells.addAndGet(cells);
+        }
+
+        /**
+         * @return <code>true</code> if the cover has more cells than allowed, in which case the pending tasks stop
+         */
+        boolean exceeded() {
+            return cells.get() > maxCells;
+        }
+    }
+
+    /**
+     * Computes the cells of the cover that are within a geohash cell
+     */
+    private static final class CoverTask extends RecursiveTask<LongArrayList> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Cover cover;
+        // the geohash bits of the cell, without the precision
+        private final long bits;
+        private final int level;
+        private final double minLon, minLat, maxLon, maxLat;
+
+        CoverTask(Cover cover, long bits, int level, double minLon, double minLat, double maxLon, double maxLat) {
+            this.cover = cover;
+            this.bits = bits;
+            this.level = level;
+            this.minLon = minLon;
+            this.minLat = minLat;
+            this.maxLon = maxLon;
+            this.maxLat = maxLat;
+        }
+
+        int remaining() {
+            return cover.precision - level;
+        }
+
+        @Override
+        protected LongArrayList compute() {
+            final LongArrayList cells = new LongArrayList();
+            if (cover.exceeded()) {
+                return cells;
+            }
+            final boolean parallel = remaining() >= PARALLEL_LEVELS && inForkJoinPool();
+            final List<CoverTask> forked = parallel ? new ArrayList<CoverTask>() : null;
+            // even levels split the cell in 8 columns and 4 rows, odd levels in 4 columns and 8 rows
+            final boolean even = (level & 1) == 0;
+            final double width = (maxLon - minLon) / (even ? 8 : 4);
+            final double height = (maxLat - minLat) / (even ? 4 : 8);
+            int leaves = 0;
+            for (int c = 0; c < 32; c++) {
+                final int column, row;
+                if (even) {
+                    column = ((c >>> 2) & 4) | ((c >>> 1) & 2) | (c & 1);
+                    row = ((c >>> 2) & 2) | ((c >>> 1) & 1);
+                } else {
+                    row = ((c >>> 2) & 4) | ((c >>> 1) & 2) | (c & 1);
+                    column = ((c >>> 2) & 2) | ((c >>> 1) & 1);
+                }
+                final double cellMinLon = minLon + column * width;
+                final double cellMinLat = minLat + row * height;
+                final double cellMaxLon = minLon + (column + 1) * width;
+                final double cellMaxLat = minLat + (row + 1) * height;
+                final Relation relation = cover.relate(cellMinLon, cellMinLat, cellMaxLon, cellMaxLat);
+                if (relation == Relation.DISJOINT) {
+                    continue;
+                }
+                final long child = (bits << 5) | c;
+                if (relation == Relation.WITHIN || level + 1 == cover.precision) {
+                    cells.add((child << 4) | (level + 1));
+                    leaves++;
+                    continue;
+                }
+                final CoverTask task = new CoverTask(cover, child, level + 1, cellMinLon, cellMinLat, cellMaxLon, cellMaxLat);
+                if (parallel) {
+                    forked.add(task);
+                    task.fork();
+                } else {
+                    cells.addAll(task.compute());
+                }
+            }
+            cover.count(leaves);
+            if (parallel) {
+                for (CoverTask task : forked) {
+                    cells.addAll(task.join());
+                }
+            }
+            if (level > 0 && cells.size() == 32 && allAtLevel(cells, level + 1)) {
+                // all the sub cells are part of the cover, the cell itself is a smaller cover
+                cover.count(1 - 32);
+                cells.clear();
+                cells.add((bits << 4) | level);
+            }
+            return cells;
+        }
+
+        private static boolean allAtLevel(LongArrayList cells, int level) {
+            for (int i = 0; i < cells.size(); i++) {
+                if ((cells.get(i) & 15) != level) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -18,6 +18,8 @@
 package org.elasticsearch.common.geo;
 
 import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.util.DoubleArray;
+import org.elasticsearch.common.util.LongArray;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -36,6 +38,8 @@ public class GeoHashUtils {
             'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z'};
 
     public static final int PRECISION = 12;
+    // number of points that are read at once from big arrays by the batch methods
+    private static final int BULK_SIZE = 1024;
     private static final int[] BITS = {16, 8, 4, 2, 1};
 
     private GeoHashUtils() {
@@ -352,60 +356,121 @@ public class GeoHashUtils {
      * 60 bits are reserved for 5 bit cell identifiers giving up to 12 layers. 
      */
     public static long encodeAsLong(double latitude, double longitude, int precision) {
+        checkLongPrecision(precision);
+        return interleave(latitude, longitude, precision);
+    }
+
+    /**
+     * Encodes arrays of latitudes and longitudes into long geohashes, see {@link #encodeAsLong(double, double, int)}.
+     * Nothing is allocated per point.
+     *
+     * @param latitudes the latitudes of the points
+     * @param longitudes the longitudes of the points
+     * @param precision The required precision between 1 and 12
+     * @param geohashes the array to write the geohash of the point at index <code>i</code> to, at index <code>i</code>
+     */
+    public static void encodeAsLong(double[] latitudes, double[] longitudes, int precision, long[] geohashes) {
+        checkLongPrecision(precision);
+        if (longitudes.length != latitudes.length || geohashes.length < latitudes.length) {
+            throw new ElasticsearchIllegalArgumentException("can't encode [" + latitudes.length + "] latitudes and ["
+                    + longitudes.length + "] longitudes into [" + geohashes.length + "] geohashes");
+        }
+        for (int i = 0; i < latitudes.length; i++) {
+            geohashes[i] = interleave(latitudes[i], longitudes[i], precision);
+        }
+    }
+
+    /**
+     * Encodes the first <code>size</code> latitudes and longitudes of big arrays into long geohashes, see
+     * {@link #encodeAsLong(double, double, int)}. Points are read in bulk, nothing is allocated per point.
+     *
+     * @param latitudes the latitudes of the points
+     * @param longitudes the longitudes of the points
+     * @param size the number of points to encode
+     * @param precision The required precision between 1 and 12
+     * @param geohashes the array to write the geohash of the point at index <code>i</code> to, at index <code>i</code>
+     */
+    public static void encodeAsLong(DoubleArray latitudes, DoubleArray longitudes, long size, int precision, LongArray geohashes) {
+        checkLongPrecision(precision);
+        final double[] lats = new double[(int) Math.min(BULK_SIZE, size)];
+        final double[] lons = new double[lats.length];
+        final long[] hashes = new long[lats.length];
+        for (long from = 0; from < size; from += lats.length) {
+            final int length = (int) Math.min(lats.length, size - from);
+            latitudes.get(from, lats, 0, length);
+            longitudes.get(from, lons, 0, length);
+            for (int i = 0; i < length; i++) {
+                hashes[i] = interleave(lats[i], lons[i], precision);
+            }
+            geohashes.set(from, hashes, 0, length);
+        }
+    }
+
+    private static void checkLongPrecision(int precision) {
         if((precision>12)||(precision<1))
         {
             throw new ElasticsearchIllegalArgumentException("Illegal precision length of "+precision+
                     ". Long-based geohashes only support precisions between 1 and 12");
         }
-        double latInterval0 = -90.0;
-        double latInterval1 = 90.0;
-        double lngInterval0 = -180.0;
-        double lngInterval1 = 180.0;
-
-        long geohash = 0l;
-        boolean isEven = true;
+    }
 
-        int bit = 0;
-        int ch = 0;
+    /**
+     * Computes a long geohash by interleaving the index of the column and the row of the point's cell, instead of
+     * halving the intervals one bit at a time. Longitude takes the first bit, so it has one more bit than latitude
+     * for odd precisions.
+     */
+    private static long interleave(double latitude, double longitude, int precision) {
+        final int bits = 5 * precision;
+        final int latBits = bits >>> 1;
+        final int lonBits = bits - latBits;
+        final long lat = spread(cell(latitude, -90, 180, latBits));
+        final long lon = spread(cell(longitude, -180, 360, lonBits));
+        final long geohash = (bits & 1) == 0 ? (lon << 1) | lat : lon | (lat << 1);
+        return (geohash << 4) | precision;
+    }
 
-        int geohashLength=0;
-        while (geohashLength < precision) {
-            double mid = 0.0;
-            if (isEven) {
-                mid = (lngInterval0 + lngInterval1) / 2D;
-                if (longitude > mid) {
-                    ch |= BITS[bit];
-                    lngInterval0 = mid;
-                } else {
-                    lngInterval1 = mid;
-                }
-            } else {
-                mid = (latInterval0 + latInterval1) / 2D;
-                if (latitude > mid) {
-                    ch |= BITS[bit];
-                    latInterval0 = mid;
-                } else {
-                    latInterval1 = mid;
-                }
-            }
+    /**
+     * Index of the cell of <code>value</code> when the range is split in <code>2^bits</code> cells. Cells include
+     * their upper bound like the halving in {@link #encode(double, double, int)}, values out of the range go to
+     * the first or the last cell. The bounds of the cells are exact in double precision, so the index estimated
+     * from the division is checked against them.
+     */
+    private static int cell(double value, double min, double range, int bits) {
+        final int cells = 1 << bits;
+        final double size = range / cells;
+        final double estimate = Math.floor((value - min) / size);
+        int cell = estimate < 0 ? 0 : (estimate >= cells ? cells - 1 : (int) estimate);
+        while (cell > 0 && value <= min + cell * size) {
+            cell--;
+        }
+        while (cell < cells - 1 && value > min + (cell + 1) * size) {
+            cell++;
+        }
+        return cell;
+    }
 
-            isEven = !isEven;
+    /**
+     * Spread the lower 32 bits of <code>v</code> to the even bits of a long
+     */
+    private static long spread(long v) {
+        v &= 0xFFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        return (v | (v << 1)) & 0x5555555555555555L;
+    }
 
-            if (bit < 4) {
-                bit++;
-            } else {
-                geohashLength++;
-                geohash|=ch;
-                if(geohashLength<precision){
-                    geohash<<=5;
-                }
-                bit = 0;
-                ch = 0;
-            }
-        }
-        geohash<<=4;
-        geohash|=precision;
-        return geohash;
+    /**
+     * Gather the even bits of <code>v</code> to the lower 32 bits of a long, the reverse of {@link #spread(long)}
+     */
+    private static long compact(long v) {
+        v &= 0x5555555555555555L;
+        v = (v | (v >>> 1)) & 0x3333333333333333L;
+        v = (v | (v >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v >>> 4)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v >>> 8)) & 0x0000FFFF0000FFFFL;
+        return (v | (v >>> 16)) & 0xFFFFFFFFL;
     }
     
     /**
@@ -441,42 +506,70 @@ public class GeoHashUtils {
      * @param ret The Geopoint into which the latitude and longitude will be stored
      */
     public static void decode(long geohash, GeoPoint ret) {
-        double[] interval = decodeCell(geohash);
-        ret.reset((interval[0] + interval[1]) / 2D, (interval[2] + interval[3]) / 2D);
+        final int precision = (int) (geohash & 15);
+        ret.reset(decodeLatitude(geohash, precision), decodeLongitude(geohash, precision));
+    }
 
-    }    
-    
-    private static double[] decodeCell(long geohash) {
-        double[] interval = {-90.0, 90.0, -180.0, 180.0};
-        boolean isEven = true;
-        
-        int precision= (int) (geohash&15);
-        geohash>>=4;
-        int[]cds=new int[precision];
-        for (int i = precision-1; i >=0 ; i--) {            
-            cds[i] = (int) (geohash&31);
-            geohash>>=5;
+    /**
+     * Decodes long geohashes into the latitudes and longitudes of the centers of their cells, see
+     * {@link #decode(long, GeoPoint)}. Geohashes may have different precisions, nothing is allocated per point.
+     *
+     * @param geohashes the long geohashes to decode
+     * @param latitudes the array to write the latitude of the geohash at index <code>i</code> to, at index <code>i</code>
+     * @param longitudes the array to write the longitude of the geohash at index <code>i</code> to, at index <code>i</code>
+     */
+    public static void decode(long[] geohashes, double[] latitudes, double[] longitudes) {
+        if (latitudes.length < geohashes.length || longitudes.length < geohashes.length) {
+            throw new ElasticsearchIllegalArgumentException("can't decode [" + geohashes.length + "] geohashes into ["
+                    + latitudes.length + "] latitudes and [" + longitudes.length + "] longitudes");
         }
+        for (int i = 0; i < geohashes.length; i++) {
+            final long geohash = geohashes[i];
+            final int precision = (int) (geohash & 15);
+            latitudes[i] = decodeLatitude(geohash, precision);
+            longitudes[i] = decodeLongitude(geohash, precision);
+        }
+    }
 
-        for (int i = 0; i <cds.length ; i++) {            
-            final int cd = cds[i];
-            for (int mask : BITS) {
-                if (isEven) {
-                    if ((cd & mask) != 0) {
-                        interval[2] = (interval[2] + interval[3]) / 2D;
-                    } else {
-                        interval[3] = (interval[2] + interval[3]) / 2D;
-                    }
-                } else {
-                    if ((cd & mask) != 0) {
-                        interval[0] = (interval[0] + interval[1]) / 2D;
-                    } else {
-                        interval[1] = (interval[0] + interval[1]) / 2D;
-                    }
-                }
-                isEven = !isEven;
+    /**
+     * Decodes the first <code>size</code> long geohashes of a big array into the latitudes and longitudes of the
+     * centers of their cells, see {@link #decode(long, GeoPoint)}. Geohashes are read in bulk, nothing is allocated
+     * per point.
+     *
+     * @param geohashes the long geohashes to decode
+     * @param size the number of geohashes to decode
+     * @param latitudes the array to write the latitude of the geohash at index <code>i</code> to, at index <code>i</code>
+     * @param longitudes the array to write the longitude of the geohash at index <code>i</code> to, at index <code>i</code>
+     */
+    public static void decode(LongArray geohashes, long size, DoubleArray latitudes, DoubleArray longitudes) {
+        final long[] hashes = new long[(int) Math.min(BULK_SIZE, size)];
+        final double[] lats = new double[hashes.length];
+        final double[] lons = new double[hashes.length];
+        for (long from = 0; from < size; from += hashes.length) {
+            final int length = (int) Math.min(hashes.length, size - from);
+            geohashes.get(from, hashes, 0, length);
+            for (int i = 0; i < length; i++) {
+                final int precision = (int) (hashes[i] & 15);
+                lats[i] = decodeLatitude(hashes[i], precision);
+                lons[i] = decodeLongitude(hashes[i], precision);
             }
+            latitudes.set(from, lats, 0, length);
+            longitudes.set(from, lons, 0, length);
         }
-        return interval;
+    }
+
+    private static double decodeLatitude(long geohash, int precision) {
+        final int bits = 5 * precision;
+        final int latBits = bits >>> 1;
+        final long lat = compact((bits & 1) == 0 ? geohash >>> 4 : geohash >>> 5);
+        // the center of the cell, exact like the bounds of the cells
+        return -90 + (2 * lat + 1) * (90.0 / (1L << latBits));
+    }
+
+    private static double decodeLongitude(long geohash, int precision) {
+        final int bits = 5 * precision;
+        final int lonBits = bits - (bits >>> 1);
+        final long lon = compact((bits & 1) == 0 ? geohash >>> 5 : geohash >>> 4);
+        return -180 + (2 * lon + 1) * (180.0 / (1L << lonBits));
     }
 }
\ No newline at end of file
@@ -0,0 +1,388 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.geo;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.spatial4j.core.shape.Rectangle;
+import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.SpatialRelation;
+import com.spatial4j.core.shape.jts.JtsGeometry;
+import com.vividsolutions.jts.algorithm.locate.IndexedPointInAreaLocator;
+import com.vividsolutions.jts.algorithm.locate.PointOnGeometryLocator;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Location;
+import com.vividsolutions.jts.geom.Polygonal;
+import org.apache.lucene.util.IntroSorter;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.geo.builders.ShapeBuilder;
+import org.elasticsearch.common.unit.DistanceUnit;
+
+/**
+ * An immutable in-memory index over geo points held in primitive arrays, to filter and sort large sets of points
+ * (eg. cached hits) by bounding box, distance or shape without scanning all of them.
+ * <p/>
+ * The index is a packed R-tree: points are bulk loaded in the order of their geohashes, so that points that are
+ * close on earth are close in the index, and grouped by {@value #NODE_SIZE} into leaves. Nodes of every level are
+ * grouped the same way into the nodes of the level above. Bounds of the nodes are held in plain arrays, one per level.
+ * <p/>
+ * Queries return the positions of the matching points in the arrays the index was built from.
+ */
+public final class GeoPointIndex {
+
+    // number of children of a node, and of points of a leaf
+    private static final int NODE_SIZE = 16;
+
+    // coordinates of the points, in the order of the index
+    private final double[] latitudes;
+    private final double[] longitudes;
+    // position of each point in the arrays the index was built from
+    private final int[] positions;
+    // bounds of the nodes, level 0 holds the leaves and the last level holds the root
+    private final double[][] minLatitudes;
+    private final double[][] maxLatitudes;
+    private final double[][] minLongitudes;
+    private final double[][] maxLongitudes;
+
+    /**
+     * Build an index over the given points. The arrays are not modified nor retained.
+     *
+     * @param latitudes the latitudes of the points
+     * @param longitudes the longitudes of the points
+     */
+    public static GeoPointIndex build(double[] latitudes, double[] longitudes) {
+        if (latitudes.length != longitudes.length) {
+            throw new ElasticsearchIllegalArgumentException("can't index [" + latitudes.length + "] latitudes and ["
+                    + longitudes.length + "] longitudes");
+        }
+        final int size = latitudes.length;
+        final long[] geohashes = new long[size];
+        GeoHashUtils.encodeAsLong(latitudes, longitudes, GeoHashUtils.PRECISION, geohashes);
+        final int[] positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            positions[i] = i;
+        }
+        new IntroSorter() {
+            long pivot;
+
+            @Override
+            protected int compare(int i, int j) {
+                return Long.compare(geohashes[i], geohashes[j]);
+            }
+
+            @Override
+            protected void swap(int i, int j) {
+                final long geohash = geohashes[i];
+                geohashes[i] = geohashes[j];
+                geohashes[j] = geohash;
+                final int position = positions[i];
+                positions[i] = positions[j];
+                positions[j] = position;
+            }
+
+            @Override
+            protected void setPivot(int i) {
+                pivot = geohashes[i];
+            }
+
+            @Override
+            protected int comparePivot(int j) {
+                return Long.compare(pivot, geohashes[j]);
+            }
+        }.sort(0, size);
+        final double[] sortedLatitudes = new double[size];
+        final double[] sortedLongitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            sortedLatitudes[i] = latitudes[positions[i]];
+            sortedLongitudes[i] = longitudes[positions[i]];
+        }
+        return new GeoPointIndex(sortedLatitudes, sortedLongitudes, positions);
+    }
+
+    private GeoPointIndex(double[] latitudes, double[] longitudes, int[] positions) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.positions = positions;
+        int levels = 1;
+        for (int nodes = nodes(latitudes.length); nodes > 1; nodes = nodes(nodes)) {
+            levels++;
+        }
+        minLatitudes = new double[levels][];
+        maxLatitudes = new double[levels][];
+        minLongitudes = new double[levels][];
+        maxLongitudes = new double[levels][];
+        for (int level = 0; level < levels; level++) {
+            final int children = level == 0 ? latitudes.length : minLatitudes[level - 1].length;
+            final int nodes = nodes(children);
+            minLatitudes[level] = new double[nodes];
+            maxLatitudes[level] = new double[nodes];
+            minLongitudes[level] = new double[nodes];
+            maxLongitudes[level] = new double[nodes];
+            for (int node = 0; node < nodes; node++) {
+                double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+                double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+                final int end = Math.min(children, (node + 1) * NODE_SIZE);
+                for (int child = node * NODE_SIZE; child < end; child++) {
+                    if (level == 0) {
+                        minLat = Math.min(minLat, latitudes[child]);
+                        maxLat = Math.max(maxLat, latitudes[child]);
+                        minLon = Math.min(minLon, longitudes[child]);
+                        maxLon = Math.max(maxLon, longitudes[child]);
+                    } else {
+                        minLat = Math.min(minLat, minLatitudes[level - 1][child]);
+                        maxLat = Math.max(maxLat, maxLatitudes[level - 1][child]);
+                        minLon = Math.min(minLon, minLongitudes[level - 1][child]);
+                        maxLon = Math.max(maxLon, maxLongitudes[level - 1][child]);
+                    }
+                }
+                minLatitudes[level][node] = minLat;
+                maxLatitudes[level][node] = maxLat;
+                minLongitudes[level][node] = minLon;
+                maxLongitudes[level][node] = maxLon;
+            }
+        }
+    }
+
+    private static int nodes(int children) {
+        return Math.max(1, (children + NODE_SIZE - 1) / NODE_SIZE);
+    }
+
+    /**
+     * @return the number of points of the index
+     */
+    public int size() {
+        return latitudes.length;
+    }
+
+    /**
+     * Find the points within a bounding box. The box crosses the dateline if the longitude of the top left corner
+     * is greater than the one of the bottom right corner.
+     *
+     * @return the positions of the points, in no particular order
+     */
+    public int[] boundingBox(GeoPoint topLeft, GeoPoint bottomRight) {
+        final IntArrayList matches = new IntArrayList();
+        collect(topLeft, bottomRight, null, matches);
+        return positions(matches);
+    }
+
+    /**
+     * Find the points within a distance of a point. Candidates are taken from the bounding box of
+     * {@link GeoDistance#distanceBoundingCheck(double, double, double, DistanceUnit)}, and their distances are
+     * computed in a batch.
+     *
+     * @return the positions of the points, from the closest to the farthest
+     */
+    public int[] distance(double latitude, double longitude, double distance, DistanceUnit unit, GeoDistance geoDistance) {
+        final GeoDistance.DistanceBoundingCheck check = GeoDistance.distanceBoundingCheck(latitude, longitude, distance, unit);
+        final IntArrayList candidates = new IntArrayList();
+        collect(check.topLeft(), check.bottomRight(), null, candidates);
+        final int count = candidates.size();
+        final double[] candidateLatitudes = new double[count];
+        final double[] candidateLongitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            candidateLatitudes[i] = latitudes[candidates.get(i)];
+            candidateLongitudes[i] = longitudes[candidates.get(i)];
+        }
+        final double[] distances = new double[count];
+        geoDistance.calculate(latitude, longitude, candidateLatitudes, candidateLongitudes, unit, distances);
+        // FACTOR computes a factor that decreases with the distance
+        final boolean factor = geoDistance == GeoDistance.FACTOR;
+        final double limit = geoDistance.normalize(distance, unit);
+        final int[] matches = new int[count];
+        final double[] matchDistances = new double[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            final double d = factor ? -distances[i] : distances[i];
+            if (factor ? distances[i] >= limit : d <= limit) {
+                matches[size] = positions[candidates.get(i)];
+                matchDistances[size++] = d;
+            }
+        }
+        new IntroSorter() {
+            double pivot;
+
+            @Override
+            protected int compare(int i, int j) {
+                return Double.compare(matchDistances[i], matchDistances[j]);
+            }
+
+            @Override
+            protected void swap(int i, int j) {
+                final double distance = matchDistances[i];
+                matchDistances[i] = matchDistances[j];
+                matchDistances[j] = distance;
+                final int match = matches[i];
+                matches[i] = matches[j];
+                matches[j] = match;
+            }
+
+            @Override
+            protected void setPivot(int i) {
+                pivot = matchDistances[i];
+            }
+
+            @Override
+            protected int comparePivot(int j) {
+                return Double.compare(pivot, matchDistances[j]);
+            }
+        }.sort(0, size);
+        final int[] result = new int[size];
+        System.arraycopy(matches, 0, result, 0, size);
+        return result;
+    }
+
+    /**
+     * Find the points within a shape, points on the boundary of the shape are included.
+     *
+     * @return the positions of the points, in no particular order
+     */
+    public int[] within(ShapeBuilder shape) {
+        return within(shape.build());
+    }
+
+    /**
+     * Find the points within a shape, points on the boundary of the shape are included.
+     *
+     * @return the positions of the points, in no particular order
+     */
+    public int[] within(Shape shape) {
+        final Rectangle bounds = shape.getBoundingBox();
+        final IntArrayList matches = new IntArrayList();
+        collect(new GeoPoint(bounds.getMaxY(), bounds.getMinX()), new GeoPoint(bounds.getMinY(), bounds.getMaxX()), matcher(shape), matches);
+        return positions(matches);
+    }
+
+    private int[] positions(IntArrayList matches) {
+        final int[] result = new int[matches.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = positions[matches.get(i)];
+        }
+        return result;
+    }
+
+    /**
+     * @return the memory used by the index, in bytes
+     */
+    public long ramBytesUsed() {
+        long bytes = RamUsageEstimator.sizeOf(latitudes) + RamUsageEstimator.sizeOf(longitudes) + RamUsageEstimator.sizeOf(positions);
+        for (int level = 0; level < minLatitudes.length; level++) {
+            bytes += 4 * RamUsageEstimator.sizeOf(minLatitudes[level]);
+        }
+        return bytes;
+    }
+
+    /**
+     * Tests the points that are within the bounding box of a query
+     */
+    private interface Matcher {
+        boolean matches(double latitude, double longitude);
+    }
+
+    private static Matcher matcher(final Shape shape) {
+        // polygons are tested with an indexed point locator, other shapes (eg. lines, which point in area locators
+        // never match) with relate(), like PreparedShape does
+        if (shape instanceof JtsGeometry && ((JtsGeometry) shape).getGeom() instanceof Polygonal) {
+            final PointOnGeometryLocator locator = new IndexedPointInAreaLocator(((JtsGeometry) shape).getGeom());
+            final Coordinate coordinate = new Coordinate();
+            return new Matcher() {
+                @Override
+                public boolean matches(double latitude, double longitude) {
+                    coordinate.x = longitude;
+                    coordinate.y = latitude;
+                    return locator.locate(coordinate) != Location.EXTERIOR;
+                }
+            };
+        }
+        return new Matcher() {
+            @Override
+            public boolean matches(double latitude, double longitude) {
+                return shape.relate(ShapeBuilder.SPATIAL_CONTEXT.makePoint(longitude, latitude)) != SpatialRelation.DISJOINT;
+            }
+        };
+    }
+
+    /**
+     * Collect the indices, in the order of the index, of the points within a bounding box that match the given
+     * matcher, if any
+     */
+    private void collect(GeoPoint topLeft, GeoPoint bottomRight, Matcher matcher, IntArrayList matches) {
+        if (latitudes.length == 0) {
+            return;
+        }
+        if (topLeft.lon() > bottomRight.lon()) {
+            // the box crosses the dateline
+            collect(bottomRight.lat(), topLeft.lat(), topLeft.lon(), 180, matcher, matches);
+            collect(bottomRight.lat(), topLeft.lat(), -180, bottomRight.lon(), matcher, matches);
+        } else {
+            collect(bottomRight.lat(), topLeft.lat(), topLeft.lon(), bottomRight.lon(), matcher, matches);
+        }
+    }
+
+    private void collect(double minLat, double maxLat, double minLon, double maxLon, Matcher matcher, IntArrayList matches) {
+        final int root = minLatitudes.length - 1;
+        // pending nodes, as level and index pairs
+        int[] stack = new int[NODE_SIZE * 2 * (root + 1)];
+        int pending = 0;
+        stack[pending++] = root;
+        stack[pending++] = 0;
+        while (pending > 0) {
+            final int node = stack[--pending];
+            final int level = stack[--pending];
+            if (minLatitudes[level][node] > maxLat || maxLatitudes[level][node] < minLat
+                    || minLongitudes[level][node] > maxLon || maxLongitudes[level][node] < minLon) {
+                continue;
+            }
+            final boolean inside = minLatitudes[level][node] >= minLat && maxLatitudes[level][node] <= maxLat
+                    && minLongitudes[level][node] >= minLon && maxLongitudes[level][node] <= maxLon;
+            if (level == 0 || inside) {
+                // the points of the node are tested without going through the nodes below
+                collectPoints(level, node, inside, minLat, maxLat, minLon, maxLon, matcher, matches);
+                continue;
+            }
+            final int end = Math.min(minLatitudes[level - 1].length, (node + 1) * NODE_SIZE);
+            for (int child = node * NODE_SIZE; child < end; child++) {
+                stack[pending++] = level - 1;
+                stack[pending++] = child;
+            }
+        }
+    }
+
+    private void collectPoints(int level, int node, boolean inside, double minLat, double maxLat, double minLon, double maxLon,
+                               Matcher matcher, IntArrayList matches) {
+        // a node of a level covers NODE_SIZE^(level+1) points
+        int start = node;
+        int end = node + 1;
+        for (int i = 0; i <= level; i++) {
+            start *= NODE_SIZE;
+            end *= NODE_SIZE;
+        }
+        end = Math.min(end, latitudes.length);
+        for (int i = start; i < end; i++) {
+            final double lat = latitudes[i];
+            final double lon = longitudes[i];
+            if (inside || (lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon)) {
+                if (matcher == null || matcher.matches(lat, lon)) {
+                    matches.add(i);
+                }
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
+import org.elasticsearch.common.unit.DistanceUnit.Distance;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
@@ -34,13 +35,35 @@ import java.util.Arrays;
 public abstract class BaseLineStringBuilder<E extends BaseLineStringBuilder<E>> extends PointCollection<E> {
 
     protected BaseLineStringBuilder() {
-        this(new ArrayList<Coordinate>());
+        this(new PackedCoordinates());
     }
 
-    protected BaseLineStringBuilder(ArrayList<Coordinate> points) {
+    protected BaseLineStringBuilder(PackedCoordinates points) {
         super(points);
     }
 
+    /**
+     * Simplify the line with the points that have been added so far, see {@link ShapeSimplifier}
+     *
+     * @param tolerance maximum distance between the original and the simplified line
+     * @return this
+     */
+    public E simplify(Distance tolerance) {
+        return simplify(tolerance, 0);
+    }
+
+    /**
+     * Simplify the line with the points that have been added so far, see {@link ShapeSimplifier}
+     *
+     * @param tolerance maximum distance between the original and the simplified line, may be <code>null</code>
+     * @param maxPoints maximum number of points of the simplified line, <code>0</code> for no limit
+     * @return this
+     */
+    public E simplify(Distance tolerance, int maxPoints) {
+        new ShapeSimplifier(tolerance, maxPoints).simplifyLine(points);
+        return thisRef();
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
         return coordinatesToXcontent(builder, false);
@@ -48,10 +71,9 @@ public abstract class BaseLineStringBuilder<E extends BaseLineStringBuilder<E>>
 
     @Override
     public Shape build() {
-        Coordinate[] coordinates = points.toArray(new Coordinate[points.size()]);
         Geometry geometry;
         if(wrapdateline) {
-            ArrayList<LineString> strings = decompose(FACTORY, coordinates, new ArrayList<LineString>());
+            ArrayList<LineString> strings = decompose(FACTORY, coordinates(false), new ArrayList<LineString>());
 
             if(strings.size() == 1) {
                 geometry = strings.get(0);
@@ -61,7 +83,7 @@ public abstract class BaseLineStringBuilder<E extends BaseLineStringBuilder<E>>
             }
 
         } else {
-            geometry = FACTORY.createLineString(coordinates);
+            geometry = FACTORY.createLineString(points.toCoordinateSequence(false));
         }
         return jtsGeometry(geometry);
     }
@@ -19,11 +19,12 @@
 
 package org.elasticsearch.common.geo.builders;
 
-import com.google.common.collect.Sets;
 import com.spatial4j.core.exception.InvalidShapeException;
 import com.spatial4j.core.shape.Shape;
 import com.vividsolutions.jts.geom.*;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.lucene.util.IntroSorter;
+import org.elasticsearch.common.unit.DistanceUnit.Distance;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import java.io.IOException;
@@ -111,16 +112,76 @@ public abstract class BasePolygonBuilder<E extends BasePolygonBuilder<E>> extend
         return shell.close();
     }
 
+    /**
+     * Simplify the shell and the holes of the polygon, see {@link ShapeSimplifier}. The rings are closed in the
+     * process, so no point must be added afterwards.
+     *
+     * @param tolerance maximum distance between the original and the simplified polygon
+     * @return this
+     */
+    public E simplify(Distance tolerance) {
+        return simplify(tolerance, 0);
+    }
+
+    /**
+     * Simplify the shell and the holes of the polygon, see {@link ShapeSimplifier}. The rings are closed in the
+     * process, so no point must be added afterwards.
+     *
+     * @param tolerance maximum distance between the original and the simplified polygon, may be <code>null</code>
+     * @param maxPoints maximum number of points of the simplified polygon including the closing point of every
+     *                  ring, <code>0</code> for no limit
+     * @return this
+     */
+    public E simplify(Distance tolerance, int maxPoints) {
+        simplify(new ShapeSimplifier(tolerance, maxPoints), maxPoints);
+        return thisRef();
+    }
+
+    protected void simplify(ShapeSimplifier simplifier, int maxPoints) {
+        List<PackedCoordinates> holes = new ArrayList<PackedCoordinates>(this.holes.size());
+        for (BaseLineStringBuilder<?> hole : this.holes) {
+            holes.add(hole.points);
+        }
+        simplifier.simplifyPolygon(shell.points, holes, maxPoints);
+    }
+
+    /**
+     * @return the number of points of the polygon, including the closing point of every ring
+     */
+    protected int numPoints() {
+        int numPoints = shell.points.size() + (shell.points.isClosed() ? 0 : 1);
+        for (BaseLineStringBuilder<?> hole : holes) {
+            numPoints += hole.points.size() + (hole.points.isClosed() ? 0 : 1);
+        }
+        return numPoints;
+    }
+
     /**
      * Validates only 1 vertex is tangential (shared) between the interior and exterior of a polygon
      */
     protected void validateHole(BaseLineStringBuilder shell, BaseLineStringBuilder hole) {
-        HashSet exterior = Sets.newHashSet(shell.points);
-        HashSet interior = Sets.newHashSet(hole.points);
-        exterior.retainAll(interior);
-        if (exterior.size() >= 2) {
-            throw new InvalidShapeException("Invalid polygon, interior cannot share more than one point with the exterior");
+        validateHole(vertices(shell), hole);
+    }
+
+    /**
+     * Same as {@link #validateHole(BaseLineStringBuilder, BaseLineStringBuilder)} with the vertices of the shell
+     * collected once for all the holes.
+     */
+    private static void validateHole(HashSet<Coordinate> shell, BaseLineStringBuilder<?> hole) {
+        int shared = 0;
+        for (Coordinate coordinate : new HashSet<Coordinate>(Arrays.asList(hole.coordinates(false)))) {
+            if (shell.contains(coordinate) && ++shared >= 2) {
+                throw new InvalidShapeException("Invalid polygon, interior cannot share more than one point with the exterior");
+            }
+        }
+    }
+
+    private static HashSet<Coordinate> vertices(BaseLineStringBuilder<?> line) {
+        HashSet<Coordinate> vertices = new HashSet<Coordinate>(line.points.size() * 4 / 3 + 1);
+        for (int i = 0; i < line.points.size(); i++) {
+            vertices.add(new Coordinate(line.points.x(i), line.points.y(i)));
         }
+        return vertices;
     }
 
     /**
@@ -135,9 +196,10 @@ public abstract class BasePolygonBuilder<E extends BasePolygonBuilder<E>> extend
      */
     public Coordinate[][][] coordinates() {
         int numEdges = shell.points.size()-1; // Last point is repeated 
+        HashSet<Coordinate> shellVertices = holes.isEmpty() ? null : vertices(shell);
         for (int i = 0; i < holes.size(); i++) {
             numEdges += holes.get(i).points.size()-1;
-            validateHole(shell, this.holes.get(i));
+            validateHole(shellVertices, this.holes.get(i));
         }
 
         Edge[] edges = new Edge[numEdges];
@@ -206,8 +268,8 @@ public abstract class BasePolygonBuilder<E extends BasePolygonBuilder<E>> extend
         return factory.createPolygon(shell, holes);
     }
 
-    protected static LinearRing linearRing(GeometryFactory factory, ArrayList<Coordinate> coordinates) {
-        return factory.createLinearRing(coordinates.toArray(new Coordinate[coordinates.size()]));
+    protected static LinearRing linearRing(GeometryFactory factory, PackedCoordinates coordinates) {
+        return factory.createLinearRing(coordinates.toCoordinateSequence(false));
     }
 
     @Override
@@ -402,33 +464,266 @@ public abstract class BasePolygonBuilder<E extends BasePolygonBuilder<E>> extend
         if (debugEnabled()) {
             LOGGER.debug("Holes: " + Arrays.toString(holes));
         }
+        if (numHoles == 0) {
+            return;
+        }
+        final int[] holeComponents = new HoleAssignment(holes, numHoles, edges).assign();
         for (int i = 0; i < numHoles; i++) {
-            final Edge current = new Edge(holes[i].coordinate, holes[i].next);
-            // the edge intersects with itself at its own coordinate.  We need intersect to be set this way so the binary search 
-            // will get the correct position in the edge list and therefore the correct component to add the hole
-            current.intersect = current.coordinate;
-            final int intersections = intersections(current.coordinate.x, edges);
-            // if no intersection is found then the hole is not within the polygon, so
-            // don't waste time calling a binary search
-            final int pos;
-            boolean sharedVertex = false;
-            if (intersections == 0 || ((pos = Arrays.binarySearch(edges, 0, intersections, current, INTERSECTION_ORDER)) >= 0)
-                            && !(sharedVertex = (edges[pos].intersect.compareTo(current.coordinate) == 0)) ) {
+            if (holeComponents[i] < 0) {
                 throw new InvalidShapeException("Invalid shape: Hole is not within polygon");
             }
-            final int index = -((sharedVertex) ? 0 : pos+2);
-            final int component = -edges[index].component - numHoles - 1;
+            final int component = holeComponents[i];
 
             if(debugEnabled()) {
-                LOGGER.debug("\tposition ("+index+") of edge "+current+": " + edges[index]);
-                LOGGER.debug("\tComponent: " + component);
-                LOGGER.debug("\tHole intersections ("+current.coordinate.x+"): " + Arrays.toString(edges));
+                LOGGER.debug("\tComponent of hole " + holes[i] + ": " + component);
             }
 
             components.get(component).add(points[i]);
         }
     }
 
+    /**
+     * Finds the components the holes belong to with a sweep line over the x coordinates of the holes. The bounds
+     * and end points of the edges are copied to primitive arrays once, and the vertical line through a hole is only
+     * intersected with the edges whose x range spans it, instead of all the edges of the polygon.
+     * <p/>
+     * Edges that intersect the line at the same y coordinate are ordered the way successive stable sorts of the
+     * whole edge array by intersection, one per hole in the order of the holes, would order them: by their
+     * intersections with the lines of the previous holes, last hole first, then by their position in the edge array.
+     */
+    static final class HoleAssignment {
+
+        private final int numHoles;
+        private final Edge[] edges;
+        // coordinates of the point of each hole the vertical line goes through
+        private final double[] holeX;
+        private final double[] holeY;
+        // end points of the edges
+        private final double[] x1;
+        private final double[] y1;
+        private final double[] x2;
+        private final double[] y2;
+
+        // edges that intersect the current line, sorted by the y coordinate of the intersection
+        private final int[] candidates;
+        private final double[] candidateX;
+        private final double[] candidateY;
+        // hole whose line is being intersected, used to order edges that intersect it at the same point
+        private int hole;
+
+        HoleAssignment(Edge[] holes, int numHoles, Edge[] edges) {
+            this.numHoles = numHoles;
+            this.edges = edges;
+            holeX = new double[numHoles];
+            holeY = new double[numHoles];
+            for (int i = 0; i < numHoles; i++) {
+                holeX[i] = holes[i].coordinate.x;
+                holeY[i] = holes[i].coordinate.y;
+            }
+            x1 = new double[edges.length];
+            y1 = new double[edges.length];
+            x2 = new double[edges.length];
+            y2 = new double[edges.length];
+            for (int i = 0; i < edges.length; i++) {
+                x1[i] = edges[i].coordinate.x;
+                y1[i] = edges[i].coordinate.y;
+                x2[i] = edges[i].next.coordinate.x;
+                y2[i] = edges[i].next.coordinate.y;
+            }
+            candidates = new int[edges.length];
+            candidateX = new double[edges.length];
+            candidateY = new double[edges.length];
+        }
+
+        /**
+         * @return the component of each hole, or <code>-1</code> if the hole is not within the polygon
+         */
+        int[] assign() {
+            final int[] holeOrder = order(holeX, numHoles);
+            final double[] minX = new double[edges.length];
+            final double[] maxX = new double[edges.length];
+            for (int i = 0; i < edges.length; i++) {
+                minX[i] = Math.min(x1[i], x2[i]);
+                maxX[i] = Math.max(x1[i], x2[i]);
+            }
+            final int[] edgeOrder = order(minX, edges.length);
+
+            final int[] result = new int[numHoles];
+            // edges whose x range contains the current line, or a line on its left
+            final int[] active = new int[edges.length];
+            int numActive = 0;
+            int nextEdge = 0;
+            for (int h = 0; h < numHoles; h++) {
+                hole = holeOrder[h];
+                final double x = holeX[hole];
+                while (nextEdge < edgeOrder.length && minX[edgeOrder[nextEdge]] <= x) {
+                    active[numActive++] = edgeOrder[nextEdge++];
+                }
+                int numCandidates = 0;
+                int kept = 0;
+                for (int i = 0; i < numActive; i++) {
+                    final int edge = active[i];
+                    if (maxX[edge] < x) {
+                        continue;
+                    }
+                    active[kept++] = edge;
+                    final double position = intersection(x1[edge], x2[edge], x);
+                    if (!Double.isNaN(position)) {
+                        candidates[numCandidates] = edge;
+                        candidateX[numCandidates] = position == 1 ? x2[edge] : x1[edge] + position * (x2[edge] - x1[edge]);
+                        candidateY[numCandidates] = position == 1 ? y2[edge] : y1[edge] + position * (y2[edge] - y1[edge]);
+                        numCandidates++;
+                    }
+                }
+                numActive = kept;
+                result[hole] = component(numCandidates);
+            }
+            return result;
+        }
+
+        /**
+         * Find the component of the current hole among the edges that intersect its line.
+         */
+        private int component(int numCandidates) {
+            if (numCandidates == 0) {
+                return -1;
+            }
+            sort(numCandidates);
+
+            // binary search of the y coordinate of the hole among the intersections
+            final double y = holeY[hole];
+            int low = 0;
+            int high = numCandidates - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final int cmp = Double.compare(candidateY[mid], y);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    // the hole shares a vertex with the polygon, it belongs to the component of the lowest edge
+                    return candidateX[mid] == holeX[hole] ? componentOf(candidates[0]) : -1;
+                }
+            }
+            // the edge right below the hole is part of the component
+            return low == 0 ? -1 : componentOf(candidates[low - 1]);
+        }
+
+        private int componentOf(int edge) {
+            return -edges[edge].component - numHoles - 1;
+        }
+
+        /**
+         * Sort the first <code>length</code> candidates by the y coordinate of their intersection.
+         */
+        private void sort(int length) {
+            new IntroSorter() {
+                double pivotY;
+                int pivot;
+
+                @Override
+                protected int compare(int i, int j) {
+                    final int cmp = Double.compare(candidateY[i], candidateY[j]);
+                    return cmp != 0 ? cmp : compareTies(candidates[i], candidates[j]);
+                }
+
+                @Override
+                protected void swap(int i, int j) {
+                    final int candidate = candidates[i];
+                    candidates[i] = candidates[j];
+                    candidates[j] = candidate;
+                    final double x = candidateX[i];
+                    candidateX[i] = candidateX[j];
+                    candidateX[j] = x;
+                    final double y = candidateY[i];
+                    candidateY[i] = candidateY[j];
+                    candidateY[j] = y;
+                }
+
+                @Override
+                protected void setPivot(int i) {
+                    pivotY = candidateY[i];
+                    pivot = candidates[i];
+                }
+
+                @Override
+                protected int comparePivot(int j) {
+                    final int cmp = Double.compare(pivotY, candidateY[j]);
+                    return cmp != 0 ? cmp : compareTies(pivot, candidates[j]);
+                }
+            }.sort(0, length);
+        }
+
+        /**
+         * Compare two edges that intersect the line of the current hole at the same point.
+         */
+        private int compareTies(int edge1, int edge2) {
+            for (int i = hole - 1; i >= 0; i--) {
+                final int cmp = Double.compare(intersectionY(edge1, holeX[i]), intersectionY(edge2, holeX[i]));
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return edge1 - edge2;
+        }
+
+        private double intersectionY(int edge, double x) {
+            final double position = intersection(x1[edge], x2[edge], x);
+            if (Double.isNaN(position)) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return position == 1 ? y2[edge] : y1[edge] + position * (y2[edge] - y1[edge]);
+        }
+
+        /**
+         * Same as {@link ShapeBuilder#intersection(Coordinate, Coordinate, double)} on the x coordinates only.
+         */
+        private static double intersection(double x1, double x2, double x) {
+            if (x1 == x2) {
+                return x1 == x ? 1.0 : Double.NaN;
+            }
+            final double t = (x - x1) / (x2 - x1);
+            return t > 1 || t <= 0 ? Double.NaN : t;
+        }
+
+        /**
+         * @return the indices of the first <code>length</code> values, sorted by value
+         */
+        private static int[] order(final double[] values, int length) {
+            final int[] order = new int[length];
+            for (int i = 0; i < length; i++) {
+                order[i] = i;
+            }
+            new IntroSorter() {
+                int pivot;
+
+                @Override
+                protected int compare(int i, int j) {
+                    return Double.compare(values[order[i]], values[order[j]]);
+                }
+
+                @Override
+                protected void swap(int i, int j) {
+                    final int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                }
+
+                @Override
+                protected void setPivot(int i) {
+                    pivot = order[i];
+                }
+
+                @Override
+                protected int comparePivot(int j) {
+                    return Double.compare(values[pivot], values[order[j]]);
+                }
+            }.sort(0, length);
+            return order;
+        }
+    }
+
     private static int merge(Edge[] intersections, int offset, int length, Edge[] holes, int numHoles) {
         // Intersections appear pairwise. On the first edge the inner of
         // of the polygon is entered. On the second edge the outer face
@@ -525,19 +820,17 @@ public abstract class BasePolygonBuilder<E extends BasePolygonBuilder<E>> extend
         private final P parent;
 
         protected Ring(P parent) {
-            this(parent, new ArrayList<Coordinate>());
+            this(parent, new PackedCoordinates());
         }
 
-        protected Ring(P parent, ArrayList<Coordinate> points) {
+        protected Ring(P parent, PackedCoordinates points) {
             super(points);
             this.parent = parent;
         }
 
         public P close() {
-            Coordinate start = points.get(0);
-            Coordinate end = points.get(points.size()-1);
-            if(start.x != end.x || start.y != end.y) {
-                points.add(start);
+            if(!points.isClosed()) {
+                points.add(points.x(0), points.y(0));
             }
             return parent;
         }
@@ -33,9 +33,9 @@ public class CircleBuilder extends ShapeBuilder {
     public static final String FIELD_RADIUS = "radius";
     public static final GeoShapeType TYPE = GeoShapeType.CIRCLE;
 
-    private DistanceUnit unit;
-    private double radius;
-    private Coordinate center;
+    protected DistanceUnit unit;
+    protected double radius;
+    protected Coordinate center;
     
     /**
      * Set the center of the circle
@@ -0,0 +1,321 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.geo.builders;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.geo.builders.ShapeBuilder.GeoShapeType;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.unit.DistanceUnit;
+
+import java.io.IOException;
+
+/**
+ * A compact binary encoding of {@link ShapeBuilder}s, for shapes that are stored or compared on the client side (eg.
+ * as part of the key of a cache of queries) and for which GeoJSON, which writes every coordinate as a decimal
+ * string, is wasteful.
+ * <p/>
+ * Coordinates are rounded to a fixed number of decimal digits, the <i>precision</i>, and written as integers. Each
+ * coordinate is written as the difference to the previous coordinate of the shape, with
+ * {@link StreamOutput#writeZLong(long)}, so that the vertices of a detailed shape, which are close to each other, take
+ * a couple of bytes each. The precision is part of the encoding, so readers don't need to know it. A coordinate read
+ * back is at most {@link #maxError(int)} degrees away from the coordinate that was written.
+ * <p/>
+ * The bytes returned by {@link #encode(ShapeBuilder, int)} can be embedded as a binary field of a SMILE or CBOR
+ * document with {@link org.elasticsearch.common.xcontent.XContentBuilder#field(String, BytesReference)}.
+ */
+public final class CompactShapeEncoding {
+
+    /**
+     * The default precision, 7 decimal digits, rounds coordinates to about a centimeter.
+     */
+    public static final int DEFAULT_PRECISION = 7;
+
+    /**
+     * The maximum precision, above which coordinates of +/-180 degrees could not be held by a double exactly once
+     * scaled.
+     */
+    public static final int MAX_PRECISION = 12;
+
+    private static final GeoShapeType[] TYPES = GeoShapeType.values();
+    private static final ShapeBuilder.Orientation[] ORIENTATIONS = ShapeBuilder.Orientation.values();
+
+    private CompactShapeEncoding() {
+    }
+
+    /**
+     * @return the maximum distance, in degrees, between a coordinate and the coordinate read back from its
+     *         encoding with the given precision: half the last decimal digit, plus the rounding of the doubles
+     *         for coordinates within +/-360 degrees
+     */
+    public static double maxError(int precision) {
+        return 0.5 / scale(precision) + Math.ulp(360d);
+    }
+
+    /**
+     * Encode a shape with the given precision
+     */
+    public static BytesReference encode(ShapeBuilder shape, int precision) throws IOException {
+        final BytesStreamOutput out = new BytesStreamOutput();
+        try {
+            writeShape(out, shape, precision);
+            return out.bytes();
+        } finally {
+            // releases the accounting of the pages against the request breaker, the bytes stay readable
+            out.close();
+        }
+    }
+
+    /**
+     * Decode a shape that has been encoded with {@link #encode(ShapeBuilder, int)}
+     */
+    public static ShapeBuilder decode(BytesReference bytes) throws IOException {
+        return readShape(bytes.streamInput());
+    }
+
+    /**
+     * Write a shape with the given precision
+     */
+    public static void writeShape(StreamOutput out, ShapeBuilder shape, int precision) throws IOException {
+        new Writer(out, precision).shape(shape);
+    }
+
+    /**
+     * Read a shape written with {@link #writeShape(StreamOutput, ShapeBuilder, int)}
+     */
+    public static ShapeBuilder readShape(StreamInput in) throws IOException {
+        return new Reader(in).shape();
+    }
+
+    /**
+     * Write a list of coordinates with the given precision
+     */
+    public static void writeCoordinates(StreamOutput out, PackedCoordinates points, int precision) throws IOException {
+        new Writer(out, precision).coordinates(points);
+    }
+
+    /**
+     * Read a list of coordinates written with {@link #writeCoordinates(StreamOutput, PackedCoordinates, int)}
+     */
+    public static PackedCoordinates readCoordinates(StreamInput in) throws IOException {
+        return new Reader(in).coordinates();
+    }
+
+    private static double scale(int precision) {
+        if (precision < 0 || precision > MAX_PRECISION) {
+            throw new ElasticsearchIllegalArgumentException("precision must be between 0 and " + MAX_PRECISION + ", got [" + precision + "]");
+        }
+        return Math.pow(10, precision);
+    }
+
+    private static final class Writer {
+
+        private final StreamOutput out;
+        private final double scale;
+        // the previous coordinate, rounded
+        private long x;
+        private long y;
+
+        Writer(StreamOutput out, int precision) throws IOException {
+            this.out = out;
+            this.scale = scale(precision);
+            out.writeByte((byte) precision);
+        }
+
+        void shape(ShapeBuilder shape) throws IOException {
+            final GeoShapeType type = shape.type();
+            // the type and the orientation share a byte
+            out.writeByte((byte) (type.ordinal() << 1 | shape.orientation.ordinal()));
+            switch (type) {
+                case POINT:
+                    final PointBuilder point = (PointBuilder) shape;
+                    coordinate(point.longitude(), point.latitude());
+                    break;
+                case MULTIPOINT:
+                case LINESTRING:
+                    points(((PointCollection<?>) shape).points);
+                    break;
+                case MULTILINESTRING:
+                    final MultiLineStringBuilder lines = (MultiLineStringBuilder) shape;
+                    out.writeVInt(lines.lines.size());
+                    for (BaseLineStringBuilder<?> line : lines.lines) {
+                        points(line.points);
+                    }
+                    break;
+                case POLYGON:
+                    final BasePolygonBuilder<?> polygon = (BasePolygonBuilder<?>) shape;
+                    points(polygon.shell.points);
+                    out.writeVInt(polygon.holes.size());
+                    for (BaseLineStringBuilder<?> hole : polygon.holes) {
+                        points(hole.points);
+                    }
+                    break;
+                case MULTIPOLYGON:
+                    final MultiPolygonBuilder polygons = (MultiPolygonBuilder) shape;
+                    out.writeVInt(polygons.polygons.size());
+                    for (BasePolygonBuilder<?> child : polygons.polygons) {
+                        // polygons of a multipolygon may have their own orientation
+                        shape(child);
+                    }
+                    break;
+                case ENVELOPE:
+                    final EnvelopeBuilder envelope = (EnvelopeBuilder) shape;
+                    coordinate(envelope.topLeft.x, envelope.topLeft.y);
+                    coordinate(envelope.bottomRight.x, envelope.bottomRight.y);
+                    break;
+                case CIRCLE:
+                    final CircleBuilder circle = (CircleBuilder) shape;
+                    coordinate(circle.center.x, circle.center.y);
+                    out.writeDouble(circle.radius);
+                    DistanceUnit.writeDistanceUnit(out, circle.unit);
+                    break;
+                case GEOMETRYCOLLECTION:
+                    final GeometryCollectionBuilder collection = (GeometryCollectionBuilder) shape;
+                    out.writeVInt(collection.shapes.size());
+                    for (ShapeBuilder child : collection.shapes) {
+                        shape(child);
+                    }
+                    break;
+                default:
+                    throw new ElasticsearchIllegalArgumentException("can't encode shapes of type [" + type + "]");
+            }
+        }
+
+        void coordinates(PackedCoordinates points) throws IOException {
+            points(points);
+        }
+
+        private void points(PackedCoordinates points) throws IOException {
+            out.writeVInt(points.size());
+            for (int i = 0; i < points.size(); i++) {
+                coordinate(points.x(i), points.y(i));
+            }
+        }
+
+        private void coordinate(double x, double y) throws IOException {
+            final long roundedX = round(x);
+            final long roundedY = round(y);
+            out.writeZLong(roundedX - this.x);
+            out.writeZLong(roundedY - this.y);
+            this.x = roundedX;
+            this.y = roundedY;
+        }
+
+        private long round(double value) {
+            final double scaled = value * scale;
+            // beyond 2^53 consecutive integers can't be told apart, this also rejects infinite and NaN values
+            if (!(Math.abs(scaled) < (1L << 53))) {
+                throw new ElasticsearchIllegalArgumentException("can't encode coordinate [" + value + "]");
+            }
+            return Math.round(scaled);
+        }
+    }
+
+    private static final class Reader {
+
+        private final StreamInput in;
+        private final double scale;
+        // the previous coordinate, rounded
+        private long x;
+        private long y;
+
+        Reader(StreamInput in) throws IOException {
+            this.in = in;
+            this.scale = scale(in.readByte());
+        }
+
+        ShapeBuilder shape() throws IOException {
+            final int header = in.readByte() & 0xFF;
+            if ((header >>> 1) >= TYPES.length || (header & 1) >= ORIENTATIONS.length) {
+                throw new ElasticsearchParseException("unknown shape header [" + header + "]");
+            }
+            final GeoShapeType type = TYPES[header >>> 1];
+            final ShapeBuilder.Orientation orientation = ORIENTATIONS[header & 1];
+            switch (type) {
+                case POINT:
+                    readCoordinate();
+                    return ShapeBuilder.newPoint(x / scale, y / scale);
+                case MULTIPOINT:
+                    return new MultiPointBuilder(coordinates());
+                case LINESTRING:
+                    return new LineStringBuilder(coordinates());
+                case MULTILINESTRING:
+                    final MultiLineStringBuilder lines = ShapeBuilder.newMultiLinestring();
+                    for (int i = in.readVInt(); i > 0; i--) {
+                        lines.linestring(new LineStringBuilder(coordinates()));
+                    }
+                    return lines;
+                case POLYGON:
+                    final PolygonBuilder polygon = new PolygonBuilder(coordinates(), orientation);
+                    for (int i = in.readVInt(); i > 0; i--) {
+                        polygon.hole(new LineStringBuilder(coordinates()));
+                    }
+                    return polygon;
+                case MULTIPOLYGON:
+                    final MultiPolygonBuilder polygons = ShapeBuilder.newMultiPolygon(orientation);
+                    for (int i = in.readVInt(); i > 0; i--) {
+                        final ShapeBuilder child = shape();
+                        if (!(child instanceof BasePolygonBuilder)) {
+                            throw new ElasticsearchParseException("expected a polygon in a multipolygon, got [" + child.type() + "]");
+                        }
+                        polygons.polygon((BasePolygonBuilder<?>) child);
+                    }
+                    return polygons;
+                case ENVELOPE:
+                    final EnvelopeBuilder envelope = ShapeBuilder.newEnvelope(orientation);
+                    readCoordinate();
+                    envelope.topLeft(x / scale, y / scale);
+                    readCoordinate();
+                    return envelope.bottomRight(x / scale, y / scale);
+                case CIRCLE:
+                    readCoordinate();
+                    final CircleBuilder circle = ShapeBuilder.newCircleBuilder().center(x / scale, y / scale);
+                    final double radius = in.readDouble();
+                    return circle.radius(radius, DistanceUnit.readDistanceUnit(in));
+                case GEOMETRYCOLLECTION:
+                    final GeometryCollectionBuilder collection = ShapeBuilder.newGeometryCollection(orientation);
+                    for (int i = in.readVInt(); i > 0; i--) {
+                        collection.shape(shape());
+                    }
+                    return collection;
+                default:
+                    throw new ElasticsearchParseException("can't decode shapes of type [" + type + "]");
+            }
+        }
+
+        PackedCoordinates coordinates() throws IOException {
+            final int size = in.readVInt();
+            final PackedCoordinates points = new PackedCoordinates(size);
+            for (int i = 0; i < size; i++) {
+                readCoordinate();
+                points.add(x / scale, y / scale);
+            }
+            return points;
+        }
+
+        private void readCoordinate() throws IOException {
+            x += in.readZLong();
+            y += in.readZLong();
+        }
+    }
+}
@@ -28,6 +28,13 @@ public class LineStringBuilder extends BaseLineStringBuilder<LineStringBuilder>
 
     public static final ShapeBuilder.GeoShapeType TYPE = ShapeBuilder.GeoShapeType.LINESTRING;
 
+    public LineStringBuilder() {
+    }
+
+    protected LineStringBuilder(PackedCoordinates points) {
+        super(points);
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
         builder.startObject();
@@ -21,7 +21,6 @@ package org.elasticsearch.common.geo.builders;
 
 import com.spatial4j.core.shape.Point;
 import com.spatial4j.core.shape.Shape;
-import com.vividsolutions.jts.geom.Coordinate;
 import org.elasticsearch.common.geo.XShapeCollection;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -34,6 +33,13 @@ public class MultiPointBuilder extends PointCollection<MultiPointBuilder> {
 
     public static final ShapeBuilder.GeoShapeType TYPE = ShapeBuilder.GeoShapeType.MULTIPOINT;
 
+    public MultiPointBuilder() {
+    }
+
+    protected MultiPointBuilder(PackedCoordinates points) {
+        super(points);
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
         builder.startObject();
@@ -49,8 +55,8 @@ public class MultiPointBuilder extends PointCollection<MultiPointBuilder> {
         //Could wrap JtsGeometry but probably slower due to conversions to/from JTS in relate()
         //MultiPoint geometry = FACTORY.createMultiPoint(points.toArray(new Coordinate[points.size()]));
         List<Point> shapes = new ArrayList<Point>(points.size());
-        for (Coordinate coord : points) {
-            shapes.add(SPATIAL_CONTEXT.makePoint(coord.x, coord.y));
+        for (int i = 0; i < points.size(); i++) {
+            shapes.add(SPATIAL_CONTEXT.makePoint(points.x(i), points.y(i)));
         }
         return new XShapeCollection<Point>(shapes, SPATIAL_CONTEXT);
     }
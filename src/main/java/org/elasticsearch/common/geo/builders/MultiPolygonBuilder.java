@@ -22,6 +22,7 @@ package org.elasticsearch.common.geo.builders;
 import com.spatial4j.core.shape.Shape;
 import com.vividsolutions.jts.geom.Coordinate;
 import org.elasticsearch.common.geo.XShapeCollection;
+import org.elasticsearch.common.unit.DistanceUnit.Distance;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
@@ -58,6 +59,43 @@ public class MultiPolygonBuilder extends ShapeBuilder {
         return polygon;
     }
 
+    /**
+     * Simplify every polygon that has been added so far, see {@link ShapeSimplifier}
+     *
+     * @param tolerance maximum distance between the original and the simplified polygons
+     * @return this
+     */
+    public MultiPolygonBuilder simplify(Distance tolerance) {
+        return simplify(tolerance, 0);
+    }
+
+    /**
+     * Simplify every polygon that has been added so far, see {@link ShapeSimplifier}. Polygons are simplified
+     * independently, each of them gets a share of <code>maxPoints</code> that is proportional to its size, but never
+     * less than 4 points per ring.
+     *
+     * @param tolerance maximum distance between the original and the simplified polygons, may be <code>null</code>
+     * @param maxPoints maximum number of points of all the simplified polygons, <code>0</code> for no limit
+     * @return this
+     */
+    public MultiPolygonBuilder simplify(Distance tolerance, int maxPoints) {
+        ShapeSimplifier simplifier = new ShapeSimplifier(tolerance, maxPoints);
+        long total = 0;
+        for (BasePolygonBuilder<?> polygon : polygons) {
+            total += polygon.numPoints();
+        }
+        for (BasePolygonBuilder<?> polygon : polygons) {
+            if (maxPoints <= 0) {
+                polygon.simplify(simplifier, 0);
+            } else {
+                // no ring can have less than 4 points, so neither can the share of a polygon
+                final int minPoints = ShapeSimplifier.MIN_RING_POINTS * (1 + polygon.holes.size());
+                polygon.simplify(simplifier, (int) Math.max(minPoints, (long) maxPoints * polygon.numPoints() / total));
+            }
+        }
+        return this;
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
         builder.startObject();
@@ -0,0 +1,174 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.geo.builders;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A growable list of 2D coordinates stored as interleaved longitude/latitude values in a single
+ * <code>double[]</code>, so that a shape with many vertices costs 16 bytes per vertex instead of a
+ * {@link Coordinate} object and a reference per vertex.
+ */
+public final class PackedCoordinates {
+
+    private double[] xy;
+    private int size;
+
+    public PackedCoordinates() {
+        this(8);
+    }
+
+    /**
+     * @param capacity the number of coordinates to allocate space for
+     */
+    public PackedCoordinates(int capacity) {
+        this.xy = new double[capacity << 1];
+    }
+
+    /**
+     * Add a coordinate at the end of the list
+     */
+    public void add(double x, double y) {
+        if (xy.length < (size + 1) << 1) {
+            // grow like an ArrayList would, shapes are built one point at a time
+            xy = Arrays.copyOf(xy, Math.max(4, xy.length + (xy.length >> 1)) & ~1);
+        }
+        xy[size << 1] = x;
+        xy[(size << 1) + 1] = y;
+        ++size;
+    }
+
+    /**
+     * Add a coordinate at the end of the list, only its x and y values are kept
+     */
+    public void add(Coordinate coordinate) {
+        add(coordinate.x, coordinate.y);
+    }
+
+    /**
+     * @return the number of coordinates in the list
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all the coordinates, keeping the allocated capacity
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return the longitude of the coordinate at the given index
+     */
+    public double x(int index) {
+        return xy[index << 1];
+    }
+
+    /**
+     * @return the latitude of the coordinate at the given index
+     */
+    public double y(int index) {
+        return xy[(index << 1) + 1];
+    }
+
+    /**
+     * @return a new {@link Coordinate} for the coordinate at the given index
+     */
+    public Coordinate get(int index) {
+        return new Coordinate(x(index), y(index));
+    }
+
+    /**
+     * @return <code>true</code> if the first and the last coordinates are the same
+     */
+    public boolean isClosed() {
+        return size > 0 && x(0) == x(size - 1) && y(0) == y(size - 1);
+    }
+
+    /**
+     * Copy the coordinates to new {@link Coordinate} objects
+     *
+     * @param closed if set to true the first point is repeated as last element
+     */
+    public Coordinate[] toCoordinates(boolean closed) {
+        final Coordinate[] coordinates = new Coordinate[size + (closed ? 1 : 0)];
+        for (int i = 0; i < size; i++) {
+            coordinates[i] = get(i);
+        }
+        if (closed) {
+            coordinates[size] = coordinates[0];
+        }
+        return coordinates;
+    }
+
+    /**
+     * Copy the coordinates to a packed {@link CoordinateSequence}, which does not create a {@link Coordinate}
+     * object per vertex.
+     *
+     * @param closed if set to true the first point is repeated as last element
+     */
+    public CoordinateSequence toCoordinateSequence(boolean closed) {
+        final int length = size << 1;
+        final double[] copy = new double[length + (closed ? 2 : 0)];
+        System.arraycopy(xy, 0, copy, 0, length);
+        if (closed) {
+            copy[length] = xy[0];
+            copy[length + 1] = xy[1];
+        }
+        return new PackedCoordinateSequence.Double(copy, 2);
+    }
+
+    /**
+     * Write the coordinates as an array of <code>[lon, lat]</code> arrays
+     *
+     * @param closed repeat the first point at the end of the array if it's not already the last element
+     */
+    public XContentBuilder toXContent(XContentBuilder builder, boolean closed) throws IOException {
+        builder.startArray();
+        for (int i = 0; i < size; i++) {
+            builder.startArray().value(xy[i << 1]).value(xy[(i << 1) + 1]).endArray();
+        }
+        if (closed && size > 0 && !isClosed()) {
+            builder.startArray().value(xy[0]).value(xy[1]).endArray();
+        }
+        return builder.endArray();
+    }
+
+    /**
+     * @return the memory used by this list, in bytes
+     */
+    public long ramBytesUsed() {
+        return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.NUM_BYTES_INT
+                + RamUsageEstimator.sizeOf(xy);
+    }
+}
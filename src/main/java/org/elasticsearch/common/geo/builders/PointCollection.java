@@ -23,8 +23,6 @@ import com.vividsolutions.jts.geom.Coordinate;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 
 /**
@@ -32,19 +30,19 @@ import java.util.Collection;
  */
 public abstract class PointCollection<E extends PointCollection<E>> extends ShapeBuilder {
 
-    protected final ArrayList<Coordinate> points;
+    protected final PackedCoordinates points;
     protected boolean translated = false;
 
     protected PointCollection() {
-        this(new ArrayList<Coordinate>());
+        this(new PackedCoordinates());
     }
 
-    protected PointCollection(ArrayList<Coordinate> points) {
+    protected PointCollection(PackedCoordinates points) {
         this.points = points;
     }
 
     @SuppressWarnings("unchecked")
-    private E thisRef() {
+    protected E thisRef() {
         return (E)this;
     }
 
@@ -55,7 +53,8 @@ public abstract class PointCollection<E extends PointCollection<E>> extends Shap
      * @return this
      */
     public E point(double longitude, double latitude) {
-        return this.point(coordinate(longitude, latitude));
+        this.points.add(longitude, latitude);
+        return thisRef();
     }
 
     /**
@@ -75,7 +74,10 @@ public abstract class PointCollection<E extends PointCollection<E>> extends Shap
      * @return this
      */
     public E points(Coordinate...coordinates) {
-        return this.points(Arrays.asList(coordinates));
+        for (Coordinate coordinate : coordinates) {
+            this.points.add(coordinate);
+        }
+        return thisRef();
     }
 
     /**
@@ -85,7 +87,9 @@ public abstract class PointCollection<E extends PointCollection<E>> extends Shap
      * @return this
      */
     public E points(Collection<? extends Coordinate> coordinates) {
-        this.points.addAll(coordinates);
+        for (Coordinate coordinate : coordinates) {
+            this.points.add(coordinate);
+        }
         return thisRef();
     }
 
@@ -96,11 +100,7 @@ public abstract class PointCollection<E extends PointCollection<E>> extends Shap
      * @return Array of coordinates
      */
     protected Coordinate[] coordinates(boolean closed) {
-        Coordinate[] result = points.toArray(new Coordinate[points.size() + (closed?1:0)]);
-        if(closed) {
-            result[result.length-1] = result[0];
-        }
-        return result;
+        return points.toCoordinates(closed);
     }
 
     /**
@@ -112,18 +112,6 @@ public abstract class PointCollection<E extends PointCollection<E>> extends Shap
      * @throws java.io.IOException
      */
     protected XContentBuilder coordinatesToXcontent(XContentBuilder builder, boolean closed) throws IOException {
-        builder.startArray();
-        for(Coordinate point : points) {
-            toXContent(builder, point);
-        }
-        if(closed) {
-            Coordinate start = points.get(0);
-            Coordinate end = points.get(points.size()-1);
-            if(start.x != end.x || start.y != end.y) {
-                toXContent(builder, points.get(0));
-            }
-        }
-        builder.endArray();
-        return builder;
+        return points.toXContent(builder, closed);
     }
 }
@@ -19,21 +19,17 @@
 
 package org.elasticsearch.common.geo.builders;
 
-import com.vividsolutions.jts.geom.Coordinate;
-
-import java.util.ArrayList;
-
 public class PolygonBuilder extends BasePolygonBuilder<PolygonBuilder> {
 
     public PolygonBuilder() {
-        this(new ArrayList<Coordinate>(), ShapeBuilder.Orientation.RIGHT);
+        this(new PackedCoordinates(), ShapeBuilder.Orientation.RIGHT);
     }
 
     public PolygonBuilder(ShapeBuilder.Orientation orientation) {
-        this(new ArrayList<Coordinate>(), orientation);
+        this(new PackedCoordinates(), orientation);
     }
 
-    protected PolygonBuilder(ArrayList<Coordinate> points, ShapeBuilder.Orientation orientation) {
+    protected PolygonBuilder(PackedCoordinates points, ShapeBuilder.Orientation orientation) {
         super(orientation);
         this.shell = new Ring<PolygonBuilder>(this, points);
     }
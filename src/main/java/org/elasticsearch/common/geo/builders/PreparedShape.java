@@ -0,0 +1,133 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.geo.builders;
+
+import com.spatial4j.core.shape.Rectangle;
+import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.SpatialRelation;
+import com.spatial4j.core.shape.jts.JtsGeometry;
+import com.vividsolutions.jts.algorithm.locate.PointOnGeometryLocator;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Location;
+import com.vividsolutions.jts.geom.Polygonal;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.geom.prep.PreparedPolygon;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+
+/**
+ * A shape that is ready to be tested against many points: polygons are prepared, which indexes their edges, and
+ * every point is first checked against the bounding box of the shape. Points on the boundary of the shape are
+ * considered to be contained by it.
+ * <p/>
+ * Instances can be shared between threads. See {@link PreparedShapeCache} to reuse them across requests.
+ */
+public final class PreparedShape {
+
+    private final Shape shape;
+    private final double minLat;
+    private final double maxLat;
+    private final double minLon;
+    private final double maxLon;
+    private final boolean crossesDateline;
+    // polygons are tested with the indexed point locator of their prepared geometry, other shapes with relate()
+    private final PointOnGeometryLocator locator;
+
+    public PreparedShape(Shape shape) {
+        this.shape = shape;
+        final Rectangle bounds = shape.getBoundingBox();
+        this.minLat = bounds.getMinY();
+        this.maxLat = bounds.getMaxY();
+        this.minLon = bounds.getMinX();
+        this.maxLon = bounds.getMaxX();
+        this.crossesDateline = bounds.getCrossesDateLine();
+        if (shape instanceof JtsGeometry && ((JtsGeometry) shape).getGeom() instanceof Polygonal) {
+            final PreparedGeometry prepared = PreparedGeometryFactory.prepare(((JtsGeometry) shape).getGeom());
+            this.locator = ((PreparedPolygon) prepared).getPointLocator();
+            // the locator builds its index lazily, do it before it is shared between threads
+            this.locator.locate(new Coordinate(minLon, minLat));
+        } else {
+            this.locator = null;
+        }
+    }
+
+    /**
+     * @return the shape that has been prepared
+     */
+    public Shape shape() {
+        return shape;
+    }
+
+    /**
+     * @return <code>true</code> if the point is within the shape or on its boundary
+     */
+    public boolean contains(double latitude, double longitude) {
+        return contains(latitude, longitude, new Coordinate());
+    }
+
+    /**
+     * Test a batch of points, see {@link #contains(double, double)}
+     *
+     * @return whether the point at index <code>i</code> is within the shape, at index <code>i</code>
+     */
+    public boolean[] contains(double[] latitudes, double[] longitudes) {
+        final boolean[] results = new boolean[latitudes.length];
+        contains(latitudes, longitudes, results);
+        return results;
+    }
+
+    /**
+     * Test a batch of points, see {@link #contains(double, double)}
+     *
+     * @param results the array to write whether the point at index <code>i</code> is within the shape to, at index
+     *                <code>i</code>
+     * @return the number of points within the shape
+     */
+    public int contains(double[] latitudes, double[] longitudes, boolean[] results) {
+        if (longitudes.length != latitudes.length || results.length < latitudes.length) {
+            throw new ElasticsearchIllegalArgumentException("can't test [" + latitudes.length + "] latitudes and ["
+                    + longitudes.length + "] longitudes into [" + results.length + "] results");
+        }
+        // a single coordinate is reused for all the points of the batch
+        final Coordinate coordinate = new Coordinate();
+        int count = 0;
+        for (int i = 0; i < latitudes.length; i++) {
+            if (results[i] = contains(latitudes[i], longitudes[i], coordinate)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean contains(double latitude, double longitude, Coordinate coordinate) {
+        if (latitude < minLat || latitude > maxLat) {
+            return false;
+        }
+        if (crossesDateline ? (longitude < minLon && longitude > maxLon) : (longitude < minLon || longitude > maxLon)) {
+            return false;
+        }
+        if (locator != null) {
+            coordinate.x = longitude;
+            coordinate.y = latitude;
+            return locator.locate(coordinate) != Location.EXTERIOR;
+        }
+        return shape.relate(ShapeBuilder.SPATIAL_CONTEXT.makePoint(longitude, latitude)) != SpatialRelation.DISJOINT;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.geo.builders;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded cache of {@link PreparedShape}s, so that shapes that are tested over and over (eg. zones) are built and
+ * prepared once. Shapes are keyed by their serialized form and their orientations, which is all that
+ * {@link ShapeBuilder#build()} depends on, so equal shapes share their prepared form even if they come from
+ * different builders. Polygons nested in multipolygons and geometry collections have their own orientation, which is
+ * not serialized, so the orientations of all the shapes of the tree are part of the key. The least recently used
+ * shapes are evicted first.
+ */
+public class PreparedShapeCache {
+
+    private final Cache<Key, PreparedShape> cache;
+
+    /**
+     * @param maxShapes the maximum number of shapes in the cache
+     */
+    public PreparedShapeCache(int maxShapes) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxShapes).build();
+    }
+
+    /**
+     * Return the prepared form of a shape, building and preparing it if it is not in the cache
+     */
+    public PreparedShape get(ShapeBuilder shape) {
+        final Key key = new Key(shape);
+        PreparedShape prepared = cache.getIfPresent(key);
+        if (prepared == null) {
+            // concurrent misses may prepare the same shape twice, which is cheaper than holding a lock while building
+            prepared = new PreparedShape(shape.build());
+            cache.put(key, prepared);
+        }
+        return prepared;
+    }
+
+    /**
+     * @return the number of shapes in the cache
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Remove all the shapes from the cache
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    private static final class Key {
+
+        // the orientation of the shape and of all the shapes it contains, depth first
+        private final List<ShapeBuilder.Orientation> orientations = new ArrayList<ShapeBuilder.Orientation>();
+        private final BytesReference bytes;
+        private final int hashCode;
+
+        Key(ShapeBuilder shape) {
+            addOrientations(shape, orientations);
+            try {
+                final XContentBuilder builder = XContentFactory.smileBuilder();
+                shape.toXContent(builder, ToXContent.EMPTY_PARAMS);
+                this.bytes = builder.bytes().toBytesArray();
+            } catch (IOException e) {
+                throw new ElasticsearchException("failed to serialize shape", e);
+            }
+            this.hashCode = 31 * orientations.hashCode() + bytes.hashCode();
+        }
+
+        private static void addOrientations(ShapeBuilder shape, List<ShapeBuilder.Orientation> orientations) {
+            orientations.add(shape.orientation);
+            if (shape instanceof MultiPolygonBuilder) {
+                for (BasePolygonBuilder<?> polygon : ((MultiPolygonBuilder) shape).polygons) {
+                    addOrientations(polygon, orientations);
+                }
+            } else if (shape instanceof GeometryCollectionBuilder) {
+                for (ShapeBuilder child : ((GeometryCollectionBuilder) shape).shapes) {
+                    addOrientations(child, orientations);
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return orientations.equals(key.orientations) && bytes.equals(key.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -231,41 +231,100 @@ public abstract class ShapeBuilder implements ToXContent {
 
     /**
      * Recursive method which parses the arrays of coordinates used to define
-     * Shapes
+     * Shapes. Arrays of positions are read straight into {@link PackedCoordinates},
+     * so that a coordinate only costs its two values while the shape is parsed.
      *
      * @param parser
      *            Parser that will be read from
+     * @param ringDepth
+     *            number of levels of arrays between the current array and the
+     *            linear rings of the shape, or <code>-1</code> if the shape has no
+     *            rings or its type is not known yet. Rings are validated as soon
+     *            as they have been read.
      * @return CoordinateNode representing the start of the coordinate tree
      * @throws java.io.IOException
      *             Thrown if an error occurs while reading from the
      *             XContentParser
      */
-    private static CoordinateNode parseCoordinates(XContentParser parser) throws IOException {
-        XContentParser.Token token = parser.nextToken();
+    // pkg-private for testing
+    static CoordinateNode parseCoordinates(XContentParser parser, int ringDepth) throws IOException {
+        return parseCoordinates(parser, parser.nextToken(), ringDepth);
+    }
 
+    private static CoordinateNode parseCoordinates(XContentParser parser, XContentParser.Token token, int ringDepth) throws IOException {
         // Base cases
-        if (token != XContentParser.Token.START_ARRAY &&
-                token != XContentParser.Token.END_ARRAY &&
-                token != XContentParser.Token.VALUE_NULL) {
-            double lon = parser.doubleValue();
-            token = parser.nextToken();
-            double lat = parser.doubleValue();
-            token = parser.nextToken();
-            while (token == XContentParser.Token.VALUE_NUMBER) {
-                token = parser.nextToken();
+        if (isPosition(token)) {
+            if (ringDepth == 0) {
+                throw GeoShapeType.singleCoordinateRing();
+            } else if (ringDepth == 1) {
+                throw GeoShapeType.invalidPolygon();
             }
-            return new CoordinateNode(new Coordinate(lon, lat));
+            PackedCoordinates position = new PackedCoordinates(1);
+            parsePosition(parser, position);
+            return new CoordinateNode(position.get(0));
         } else if (token == XContentParser.Token.VALUE_NULL) {
             throw new ElasticsearchIllegalArgumentException("coordinates cannot contain NULL values)");
         }
 
-        List<CoordinateNode> nodes = new ArrayList<CoordinateNode>();
+        // the array is read as an array of positions until it turns out to hold other arrays
+        PackedCoordinates points = null;
+        List<CoordinateNode> nodes = null;
         while (token != XContentParser.Token.END_ARRAY) {
-            nodes.add(parseCoordinates(parser));
+            XContentParser.Token first = parser.nextToken();
+            if (ringDepth == 1 && isPosition(first)) {
+                // a position where a ring is expected
+                throw GeoShapeType.singleCoordinateRing();
+            } else if (nodes == null && isPosition(first)) {
+                if (points == null) {
+                    points = new PackedCoordinates();
+                }
+                parsePosition(parser, points);
+            } else {
+                if (nodes == null) {
+                    nodes = new ArrayList<CoordinateNode>();
+                    for (int i = 0; points != null && i < points.size(); i++) {
+                        nodes.add(new CoordinateNode(points.get(i)));
+                    }
+                    points = null;
+                }
+                nodes.add(parseCoordinates(parser, first, ringDepth - 1));
+            }
             token = parser.nextToken();
         }
 
-        return new CoordinateNode(nodes);
+        final CoordinateNode node;
+        if (points != null) {
+            node = new CoordinateNode(points);
+        } else {
+            node = new CoordinateNode(nodes == null ? new ArrayList<CoordinateNode>() : nodes);
+        }
+        if (ringDepth == 0) {
+            GeoShapeType.validateLinearRing(node);
+        } else if (ringDepth == 1 && node.isEmpty()) {
+            throw GeoShapeType.invalidPolygon();
+        }
+        return node;
+    }
+
+    private static boolean isPosition(XContentParser.Token token) {
+        return token != XContentParser.Token.START_ARRAY &&
+                token != XContentParser.Token.END_ARRAY &&
+                token != XContentParser.Token.VALUE_NULL;
+    }
+
+    /**
+     * Read a <code>[lon, lat]</code> position, whose longitude is the current token, and add it to the given
+     * coordinates. Additional values of the position (eg. an altitude) are ignored.
+     */
+    private static void parsePosition(XContentParser parser, PackedCoordinates points) throws IOException {
+        double lon = parser.doubleValue();
+        XContentParser.Token token = parser.nextToken();
+        double lat = parser.doubleValue();
+        token = parser.nextToken();
+        while (token == XContentParser.Token.VALUE_NUMBER) {
+            token = parser.nextToken();
+        }
+        points.add(lon, lat);
     }
 
     /**
@@ -397,13 +456,14 @@ public abstract class ShapeBuilder implements ToXContent {
     /**
      * Node used to represent a tree of coordinates.
      * <p/>
-     * Can either be a leaf node consisting of a Coordinate, or a parent with
-     * children
+     * Can either be a leaf node consisting of a Coordinate, a parent of leaves whose
+     * coordinates are packed, or a parent with children
      */
     protected static class CoordinateNode implements ToXContent {
 
         protected final Coordinate coordinate;
         protected final List<CoordinateNode> children;
+        protected final PackedCoordinates points;
 
         /**
          * Creates a new leaf CoordinateNode
@@ -414,6 +474,7 @@ public abstract class ShapeBuilder implements ToXContent {
         protected CoordinateNode(Coordinate coordinate) {
             this.coordinate = coordinate;
             this.children = null;
+            this.points = null;
         }
 
         /**
@@ -425,15 +486,65 @@ public abstract class ShapeBuilder implements ToXContent {
         protected CoordinateNode(List<CoordinateNode> children) {
             this.children = children;
             this.coordinate = null;
+            this.points = null;
+        }
+
+        /**
+         * Creates a new parent CoordinateNode of leaves
+         *
+         * @param points
+         *            Coordinates of the leaves, not empty
+         */
+        protected CoordinateNode(PackedCoordinates points) {
+            this.points = points;
+            this.children = null;
+            this.coordinate = null;
         }
 
         protected boolean isEmpty() {
-            return (coordinate == null && (children == null || children.isEmpty()));
+            return (coordinate == null && points == null && (children == null || children.isEmpty()));
+        }
+
+        /**
+         * @return <code>true</code> if this node is a single coordinate
+         */
+        protected boolean isLeaf() {
+            return children == null && points == null;
+        }
+
+        /**
+         * @return the number of children of this node, which must not be a leaf
+         */
+        protected int size() {
+            return points != null ? points.size() : children.size();
+        }
+
+        /**
+         * @return the coordinate of the child at the given index, which is <code>null</code> if the child is not a leaf
+         */
+        protected Coordinate coordinate(int index) {
+            return points != null ? points.get(index) : children.get(index).coordinate;
+        }
+
+        /**
+         * @return the children of this node, which must not be a leaf
+         */
+        protected List<CoordinateNode> children() {
+            if (points == null) {
+                return children;
+            }
+            List<CoordinateNode> leaves = new ArrayList<CoordinateNode>(points.size());
+            for (int i = 0; i < points.size(); i++) {
+                leaves.add(new CoordinateNode(points.get(i)));
+            }
+            return leaves;
         }
 
         @Override
         public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
-            if (children == null) {
+            if (points != null) {
+                points.toXContent(builder, false);
+            } else if (children == null) {
                 builder.startArray().value(coordinate.x).value(coordinate.y).endArray();
             } else {
                 builder.startArray();
@@ -750,7 +861,7 @@ public abstract class ShapeBuilder implements ToXContent {
                         shapeType = GeoShapeType.forName(parser.text());
                     } else if (FIELD_COORDINATES.equals(fieldName)) {
                         parser.nextToken();
-                        node = parseCoordinates(parser);
+                        node = parseCoordinates(parser, ringDepth(shapeType));
                     } else if (FIELD_GEOMETRIES.equals(fieldName)) {
                         parser.nextToken();
                         geometryCollections = parseGeometries(parser, requestedOrientation);
@@ -793,14 +904,25 @@ public abstract class ShapeBuilder implements ToXContent {
             }
         }
 
+        /**
+         * @return the number of levels of arrays between the coordinates of the given type and its linear rings,
+         *         or <code>-1</code> if the type has no rings
+         */
+        private static int ringDepth(GeoShapeType shapeType) {
+            if (shapeType == POLYGON) {
+                return 1;
+            } else if (shapeType == MULTIPOLYGON) {
+                return 2;
+            }
+            return -1;
+        }
+
         protected static void validatePointNode(CoordinateNode node) {
             if (node.isEmpty()) {
                 throw new ElasticsearchParseException("Invalid number of points (0) provided when expecting a single coordinate "
                         + "([lat, lng])");
             } else if (node.coordinate == null) {
-                if (node.children.isEmpty() == false) {
-                    throw new ElasticsearchParseException("multipoint data provided when single point data expected.");
-                }
+                throw new ElasticsearchParseException("multipoint data provided when single point data expected.");
             }
         }
 
@@ -815,13 +937,13 @@ public abstract class ShapeBuilder implements ToXContent {
 
         protected static EnvelopeBuilder parseEnvelope(CoordinateNode coordinates, Orientation orientation) {
             // validate the coordinate array for envelope type
-            if (coordinates.children.size() != 2) {
-                throw new ElasticsearchParseException("Invalid number of points (" + coordinates.children.size() + ") provided for " +
+            if (coordinates.size() != 2) {
+                throw new ElasticsearchParseException("Invalid number of points (" + coordinates.size() + ") provided for " +
                         "geo_shape ('envelope') when expecting an array of 2 coordinates");
             }
             // verify coordinate bounds, correct if necessary
-            Coordinate uL = coordinates.children.get(0).coordinate;
-            Coordinate lR = coordinates.children.get(1).coordinate;
+            Coordinate uL = coordinates.coordinate(0);
+            Coordinate lR = coordinates.coordinate(1);
             if (((lR.x < uL.x) || (uL.y < lR.y))) {
                 Coordinate uLtmp = uL;
                 uL = new Coordinate(Math.min(uL.x, lR.x), Math.max(uL.y, lR.y));
@@ -831,14 +953,14 @@ public abstract class ShapeBuilder implements ToXContent {
         }
 
         protected static void validateMultiPointNode(CoordinateNode coordinates) {
-            if (coordinates.children == null || coordinates.children.isEmpty()) {
+            if (coordinates.points == null && (coordinates.children == null || coordinates.children.isEmpty())) {
                 if (coordinates.coordinate != null) {
                     throw new ElasticsearchParseException("single coordinate found when expecting an array of " +
                             "coordinates. change type to point or change data to an array of >0 coordinates");
                 }
                 throw new ElasticsearchParseException("No data provided for multipoint object when expecting " +
                         ">0 points (e.g., [[lat, lng]] or [[lat, lng], ...])");
-            } else {
+            } else if (coordinates.children != null) {
                 for (CoordinateNode point : coordinates.children) {
                     validatePointNode(point);
                 }
@@ -848,6 +970,9 @@ public abstract class ShapeBuilder implements ToXContent {
         protected static MultiPointBuilder parseMultiPoint(CoordinateNode coordinates) {
             validateMultiPointNode(coordinates);
 
+            if (coordinates.points != null) {
+                return new MultiPointBuilder(coordinates.points);
+            }
             MultiPointBuilder points = new MultiPointBuilder();
             for (CoordinateNode node : coordinates.children) {
                 points.point(node.coordinate);
@@ -861,11 +986,14 @@ public abstract class ShapeBuilder implements ToXContent {
              * "coordinates" member must be an array of two or more positions
              * LineStringBuilder should throw a graceful exception if < 2 coordinates/points are provided
              */
-            if (coordinates.children.size() < 2) {
+            if (coordinates.size() < 2) {
                 throw new ElasticsearchParseException("Invalid number of points in LineString (found " +
-                        coordinates.children.size() + " - must be >= 2)");
+                        coordinates.size() + " - must be >= 2)");
             }
 
+            if (coordinates.points != null) {
+                return new LineStringBuilder(coordinates.points);
+            }
             LineStringBuilder line = newLineString();
             for (CoordinateNode node : coordinates.children) {
                 line.point(node.coordinate);
@@ -875,7 +1003,7 @@ public abstract class ShapeBuilder implements ToXContent {
 
         protected static MultiLineStringBuilder parseMultiLine(CoordinateNode coordinates) {
             MultiLineStringBuilder multiline = newMultiLinestring();
-            for (CoordinateNode node : coordinates.children) {
+            for (CoordinateNode node : coordinates.children()) {
                 multiline.linestring(parseLineString(node));
             }
             return multiline;
@@ -888,38 +1016,53 @@ public abstract class ShapeBuilder implements ToXContent {
              * are equivalent (they represent equivalent points). Though a LinearRing is not explicitly
              * represented as a GeoJSON geometry type, it is referred to in the Polygon geometry type definition.
              */
-            if (coordinates.children == null) {
-                String error = "Invalid LinearRing found.";
-                error += (coordinates.coordinate == null) ?
-                        " No coordinate array provided" : " Found a single coordinate when expecting a coordinate array";
-                throw new ElasticsearchParseException(error);
-            } else if (coordinates.children.size() < 4) {
+            validateLinearRing(coordinates);
+            return parseLineString(coordinates);
+        }
+
+        /**
+         * Validate the number of points and the closure of a LinearRing
+         */
+        protected static void validateLinearRing(CoordinateNode coordinates) {
+            if (coordinates.isLeaf()) {
+                if (coordinates.coordinate != null) {
+                    throw singleCoordinateRing();
+                }
+                throw new ElasticsearchParseException("Invalid LinearRing found. No coordinate array provided");
+            } else if (coordinates.size() < 4) {
                 throw new ElasticsearchParseException("Invalid number of points in LinearRing (found " +
-                        coordinates.children.size() + " - must be >= 4)");
-            } else if (!coordinates.children.get(0).coordinate.equals(
-                    coordinates.children.get(coordinates.children.size() - 1).coordinate)) {
+                        coordinates.size() + " - must be >= 4)");
+            } else if (!coordinates.coordinate(0).equals(coordinates.coordinate(coordinates.size() - 1))) {
                 throw new ElasticsearchParseException("Invalid LinearRing found (coordinates are not closed)");
             }
-            return parseLineString(coordinates);
+        }
+
+        private static ElasticsearchParseException singleCoordinateRing() {
+            return new ElasticsearchParseException("Invalid LinearRing found. Found a single coordinate when expecting a coordinate array");
         }
 
         protected static PolygonBuilder parsePolygon(CoordinateNode coordinates, Orientation orientation) {
-            if (coordinates.children == null || coordinates.children.isEmpty()) {
-                throw new ElasticsearchParseException("Invalid LinearRing provided for type polygon. Linear ring must be an array of " +
-                        "coordinates");
+            if (coordinates.isLeaf() || coordinates.isEmpty()) {
+                throw invalidPolygon();
             }
 
-            LineStringBuilder shell = parseLinearRing(coordinates.children.get(0));
+            List<CoordinateNode> rings = coordinates.children();
+            LineStringBuilder shell = parseLinearRing(rings.get(0));
             PolygonBuilder polygon = new PolygonBuilder(shell.points, orientation);
-            for (int i = 1; i < coordinates.children.size(); i++) {
-                polygon.hole(parseLinearRing(coordinates.children.get(i)));
+            for (int i = 1; i < rings.size(); i++) {
+                polygon.hole(parseLinearRing(rings.get(i)));
             }
             return polygon;
         }
 
+        private static ElasticsearchParseException invalidPolygon() {
+            return new ElasticsearchParseException("Invalid LinearRing provided for type polygon. Linear ring must be an array of " +
+                    "coordinates");
+        }
+
         protected static MultiPolygonBuilder parseMultiPolygon(CoordinateNode coordinates, Orientation orientation) {
             MultiPolygonBuilder polygons = newMultiPolygon(orientation);
-            for (CoordinateNode node : coordinates.children) {
+            for (CoordinateNode node : coordinates.children()) {
                 polygons.polygon(parsePolygon(node, orientation));
             }
             return polygons;
@@ -0,0 +1,243 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.geo.builders;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.util.LinearComponentExtracter;
+import com.vividsolutions.jts.simplify.TopologyPreservingSimplifier;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.unit.DistanceUnit.Distance;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reduces the number of points of lines and polygons before they are sent, so that huge shapes make for smaller
+ * requests and cheaper filters on the server side.
+ * <p/>
+ * Points are removed with a Douglas-Peucker simplification that preserves topology: rings don't collapse nor
+ * intersect themselves or each other, and holes stay inside their shell. The simplified shape is never further
+ * than <code>tolerance</code> from the original one. When a maximum number of points is set, the tolerance is
+ * raised until the shape fits, at the cost of precision: a single Douglas-Peucker pass ranks every point
+ * to find the tolerance that fits, which is then refined against the topology preserving simplification.
+ * Since no ring can have less than 4 points, a polygon with many holes may not fit, in which case the
+ * coarsest simplification is used.
+ */
+public final class ShapeSimplifier {
+
+    // a ring needs at least 3 distinct points and the closing one
+    static final int MIN_RING_POINTS = 4;
+    // growth of the tolerance when the simplified shape doesn't fit in the maximum number of points yet
+    private static final double TOLERANCE_GROWTH = 1.25;
+
+    private final double tolerance;
+    private final int maxPoints;
+
+    /**
+     * @param tolerance maximum distance between the original and the simplified shape, or <code>null</code> to
+     *                  simplify only as much as needed to fit in <code>maxPoints</code>
+     * @param maxPoints maximum number of points of the simplified shape, including the closing point of every
+     *                  ring, or <code>0</code> for no limit
+     */
+    public ShapeSimplifier(Distance tolerance, int maxPoints) {
+        if (tolerance == null && maxPoints <= 0) {
+            throw new ElasticsearchIllegalArgumentException("simplification needs a tolerance or a maximum number of points");
+        }
+        if (tolerance != null && tolerance.value < 0) {
+            throw new ElasticsearchIllegalArgumentException("tolerance must be positive, got [" + tolerance + "]");
+        }
+        this.tolerance = tolerance == null ? 0 : degrees(tolerance);
+        this.maxPoints = maxPoints;
+    }
+
+    /**
+     * Convert a distance to degrees. A degree of longitude is shortest at the poles, so the distance is converted
+     * using the length of a degree at the equator, which is never exceeded.
+     */
+    static double degrees(Distance distance) {
+        return distance.value / distance.unit.getDistancePerDegree();
+    }
+
+    /**
+     * @return the maximum number of points of a simplified shape, <code>0</code> if there is no limit
+     */
+    public int maxPoints() {
+        return maxPoints;
+    }
+
+    /**
+     * Simplify a line string in place
+     */
+    public void simplifyLine(PackedCoordinates line) {
+        if (line.size() <= 2) {
+            return;
+        }
+        final LineString simplified = (LineString) simplify(ShapeBuilder.FACTORY.createLineString(line.toCoordinateSequence(false)), maxPoints);
+        copy(simplified.getCoordinateSequence(), line);
+    }
+
+    /**
+     * Simplify the rings of a polygon in place
+     *
+     * @param shell the shell of the polygon
+     * @param holes the holes of the polygon
+     * @param maxPoints the maximum number of points of the polygon, or <code>0</code> for no limit
+     */
+    public void simplifyPolygon(PackedCoordinates shell, List<PackedCoordinates> holes, int maxPoints) {
+        if (shell.size() < MIN_RING_POINTS) {
+            return;
+        }
+        final LinearRing[] interior = new LinearRing[holes.size()];
+        for (int i = 0; i < interior.length; i++) {
+            interior[i] = ring(holes.get(i));
+        }
+        final Polygon simplified = (Polygon) simplify(ShapeBuilder.FACTORY.createPolygon(ring(shell), interior), maxPoints);
+        copy(simplified.getExteriorRing().getCoordinateSequence(), shell);
+        for (int i = 0; i < interior.length; i++) {
+            copy(simplified.getInteriorRingN(i).getCoordinateSequence(), holes.get(i));
+        }
+    }
+
+    /**
+     * Simplify the rings of a polygon in place
+     */
+    public void simplifyPolygon(PackedCoordinates shell, List<PackedCoordinates> holes) {
+        simplifyPolygon(shell, holes, maxPoints);
+    }
+
+    private static LinearRing ring(PackedCoordinates points) {
+        return ShapeBuilder.FACTORY.createLinearRing(points.toCoordinateSequence(!points.isClosed()));
+    }
+
+    private static void copy(CoordinateSequence sequence, PackedCoordinates points) {
+        points.clear();
+        for (int i = 0; i < sequence.size(); i++) {
+            points.add(sequence.getX(i), sequence.getY(i));
+        }
+    }
+
+    private Geometry simplify(Geometry geometry, int maxPoints) {
+        Geometry result = tolerance > 0 ? TopologyPreservingSimplifier.simplify(geometry, tolerance) : geometry;
+        if (maxPoints <= 0 || result.getNumPoints() <= maxPoints) {
+            return result;
+        }
+        // pick the tolerance at which a plain Douglas-Peucker keeps maxPoints points, then raise it until the
+        // topology preserving simplification, which may keep a few more points, fits
+        final Envelope envelope = geometry.getEnvelopeInternal();
+        final double diagonal = Math.hypot(envelope.getWidth(), envelope.getHeight());
+        double threshold = Math.max(tolerance, Math.min(threshold(geometry, maxPoints), diagonal));
+        while (true) {
+            result = TopologyPreservingSimplifier.simplify(geometry, threshold);
+            if (result.getNumPoints() <= maxPoints || threshold >= diagonal) {
+                // the shape can't get any simpler once the tolerance is larger than the shape itself
+                return result;
+            }
+            threshold = Math.min(diagonal, threshold > 0 ? threshold * TOLERANCE_GROWTH : diagonal / 1e6);
+        }
+    }
+
+    /**
+     * Find the smallest tolerance at which Douglas-Peucker keeps at most <code>maxPoints</code> points of the
+     * given geometry. Every point is ranked with the largest tolerance that keeps it, which is the distance
+     * to the segment it splits capped by the rank of that segment's own split point, so that a single pass
+     * gives the number of points that are kept at any tolerance.
+     */
+    private static double threshold(Geometry geometry, int maxPoints) {
+        final List<?> lines = LinearComponentExtracter.getLines(geometry);
+        final double[] ranks = new double[geometry.getNumPoints()];
+        int offset = 0;
+        for (Object line : lines) {
+            final CoordinateSequence sequence = ((LineString) line).getCoordinateSequence();
+            rank(sequence, ranks, offset);
+            offset += sequence.size();
+        }
+        if (maxPoints >= ranks.length) {
+            return 0;
+        }
+        Arrays.sort(ranks);
+        // points are kept if their rank is greater than the tolerance
+        return ranks[ranks.length - maxPoints - 1];
+    }
+
+    private static void rank(CoordinateSequence sequence, double[] ranks, int offset) {
+        final int last = sequence.size() - 1;
+        ranks[offset] = Double.POSITIVE_INFINITY;
+        ranks[offset + last] = Double.POSITIVE_INFINITY;
+        // pending sections as (start, end) pairs of indices, with the rank of the point that delimits them
+        int[] sections = new int[32];
+        double[] parents = new double[16];
+        int pending = 0;
+        sections[0] = 0;
+        sections[1] = last;
+        parents[0] = Double.POSITIVE_INFINITY;
+        pending++;
+        while (pending > 0) {
+            pending--;
+            final int start = sections[pending << 1];
+            final int end = sections[(pending << 1) + 1];
+            final double parent = parents[pending];
+            if (end - start < 2) {
+                continue;
+            }
+            int split = -1;
+            double max = -1;
+            for (int i = start + 1; i < end; i++) {
+                final double distance = segmentDistance(sequence, i, start, end);
+                if (distance > max) {
+                    max = distance;
+                    split = i;
+                }
+            }
+            final double rank = Math.min(max, parent);
+            ranks[offset + split] = rank;
+            if ((pending + 2) << 1 > sections.length) {
+                sections = Arrays.copyOf(sections, sections.length << 1);
+                parents = Arrays.copyOf(parents, parents.length << 1);
+            }
+            sections[pending << 1] = start;
+            sections[(pending << 1) + 1] = split;
+            parents[pending++] = rank;
+            sections[pending << 1] = split;
+            sections[(pending << 1) + 1] = end;
+            parents[pending++] = rank;
+        }
+    }
+
+    /**
+     * Distance of the point at index <code>i</code> to the segment between the points at <code>a</code> and
+     * <code>b</code>, as computed by JTS' Douglas-Peucker implementation.
+     */
+    private static double segmentDistance(CoordinateSequence sequence, int i, int a, int b) {
+        final double x = sequence.getX(i), y = sequence.getY(i);
+        final double ax = sequence.getX(a), ay = sequence.getY(a);
+        final double dx = sequence.getX(b) - ax, dy = sequence.getY(b) - ay;
+        final double length = dx * dx + dy * dy;
+        if (length == 0) {
+            return Math.hypot(x - ax, y - ay);
+        }
+        final double t = Math.max(0, Math.min(1, ((x - ax) * dx + (y - ay) * dy) / length));
+        return Math.hypot(x - ax - t * dx, y - ay - t * dy);
+    }
+}
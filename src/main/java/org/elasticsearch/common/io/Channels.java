@@ -225,4 +225,23 @@ public final class Channels {
             }
         }
     }
+
+    /**
+     * Writes several {@link java.nio.ByteBuffer}s to a {@link java.nio.channels.GatheringByteChannel} with gathering
+     * writes, so that they reach the channel in as few system calls as possible and without being copied together first.
+     *
+     * @param byteBuffers source buffers, their positions are updated as bytes are written
+     * @param channel     channel to write to
+     * @throws java.io.IOException
+     */
+    public static void writeToChannel(ByteBuffer[] byteBuffers, GatheringByteChannel channel) throws IOException {
+        int offset = 0;
+        while (offset < byteBuffers.length) {
+            if (byteBuffers[offset].hasRemaining() == false) {
+                offset++;
+                continue;
+            }
+            channel.write(byteBuffers, offset, byteBuffers.length - offset);
+        }
+    }
 }
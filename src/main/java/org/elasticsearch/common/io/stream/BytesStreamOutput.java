@@ -19,6 +19,7 @@
 
 package org.elasticsearch.common.io.stream;
 
+import org.elasticsearch.common.breaker.CircuitBreakingException;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.bytes.PagedBytesReference;
 import org.elasticsearch.common.io.BytesStream;
@@ -38,21 +39,24 @@ public class BytesStreamOutput extends StreamOutput implements BytesStream {
     protected ByteArray bytes;
     protected int count;
 
+    private boolean released;
+
     /**
-     * Create a non recycling {@link BytesStreamOutput} with 1 initial page acquired.
+     * Create a {@link BytesStreamOutput} with 1 initial page acquired.
      */
     public BytesStreamOutput() {
         this(BigArrays.PAGE_SIZE_IN_BYTES);
     }
 
     /**
-     * Create a non recycling {@link BytesStreamOutput} with enough initial pages acquired
-     * to satisfy the capacity given by expected size.
+     * Create a {@link BytesStreamOutput} with enough initial pages acquired
+     * to satisfy the capacity given by expected size, using the {@link BigArrays#defaultInstance() default}
+     * {@link BigArrays}.
      * 
      * @param expectedSize the expected maximum size of the stream in bytes.
      */
     public BytesStreamOutput(int expectedSize) {
-        this(expectedSize, BigArrays.NON_RECYCLING_INSTANCE);
+        this(expectedSize, BigArrays.defaultInstance());
     }
 
     protected BytesStreamOutput(int expectedSize, BigArrays bigarrays) {
@@ -100,6 +104,14 @@ public class BytesStreamOutput extends StreamOutput implements BytesStream {
     }
 
     public void reset() {
+        if (released) {
+            // the pages were given back on close, start over with fresh ones
+            bytes = bigarrays.newByteArray(BigArrays.PAGE_SIZE_IN_BYTES);
+            released = false;
+            count = 0;
+            return;
+        }
+
         // shrink list of pages
         if (bytes.size() > BigArrays.PAGE_SIZE_IN_BYTES) {
             bytes = bigarrays.resize(bytes, BigArrays.PAGE_SIZE_IN_BYTES);
@@ -131,7 +143,18 @@ public class BytesStreamOutput extends StreamOutput implements BytesStream {
 
     @Override
     public void close() throws IOException {
-        // empty for now.
+        release();
+    }
+
+    /**
+     * Releases the accounting of the pages of this stream against the circuit breaker. The content returned
+     * by {@link #bytes()} stays readable as long as the {@link BigArrays} of this stream does not recycle pages.
+     */
+    private void release() {
+        if (released == false) {
+            released = true;
+            bytes.close();
+        }
     }
 
     /**
@@ -151,7 +174,13 @@ public class BytesStreamOutput extends StreamOutput implements BytesStream {
     }
 
     private void ensureCapacity(int offset) {
-        bytes = bigarrays.grow(bytes, offset);
+        try {
+            bytes = bigarrays.grow(bytes, offset);
+        } catch (CircuitBreakingException e) {
+            // this stream is going to be thrown away, make sure it doesn't keep its pages accounted for
+            release();
+            throw e;
+        }
     }
 
 }
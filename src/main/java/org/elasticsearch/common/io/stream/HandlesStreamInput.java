@@ -0,0 +1,65 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.io.stream;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the streams written by {@link HandlesStreamOutput}: a string is decoded the first time it is seen
+ * and every later occurrence returns the very same instance, so repeated keys share a single copy in memory.
+ */
+public class HandlesStreamInput extends AdapterStreamInput {
+
+    private final List<String> handles = new ArrayList<String>();
+
+    public HandlesStreamInput(StreamInput in) {
+        super(in);
+    }
+
+    @Override
+    public String readSharedString() throws IOException {
+        final int handle = in.readVInt();
+        if (handle == 0) {
+            final String str = in.readString();
+            handles.add(str);
+            return str;
+        }
+        if (handle > handles.size()) {
+            throw new IOException("Invalid shared string handle [" + (handle - 1) + "], only [" + handles.size() + "] strings have been read");
+        }
+        return handles.get(handle - 1);
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        cleanHandles();
+    }
+
+    /**
+     * Forget the strings that have been read so far, must match the calls to
+     * {@link HandlesStreamOutput#clear()} on the writing side.
+     */
+    public void cleanHandles() {
+        handles.clear();
+    }
+}
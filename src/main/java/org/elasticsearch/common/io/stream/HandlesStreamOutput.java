@@ -0,0 +1,66 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.io.stream;
+
+import com.carrotsearch.hppc.ObjectIntOpenHashMap;
+
+import java.io.IOException;
+
+/**
+ * A {@link StreamOutput} that writes each shared string once: the first occurrence of a string passed to
+ * {@link #writeSharedString(String)} is written in full and later occurrences are written as a vint handle
+ * to it. Streams written with this class must be read with a {@link HandlesStreamInput}.
+ * <p/>
+ * The encoding of a shared string is a vint: <code>0</code> followed by the string itself for a new string,
+ * or <code>handle + 1</code> for a string that has already been written, handles being assigned in order of
+ * first occurrence.
+ */
+public class HandlesStreamOutput extends AdapterStreamOutput {
+
+    private final ObjectIntOpenHashMap<String> handles = new ObjectIntOpenHashMap<String>();
+
+    public HandlesStreamOutput(StreamOutput out) {
+        super(out);
+    }
+
+    @Override
+    public void writeSharedString(String str) throws IOException {
+        if (handles.containsKey(str)) {
+            out.writeVInt(handles.lget() + 1);
+        } else {
+            handles.put(str, handles.size());
+            out.writeVInt(0);
+            out.writeString(str);
+        }
+    }
+
+    @Override
+    public void reset() throws IOException {
+        clear();
+        out.reset();
+    }
+
+    /**
+     * Forget the strings that have been written so far, eg. to start a new message on the same stream.
+     */
+    public void clear() {
+        handles.clear();
+    }
+}
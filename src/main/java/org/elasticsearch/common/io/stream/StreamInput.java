@@ -207,6 +207,24 @@ public abstract class StreamInput extends InputStream {
         return i | ((b & 0x7FL) << 56);
     }
 
+    /**
+     * Reads a long written with {@link StreamOutput#writeZLong(long)}.
+     */
+    public long readZLong() throws IOException {
+        long value = 0L;
+        int shift = 0;
+        byte b;
+        while (((b = readByte()) & 0x80) != 0) {
+            value |= (b & 0x7FL) << shift;
+            shift += 7;
+            if (shift > 63) {
+                throw new IOException("variable-length long is too long");
+            }
+        }
+        value |= (b & 0x7FL) << shift;
+        return (value >>> 1) ^ -(value & 1);
+    }
+
     @Nullable
     public Text readOptionalText() throws IOException {
         int length = readInt();
@@ -255,14 +273,51 @@ public abstract class StreamInput extends InputStream {
     }
 
     private final CharsRefBuilder spare = new CharsRefBuilder();
+    // scratch buffer strings are read into before being decoded
+    private byte[] readStringBuffer = BytesRef.EMPTY_BYTES;
 
     public String readString() throws IOException {
         final int charCount = readVInt();
         spare.clear();
         spare.grow(charCount);
-        int c = 0;
-        while (spare.length() < charCount) {
-            c = readByte() & 0xff;
+        final char[] chars = spare.chars();
+        if (readStringBuffer.length < Math.min(charCount, StreamOutput.STRING_BUFFER_SIZE)) {
+            readStringBuffer = new byte[Math.min(charCount, StreamOutput.STRING_BUFFER_SIZE)];
+        }
+        final byte[] buffer = readStringBuffer;
+        int charsOffset = 0;
+        boolean ascii = true;
+        while (ascii && charsOffset < charCount) {
+            // every remaining char takes at least one byte, so this never reads past the end of the string,
+            // the missing bytes of a multi-byte char that straddles the chunk are read one by one
+            final int length = Math.min(charCount - charsOffset, buffer.length);
+            readBytes(buffer, 0, length);
+            int i = 0;
+            while (i < length) {
+                int c = buffer[i++];
+                if (c >= 0) {
+                    chars[charsOffset++] = (char) c;
+                    continue;
+                }
+                ascii = false;
+                c &= 0xff;
+                switch (c >> 4) {
+                    case 12:
+                    case 13:
+                        chars[charsOffset++] = (char) ((c & 0x1F) << 6 | (i < length ? buffer[i++] : readByte()) & 0x3F);
+                        break;
+                    case 14:
+                        final int b1 = i < length ? buffer[i++] : readByte();
+                        final int b2 = i < length ? buffer[i++] : readByte();
+                        chars[charsOffset++] = (char) ((c & 0x0F) << 12 | (b1 & 0x3F) << 6 | (b2 & 0x3F) << 0);
+                        break;
+                }
+            }
+        }
+        // chunks of multi-byte text get smaller and smaller as they are bounded by the remaining char count,
+        // so the rest of the string is decoded byte by byte
+        while (charsOffset < charCount) {
+            final int c = readByte() & 0xff;
             switch (c >> 4) {
                 case 0:
                 case 1:
@@ -272,20 +327,24 @@ public abstract class StreamInput extends InputStream {
                 case 5:
                 case 6:
                 case 7:
-                    spare.append((char) c);
+                    chars[charsOffset++] = (char) c;
                     break;
                 case 12:
                 case 13:
-                    spare.append((char) ((c & 0x1F) << 6 | readByte() & 0x3F));
+                    chars[charsOffset++] = (char) ((c & 0x1F) << 6 | readByte() & 0x3F);
                     break;
                 case 14:
-                    spare.append((char) ((c & 0x0F) << 12 | (readByte() & 0x3F) << 6 | (readByte() & 0x3F) << 0));
+                    chars[charsOffset++] = (char) ((c & 0x0F) << 12 | (readByte() & 0x3F) << 6 | (readByte() & 0x3F) << 0);
                     break;
             }
         }
+        spare.setLength(charCount);
         return spare.toString();
     }
 
+    /**
+     * Reads a string written with {@link StreamOutput#writeSharedString(String)}, see {@link HandlesStreamInput}.
+     */
     public String readSharedString() throws IOException {
         return readString();
     }
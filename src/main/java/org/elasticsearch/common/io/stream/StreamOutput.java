@@ -39,6 +39,8 @@ import java.util.Map;
  */
 public abstract class StreamOutput extends OutputStream {
 
+    static final int STRING_BUFFER_SIZE = 1024;
+
     private Version version = Version.CURRENT;
 
     public Version getVersion() {
@@ -167,6 +169,19 @@ public abstract class StreamOutput extends OutputStream {
         writeByte((byte) i);
     }
 
+    /**
+     * Writes a long in a zig-zag encoded variable-length format. Writes between one and ten bytes, values
+     * with a small absolute value take fewer bytes, negative numbers included.
+     */
+    public void writeZLong(long i) throws IOException {
+        long value = (i << 1) ^ (i >> 63);
+        while ((value & ~0x7FL) != 0L) {
+            writeByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((byte) value);
+    }
+
     public void writeOptionalString(@Nullable String str) throws IOException {
         if (str == null) {
             writeBoolean(false);
@@ -219,25 +234,58 @@ public abstract class StreamOutput extends OutputStream {
         writeText(text);
     }
 
+    // scratch buffer strings are encoded into before being written in bulk
+    private byte[] convertStringBuffer = BytesRef.EMPTY_BYTES;
+
     public void writeString(String str) throws IOException {
-        int charCount = str.length();
+        final int charCount = str.length();
         writeVInt(charCount);
-        int c;
-        for (int i = 0; i < charCount; i++) {
-            c = str.charAt(i);
-            if (c <= 0x007F) {
-                writeByte((byte) c);
-            } else if (c > 0x07FF) {
-                writeByte((byte) (0xE0 | c >> 12 & 0x0F));
-                writeByte((byte) (0x80 | c >> 6 & 0x3F));
-                writeByte((byte) (0x80 | c >> 0 & 0x3F));
-            } else {
-                writeByte((byte) (0xC0 | c >> 6 & 0x1F));
-                writeByte((byte) (0x80 | c >> 0 & 0x3F));
+        if (charCount == 0) {
+            return;
+        }
+        // at most 3 bytes per char, bounded so that large strings are encoded chunk by chunk
+        final int bufferSize = Math.min(3 * charCount, STRING_BUFFER_SIZE);
+        if (convertStringBuffer.length < bufferSize) {
+            convertStringBuffer = new byte[bufferSize];
+        }
+        final byte[] buffer = convertStringBuffer;
+        int offset = 0;
+        int i = 0;
+        while (i < charCount) {
+            // fast path for runs of ascii chars, one byte per char, stopping early enough that there is
+            // still room for a 3 bytes char if the run ends before asciiEnd
+            final int asciiEnd = Math.min(charCount, i + buffer.length - 2 - offset);
+            int c;
+            while (i < asciiEnd && (c = str.charAt(i)) <= 0x007F) {
+                buffer[offset++] = (byte) c;
+                i++;
+            }
+            if (i < asciiEnd) {
+                c = str.charAt(i++);
+                if (c <= 0x007F) {
+                    buffer[offset++] = (byte) c;
+                } else if (c > 0x07FF) {
+                    buffer[offset++] = ((byte) (0xE0 | c >> 12 & 0x0F));
+                    buffer[offset++] = ((byte) (0x80 | c >> 6 & 0x3F));
+                    buffer[offset++] = ((byte) (0x80 | c >> 0 & 0x3F));
+                } else {
+                    buffer[offset++] = ((byte) (0xC0 | c >> 6 & 0x1F));
+                    buffer[offset++] = ((byte) (0x80 | c >> 0 & 0x3F));
+                }
+            }
+            // flush as soon as the next char might not fit
+            if (offset > buffer.length - 3) {
+                writeBytes(buffer, 0, offset);
+                offset = 0;
             }
         }
+        writeBytes(buffer, 0, offset);
     }
 
+    /**
+     * Writes a string that is likely to be repeated in the stream, like a field or an index name. Plain streams
+     * write it like any other string, use a {@link HandlesStreamOutput} to write repeated strings only once.
+     */
     public void writeSharedString(String str) throws IOException {
         writeString(str);
     }
@@ -0,0 +1,171 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lease;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detects {@link Releasable}s that are garbage collected without having been released, and
+ * {@link Releasable}s that are released more than once.
+ * <p/>
+ * Only one resource out of <code>samplingInterval</code> is tracked: for those, the stack trace of the
+ * allocation is recorded and a {@link PhantomReference} is registered so that a leak can be reported
+ * with the place where the resource was allocated once the garbage collector discovers it. Leaks are
+ * detected lazily, on subsequent calls to {@link #track(Object)} or {@link #reportLeaks()}, so that no
+ * background thread is needed. With a large enough interval, the overhead is a counter increment per
+ * allocation, which makes it possible to leave tracking on in production.
+ */
+public final class LeakTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeakTracker.class);
+
+    private final String name;
+    private final int samplingInterval;
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    private final Set<Leak> open = Collections.newSetFromMap(new ConcurrentHashMap<Leak, Boolean>());
+
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong tracked = new AtomicLong();
+    private final AtomicLong leaked = new AtomicLong();
+    private final AtomicLong doubleReleased = new AtomicLong();
+
+    /**
+     * Create a new tracker.
+     * @param name             the name of the tracker, used for reporting
+     * @param samplingInterval track one resource every <code>samplingInterval</code> allocations, 1 to track all of them
+     */
+    public LeakTracker(String name, int samplingInterval) {
+        if (samplingInterval < 1) {
+            throw new ElasticsearchIllegalArgumentException("samplingInterval must be >= 1, got [" + samplingInterval + "]");
+        }
+        this.name = name;
+        this.samplingInterval = samplingInterval;
+    }
+
+    /**
+     * Register a newly allocated resource. Returns a {@link Leak} that must be {@link Leak#close() closed} when the
+     * resource is released, or <code>null</code> if this resource has not been sampled.
+     */
+    public Leak track(Object resource) {
+        final long count = allocated.incrementAndGet();
+        if (count % samplingInterval != 0) {
+            return null;
+        }
+        reportLeaks();
+        final Leak leak = new Leak(resource, this);
+        open.add(leak);
+        tracked.incrementAndGet();
+        return leak;
+    }
+
+    /**
+     * Record that the given resource has been released more than once.
+     */
+    public void reportDoubleRelease(Object resource) {
+        doubleReleased.incrementAndGet();
+        logger.error("[{}] {} has been released more than once", name, resource.getClass().getName(),
+                new IllegalStateException("double release"));
+    }
+
+    /**
+     * Report the tracked resources that have been garbage collected without having been released.
+     * @return the number of leaks that have been found
+     */
+    public int reportLeaks() {
+        int count = 0;
+        for (Leak leak = (Leak) queue.poll(); leak != null; leak = (Leak) queue.poll()) {
+            if (open.remove(leak)) {
+                ++count;
+                leaked.incrementAndGet();
+                logger.error("[{}] {} was garbage collected without having been released, allocated at:", name, leak.type, leak.allocationSite);
+            }
+        }
+        return count;
+    }
+
+    /** @return the name of this tracker */
+    public String name() {
+        return name;
+    }
+
+    /** @return the number of allocations that have been seen by this tracker, sampled or not */
+    public long allocatedCount() {
+        return allocated.get();
+    }
+
+    /** @return the number of allocations that have been sampled */
+    public long trackedCount() {
+        return tracked.get();
+    }
+
+    /** @return the number of sampled resources that are neither released nor known to have leaked yet */
+    public long openCount() {
+        return open.size();
+    }
+
+    /** @return the number of sampled resources that have been garbage collected without having been released */
+    public long leakedCount() {
+        return leaked.get();
+    }
+
+    /** @return the number of resources that have been released more than once */
+    public long doubleReleasedCount() {
+        return doubleReleased.get();
+    }
+
+    /**
+     * Handle on a sampled resource.
+     */
+    public static final class Leak extends PhantomReference<Object> {
+
+        private final LeakTracker tracker;
+        private final String type;
+        private final Throwable allocationSite;
+
+        private Leak(Object resource, LeakTracker tracker) {
+            super(resource, tracker.queue);
+            this.tracker = tracker;
+            this.type = resource.getClass().getName();
+            this.allocationSite = new Throwable("allocation site of " + type);
+        }
+
+        /**
+         * Mark the resource as released.
+         * @return <code>false</code> if the resource had already been released
+         */
+        public boolean close() {
+            if (tracker.open.remove(this)) {
+                clear();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -23,8 +23,10 @@ import com.carrotsearch.hppc.hash.MurmurHash3;
 import com.google.common.collect.Queues;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.lease.LeakTracker;
 
 import java.lang.ref.SoftReference;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public enum Recyclers {
     ;
@@ -189,6 +191,54 @@ public enum Recyclers {
         };
     }
 
+    /**
+     * Wrap the provided recycler so that entries which are never released or released more than once are reported to
+     * the given {@link LeakTracker}. Entries that are released more than once are not given back to the delegate, which
+     * would otherwise hand them out twice.
+     */
+    public static <T> Recycler<T> tracking(final Recycler<T> recycler, final LeakTracker tracker) {
+        return new FilterRecycler<T>() {
+
+            @Override
+            protected Recycler<T> getDelegate() {
+                return recycler;
+            }
+
+            @Override
+            protected Recycler.V<T> wrap(final Recycler.V<T> delegate) {
+                return new Recycler.V<T>() {
+
+                    private final LeakTracker.Leak leak = tracker.track(this);
+                    private final AtomicBoolean released = new AtomicBoolean();
+
+                    @Override
+                    public void close() throws ElasticsearchException {
+                        if (released.compareAndSet(false, true) == false) {
+                            tracker.reportDoubleRelease(this);
+                            return;
+                        }
+                        if (leak != null) {
+                            leak.close();
+                        }
+                        delegate.close();
+                    }
+
+                    @Override
+                    public T v() {
+                        return delegate.v();
+                    }
+
+                    @Override
+                    public boolean isRecycled() {
+                        return delegate.isRecycled();
+                    }
+
+                };
+            }
+
+        };
+    }
+
     /**
      * Create a concurrent implementation that can support concurrent access from <code>concurrencyLevel</code> threads with little contention.
      */
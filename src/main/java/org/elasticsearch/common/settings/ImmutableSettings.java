@@ -392,12 +392,32 @@ public class ImmutableSettings implements Settings {
 
     @Override
     public ByteSizeValue getAsMemory(String setting, String defaultValue) throws SettingsException {
-        throw new SettingsException("No getAsMemory.");
+        return parseMemoryValue(get(setting, defaultValue));
     }
 
     @Override
     public ByteSizeValue getAsMemory(String[] settings, String defaultValue) throws SettingsException {
-        throw new SettingsException("No getAsMemory.");
+        return parseMemoryValue(get(settings, defaultValue));
+    }
+
+    /**
+     * Parses either an absolute size (eg. <tt>64mb</tt>) or a percentage of the maximum heap size (eg. <tt>10%</tt>).
+     */
+    private static ByteSizeValue parseMemoryValue(String sValue) throws SettingsException {
+        if (sValue != null && sValue.endsWith("%")) {
+            final String percentAsString = sValue.substring(0, sValue.length() - 1);
+            final double percent;
+            try {
+                percent = Double.parseDouble(percentAsString);
+            } catch (NumberFormatException e) {
+                throw new SettingsException("Failed to parse [" + percentAsString + "] as a double", e);
+            }
+            if (percent < 0 || percent > 100) {
+                throw new SettingsException("Percentage should be in [0-100], got [" + percentAsString + "]");
+            }
+            return new ByteSizeValue((long) ((percent / 100) * Runtime.getRuntime().maxMemory()), ByteSizeUnit.BYTES);
+        }
+        return parseBytesSizeValue(sValue);
     }
 
     @Override
@@ -19,23 +19,34 @@
 
 package org.elasticsearch.common.util;
 
+import org.elasticsearch.common.lease.LeakTracker;
 
 abstract class AbstractArray implements BigArray {
 
     private final BigArrays bigArrays;
     public final boolean clearOnResize;
     private boolean released = false;
+    private final LeakTracker.Leak leak;
 
     AbstractArray(BigArrays bigArrays, boolean clearOnResize) {
         this.bigArrays = bigArrays;
         this.clearOnResize = clearOnResize;
+        this.leak = bigArrays.leakTracker == null ? null : bigArrays.leakTracker.track(this);
     }
 
     @Override
     public final void close() {
+        if (released && bigArrays.leakTracker != null) {
+            // report instead of giving the pages back to the recycler twice
+            bigArrays.leakTracker.reportDoubleRelease(this);
+            return;
+        }
         bigArrays.adjustBreaker(-ramBytesUsed());
         assert !released : "double release";
         released = true;
+        if (leak != null) {
+            leak.close();
+        }
         doClose();
     }
 
@@ -69,4 +69,20 @@ public class ArrayUtils {
         }
         return index;
     }
+
+    /**
+     * Compare <code>length</code> bytes of <code>a</code> starting at <code>aOffset</code> with those of <code>b</code>
+     * starting at <code>bOffset</code>.
+     */
+    public static boolean equals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        if (a == b && aOffset == bOffset) {
+            return true;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
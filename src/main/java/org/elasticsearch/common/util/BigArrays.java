@@ -29,6 +29,7 @@ import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.breaker.CircuitBreakingException;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lease.LeakTracker;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.recycler.Recycler;
@@ -41,6 +42,9 @@ import java.util.Arrays;
 /** Utility class to work with arrays. */
 public class BigArrays extends AbstractComponent {
 
+    /** Track one array out of the configured number of allocations for leaks and double releases, 0 to disable. */
+    public static final String LEAK_TRACKING_INTERVAL = "bigarrays.leak_tracking.interval";
+
     public static final BigArrays NON_RECYCLING_INSTANCE = new BigArrays(ImmutableSettings.EMPTY, null, null);
 
     /** Page size in bytes: 16KB */
@@ -52,6 +56,25 @@ public class BigArrays extends AbstractComponent {
     public static final int DOUBLE_PAGE_SIZE = BigArrays.PAGE_SIZE_IN_BYTES / RamUsageEstimator.NUM_BYTES_DOUBLE;
     public static final int OBJECT_PAGE_SIZE = BigArrays.PAGE_SIZE_IN_BYTES / RamUsageEstimator.NUM_BYTES_OBJECT_REF;
 
+    private static volatile BigArrays defaultInstance = NON_RECYCLING_INSTANCE;
+
+    /**
+     * Set the instance that is used by buffers which are not given an explicit one, such as the
+     * {@link org.elasticsearch.common.io.stream.BytesStreamOutput} behind every
+     * {@link org.elasticsearch.common.xcontent.XContentBuilder}. Such buffers hand out their content after
+     * they have been closed, so the default instance must not recycle pages.
+     */
+    public static void defaultInstance(BigArrays bigArrays) {
+        Preconditions.checkArgument(bigArrays != null, "bigArrays must not be null");
+        Preconditions.checkArgument(bigArrays.recycler == null, "the default BigArrays must not recycle pages");
+        BigArrays.defaultInstance = bigArrays;
+    }
+
+    /** Return the instance that is used by buffers which are not given an explicit one. */
+    public static BigArrays defaultInstance() {
+        return defaultInstance;
+    }
+
     /** Returns the next size to grow when working with parallel arrays that may have different page sizes or number of bytes per element. */
     public static long overSize(long minTargetSize) {
         return overSize(minTargetSize, PAGE_SIZE_IN_BYTES / 8, 1);
@@ -145,6 +168,12 @@ public class BigArrays extends AbstractComponent {
             return false;
         }
 
+        @Override
+        public void get(long index, byte[] buf, int offset, int len) {
+            assert indexIsInt(index);
+            System.arraycopy(array, (int) index, buf, offset, len);
+        }
+
         @Override
         public void set(long index, byte[] buf, int offset, int len) {
             assert indexIsInt(index);
@@ -200,6 +229,18 @@ public class BigArrays extends AbstractComponent {
             Arrays.fill(array, (int) fromIndex, (int) toIndex, value);
         }
 
+        @Override
+        public void get(long index, int[] buf, int offset, int len) {
+            assert indexIsInt(index);
+            System.arraycopy(array, (int) index, buf, offset, len);
+        }
+
+        @Override
+        public void set(long index, int[] buf, int offset, int len) {
+            assert indexIsInt(index);
+            System.arraycopy(buf, offset, array, (int) index, len);
+        }
+
     }
 
     private static class LongArrayWrapper extends AbstractArrayWrapper implements LongArray {
@@ -242,6 +283,18 @@ public class BigArrays extends AbstractComponent {
             assert indexIsInt(toIndex);
             Arrays.fill(array, (int) fromIndex, (int) toIndex, value);
         }
+
+        @Override
+        public void get(long index, long[] buf, int offset, int len) {
+            assert indexIsInt(index);
+            System.arraycopy(array, (int) index, buf, offset, len);
+        }
+
+        @Override
+        public void set(long index, long[] buf, int offset, int len) {
+            assert indexIsInt(index);
+            System.arraycopy(buf, offset, array, (int) index, len);
+        }
     }
 
     private static class DoubleArrayWrapper extends AbstractArrayWrapper implements DoubleArray {
@@ -285,6 +338,18 @@ public class BigArrays extends AbstractComponent {
             Arrays.fill(array, (int) fromIndex, (int) toIndex, value);
         }
 
+        @Override
+        public void get(long index, double[] buf, int offset, int len) {
+            assert indexIsInt(index);
+            System.arraycopy(array, (int) index, buf, offset, len);
+        }
+
+        @Override
+        public void set(long index, double[] buf, int offset, int len) {
+            assert indexIsInt(index);
+            System.arraycopy(buf, offset, array, (int) index, len);
+        }
+
     }
 
     private static class FloatArrayWrapper extends AbstractArrayWrapper implements FloatArray {
@@ -328,6 +393,18 @@ public class BigArrays extends AbstractComponent {
             Arrays.fill(array, (int) fromIndex, (int) toIndex, value);
         }
 
+        @Override
+        public void get(long index, float[] buf, int offset, int len) {
+            assert indexIsInt(index);
+            System.arraycopy(array, (int) index, buf, offset, len);
+        }
+
+        @Override
+        public void set(long index, float[] buf, int offset, int len) {
+            assert indexIsInt(index);
+            System.arraycopy(buf, offset, array, (int) index, len);
+        }
+
     }
 
     private static class ObjectArrayWrapper<T> extends AbstractArrayWrapper implements ObjectArray<T> {
@@ -365,6 +442,7 @@ public class BigArrays extends AbstractComponent {
     final PageCacheRecycler recycler;
     final CircuitBreakerService breakerService;
     final boolean checkBreaker;
+    final LeakTracker leakTracker;
 
     @Inject
     public BigArrays(Settings settings, PageCacheRecycler recycler, @Nullable final CircuitBreakerService breakerService) {
@@ -373,10 +451,30 @@ public class BigArrays extends AbstractComponent {
     }
 
     public BigArrays(Settings settings, PageCacheRecycler recycler, @Nullable final CircuitBreakerService breakerService, boolean checkBreaker) {
+        this(settings, recycler, breakerService, checkBreaker, newLeakTracker(settings));
+    }
+
+    private BigArrays(Settings settings, PageCacheRecycler recycler, @Nullable final CircuitBreakerService breakerService, boolean checkBreaker,
+                      @Nullable LeakTracker leakTracker) {
         super(settings);
         this.checkBreaker = checkBreaker;
         this.recycler = recycler;
         this.breakerService = breakerService;
+        this.leakTracker = leakTracker;
+    }
+
+    private static LeakTracker newLeakTracker(Settings settings) {
+        final int interval = settings.getAsInt(LEAK_TRACKING_INTERVAL, 0);
+        return interval > 0 ? new LeakTracker("big_arrays", interval) : null;
+    }
+
+    /**
+     * Return the tracker of arrays that are never released or released twice, or <code>null</code> if leak tracking
+     * is disabled.
+     */
+    @Nullable
+    public LeakTracker leakTracker() {
+        return leakTracker;
     }
 
     /**
@@ -416,7 +514,7 @@ public class BigArrays extends AbstractComponent {
      * explicitly enabled, instead of only accounting enabled
      */
     public BigArrays withCircuitBreaking() {
-        return new BigArrays(this.settings, this.recycler, this.breakerService, true);
+        return new BigArrays(this.settings, this.recycler, this.breakerService, true, this.leakTracker);
     }
 
     private <T extends AbstractBigArray> T resizeInPlace(T array, long newSize) {
@@ -494,12 +592,24 @@ public class BigArrays extends AbstractComponent {
         if (array == null) {
             return 0;
         }
+        return hashCode(array, 0, array.size());
+    }
 
+    /** Compute the hash code of a slice of <code>array</code>, consistently with {@link java.util.Arrays#hashCode(byte[])}. */
+    public int hashCode(ByteArray array, long offset, long length) {
+        assert offset + length <= array.size();
+        final BytesRef ref = new BytesRef();
         int hash = 1;
-        for (long i = 0; i < array.size(); i++) {
-            hash = 31 * hash + array.get(i);
+        for (long pos = offset, end = offset + length; pos < end; ) {
+            // read page by page so that no bytes get copied
+            final int chunk = (int) Math.min(end - pos, BYTE_PAGE_SIZE - (pos & (BYTE_PAGE_SIZE - 1)));
+            array.get(pos, chunk, ref);
+            final byte[] bytes = ref.bytes;
+            for (int i = ref.offset, upTo = ref.offset + chunk; i < upTo; ++i) {
+                hash = 31 * hash + bytes[i];
+            }
+            pos += chunk;
         }
-
         return hash;
     }
 
@@ -513,15 +623,68 @@ public class BigArrays extends AbstractComponent {
             return false;
         }
 
-        for (long i = 0; i < array.size(); i++) {
-            if (array.get(i) != other.get(i)) {
+        return equals(array, 0, other, 0, array.size());
+    }
+
+    /** Compare <code>length</code> bytes of <code>array</code> starting at <code>offset</code> with those of <code>other</code> starting at <code>otherOffset</code>. */
+    public boolean equals(ByteArray array, long offset, ByteArray other, long otherOffset, long length) {
+        assert offset + length <= array.size();
+        assert otherOffset + length <= other.size();
+        if (array == other && offset == otherOffset) {
+            return true;
+        }
+        final BytesRef ref = new BytesRef();
+        final BytesRef otherRef = new BytesRef();
+        for (long pos = 0; pos < length; ) {
+            // chunks must not cross a page boundary of either array so that no bytes get copied
+            final long index = offset + pos;
+            final long otherIndex = otherOffset + pos;
+            final int chunk = (int) Math.min(length - pos, Math.min(
+                    BYTE_PAGE_SIZE - (index & (BYTE_PAGE_SIZE - 1)),
+                    BYTE_PAGE_SIZE - (otherIndex & (BYTE_PAGE_SIZE - 1))));
+            array.get(index, chunk, ref);
+            other.get(otherIndex, chunk, otherRef);
+            if (!ArrayUtils.equals(ref.bytes, ref.offset, otherRef.bytes, otherRef.offset, chunk)) {
                 return false;
             }
+            pos += chunk;
         }
-
         return true;
     }
 
+    /**
+     * Copy <code>length</code> bytes from <code>src</code> starting at <code>srcIndex</code> to <code>dest</code> starting at
+     * <code>destIndex</code>. Like {@link System#arraycopy}, this works even if <code>src</code> and <code>dest</code> are the
+     * same array and the source and destination ranges overlap.
+     */
+    public void copy(ByteArray src, long srcIndex, ByteArray dest, long destIndex, long length) {
+        assert srcIndex + length <= src.size();
+        assert destIndex + length <= dest.size();
+        final BytesRef ref = new BytesRef();
+        if (src == dest && destIndex > srcIndex && destIndex < srcIndex + length) {
+            // copy backwards so that bytes are read before they are overwritten, chunks must not cross a page boundary
+            // of either the source or the destination since the source bytes are not copied before being written
+            for (long remaining = length; remaining > 0; ) {
+                final long end = srcIndex + remaining;
+                final long destEnd = destIndex + remaining;
+                final int chunk = (int) Math.min(remaining, Math.min(
+                        ((end - 1) & (BYTE_PAGE_SIZE - 1)) + 1,
+                        ((destEnd - 1) & (BYTE_PAGE_SIZE - 1)) + 1));
+                remaining -= chunk;
+                src.get(srcIndex + remaining, chunk, ref);
+                dest.set(destIndex + remaining, ref.bytes, ref.offset, chunk);
+            }
+        } else {
+            for (long pos = 0; pos < length; ) {
+                final long index = srcIndex + pos;
+                final int chunk = (int) Math.min(length - pos, BYTE_PAGE_SIZE - (index & (BYTE_PAGE_SIZE - 1)));
+                src.get(index, chunk, ref);
+                dest.set(destIndex + pos, ref.bytes, ref.offset, chunk);
+                pos += chunk;
+            }
+        }
+    }
+
     /**
      * Allocate a new {@link IntArray}.
      * @param size          the initial length of the array
@@ -555,9 +718,8 @@ public class BigArrays extends AbstractComponent {
         } else {
             AbstractArray arr = (AbstractArray) array;
             final IntArray newArray = newIntArray(size, arr.clearOnResize);
-            for (long i = 0, end = Math.min(size, array.size()); i < end; ++i) {
-                newArray.set(i, array.get(i));
-            }
+            final int[] rawArray = ((IntArrayWrapper) array).array;
+            newArray.set(0, rawArray, 0, (int) Math.min(array.size(), newArray.size()));
             array.close();
             return newArray;
         }
@@ -572,6 +734,34 @@ public class BigArrays extends AbstractComponent {
         return resize(array, newSize);
     }
 
+    /**
+     * Copy <code>length</code> values from <code>src</code> starting at <code>srcIndex</code> to <code>dest</code> starting at
+     * <code>destIndex</code>. Like {@link System#arraycopy}, this works even if <code>src</code> and <code>dest</code> are the
+     * same array and the source and destination ranges overlap.
+     */
+    public void copy(IntArray src, long srcIndex, IntArray dest, long destIndex, long length) {
+        assert srcIndex + length <= src.size();
+        assert destIndex + length <= dest.size();
+        final int[] buffer = new int[(int) Math.min(length, INT_PAGE_SIZE)];
+        if (src == dest && destIndex > srcIndex && destIndex < srcIndex + length) {
+            // copy backwards so that values are read before they are overwritten
+            for (long remaining = length; remaining > 0; ) {
+                final int chunk = (int) Math.min(remaining, buffer.length);
+                remaining -= chunk;
+                src.get(srcIndex + remaining, buffer, 0, chunk);
+                dest.set(destIndex + remaining, buffer, 0, chunk);
+            }
+        } else {
+            for (long pos = 0; pos < length; ) {
+                final int chunk = (int) Math.min(length - pos, buffer.length);
+                src.get(srcIndex + pos, buffer, 0, chunk);
+                dest.set(destIndex + pos, buffer, 0, chunk);
+                pos += chunk;
+            }
+        }
+    }
+
+
     /**
      * Allocate a new {@link LongArray}.
      * @param size          the initial length of the array
@@ -605,9 +795,8 @@ public class BigArrays extends AbstractComponent {
         } else {
             AbstractArray arr = (AbstractArray) array;
             final LongArray newArray = newLongArray(size, arr.clearOnResize);
-            for (long i = 0, end = Math.min(size, array.size()); i < end; ++i) {
-                newArray.set(i, array.get(i));
-            }
+            final long[] rawArray = ((LongArrayWrapper) array).array;
+            newArray.set(0, rawArray, 0, (int) Math.min(array.size(), newArray.size()));
             array.close();
             return newArray;
         }
@@ -622,6 +811,34 @@ public class BigArrays extends AbstractComponent {
         return resize(array, newSize);
     }
 
+    /**
+     * Copy <code>length</code> values from <code>src</code> starting at <code>srcIndex</code> to <code>dest</code> starting at
+     * <code>destIndex</code>. Like {@link System#arraycopy}, this works even if <code>src</code> and <code>dest</code> are the
+     * same array and the source and destination ranges overlap.
+     */
+    public void copy(LongArray src, long srcIndex, LongArray dest, long destIndex, long length) {
+        assert srcIndex + length <= src.size();
+        assert destIndex + length <= dest.size();
+        final long[] buffer = new long[(int) Math.min(length, LONG_PAGE_SIZE)];
+        if (src == dest && destIndex > srcIndex && destIndex < srcIndex + length) {
+            // copy backwards so that values are read before they are overwritten
+            for (long remaining = length; remaining > 0; ) {
+                final int chunk = (int) Math.min(remaining, buffer.length);
+                remaining -= chunk;
+                src.get(srcIndex + remaining, buffer, 0, chunk);
+                dest.set(destIndex + remaining, buffer, 0, chunk);
+            }
+        } else {
+            for (long pos = 0; pos < length; ) {
+                final int chunk = (int) Math.min(length - pos, buffer.length);
+                src.get(srcIndex + pos, buffer, 0, chunk);
+                dest.set(destIndex + pos, buffer, 0, chunk);
+                pos += chunk;
+            }
+        }
+    }
+
+
     /**
      * Allocate a new {@link DoubleArray}.
      * @param size          the initial length of the array
@@ -652,9 +869,8 @@ public class BigArrays extends AbstractComponent {
         } else {
             AbstractArray arr = (AbstractArray) array;
             final DoubleArray newArray = newDoubleArray(size, arr.clearOnResize);
-            for (long i = 0, end = Math.min(size, array.size()); i < end; ++i) {
-                newArray.set(i, array.get(i));
-            }
+            final double[] rawArray = ((DoubleArrayWrapper) array).array;
+            newArray.set(0, rawArray, 0, (int) Math.min(array.size(), newArray.size()));
             array.close();
             return newArray;
         }
@@ -669,6 +885,34 @@ public class BigArrays extends AbstractComponent {
         return resize(array, newSize);
     }
 
+    /**
+     * Copy <code>length</code> values from <code>src</code> starting at <code>srcIndex</code> to <code>dest</code> starting at
+     * <code>destIndex</code>. Like {@link System#arraycopy}, this works even if <code>src</code> and <code>dest</code> are the
+     * same array and the source and destination ranges overlap.
+     */
+    public void copy(DoubleArray src, long srcIndex, DoubleArray dest, long destIndex, long length) {
+        assert srcIndex + length <= src.size();
+        assert destIndex + length <= dest.size();
+        final double[] buffer = new double[(int) Math.min(length, DOUBLE_PAGE_SIZE)];
+        if (src == dest && destIndex > srcIndex && destIndex < srcIndex + length) {
+            // copy backwards so that values are read before they are overwritten
+            for (long remaining = length; remaining > 0; ) {
+                final int chunk = (int) Math.min(remaining, buffer.length);
+                remaining -= chunk;
+                src.get(srcIndex + remaining, buffer, 0, chunk);
+                dest.set(destIndex + remaining, buffer, 0, chunk);
+            }
+        } else {
+            for (long pos = 0; pos < length; ) {
+                final int chunk = (int) Math.min(length - pos, buffer.length);
+                src.get(srcIndex + pos, buffer, 0, chunk);
+                dest.set(destIndex + pos, buffer, 0, chunk);
+                pos += chunk;
+            }
+        }
+    }
+
+
     /**
      * Allocate a new {@link FloatArray}.
      * @param size          the initial length of the array
@@ -699,9 +943,8 @@ public class BigArrays extends AbstractComponent {
         } else {
             AbstractArray arr = (AbstractArray) array;
             final FloatArray newArray = newFloatArray(size, arr.clearOnResize);
-            for (long i = 0, end = Math.min(size, array.size()); i < end; ++i) {
-                newArray.set(i, array.get(i));
-            }
+            final float[] rawArray = ((FloatArrayWrapper) array).array;
+            newArray.set(0, rawArray, 0, (int) Math.min(array.size(), newArray.size()));
             arr.close();
             return newArray;
         }
@@ -716,6 +959,34 @@ public class BigArrays extends AbstractComponent {
         return resize(array, newSize);
     }
 
+    /**
+     * Copy <code>length</code> values from <code>src</code> starting at <code>srcIndex</code> to <code>dest</code> starting at
+     * <code>destIndex</code>. Like {@link System#arraycopy}, this works even if <code>src</code> and <code>dest</code> are the
+     * same array and the source and destination ranges overlap.
+     */
+    public void copy(FloatArray src, long srcIndex, FloatArray dest, long destIndex, long length) {
+        assert srcIndex + length <= src.size();
+        assert destIndex + length <= dest.size();
+        final float[] buffer = new float[(int) Math.min(length, FLOAT_PAGE_SIZE)];
+        if (src == dest && destIndex > srcIndex && destIndex < srcIndex + length) {
+            // copy backwards so that values are read before they are overwritten
+            for (long remaining = length; remaining > 0; ) {
+                final int chunk = (int) Math.min(remaining, buffer.length);
+                remaining -= chunk;
+                src.get(srcIndex + remaining, buffer, 0, chunk);
+                dest.set(destIndex + remaining, buffer, 0, chunk);
+            }
+        } else {
+            for (long pos = 0; pos < length; ) {
+                final int chunk = (int) Math.min(length - pos, buffer.length);
+                src.get(srcIndex + pos, buffer, 0, chunk);
+                dest.set(destIndex + pos, buffer, 0, chunk);
+                pos += chunk;
+            }
+        }
+    }
+
+
     /**
      * Allocate a new {@link ObjectArray}.
      * @param size          the initial length of the array
@@ -106,4 +106,34 @@ final class BigLongArray extends AbstractBigArray implements LongArray {
         }
     }
 
+    @Override
+    public void get(long index, long[] buf, int offset, int len) {
+        assert index + len <= size();
+        int pageIndex = pageIndex(index);
+        int indexInPage = indexInPage(index);
+        while (len > 0) {
+            final int copyLen = Math.min(len, pageSize() - indexInPage);
+            System.arraycopy(pages[pageIndex], indexInPage, buf, offset, copyLen);
+            ++pageIndex;
+            indexInPage = 0;
+            offset += copyLen;
+            len -= copyLen;
+        }
+    }
+
+    @Override
+    public void set(long index, long[] buf, int offset, int len) {
+        assert index + len <= size();
+        int pageIndex = pageIndex(index);
+        int indexInPage = indexInPage(index);
+        while (len > 0) {
+            final int copyLen = Math.min(len, pageSize() - indexInPage);
+            System.arraycopy(buf, offset, pages[pageIndex], indexInPage, copyLen);
+            ++pageIndex;
+            indexInPage = 0;
+            offset += copyLen;
+            len -= copyLen;
+        }
+    }
+
 }
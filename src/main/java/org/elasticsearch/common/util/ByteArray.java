@@ -43,6 +43,11 @@ public interface ByteArray extends BigArray {
      */
     public abstract boolean get(long index, int len, BytesRef ref);
 
+    /**
+     * Bulk get: copy <code>len</code> values starting at <code>index</code> to <code>buf</code>.
+     */
+    public abstract void get(long index, byte[] buf, int offset, int len);
+
     /**
      * Bulk set.
      */
@@ -44,4 +44,14 @@ public interface FloatArray extends BigArray {
      */
     public abstract void fill(long fromIndex, long toIndex, float value);
 
+    /**
+     * Bulk get: copy <code>len</code> values starting at <code>index</code> to <code>buf</code>.
+     */
+    public abstract void get(long index, float[] buf, int offset, int len);
+
+    /**
+     * Bulk set: copy <code>len</code> values from <code>buf</code> starting at <code>index</code>.
+     */
+    public abstract void set(long index, float[] buf, int offset, int len);
+
 }
@@ -95,6 +95,14 @@ public final class XContentBuilder implements BytesStream {
         this.generator = xContent.createGenerator(bos);
     }
 
+    /**
+     * Constructs a new builder on top of the provided generator, that writes to the provided OutputStream.
+     */
+    public XContentBuilder(XContentGenerator generator, OutputStream bos) {
+        this.bos = bos;
+        this.generator = generator;
+    }
+
     public XContentBuilder fieldCaseConversion(FieldCaseConversion fieldCaseConversion) {
         this.fieldCaseConversion = fieldCaseConversion;
         return this;
@@ -874,6 +882,14 @@ public final class XContentBuilder implements BytesStream {
         return this;
     }
 
+    /**
+     * Writes a raw field whose content type is already known, see {@link XContentFactory#xContentType(BytesReference)}.
+     */
+    public XContentBuilder rawField(String fieldName, BytesReference content, XContentType contentType) throws IOException {
+        generator.writeRawField(fieldName, content, contentType, bos);
+        return this;
+    }
+
     public XContentBuilder timeValueField(XContentBuilderString rawFieldName, XContentBuilderString readableFieldName, TimeValue timeValue) throws IOException {
         if (humanReadable) {
             field(readableFieldName, timeValue.toString());
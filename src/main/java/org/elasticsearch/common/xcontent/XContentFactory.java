@@ -23,7 +23,6 @@ import com.fasterxml.jackson.dataformat.cbor.CBORConstants;
 import com.fasterxml.jackson.dataformat.smile.SmileConstants;
 import org.elasticsearch.ElasticsearchIllegalArgumentException;
 import org.elasticsearch.ElasticsearchParseException;
-import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.xcontent.cbor.CborXContent;
 import org.elasticsearch.common.xcontent.json.JsonXContent;
@@ -42,6 +41,11 @@ public class XContentFactory {
 
     private static int GUESS_HEADER_LENGTH = 20;
 
+    // the CBOR self-describe tag (55799), encoded as a major type 6 item with a 2 bytes argument
+    private static final byte CBOR_SELF_DESCRIBE_1 = (byte) 0xd9;
+    private static final byte CBOR_SELF_DESCRIBE_2 = (byte) 0xd9;
+    private static final byte CBOR_SELF_DESCRIBE_3 = (byte) 0xf7;
+
     /**
      * Returns a content builder using JSON format ({@link org.elasticsearch.common.xcontent.XContentType#JSON}.
      */
@@ -231,9 +235,15 @@ public class XContentFactory {
                 return XContentType.YAML;
             }
         }
-        if (first == (CBORConstants.BYTE_OBJECT_INDEFINITE & 0xff)){
+        if ((first & CBORConstants.MASK_MAJOR_TYPE) == CBORConstants.PREFIX_TYPE_OBJECT) {
             return XContentType.CBOR;
         }
+        if (first == (CBOR_SELF_DESCRIBE_1 & 0xff) && second == (CBOR_SELF_DESCRIBE_2 & 0xff)) {
+            int third = si.read();
+            if (third == (CBOR_SELF_DESCRIBE_3 & 0xff)) {
+                return XContentType.CBOR;
+            }
+        }
         for (int i = 2; i < GUESS_HEADER_LENGTH; i++) {
             int val = si.read();
             if (val == -1) {
@@ -250,7 +260,20 @@ public class XContentFactory {
      * Guesses the content type based on the provided bytes.
      */
     public static XContentType xContentType(byte[] data, int offset, int length) {
-        return xContentType(new BytesArray(data, offset, length));
+        length = length < GUESS_HEADER_LENGTH ? length : GUESS_HEADER_LENGTH;
+        if (length == 0) {
+            return null;
+        }
+        XContentType type = xContentType(data[offset], length > 1 ? data[offset + 1] : 0, length > 2 ? data[offset + 2] : 0, length);
+        if (type != null) {
+            return type;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            if (data[i] == '{') {
+                return XContentType.JSON;
+            }
+        }
+        return null;
     }
 
     public static XContent xContent(BytesReference bytes) {
@@ -262,31 +285,57 @@ public class XContentFactory {
     }
 
     /**
-     * Guesses the content type based on the provided bytes.
+     * Guesses the content type based on the provided bytes. The bytes are read in place, they are neither copied
+     * nor, for paged references, gathered into a single array.
      */
     public static XContentType xContentType(BytesReference bytes) {
+        if (bytes.hasArray()) {
+            return xContentType(bytes.array(), bytes.arrayOffset(), bytes.length());
+        }
         int length = bytes.length() < GUESS_HEADER_LENGTH ? bytes.length() : GUESS_HEADER_LENGTH;
         if (length == 0) {
             return null;
         }
-        byte first = bytes.get(0);
+        XContentType type = xContentType(bytes.get(0), length > 1 ? bytes.get(1) : 0, length > 2 ? bytes.get(2) : 0, length);
+        if (type != null) {
+            return type;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes.get(i) == '{') {
+                return XContentType.JSON;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Guesses the content type based on the first bytes of the content.
+     * @param length the number of bytes of the content, capped to the guess header length
+     */
+    private static XContentType xContentType(byte first, byte second, byte third, int length) {
         if (first == '{') {
             return XContentType.JSON;
         }
-        if (length > 2 && first == SmileConstants.HEADER_BYTE_1 && bytes.get(1) == SmileConstants.HEADER_BYTE_2 && bytes.get(2) == SmileConstants.HEADER_BYTE_3) {
+        if (length > 2 && first == SmileConstants.HEADER_BYTE_1 && second == SmileConstants.HEADER_BYTE_2 && third == SmileConstants.HEADER_BYTE_3) {
             return XContentType.SMILE;
         }
-        if (length > 2 && first == '-' && bytes.get(1) == '-' && bytes.get(2) == '-') {
+        if (length > 2 && first == '-' && second == '-' && third == '-') {
             return XContentType.YAML;
         }
-        if (first == CBORConstants.BYTE_OBJECT_INDEFINITE){
+        if (isCbor(first, second, third, length)) {
             return XContentType.CBOR;
         }
-        for (int i = 0; i < length; i++) {
-            if (bytes.get(i) == '{') {
-                return XContentType.JSON;
-            }
-        }
         return null;
     }
+
+    /**
+     * CBOR content is either an object, whose first byte has major type 5 (definite or indefinite length map), or
+     * starts with the self-describe tag 55799 (0xd9d9f7).
+     */
+    private static boolean isCbor(byte first, byte second, byte third, int length) {
+        if ((first & CBORConstants.MASK_MAJOR_TYPE) == CBORConstants.PREFIX_TYPE_OBJECT) {
+            return true;
+        }
+        return length > 2 && first == CBOR_SELF_DESCRIBE_1 && second == CBOR_SELF_DESCRIBE_2 && third == CBOR_SELF_DESCRIBE_3;
+    }
 }
@@ -119,6 +119,12 @@ public interface XContentGenerator {
 
     void writeRawField(String fieldName, BytesReference content, OutputStream bos) throws IOException;
 
+    /**
+     * Same as {@link #writeRawField(String, BytesReference, OutputStream)} for content whose type is already known,
+     * <code>null</code> if the content is not structured, so that it doesn't need to be guessed again.
+     */
+    void writeRawField(String fieldName, BytesReference content, XContentType contentType, OutputStream bos) throws IOException;
+
     void copyCurrentStructure(XContentParser parser) throws IOException;
 
     void flush() throws IOException;
@@ -134,6 +134,14 @@ public interface XContentParser extends Closeable{
 
     Map<String, Object> mapOrderedAndClose() throws IOException;
 
+    /**
+     * Same as {@link #mapOrdered()}, but reads the content into a compact representation that allocates much less:
+     * see {@link org.elasticsearch.common.xcontent.support.CompactXContentReader}.
+     */
+    Map<String, Object> mapCompact() throws IOException;
+
+    Map<String, Object> mapCompactAndClose() throws IOException;
+
     String text() throws IOException;
 
     String textOrNull() throws IOException;
@@ -288,7 +288,11 @@ public class JsonXContentGenerator implements XContentGenerator {
 
     @Override
     public final void writeRawField(String fieldName, BytesReference content, OutputStream bos) throws IOException {
-        XContentType contentType = XContentFactory.xContentType(content);
+        writeRawField(fieldName, content, XContentFactory.xContentType(content), bos);
+    }
+
+    @Override
+    public final void writeRawField(String fieldName, BytesReference content, XContentType contentType, OutputStream bos) throws IOException {
         if (contentType != null) {
             writeObjectRaw(fieldName, content, bos);
         } else {
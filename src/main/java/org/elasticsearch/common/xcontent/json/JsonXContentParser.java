@@ -184,6 +184,23 @@ public class JsonXContentParser extends AbstractXContentParser {
         return parser.getBinaryValue();
     }
 
+    /**
+     * Returns the offset in bytes of the input where the current token starts, or <tt>-1</tt> if the underlying
+     * parser does not track byte offsets (YAML). Note that for JSON, the location of a value that follows a field
+     * name is the location of the field name, possibly including the comma that precedes it.
+     */
+    public long tokenByteOffset() {
+        return parser.getTokenLocation().getByteOffset();
+    }
+
+    /**
+     * Returns the offset in bytes of the input right after the last byte consumed by the parser, or <tt>-1</tt>
+     * if the underlying parser does not track byte offsets (YAML).
+     */
+    public long currentByteOffset() {
+        return parser.getCurrentLocation().getByteOffset();
+    }
+
     @Override
     public void close() {
         IOUtils.closeWhileHandlingException(parser);
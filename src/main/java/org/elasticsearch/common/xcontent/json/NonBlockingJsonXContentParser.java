@@ -0,0 +1,471 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.xcontent.json;
+
+import com.google.common.base.Charsets;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.support.FieldNameCache;
+import org.elasticsearch.common.xcontent.support.NonBlockingXContentParser;
+
+import java.io.IOException;
+
+/**
+ * A {@link NonBlockingXContentParser} for JSON. It accepts the same extensions as {@link JsonXContent}: comments
+ * and unquoted field names.
+ */
+public class NonBlockingJsonXContentParser extends NonBlockingXContentParser {
+
+    // states of the scan that looks for the end of a container
+    private static final int LOOK_DEFAULT = 0;
+    private static final int LOOK_STRING = 1;
+    private static final int LOOK_STRING_ESCAPE = 2;
+    private static final int LOOK_SLASH = 3;
+    private static final int LOOK_LINE_COMMENT = 4;
+    private static final int LOOK_BLOCK_COMMENT = 5;
+    private static final int LOOK_BLOCK_COMMENT_STAR = 6;
+
+    private final FieldNameCache nameCache = FieldNameCache.forType(XContentType.JSON);
+
+    // whether the comma or colon that precedes the next token has been consumed
+    private boolean separatorSeen;
+    // the number of bytes after pos that the scan of the current string has checked
+    private int stringScanned;
+    private boolean stringEscaped;
+    // the resumable state of the scan that looks for the end of the current container, offsets are relative to pos
+    private int lookScanned;
+    private int lookDepth = 1;
+    private int lookState;
+
+    @Override
+    public XContentType contentType() {
+        return XContentType.JSON;
+    }
+
+    @Override
+    public boolean estimatedNumberType() {
+        return true;
+    }
+
+    private void advance(int length) {
+        pos += length;
+        lookScanned = Math.max(0, lookScanned - length);
+    }
+
+    private XContentParser.Token token(XContentParser.Token token, int end) {
+        advance(end - pos);
+        separatorSeen = false;
+        stringScanned = 0;
+        stringEscaped = false;
+        lookScanned = 0;
+        lookDepth = 1;
+        lookState = LOOK_DEFAULT;
+        return token;
+    }
+
+    /**
+     * Skip whitespace and comments, returns <tt>false</tt> if more input is needed to find the next token.
+     */
+    private boolean skipWhitespace() {
+        while (pos < limit) {
+            final byte b = buffer[pos];
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                advance(1);
+            } else if (b == '/') {
+                final int end = commentEnd();
+                if (end < 0) {
+                    return false;
+                }
+                advance(end - pos);
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the offset right after the comment that starts at pos, or <tt>-1</tt> if its end has not been fed.
+     */
+    private int commentEnd() {
+        if (pos + 1 >= limit) {
+            return isEndOfInput() ? unexpected(pos) : -1;
+        }
+        if (buffer[pos + 1] == '/') {
+            for (int i = pos + 2; i < limit; ++i) {
+                if (buffer[i] == '\n' || buffer[i] == '\r') {
+                    return i + 1;
+                }
+            }
+            return isEndOfInput() ? limit : -1;
+        } else if (buffer[pos + 1] == '*') {
+            for (int i = pos + 3; i < limit; ++i) {
+                if (buffer[i] == '/' && buffer[i - 1] == '*') {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+        return unexpected(pos);
+    }
+
+    private int unexpected(int offset) {
+        if (offset >= limit) {
+            throw new ElasticsearchParseException("unexpected end of input");
+        }
+        throw new ElasticsearchParseException("unexpected character [" + (char) (buffer[offset] & 0xFF) + "] at offset [" + offset + "]");
+    }
+
+    @Override
+    protected XContentParser.Token readToken() throws IOException {
+        if (!skipWhitespace()) {
+            if (currentToken() == null && isEndOfInput() && pos == limit) {
+                // empty document
+                return null;
+            }
+            return needInput();
+        }
+        final XContentParser.Token current = currentToken();
+        if (current == XContentParser.Token.FIELD_NAME && !separatorSeen) {
+            if (buffer[pos] != ':') {
+                unexpected(pos);
+            }
+            advance(1);
+            separatorSeen = true;
+            if (!skipWhitespace()) {
+                return needInput();
+            }
+        } else if (current != null && current != XContentParser.Token.FIELD_NAME && !separatorSeen) {
+            final byte b = buffer[pos];
+            if (b == '}' || b == ']') {
+                return token(endContainer(b == '}'), pos + 1);
+            }
+            if (current != XContentParser.Token.START_OBJECT && current != XContentParser.Token.START_ARRAY) {
+                if (b != ',') {
+                    unexpected(pos);
+                }
+                advance(1);
+                separatorSeen = true;
+                if (!skipWhitespace()) {
+                    return needInput();
+                }
+            }
+        }
+        if (expectsFieldName()) {
+            return fieldName();
+        }
+        return value();
+    }
+
+    private XContentParser.Token fieldName() {
+        final int end;
+        if (buffer[pos] == '"') {
+            end = stringEnd();
+            if (end < 0) {
+                return needInput();
+            }
+            text = nameCache.canonicalize(decodeString(pos + 1, end - 1));
+        } else {
+            end = unquotedNameEnd();
+            if (end < 0) {
+                return needInput();
+            }
+            text = nameCache.canonicalize(new String(buffer, pos, end - pos, Charsets.UTF_8));
+        }
+        return token(XContentParser.Token.FIELD_NAME, end);
+    }
+
+    private int unquotedNameEnd() {
+        int i = pos;
+        while (i < limit) {
+            final byte b = buffer[i];
+            if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_' || b == '$' || b < 0) {
+                ++i;
+            } else {
+                break;
+            }
+        }
+        if (i == pos) {
+            unexpected(pos);
+        }
+        return i < limit || isEndOfInput() ? i : -1;
+    }
+
+    private XContentParser.Token value() {
+        final byte b = buffer[pos];
+        switch (b) {
+            case '{':
+                return token(startContainer(true), pos + 1);
+            case '[':
+                return token(startContainer(false), pos + 1);
+            case '"': {
+                final int end = stringEnd();
+                if (end < 0) {
+                    return needInput();
+                }
+                text = decodeString(pos + 1, end - 1);
+                return token(XContentParser.Token.VALUE_STRING, end);
+            }
+            case 't':
+                return literal("true", XContentParser.Token.VALUE_BOOLEAN, true);
+            case 'f':
+                return literal("false", XContentParser.Token.VALUE_BOOLEAN, false);
+            case 'n':
+                return literal("null", XContentParser.Token.VALUE_NULL, false);
+            default:
+                if (b == '-' || (b >= '0' && b <= '9')) {
+                    return number();
+                }
+                unexpected(pos);
+                return null;
+        }
+    }
+
+    private XContentParser.Token literal(String literal, XContentParser.Token token, boolean value) {
+        final int length = literal.length();
+        if (limit - pos < length) {
+            return needInput();
+        }
+        for (int i = 0; i < length; ++i) {
+            if (buffer[pos + i] != literal.charAt(i)) {
+                unexpected(pos + i);
+            }
+        }
+        booleanValue = value;
+        return token(token, pos + length);
+    }
+
+    private XContentParser.Token number() {
+        boolean integral = true;
+        int i = pos;
+        for (; i < limit; ++i) {
+            final byte b = buffer[i];
+            if (b == '.' || b == 'e' || b == 'E' || b == '+') {
+                integral = false;
+            } else if (b != '-' && (b < '0' || b > '9')) {
+                break;
+            }
+        }
+        if (i == limit && !isEndOfInput()) {
+            // the number might go on in the next chunk
+            return needInput();
+        }
+        final String number = new String(buffer, pos, i - pos, Charsets.ISO_8859_1);
+        if (!isNumber(pos, i)) {
+            throw new ElasticsearchParseException("malformed number [" + number + "] at offset [" + pos + "]");
+        }
+        try {
+            if (integral) {
+                longValue = Long.parseLong(number);
+                numberType = longValue == (int) longValue ? XContentParser.NumberType.INT : XContentParser.NumberType.LONG;
+            } else {
+                doubleValue = Double.parseDouble(number);
+                numberType = XContentParser.NumberType.DOUBLE;
+            }
+        } catch (NumberFormatException e) {
+            if (!integral) {
+                throw new ElasticsearchParseException("malformed number [" + number + "] at offset [" + pos + "]", e);
+            }
+            // an integer that doesn't fit in a long
+            doubleValue = Double.parseDouble(number);
+            numberType = XContentParser.NumberType.DOUBLE;
+        }
+        return token(XContentParser.Token.VALUE_NUMBER, i);
+    }
+
+    /**
+     * Returns whether <tt>buffer[from:to]</tt> follows the JSON grammar of numbers, which like Jackson does not
+     * allow leading zeros, leading plus signs or missing digits around the decimal point.
+     */
+    private boolean isNumber(int from, int to) {
+        int i = from;
+        if (i < to && buffer[i] == '-') {
+            ++i;
+        }
+        if (i < to && buffer[i] == '0') {
+            ++i;
+        } else {
+            final int start = i;
+            i = digits(i, to);
+            if (i == start) {
+                return false;
+            }
+        }
+        if (i < to && buffer[i] == '.') {
+            final int start = ++i;
+            i = digits(i, to);
+            if (i == start) {
+                return false;
+            }
+        }
+        if (i < to && (buffer[i] == 'e' || buffer[i] == 'E')) {
+            ++i;
+            if (i < to && (buffer[i] == '+' || buffer[i] == '-')) {
+                ++i;
+            }
+            final int start = i;
+            i = digits(i, to);
+            if (i == start) {
+                return false;
+            }
+        }
+        return i == to;
+    }
+
+    private int digits(int from, int to) {
+        while (from < to && buffer[from] >= '0' && buffer[from] <= '9') {
+            ++from;
+        }
+        return from;
+    }
+
+    /**
+     * Returns the offset right after the closing quote of the string that starts at pos, or <tt>-1</tt> if it has
+     * not been fed yet. The scan resumes where it stopped when called again.
+     */
+    private int stringEnd() {
+        int i = pos + 1 + stringScanned;
+        for (; i < limit; ++i) {
+            final byte b = buffer[i];
+            if (stringEscaped) {
+                stringEscaped = false;
+            } else if (b == '\\') {
+                stringEscaped = true;
+            } else if (b == '"') {
+                return i + 1;
+            }
+        }
+        stringScanned = i - pos - 1;
+        return -1;
+    }
+
+    private String decodeString(int from, int to) {
+        int i = from;
+        while (i < to && buffer[i] != '\\') {
+            ++i;
+        }
+        if (i == to) {
+            return new String(buffer, from, to - from, Charsets.UTF_8);
+        }
+        final StringBuilder builder = new StringBuilder(to - from);
+        int start = from;
+        while (i < to) {
+            if (buffer[i] != '\\') {
+                ++i;
+                continue;
+            }
+            builder.append(new String(buffer, start, i - start, Charsets.UTF_8));
+            final byte escaped = buffer[i + 1];
+            i += 2;
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    builder.append((char) escaped);
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 > to) {
+                        unexpected(to);
+                    }
+                    int c = 0;
+                    for (int j = 0; j < 4; ++j) {
+                        final int digit = Character.digit(buffer[i + j], 16);
+                        if (digit < 0) {
+                            unexpected(i + j);
+                        }
+                        c = (c << 4) | digit;
+                    }
+                    builder.append((char) c);
+                    i += 4;
+                    break;
+                default:
+                    unexpected(i - 1);
+            }
+            start = i;
+        }
+        builder.append(new String(buffer, start, to - start, Charsets.UTF_8));
+        return builder.toString();
+    }
+
+    @Override
+    protected boolean containerComplete() {
+        int i = pos + lookScanned;
+        for (; i < limit && lookDepth > 0; ++i) {
+            final byte b = buffer[i];
+            switch (lookState) {
+                case LOOK_DEFAULT:
+                    if (b == '{' || b == '[') {
+                        ++lookDepth;
+                    } else if (b == '}' || b == ']') {
+                        --lookDepth;
+                    } else if (b == '"') {
+                        lookState = LOOK_STRING;
+                    } else if (b == '/') {
+                        lookState = LOOK_SLASH;
+                    }
+                    break;
+                case LOOK_STRING:
+                    if (b == '\\') {
+                        lookState = LOOK_STRING_ESCAPE;
+                    } else if (b == '"') {
+                        lookState = LOOK_DEFAULT;
+                    }
+                    break;
+                case LOOK_STRING_ESCAPE:
+                    lookState = LOOK_STRING;
+                    break;
+                case LOOK_SLASH:
+                    lookState = b == '*' ? LOOK_BLOCK_COMMENT : b == '/' ? LOOK_LINE_COMMENT : LOOK_DEFAULT;
+                    break;
+                case LOOK_LINE_COMMENT:
+                    if (b == '\n' || b == '\r') {
+                        lookState = LOOK_DEFAULT;
+                    }
+                    break;
+                case LOOK_BLOCK_COMMENT:
+                    if (b == '*') {
+                        lookState = LOOK_BLOCK_COMMENT_STAR;
+                    }
+                    break;
+                case LOOK_BLOCK_COMMENT_STAR:
+                    lookState = b == '/' ? LOOK_DEFAULT : b == '*' ? LOOK_BLOCK_COMMENT_STAR : LOOK_BLOCK_COMMENT;
+                    break;
+            }
+        }
+        lookScanned = i - pos;
+        return lookDepth == 0;
+    }
+}
@@ -0,0 +1,493 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.xcontent.smile;
+
+import com.google.common.base.Charsets;
+import org.apache.lucene.util.ArrayUtil;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.support.FieldNameCache;
+import org.elasticsearch.common.xcontent.support.NonBlockingXContentParser;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * A {@link NonBlockingXContentParser} for SMILE, see the
+ * <a href="https://github.com/FasterXML/smile-format-specification">format specification</a>.
+ */
+public class NonBlockingSmileXContentParser extends NonBlockingXContentParser {
+
+    // same limit as Jackson: the tables are reset once they are full
+    private static final int MAX_SHARED_REFERENCES = 1024;
+
+    private static final int HEADER_SHARED_NAMES = 0x01;
+    private static final int HEADER_SHARED_VALUES = 0x02;
+
+    private static final int END_OF_STRING = 0xFC;
+    private static final int END_OF_CONTENT = 0xFF;
+
+    private final FieldNameCache nameCache = FieldNameCache.forType(XContentType.SMILE);
+
+    private boolean headerRead;
+    // the shared tables are enabled by default when there is no header, like Jackson does
+    private String[] sharedNames = new String[64];
+    private int sharedNamesCount;
+    private String[] sharedValues;
+    private int sharedValuesCount;
+
+    // the resumable state of the scan that looks for the end of the current container, offsets are relative to pos
+    private int lookScanned;
+    private boolean[] lookObjects = new boolean[16];
+    private int lookDepth;
+    private boolean lookAfterName;
+
+    @Override
+    public XContentType contentType() {
+        return XContentType.SMILE;
+    }
+
+    @Override
+    public boolean estimatedNumberType() {
+        return false;
+    }
+
+    private XContentParser.Token token(XContentParser.Token token, int end) {
+        pos = end;
+        lookScanned = 0;
+        lookDepth = 0;
+        lookAfterName = false;
+        return token;
+    }
+
+    @Override
+    protected XContentParser.Token readToken() throws IOException {
+        if (!headerRead && !readHeader()) {
+            return limit == pos && isEndOfInput() ? null : needInput();
+        }
+        if (pos == limit) {
+            if (currentToken() == null && isEndOfInput()) {
+                // empty document
+                return null;
+            }
+            return needInput();
+        }
+        final boolean keyMode = expectsFieldName();
+        final int length = tokenLength(pos, keyMode);
+        if (length < 0) {
+            return needInput();
+        }
+        final int end = pos + length;
+        final int b = buffer[pos] & 0xFF;
+        return keyMode ? fieldName(b, end) : value(b, end);
+    }
+
+    private boolean readHeader() {
+        if (pos < limit && buffer[pos] != ':') {
+            // no header, use the defaults
+            headerRead = true;
+            return true;
+        }
+        if (limit - pos < 4) {
+            return false;
+        }
+        if (buffer[pos + 1] != ')' || buffer[pos + 2] != '\n') {
+            throw new ElasticsearchParseException("malformed SMILE header");
+        }
+        final int flags = buffer[pos + 3] & 0xFF;
+        if ((flags & HEADER_SHARED_NAMES) == 0) {
+            sharedNames = null;
+        }
+        if ((flags & HEADER_SHARED_VALUES) != 0) {
+            sharedValues = new String[64];
+        }
+        pos += 4;
+        headerRead = true;
+        return true;
+    }
+
+    private XContentParser.Token fieldName(int b, int end) {
+        if (b == 0xFB) {
+            return token(endContainer(true), end);
+        }
+        final String name;
+        if (b == 0x20) {
+            name = "";
+        } else if (b >= 0x30 && b <= 0x33) {
+            name = sharedName(((b & 0x03) << 8) | (buffer[pos + 1] & 0xFF));
+        } else if (b >= 0x40 && b <= 0x7F) {
+            name = sharedName(b & 0x3F);
+        } else {
+            // 0x34 long names end with a marker, others have their length in the key byte
+            final int to = b == 0x34 ? end - 1 : end;
+            name = nameCache.canonicalize(new String(buffer, pos + 1, to - pos - 1, b >= 0x80 && b < 0xC0 ? Charsets.ISO_8859_1 : Charsets.UTF_8));
+            if (sharedNames != null) {
+                if (sharedNamesCount == sharedNames.length) {
+                    if (sharedNamesCount == MAX_SHARED_REFERENCES) {
+                        sharedNamesCount = 0;
+                    } else {
+                        sharedNames = Arrays.copyOf(sharedNames, Math.min(MAX_SHARED_REFERENCES, sharedNamesCount * 2));
+                    }
+                }
+                sharedNames[sharedNamesCount++] = name;
+            }
+        }
+        text = name;
+        return token(XContentParser.Token.FIELD_NAME, end);
+    }
+
+    private String sharedName(int index) {
+        if (sharedNames == null || index >= sharedNamesCount) {
+            throw new ElasticsearchParseException("invalid shared name reference [" + index + "] at offset [" + pos + "]");
+        }
+        return sharedNames[index];
+    }
+
+    private String sharedValue(int index) {
+        if (sharedValues == null || index >= sharedValuesCount) {
+            throw new ElasticsearchParseException("invalid shared value reference [" + index + "] at offset [" + pos + "]");
+        }
+        return sharedValues[index];
+    }
+
+    private XContentParser.Token string(String value, int end) {
+        text = value;
+        return token(XContentParser.Token.VALUE_STRING, end);
+    }
+
+    private XContentParser.Token sharedString(String value, int end) {
+        if (sharedValues != null) {
+            if (sharedValuesCount == sharedValues.length) {
+                if (sharedValuesCount == MAX_SHARED_REFERENCES) {
+                    sharedValuesCount = 0;
+                } else {
+                    sharedValues = Arrays.copyOf(sharedValues, Math.min(MAX_SHARED_REFERENCES, sharedValuesCount * 2));
+                }
+            }
+            sharedValues[sharedValuesCount++] = value;
+        }
+        return string(value, end);
+    }
+
+    private XContentParser.Token number(XContentParser.NumberType type, int end) {
+        numberType = type;
+        return token(XContentParser.Token.VALUE_NUMBER, end);
+    }
+
+    private XContentParser.Token value(int b, int end) {
+        switch (b >> 5) {
+            case 0: // 0x00 - 0x1F
+                if (b == 0) {
+                    break;
+                }
+                return string(sharedValue(b - 1), end);
+            case 1: // 0x20 - 0x3F
+                switch (b) {
+                    case 0x20:
+                        return string("", end);
+                    case 0x21:
+                        return token(XContentParser.Token.VALUE_NULL, end);
+                    case 0x22:
+                    case 0x23:
+                        booleanValue = b == 0x23;
+                        return token(XContentParser.Token.VALUE_BOOLEAN, end);
+                    case 0x24:
+                        longValue = zigzag(readVLong(pos + 1));
+                        return number(XContentParser.NumberType.INT, end);
+                    case 0x25:
+                        longValue = zigzag(readVLong(pos + 1));
+                        return number(XContentParser.NumberType.LONG, end);
+                    case 0x26: {
+                        // there is no big integer number type, like for JSON
+                        doubleValue = new BigInteger(read7BitBinary(pos + 1)).doubleValue();
+                        return number(XContentParser.NumberType.DOUBLE, end);
+                    }
+                    case 0x28:
+                        doubleValue = Float.intBitsToFloat((int) readFixed(pos + 1, 5));
+                        return number(XContentParser.NumberType.FLOAT, end);
+                    case 0x29:
+                        doubleValue = Double.longBitsToDouble(readFixed(pos + 1, 10));
+                        return number(XContentParser.NumberType.DOUBLE, end);
+                    case 0x2A: {
+                        final int scale = (int) zigzag(readVLong(pos + 1));
+                        final BigInteger unscaled = new BigInteger(read7BitBinary(vintEnd(pos + 1)));
+                        doubleValue = new BigDecimal(unscaled, scale).doubleValue();
+                        return number(XContentParser.NumberType.DOUBLE, end);
+                    }
+                }
+                break;
+            case 2: // 0x40 - 0x5F
+            case 3: // 0x60 - 0x7F
+                return sharedString(new String(buffer, pos + 1, end - pos - 1, Charsets.ISO_8859_1), end);
+            case 4: // 0x80 - 0x9F
+            case 5: // 0xA0 - 0xBF
+                return sharedString(new String(buffer, pos + 1, end - pos - 1, Charsets.UTF_8), end);
+            case 6: // 0xC0 - 0xDF
+                longValue = zigzag(b & 0x1F);
+                return number(XContentParser.NumberType.INT, end);
+            default:
+                switch (b) {
+                    case 0xE0:
+                    case 0xE4:
+                        return string(new String(buffer, pos + 1, end - pos - 2, b == 0xE0 ? Charsets.ISO_8859_1 : Charsets.UTF_8), end);
+                    case 0xE8:
+                        binaryValue = read7BitBinary(pos + 1);
+                        return token(XContentParser.Token.VALUE_EMBEDDED_OBJECT, end);
+                    case 0xEC:
+                    case 0xED:
+                    case 0xEE:
+                    case 0xEF:
+                        return string(sharedValue(((b & 0x03) << 8) | (buffer[pos + 1] & 0xFF)), end);
+                    case 0xF8:
+                        return token(startContainer(false), end);
+                    case 0xF9:
+                        return token(endContainer(false), end);
+                    case 0xFA:
+                        return token(startContainer(true), end);
+                    case 0xFD: {
+                        final int from = vintEnd(pos + 1);
+                        binaryValue = new byte[end - from];
+                        System.arraycopy(buffer, from, binaryValue, 0, end - from);
+                        return token(XContentParser.Token.VALUE_EMBEDDED_OBJECT, end);
+                    }
+                    case END_OF_CONTENT:
+                        if (currentToken() == null) {
+                            pos = end;
+                            return null;
+                        }
+                        break;
+                }
+        }
+        throw new ElasticsearchParseException("unexpected SMILE value byte [0x" + Integer.toHexString(b) + "] at offset [" + pos + "]");
+    }
+
+    private static long zigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Returns the offset right after the variable-length integer that starts at <tt>at</tt>, or <tt>-1</tt>
+     * if it has not been fully fed. The last byte of a vint has its high bit set.
+     */
+    private int vintEnd(int at) {
+        for (int i = at; i < limit; ++i) {
+            if (buffer[i] < 0) {
+                return i + 1;
+            }
+            if (i - at >= 10) {
+                throw new ElasticsearchParseException("malformed variable-length integer at offset [" + at + "]");
+            }
+        }
+        return -1;
+    }
+
+    private long readVLong(int at) {
+        long value = 0;
+        for (int i = at; ; ++i) {
+            final byte b = buffer[i];
+            if (b < 0) {
+                return (value << 6) | (b & 0x3F);
+            }
+            value = (value << 7) | b;
+        }
+    }
+
+    /**
+     * Reads <tt>count</tt> bytes of 7 bits, as used for floats and doubles.
+     */
+    private long readFixed(int at, int count) {
+        long value = 0;
+        for (int i = 0; i < count; ++i) {
+            value = (value << 7) | (buffer[at + i] & 0x7F);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of bytes it takes to encode <tt>length</tt> bytes with 7 bits per byte.
+     */
+    private static long encoded7BitLength(long length) {
+        final long remainder = length % 7;
+        return (length / 7) * 8 + (remainder == 0 ? 0 : remainder + 1);
+    }
+
+    /**
+     * Decodes binary content that has been encoded with 7 bits per byte, its length comes first.
+     */
+    private byte[] read7BitBinary(int at) {
+        final byte[] result = new byte[(int) readVLong(at)];
+        int in = vintEnd(at);
+        int out = 0;
+        final int fullChunks = result.length / 7 * 7;
+        while (out < fullChunks) {
+            // 7 bytes are encoded in 8 bytes of 7 bits each, which is 56 bits
+            long value = 0;
+            for (int i = 0; i < 8; ++i) {
+                value = (value << 7) | buffer[in++];
+            }
+            for (int i = 6; i >= 0; --i) {
+                result[out++] = (byte) (value >> (i * 8));
+            }
+        }
+        final int left = result.length - out;
+        if (left > 0) {
+            // the last bytes are encoded in one more byte, the last one holds the remaining bits right-aligned
+            int value = 0;
+            int bits = 0;
+            for (int i = 0; i < left; ++i) {
+                value = (value << 7) | buffer[in++];
+                bits += 7;
+                if (bits >= 8) {
+                    bits -= 8;
+                    result[out++] = (byte) (value >> bits);
+                }
+            }
+            result[out] = (byte) ((value << left) | buffer[in]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the offset right after the first end of string marker at or after <tt>at</tt>, or <tt>-1</tt>.
+     */
+    private int stringEnd(int at) {
+        for (int i = at; i < limit; ++i) {
+            if ((buffer[i] & 0xFF) == END_OF_STRING) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the length of the token that starts at <tt>at</tt>, or <tt>-1</tt> if it has not been fully fed.
+     */
+    private int tokenLength(int at, boolean keyMode) {
+        final int b = buffer[at] & 0xFF;
+        long length = -1;
+        if (keyMode) {
+            if (b == 0x20 || (b >= 0x40 && b <= 0x7F) || b == 0xFB) {
+                length = 1;
+            } else if (b >= 0x30 && b <= 0x33) {
+                length = 2;
+            } else if (b == 0x34) {
+                final int end = stringEnd(at + 1);
+                return end < 0 ? -1 : end - at;
+            } else if (b >= 0x80 && b <= 0xBF) {
+                length = (b & 0x3F) + 2;
+            } else if (b >= 0xC0 && b <= 0xF7) {
+                length = (b & 0x3F) + 3;
+            }
+        } else if (b >= 0x01 && b <= 0x23 || b >= 0xC0 && b <= 0xDF || b >= 0xF8 && b <= 0xFA || b == END_OF_CONTENT) {
+            length = 1;
+        } else if (b >= 0x40 && b <= 0xBF) {
+            // tiny and short strings, ASCII then unicode
+            length = 1 + (b & 0x1F) + (b < 0x60 ? 1 : b < 0x80 ? 33 : b < 0xA0 ? 2 : 34);
+        } else if (b >= 0xEC && b <= 0xEF) {
+            length = 2;
+        } else {
+            switch (b) {
+                case 0x24:
+                case 0x25: {
+                    final int end = vintEnd(at + 1);
+                    return end < 0 ? -1 : end - at;
+                }
+                case 0x28:
+                    length = 6;
+                    break;
+                case 0x29:
+                    length = 11;
+                    break;
+                case 0x26:
+                case 0xE8:
+                case 0x2A:
+                case 0xFD: {
+                    int from = at + 1;
+                    if (b == 0x2A) {
+                        // scale
+                        from = vintEnd(from);
+                        if (from < 0) {
+                            return -1;
+                        }
+                    }
+                    final int end = vintEnd(from);
+                    if (end < 0) {
+                        return -1;
+                    }
+                    final long raw = readVLong(from);
+                    length = end - at + (b == 0xFD ? raw : encoded7BitLength(raw));
+                    break;
+                }
+                case 0xE0:
+                case 0xE4: {
+                    final int end = stringEnd(at + 1);
+                    return end < 0 ? -1 : end - at;
+                }
+            }
+        }
+        if (length < 0) {
+            throw new ElasticsearchParseException("unexpected SMILE " + (keyMode ? "key" : "value") + " byte [0x" + Integer.toHexString(b) + "] at offset [" + at + "]");
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new ElasticsearchParseException("SMILE token at offset [" + at + "] is too large");
+        }
+        return at + length > limit ? -1 : (int) length;
+    }
+
+    @Override
+    protected boolean containerComplete() {
+        if (lookDepth == 0 && lookScanned == 0) {
+            // the container that has just been started
+            lookObjects[0] = currentToken() == XContentParser.Token.START_OBJECT;
+            lookDepth = 1;
+        }
+        while (lookDepth > 0 && pos + lookScanned < limit) {
+            final int at = pos + lookScanned;
+            final boolean keyMode = lookObjects[lookDepth - 1] && !lookAfterName;
+            final int length = tokenLength(at, keyMode);
+            if (length < 0) {
+                break;
+            }
+            final int b = buffer[at] & 0xFF;
+            if (keyMode) {
+                if (b == 0xFB) {
+                    --lookDepth;
+                } else {
+                    lookAfterName = true;
+                }
+            } else {
+                lookAfterName = false;
+                if (b == 0xF8 || b == 0xFA) {
+                    if (lookDepth == lookObjects.length) {
+                        lookObjects = ArrayUtil.grow(lookObjects, lookDepth + 1);
+                    }
+                    lookObjects[lookDepth++] = b == 0xFA;
+                } else if (b == 0xF9) {
+                    --lookDepth;
+                }
+            }
+            lookScanned += length;
+        }
+        return lookDepth == 0;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.xcontent.stream;
+
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.HandlesStreamInput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentGenerator;
+
+import java.io.IOException;
+
+/**
+ * Binary encoding of {@link ToXContent} objects, like query, filter and sort builders or search sources, so that they
+ * can be cached or shipped through {@link StreamOutput}/{@link StreamInput} and rendered later to any content type.
+ * <p/>
+ * The encoded form is the stream of tokens the object generates, see {@link StreamXContentGenerator}. Each encoded
+ * object is self-contained: it carries its own shared strings table and can be replayed any number of times.
+ */
+public final class StreamXContent {
+
+    static final byte START_OBJECT = 1;
+    static final byte END_OBJECT = 2;
+    static final byte START_ARRAY = 3;
+    static final byte END_ARRAY = 4;
+    static final byte FIELD_NAME = 5;
+    static final byte STRING = 6;
+    static final byte UTF8_STRING = 7;
+    static final byte INT = 8;
+    static final byte LONG = 9;
+    static final byte FLOAT = 10;
+    static final byte DOUBLE = 11;
+    static final byte TRUE = 12;
+    static final byte FALSE = 13;
+    static final byte NULL = 14;
+    static final byte BINARY = 15;
+    static final byte LONG_ARRAY = 16;
+    static final byte DOUBLE_ARRAY = 17;
+
+    private StreamXContent() {
+    }
+
+    /**
+     * Encode the tokens generated by <code>content</code>.
+     */
+    public static BytesReference encode(ToXContent content, ToXContent.Params params) throws IOException {
+        BytesStreamOutput bytes = new BytesStreamOutput();
+        try {
+            XContentBuilder builder = new XContentBuilder(new StreamXContentGenerator(bytes), bytes);
+            content.toXContent(builder, params);
+            builder.close();
+            return bytes.bytes();
+        } finally {
+            // the generator leaves the stream open, release the accounting of its pages, the default BigArrays
+            // does not recycle them so the returned bytes stay readable
+            bytes.close();
+        }
+    }
+
+    /**
+     * Encode <code>content</code> and write it to <code>out</code>, see {@link #readEncoded(StreamInput)}.
+     */
+    public static void writeTo(ToXContent content, StreamOutput out) throws IOException {
+        out.writeBytesReference(encode(content, ToXContent.EMPTY_PARAMS));
+    }
+
+    /**
+     * Read content written with {@link #writeTo(ToXContent, StreamOutput)}, the returned bytes can be replayed with
+     * {@link #replay(BytesReference, XContentBuilder)}.
+     */
+    public static BytesReference readEncoded(StreamInput in) throws IOException {
+        return in.readBytesReference();
+    }
+
+    /**
+     * Generate the encoded tokens into the given builder.
+     */
+    public static void replay(BytesReference encoded, XContentBuilder builder) throws IOException {
+        replay(encoded, builder.generator());
+    }
+
+    /**
+     * Generate the encoded tokens with the given generator.
+     */
+    public static void replay(BytesReference encoded, XContentGenerator generator) throws IOException {
+        StreamInput in = new HandlesStreamInput(encoded.streamInput());
+        try {
+            for (int token = in.read(); token != -1; token = in.read()) {
+                replayToken((byte) token, in, generator);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Generate the fields of an encoded object into the given builder, without the start and the end of the object,
+     * eg. to render them within an object that the builder has already started.
+     */
+    public static void replayFields(BytesReference encoded, XContentBuilder builder) throws IOException {
+        XContentGenerator generator = builder.generator();
+        StreamInput in = new HandlesStreamInput(encoded.streamInput());
+        try {
+            if (in.read() != START_OBJECT) {
+                throw new ElasticsearchParseException("streamed content is not an object");
+            }
+            int depth = 1;
+            for (int token = in.read(); token != -1; token = in.read()) {
+                if (token == START_OBJECT || token == START_ARRAY) {
+                    depth++;
+                } else if ((token == END_OBJECT || token == END_ARRAY) && --depth == 0) {
+                    break;
+                }
+                replayToken((byte) token, in, generator);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void replayToken(byte token, StreamInput in, XContentGenerator generator) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                generator.writeStartObject();
+                break;
+            case END_OBJECT:
+                generator.writeEndObject();
+                break;
+            case START_ARRAY:
+                generator.writeStartArray();
+                break;
+            case END_ARRAY:
+                generator.writeEndArray();
+                break;
+            case FIELD_NAME:
+                generator.writeFieldName(in.readSharedString());
+                break;
+            case STRING:
+                generator.writeString(in.readString());
+                break;
+            case UTF8_STRING: {
+                int length = in.readVInt();
+                byte[] bytes = new byte[length];
+                in.readBytes(bytes, 0, length);
+                generator.writeUTF8String(bytes, 0, length);
+                break;
+            }
+            case INT:
+                generator.writeNumber((int) in.readZLong());
+                break;
+            case LONG:
+                generator.writeNumber(in.readZLong());
+                break;
+            case FLOAT:
+                generator.writeNumber(in.readFloat());
+                break;
+            case DOUBLE:
+                generator.writeNumber(in.readDouble());
+                break;
+            case TRUE:
+                generator.writeBoolean(true);
+                break;
+            case FALSE:
+                generator.writeBoolean(false);
+                break;
+            case NULL:
+                generator.writeNull();
+                break;
+            case BINARY: {
+                int length = in.readVInt();
+                byte[] bytes = new byte[length];
+                in.readBytes(bytes, 0, length);
+                generator.writeBinary(bytes);
+                break;
+            }
+            case LONG_ARRAY: {
+                int size = in.readVInt();
+                generator.writeStartArray();
+                for (int i = 0; i < size; i++) {
+                    long value = in.readZLong();
+                    if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                        generator.writeNumber((int) value);
+                    } else {
+                        generator.writeNumber(value);
+                    }
+                }
+                generator.writeEndArray();
+                break;
+            }
+            case DOUBLE_ARRAY: {
+                int size = in.readVInt();
+                generator.writeStartArray();
+                for (int i = 0; i < size; i++) {
+                    generator.writeNumber(in.readDouble());
+                }
+                generator.writeEndArray();
+                break;
+            }
+            default:
+                throw new ElasticsearchParseException("unknown token [" + token + "] in streamed content");
+        }
+    }
+}
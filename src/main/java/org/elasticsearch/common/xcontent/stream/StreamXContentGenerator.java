@@ -0,0 +1,510 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.xcontent.stream;
+
+import com.carrotsearch.hppc.ObjectIntOpenHashMap;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static org.elasticsearch.common.xcontent.stream.StreamXContent.*;
+
+/**
+ * A generator that writes the structure it is given as a compact stream of tokens to a {@link StreamOutput}:
+ * field names are written as shared strings, with the same encoding as
+ * {@link org.elasticsearch.common.io.stream.HandlesStreamOutput}, integral numbers as zig-zag variable-length longs
+ * and arrays that only hold integral numbers or only hold doubles as primitive arrays. Tokens are encoded into a
+ * local buffer that is written to the stream in bulk. Use {@link StreamXContent} to encode and replay content.
+ * <p/>
+ * Raw fields are parsed and their structure is copied, so that the stream never embeds content of another type.
+ */
+public class StreamXContentGenerator implements XContentGenerator {
+
+    private static final int BUFFER_SIZE = 4096;
+    // largest token that is written to the buffer at once: the token byte and a zig-zag encoded long
+    private static final int MAX_TOKEN_SIZE = 11;
+
+    private final StreamOutput out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+
+    private final ObjectIntOpenHashMap<String> fieldNames = new ObjectIntOpenHashMap<String>();
+
+    // numbers of the current array are buffered until the end of the array, unless the array holds something else
+    private boolean pendingArray;
+    private byte pendingType;
+    private long[] pendingLongs = new long[16];
+    private double[] pendingDoubles = new double[16];
+    private int pendingCount;
+
+    public StreamXContentGenerator(StreamOutput out) {
+        this.out = out;
+    }
+
+    /**
+     * Streamed content has no textual content type, so this returns <code>null</code>, which makes builders
+     * copy the structure of embedded content rather than write it raw.
+     */
+    @Override
+    public XContentType contentType() {
+        return null;
+    }
+
+    @Override
+    public void usePrettyPrint() {
+        // nothing to pretty print
+    }
+
+    @Override
+    public void usePrintLineFeedAtEnd() {
+        // nothing to do
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.writeBytes(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private void ensureRoom(int size) throws IOException {
+        if (position + size > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void put(byte b) {
+        buffer[position++] = b;
+    }
+
+    private void putVInt(int i) {
+        while ((i & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((i & 0x7f) | 0x80);
+            i >>>= 7;
+        }
+        buffer[position++] = (byte) i;
+    }
+
+    private void putZLong(long i) {
+        long value = (i << 1) ^ (i >> 63);
+        while ((value & ~0x7FL) != 0L) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void putInt(int i) {
+        buffer[position++] = (byte) (i >> 24);
+        buffer[position++] = (byte) (i >> 16);
+        buffer[position++] = (byte) (i >> 8);
+        buffer[position++] = (byte) i;
+    }
+
+    private void putDouble(double d) {
+        long bits = Double.doubleToLongBits(d);
+        putInt((int) (bits >> 32));
+        putInt((int) bits);
+    }
+
+    private void flushPendingArray() throws IOException {
+        if (!pendingArray) {
+            return;
+        }
+        pendingArray = false;
+        ensureRoom(1);
+        put(START_ARRAY);
+        for (int i = 0; i < pendingCount; ++i) {
+            ensureRoom(MAX_TOKEN_SIZE);
+            if (pendingType == LONG_ARRAY) {
+                putLongToken(pendingLongs[i]);
+            } else {
+                put(DOUBLE);
+                putDouble(pendingDoubles[i]);
+            }
+        }
+    }
+
+    private void writeToken(byte token) throws IOException {
+        flushPendingArray();
+        ensureRoom(MAX_TOKEN_SIZE);
+        put(token);
+    }
+
+    private void putLongToken(long v) {
+        if (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE) {
+            put(INT);
+        } else {
+            put(LONG);
+        }
+        putZLong(v);
+    }
+
+    /**
+     * Write a string that does not fit in the buffer, straight to the stream.
+     */
+    private void writeStringValue(String text) throws IOException {
+        flushBuffer();
+        out.writeString(text);
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        flushPendingArray();
+        pendingArray = true;
+        pendingType = 0;
+        pendingCount = 0;
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        ensureRoom(MAX_TOKEN_SIZE);
+        if (!pendingArray) {
+            put(END_ARRAY);
+            return;
+        }
+        pendingArray = false;
+        if (pendingCount == 0) {
+            put(START_ARRAY);
+            put(END_ARRAY);
+        } else if (pendingType == LONG_ARRAY) {
+            put(LONG_ARRAY);
+            putVInt(pendingCount);
+            for (int i = 0; i < pendingCount; ++i) {
+                ensureRoom(MAX_TOKEN_SIZE);
+                putZLong(pendingLongs[i]);
+            }
+        } else {
+            put(DOUBLE_ARRAY);
+            putVInt(pendingCount);
+            for (int i = 0; i < pendingCount; ++i) {
+                ensureRoom(MAX_TOKEN_SIZE);
+                putDouble(pendingDoubles[i]);
+            }
+        }
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        writeToken(START_OBJECT);
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        writeToken(END_OBJECT);
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        writeToken(FIELD_NAME);
+        if (fieldNames.containsKey(name)) {
+            putVInt(fieldNames.lget() + 1);
+        } else {
+            fieldNames.put(name, fieldNames.size());
+            putVInt(0);
+            writeStringValue(name);
+        }
+    }
+
+    @Override
+    public void writeFieldName(XContentString name) throws IOException {
+        writeFieldName(name.getValue());
+    }
+
+    @Override
+    public void writeString(String text) throws IOException {
+        writeToken(STRING);
+        writeStringValue(text);
+    }
+
+    @Override
+    public void writeString(char[] text, int offset, int len) throws IOException {
+        writeString(new String(text, offset, len));
+    }
+
+    @Override
+    public void writeUTF8String(byte[] text, int offset, int length) throws IOException {
+        writeToken(UTF8_STRING);
+        putVInt(length);
+        flushBuffer();
+        out.writeBytes(text, offset, length);
+    }
+
+    @Override
+    public void writeBinary(byte[] data, int offset, int len) throws IOException {
+        writeToken(BINARY);
+        putVInt(len);
+        flushBuffer();
+        out.writeBytes(data, offset, len);
+    }
+
+    @Override
+    public void writeBinary(byte[] data) throws IOException {
+        writeBinary(data, 0, data.length);
+    }
+
+    @Override
+    public void writeNumber(int v) throws IOException {
+        writeNumber((long) v);
+    }
+
+    @Override
+    public void writeNumber(long v) throws IOException {
+        if (pendingArray && (pendingType == 0 || pendingType == LONG_ARRAY)) {
+            pendingType = LONG_ARRAY;
+            if (pendingCount == pendingLongs.length) {
+                pendingLongs = Arrays.copyOf(pendingLongs, pendingCount << 1);
+            }
+            pendingLongs[pendingCount++] = v;
+            return;
+        }
+        flushPendingArray();
+        ensureRoom(MAX_TOKEN_SIZE);
+        putLongToken(v);
+    }
+
+    @Override
+    public void writeNumber(double d) throws IOException {
+        if (pendingArray && (pendingType == 0 || pendingType == DOUBLE_ARRAY)) {
+            pendingType = DOUBLE_ARRAY;
+            if (pendingCount == pendingDoubles.length) {
+                pendingDoubles = Arrays.copyOf(pendingDoubles, pendingCount << 1);
+            }
+            pendingDoubles[pendingCount++] = d;
+            return;
+        }
+        writeToken(DOUBLE);
+        putDouble(d);
+    }
+
+    @Override
+    public void writeNumber(float f) throws IOException {
+        writeToken(FLOAT);
+        putInt(Float.floatToIntBits(f));
+    }
+
+    @Override
+    public void writeBoolean(boolean state) throws IOException {
+        writeToken(state ? TRUE : FALSE);
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        writeToken(NULL);
+    }
+
+    @Override
+    public void writeStringField(String fieldName, String value) throws IOException {
+        writeFieldName(fieldName);
+        writeString(value);
+    }
+
+    @Override
+    public void writeStringField(XContentString fieldName, String value) throws IOException {
+        writeFieldName(fieldName);
+        writeString(value);
+    }
+
+    @Override
+    public void writeBooleanField(String fieldName, boolean value) throws IOException {
+        writeFieldName(fieldName);
+        writeBoolean(value);
+    }
+
+    @Override
+    public void writeBooleanField(XContentString fieldName, boolean value) throws IOException {
+        writeFieldName(fieldName);
+        writeBoolean(value);
+    }
+
+    @Override
+    public void writeNullField(String fieldName) throws IOException {
+        writeFieldName(fieldName);
+        writeNull();
+    }
+
+    @Override
+    public void writeNullField(XContentString fieldName) throws IOException {
+        writeFieldName(fieldName);
+        writeNull();
+    }
+
+    @Override
+    public void writeNumberField(String fieldName, int value) throws IOException {
+        writeFieldName(fieldName);
+        writeNumber(value);
+    }
+
+    @Override
+    public void writeNumberField(XContentString fieldName, int value) throws IOException {
+        writeFieldName(fieldName);
+        writeNumber(value);
+    }
+
+    @Override
+    public void writeNumberField(String fieldName, long value) throws IOException {
+        writeFieldName(fieldName);
+        writeNumber(value);
+    }
+
+    @Override
+    public void writeNumberField(XContentString fieldName, long value) throws IOException {
+        writeFieldName(fieldName);
+        writeNumber(value);
+    }
+
+    @Override
+    public void writeNumberField(String fieldName, double value) throws IOException {
+        writeFieldName(fieldName);
+        writeNumber(value);
+    }
+
+    @Override
+    public void writeNumberField(XContentString fieldName, double value) throws IOException {
+        writeFieldName(fieldName);
+        writeNumber(value);
+    }
+
+    @Override
+    public void writeNumberField(String fieldName, float value) throws IOException {
+        writeFieldName(fieldName);
+        writeNumber(value);
+    }
+
+    @Override
+    public void writeNumberField(XContentString fieldName, float value) throws IOException {
+        writeFieldName(fieldName);
+        writeNumber(value);
+    }
+
+    @Override
+    public void writeBinaryField(String fieldName, byte[] data) throws IOException {
+        writeFieldName(fieldName);
+        writeBinary(data);
+    }
+
+    @Override
+    public void writeBinaryField(XContentString fieldName, byte[] data) throws IOException {
+        writeFieldName(fieldName);
+        writeBinary(data);
+    }
+
+    @Override
+    public void writeArrayFieldStart(String fieldName) throws IOException {
+        writeFieldName(fieldName);
+        writeStartArray();
+    }
+
+    @Override
+    public void writeArrayFieldStart(XContentString fieldName) throws IOException {
+        writeFieldName(fieldName);
+        writeStartArray();
+    }
+
+    @Override
+    public void writeObjectFieldStart(String fieldName) throws IOException {
+        writeFieldName(fieldName);
+        writeStartObject();
+    }
+
+    @Override
+    public void writeObjectFieldStart(XContentString fieldName) throws IOException {
+        writeFieldName(fieldName);
+        writeStartObject();
+    }
+
+    @Override
+    public void writeRawField(String fieldName, byte[] content, OutputStream bos) throws IOException {
+        writeRawField(fieldName, new BytesArray(content), bos);
+    }
+
+    @Override
+    public void writeRawField(String fieldName, byte[] content, int offset, int length, OutputStream bos) throws IOException {
+        writeRawField(fieldName, new BytesArray(content, offset, length), bos);
+    }
+
+    @Override
+    public void writeRawField(String fieldName, InputStream content, OutputStream bos) throws IOException {
+        BytesStreamOutput bytes = new BytesStreamOutput();
+        Streams.copy(content, bytes);
+        writeRawField(fieldName, bytes.bytes(), bos);
+    }
+
+    @Override
+    public void writeRawField(String fieldName, BytesReference content, OutputStream bos) throws IOException {
+        writeRawField(fieldName, content, XContentFactory.xContentType(content), bos);
+    }
+
+    @Override
+    public void writeRawField(String fieldName, BytesReference content, XContentType contentType, OutputStream bos) throws IOException {
+        writeFieldName(fieldName);
+        if (contentType != null) {
+            XContentParser parser = contentType.xContent().createParser(content);
+            try {
+                parser.nextToken();
+                XContentHelper.copyCurrentStructure(this, parser);
+            } finally {
+                parser.close();
+            }
+        } else {
+            // same as the textual generators: raw values that are not structured content are numbers or strings
+            String sValue = content.toUtf8();
+            try {
+                writeNumber(Long.parseLong(sValue));
+            } catch (NumberFormatException e) {
+                try {
+                    writeNumber(Double.parseDouble(sValue));
+                } catch (NumberFormatException e1) {
+                    writeString(sValue);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void copyCurrentStructure(XContentParser parser) throws IOException {
+        // the start of the parser
+        if (parser.currentToken() == null) {
+            parser.nextToken();
+        }
+        XContentHelper.copyCurrentStructure(this, parser);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushPendingArray();
+        // the stream belongs to the caller, it might hold more than this content
+        flush();
+    }
+}
@@ -213,6 +213,11 @@ public abstract class AbstractXContentParser implements XContentParser {
         return readOrderedMap(this);
     }
 
+    @Override
+    public Map<String, Object> mapCompact() throws IOException {
+        return CompactXContentReader.readMap(this);
+    }
+
     @Override
     public Map<String, Object> mapAndClose() throws IOException {
         try {
@@ -231,6 +236,15 @@ public abstract class AbstractXContentParser implements XContentParser {
         }
     }
 
+    @Override
+    public Map<String, Object> mapCompactAndClose() throws IOException {
+        try {
+            return mapCompact();
+        } finally {
+            close();
+        }
+    }
+
 
     static interface MapFactory {
         Map<String, Object> newMap();
@@ -286,7 +300,7 @@ public abstract class AbstractXContentParser implements XContentParser {
         return list;
     }
 
-    private static Object readValue(XContentParser parser, MapFactory mapFactory, XContentParser.Token token) throws IOException {
+    static Object readValue(XContentParser parser, MapFactory mapFactory, XContentParser.Token token) throws IOException {
         if (token == XContentParser.Token.VALUE_NULL) {
             return null;
         } else if (token == XContentParser.Token.VALUE_STRING) {
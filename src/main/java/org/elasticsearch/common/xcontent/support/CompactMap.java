@@ -0,0 +1,273 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.xcontent.support;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map from field names to values that keeps its entries in two flat arrays, in insertion order. Lookups scan
+ * the keys, starting with an identity check since field names returned by the parsers are canonicalized, and
+ * an open-addressing table of positions is only built for objects with more than {@value #HASH_THRESHOLD} fields.
+ * Compared to a {@link java.util.HashMap} there is no entry object per field, which is what makes up most of the
+ * memory of the maps of parsed documents.
+ */
+public class CompactMap extends AbstractMap<String, Object> {
+
+    static final int HASH_THRESHOLD = 8;
+
+    private String[] keys;
+    private Object[] values;
+    private int size;
+    // positions + 1 of the keys, 0 for empty slots, only built when there are more than HASH_THRESHOLD keys
+    private int[] table;
+
+    public CompactMap() {
+        this(4);
+    }
+
+    public CompactMap(int capacity) {
+        keys = new String[capacity];
+        values = new Object[capacity];
+    }
+
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        if (size <= HASH_THRESHOLD) {
+            for (int i = 0; i < size; ++i) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            for (int i = 0; i < size; ++i) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        if (table == null) {
+            rehash();
+        }
+        final int mask = table.length - 1;
+        for (int slot = mix(key.hashCode()) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            final int i = table[slot] - 1;
+            if (keys[i] == key || keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void rehash() {
+        table = new int[Integer.highestOneBit(size) << 2];
+        for (int i = 0; i < size; ++i) {
+            insert(i);
+        }
+    }
+
+    private void insert(int i) {
+        final int mask = table.length - 1;
+        int slot = mix(keys[i].hashCode()) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = i + 1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        final int i = indexOf(key);
+        return i < 0 ? null : values[i];
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        if (key == null) {
+            throw new NullPointerException("null keys are not supported");
+        }
+        final int i = indexOf(key);
+        if (i >= 0) {
+            final Object previous = values[i];
+            values[i] = value;
+            return previous;
+        }
+        if (size == keys.length) {
+            final int newLength = ArrayUtil.oversize(size + 1, RamUsageEstimator.NUM_BYTES_OBJECT_REF);
+            keys = Arrays.copyOf(keys, newLength);
+            values = Arrays.copyOf(values, newLength);
+        }
+        keys[size] = key;
+        values[size] = value;
+        ++size;
+        if (table != null) {
+            if (size * 2 > table.length) {
+                rehash();
+            } else {
+                insert(size - 1);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        final int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        final Object previous = values[i];
+        removeAt(i);
+        return previous;
+    }
+
+    private void removeAt(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        --size;
+        keys[size] = null;
+        values[size] = null;
+        // positions have moved, the table is rebuilt on the next lookup if it is still needed
+        table = null;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        table = null;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private class EntryIterator implements Iterator<Entry<String, Object>> {
+
+        private int next;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new MapEntry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+
+    private class MapEntry implements Entry<String, Object> {
+
+        private final int index;
+        private final String key;
+
+        MapEntry(int index) {
+            this.index = index;
+            this.key = keys[index];
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return values[index];
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            final Object previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            final Entry<?, ?> other = (Entry<?, ?>) o;
+            return getKey().equals(other.getKey()) && (getValue() == null ? other.getValue() == null : getValue().equals(other.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ (getValue() == null ? 0 : getValue().hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.xcontent.support;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Reads objects into a compact representation, as an alternative to {@link XContentParser#map()}:
+ * <ul>
+ * <li>objects are {@link CompactMap}s, that keep their fields in flat arrays,</li>
+ * <li>arrays of integral numbers and arrays of floating point numbers are {@link LongList}s and
+ * {@link DoubleList}s, backed by a <code>long[]</code> or a <code>double[]</code>, and only box the element
+ * that is asked for,</li>
+ * <li>short string values are deduplicated while reading, straight from the characters of the parser when it
+ * exposes them so that repeated values don't even allocate a new string.</li>
+ * </ul>
+ * Values have the same types as with {@link XContentParser#map()}, so that the result can be used in place of it.
+ * Maps can be modified, numeric lists are read-only.
+ */
+public final class CompactXContentReader {
+
+    private static final int MAX_CACHED_STRING_LENGTH = 32;
+    private static final int STRING_CACHE_SIZE = 256;
+
+    /**
+     * Reads the object the parser is positioned on, or the first one if the parser has not been started.
+     */
+    public static Map<String, Object> readMap(XContentParser parser) throws IOException {
+        return new CompactXContentReader(parser).readMap();
+    }
+
+    private final XContentParser parser;
+    // direct-mapped cache of the short string values that have been read
+    private final String[] strings = new String[STRING_CACHE_SIZE];
+
+    private CompactXContentReader(XContentParser parser) {
+        this.parser = parser;
+    }
+
+    private Map<String, Object> readMap() throws IOException {
+        final CompactMap map = new CompactMap();
+        XContentParser.Token token = parser.currentToken();
+        if (token == null) {
+            token = parser.nextToken();
+        }
+        if (token == XContentParser.Token.START_OBJECT) {
+            token = parser.nextToken();
+        }
+        for (; token == XContentParser.Token.FIELD_NAME; token = parser.nextToken()) {
+            final String fieldName = parser.currentName();
+            token = parser.nextToken();
+            map.put(fieldName, readValue(token));
+        }
+        return map;
+    }
+
+    private Object readValue(XContentParser.Token token) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                return readString();
+            case VALUE_NUMBER:
+                return readNumber();
+            case VALUE_BOOLEAN:
+                return parser.booleanValue();
+            case START_OBJECT:
+                return readMap();
+            case START_ARRAY:
+                return readList();
+            case VALUE_EMBEDDED_OBJECT:
+                return parser.binaryValue();
+            default:
+                return null;
+        }
+    }
+
+    private Object readNumber() throws IOException {
+        switch (parser.numberType()) {
+            case INT:
+                return parser.intValue();
+            case LONG:
+                return parser.longValue();
+            case FLOAT:
+                return parser.floatValue();
+            default:
+                return parser.doubleValue();
+        }
+    }
+
+    private String readString() throws IOException {
+        if (!parser.hasTextCharacters()) {
+            return dedup(parser.text());
+        }
+        final int length = parser.textLength();
+        final char[] chars = parser.textCharacters();
+        final int offset = parser.textOffset();
+        if (length > MAX_CACHED_STRING_LENGTH) {
+            return new String(chars, offset, length);
+        }
+        // same hash as String#hashCode so that it can be compared with the cached hash of the strings
+        int hash = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            hash = 31 * hash + chars[i];
+        }
+        final int slot = (hash ^ (hash >>> 16)) & (STRING_CACHE_SIZE - 1);
+        final String cached = strings[slot];
+        if (cached != null && cached.hashCode() == hash && contentEquals(cached, chars, offset, length)) {
+            return cached;
+        }
+        final String string = new String(chars, offset, length);
+        strings[slot] = string;
+        return string;
+    }
+
+    private String dedup(String string) {
+        if (string.length() > MAX_CACHED_STRING_LENGTH) {
+            return string;
+        }
+        final int hash = string.hashCode();
+        final int slot = (hash ^ (hash >>> 16)) & (STRING_CACHE_SIZE - 1);
+        final String cached = strings[slot];
+        if (string.equals(cached)) {
+            return cached;
+        }
+        strings[slot] = string;
+        return string;
+    }
+
+    private static boolean contentEquals(String string, char[] chars, int offset, int length) {
+        if (string.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (string.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<Object> readList() throws IOException {
+        XContentParser.Token token = parser.nextToken();
+        if (token == XContentParser.Token.VALUE_NUMBER) {
+            final XContentParser.NumberType numberType = parser.numberType();
+            if (numberType == XContentParser.NumberType.INT || numberType == XContentParser.NumberType.LONG) {
+                return readLongs();
+            }
+            return readDoubles(numberType == XContentParser.NumberType.FLOAT);
+        }
+        final List<Object> list = new ArrayList<Object>();
+        return readObjects(list, token);
+    }
+
+    private List<Object> readObjects(List<Object> list, XContentParser.Token token) throws IOException {
+        for (; token != XContentParser.Token.END_ARRAY; token = parser.nextToken()) {
+            list.add(readValue(token));
+        }
+        return list;
+    }
+
+    /**
+     * Reads an array that starts with an integral number, falls back to a list of objects on the first value
+     * that is not one.
+     */
+    private List<Object> readLongs() throws IOException {
+        long[] values = new long[8];
+        int size = 0;
+        XContentParser.Token token = parser.currentToken();
+        for (; token != XContentParser.Token.END_ARRAY; token = parser.nextToken()) {
+            if (token != XContentParser.Token.VALUE_NUMBER) {
+                break;
+            }
+            final XContentParser.NumberType numberType = parser.numberType();
+            if (numberType != XContentParser.NumberType.INT && numberType != XContentParser.NumberType.LONG) {
+                break;
+            }
+            values = ArrayUtil.grow(values, size + 1);
+            values[size++] = parser.longValue();
+        }
+        final LongList longs = new LongList(values, size);
+        if (token == XContentParser.Token.END_ARRAY) {
+            return longs;
+        }
+        return readObjects(new ArrayList<Object>(longs), token);
+    }
+
+    /**
+     * Reads an array that starts with a floating point number, falls back to a list of objects on the first value
+     * that is not a floating point number of the same type.
+     */
+    private List<Object> readDoubles(boolean floats) throws IOException {
+        final XContentParser.NumberType expected = floats ? XContentParser.NumberType.FLOAT : XContentParser.NumberType.DOUBLE;
+        double[] values = new double[8];
+        int size = 0;
+        XContentParser.Token token = parser.currentToken();
+        for (; token != XContentParser.Token.END_ARRAY; token = parser.nextToken()) {
+            if (token != XContentParser.Token.VALUE_NUMBER || parser.numberType() != expected) {
+                break;
+            }
+            values = ArrayUtil.grow(values, size + 1);
+            values[size++] = floats ? parser.floatValue() : parser.doubleValue();
+        }
+        final DoubleList doubles = new DoubleList(values, size, floats);
+        if (token == XContentParser.Token.END_ARRAY) {
+            return doubles;
+        }
+        return readObjects(new ArrayList<Object>(doubles), token);
+    }
+
+    /**
+     * A read-only list of integral numbers backed by a <code>long[]</code>. Elements are returned as
+     * {@link Integer}s when they fit in an int and {@link Long}s otherwise, like {@link XContentParser#map()} does.
+     */
+    public static final class LongList extends AbstractList<Object> implements RandomAccess {
+
+        private final long[] values;
+        private final int size;
+
+        LongList(long[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        public long getLong(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("index [" + index + "], size [" + size + "]");
+            }
+            return values[index];
+        }
+
+        @Override
+        public Object get(int index) {
+            final long value = getLong(index);
+            if (value == (int) value) {
+                return (int) value;
+            }
+            return value;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A read-only list of floating point numbers backed by a <code>double[]</code>. Elements are returned as
+     * {@link Float}s or {@link Double}s depending on how they were serialized, like {@link XContentParser#map()}
+     * does.
+     */
+    public static final class DoubleList extends AbstractList<Object> implements RandomAccess {
+
+        private final double[] values;
+        private final int size;
+        private final boolean floats;
+
+        DoubleList(double[] values, int size, boolean floats) {
+            this.values = values;
+            this.size = size;
+            this.floats = floats;
+        }
+
+        public double getDouble(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("index [" + index + "], size [" + size + "]");
+            }
+            return values[index];
+        }
+
+        @Override
+        public Object get(int index) {
+            final double value = getDouble(index);
+            if (floats) {
+                return (float) value;
+            }
+            return value;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.xcontent.support;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * A bounded cache of canonical field names, shared by all the parsers of a content type so that documents
+ * with the same fields, like the responses to a given request, don't each retain their own copy of every key.
+ * <p/>
+ * The JSON, SMILE and CBOR parsers don't need it: Jackson already canonicalizes field names in a symbol table
+ * that is shared by all the parsers of a factory, and that child parsers merge their new names into when they
+ * are closed. The YAML parser and the {@link NonBlockingXContentParser}s create a new string for every key, so
+ * their names go through this cache.
+ * <p/>
+ * The cache is a direct-mapped table: a name replaces whatever name was in its slot, so that the names that are
+ * seen the most often are the ones that stay. It is safe to use from several threads without locking since
+ * strings are immutable: a race only means that a name is not deduplicated.
+ */
+public final class FieldNameCache {
+
+    private static final int MAX_NAME_LENGTH = 64;
+    private static final int DEFAULT_SIZE = 4096;
+
+    private static final FieldNameCache[] CACHES;
+
+    static {
+        final XContentType[] types = XContentType.values();
+        CACHES = new FieldNameCache[types.length];
+        for (XContentType type : types) {
+            CACHES[type.index()] = new FieldNameCache(DEFAULT_SIZE);
+        }
+    }
+
+    /**
+     * Returns the cache that is shared by the parsers of the given content type.
+     */
+    public static FieldNameCache forType(XContentType type) {
+        return CACHES[type.index()];
+    }
+
+    private final String[] names;
+    private final int mask;
+
+    /**
+     * @param size the number of slots of the cache, must be a power of two
+     */
+    public FieldNameCache(int size) {
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            throw new ElasticsearchIllegalArgumentException("size must be a power of two, got [" + size + "]");
+        }
+        this.names = new String[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns the cached instance of the given name, caching the name if there is none.
+     */
+    public String canonicalize(String name) {
+        if (name == null || name.length() > MAX_NAME_LENGTH) {
+            return name;
+        }
+        final int hash = name.hashCode();
+        final int slot = (hash ^ (hash >>> 16)) & mask;
+        final String cached = names[slot];
+        if (cached != null && cached.hashCode() == hash && cached.equals(name)) {
+            return cached;
+        }
+        names[slot] = name;
+        return name;
+    }
+
+    /**
+     * Removes all names from the cache.
+     */
+    public void clear() {
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = null;
+        }
+    }
+}
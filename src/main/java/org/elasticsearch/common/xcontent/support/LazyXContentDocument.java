@@ -0,0 +1,390 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.xcontent.support;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.CompositeBytesReference;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.json.JsonXContentParser;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A read-only view over an object serialized in any of the {@link XContentType}s, which only decodes the values
+ * that are asked for. This is useful to read a couple of fields out of a large document (eg. a <tt>_source</tt>)
+ * without building the whole tree of maps that {@link XContentParser#map()} returns.
+ * <p/>
+ * A single pass over the tokens of the document builds a structural index that is held in flat arrays: the kind
+ * of each value, the name of its field, its offset in the bytes and a pointer to the value that follows its
+ * sub-tree so that siblings can be scanned without looking at their children. Nested objects are returned as
+ * views over the same index, and scalar values are decoded from their offset on first access, then cached. SMILE
+ * (whose field names may refer back to names that have been seen earlier in the document) and YAML (whose parser
+ * does not track byte offsets) can't be decoded from an offset, so their scalar values are decoded while the
+ * index is built.
+ * <p/>
+ * Paths are dot-separated field names, eg. <tt>get("user.address.city")</tt>, and only go through objects.
+ * Instances are not thread-safe.
+ */
+public final class LazyXContentDocument {
+
+    private static final BytesReference JSON_OBJECT_START = new BytesArray(new byte[]{'{'});
+    private static final BytesReference JSON_ARRAY_START = new BytesArray(new byte[]{'['});
+
+    private static final byte START_OBJECT = (byte) XContentParser.Token.START_OBJECT.ordinal();
+    private static final byte START_ARRAY = (byte) XContentParser.Token.START_ARRAY.ordinal();
+    private static final byte VALUE_NULL = (byte) XContentParser.Token.VALUE_NULL.ordinal();
+
+    /**
+     * Index the given bytes, the content type is detected from the content.
+     */
+    public static LazyXContentDocument parse(BytesReference bytes) throws IOException {
+        final XContentType type = XContentFactory.xContentType(bytes);
+        if (type == null) {
+            throw new ElasticsearchParseException("failed to detect the content type of the document");
+        }
+        return parse(type, bytes);
+    }
+
+    /**
+     * Index the given bytes, which must hold an object serialized with the given content type.
+     */
+    public static LazyXContentDocument parse(XContentType type, BytesReference bytes) throws IOException {
+        if (type == XContentType.CBOR && !bytes.hasArray()) {
+            // the CBOR parser reports wrong token offsets once it has refilled its buffer from a stream
+            bytes = bytes.toBytesArray();
+        }
+        final Index index = new Index(type, bytes);
+        final XContentParser parser = type.xContent().createParser(bytes);
+        try {
+            index.build(parser);
+        } finally {
+            parser.close();
+        }
+        return new LazyXContentDocument(index, 0);
+    }
+
+    private final Index index;
+    private final int entry;
+
+    private LazyXContentDocument(Index index, int entry) {
+        this.index = index;
+        this.entry = entry;
+    }
+
+    public XContentType contentType() {
+        return index.type;
+    }
+
+    /**
+     * Returns the number of fields of this object, a field that appears several times is counted once as with
+     * {@link XContentParser#map()}.
+     */
+    public int size() {
+        return fieldNames().size();
+    }
+
+    /**
+     * Returns the names of the fields of this object, in the order in which they first appear in the document.
+     */
+    public List<String> fieldNames() {
+        final Set<String> names = new LinkedHashSet<String>();
+        for (int child = entry + 1; child < index.nexts[entry]; child = index.nexts[child]) {
+            names.add(index.names[child]);
+        }
+        return new ArrayList<String>(names);
+    }
+
+    /**
+     * Returns whether there is a value, possibly <tt>null</tt>, at the given path.
+     */
+    public boolean containsKey(String path) {
+        return find(path) >= 0;
+    }
+
+    /**
+     * Returns the value at the given path, or <tt>null</tt> if there is none. Objects are returned as
+     * {@link LazyXContentDocument}s and arrays as lists whose elements are decoded on access, other values have
+     * the same types as in {@link XContentParser#map()}.
+     */
+    public Object get(String path) {
+        final int found = find(path);
+        return found < 0 ? null : toObject(found);
+    }
+
+    /**
+     * Returns the object at the given path, or <tt>null</tt> if there is none.
+     */
+    public LazyXContentDocument getDocument(String path) {
+        final int found = find(path);
+        if (found < 0) {
+            return null;
+        }
+        if (index.kinds[found] != START_OBJECT) {
+            throw new ElasticsearchParseException("[" + path + "] is not an object");
+        }
+        return new LazyXContentDocument(index, found);
+    }
+
+    /**
+     * Decodes the whole object into a map, in the same way as {@link XContentParser#map()}.
+     */
+    public Map<String, Object> map() {
+        return toMap(entry);
+    }
+
+    private int find(String path) {
+        int parent = entry;
+        int from = 0;
+        while (true) {
+            final int dot = path.indexOf('.', from);
+            final int to = dot < 0 ? path.length() : dot;
+            final int found = child(parent, path, from, to - from);
+            if (found < 0 || dot < 0) {
+                return found;
+            }
+            if (index.kinds[found] != START_OBJECT) {
+                return -1;
+            }
+            parent = found;
+            from = dot + 1;
+        }
+    }
+
+    /**
+     * Returns the child of <code>parent</code> whose name is the given region of <code>path</code>. If the name
+     * appears several times, the last one wins as with {@link XContentParser#map()}.
+     */
+    private int child(int parent, String path, int offset, int length) {
+        int found = -1;
+        for (int child = parent + 1; child < index.nexts[parent]; child = index.nexts[child]) {
+            final String name = index.names[child];
+            if (name.length() == length && path.regionMatches(offset, name, 0, length)) {
+                found = child;
+            }
+        }
+        return found;
+    }
+
+    private Object toObject(int entry) {
+        final byte kind = index.kinds[entry];
+        if (kind == START_OBJECT) {
+            return new LazyXContentDocument(index, entry);
+        } else if (kind == START_ARRAY) {
+            return new LazyList(children(entry));
+        }
+        return index.value(entry);
+    }
+
+    private Map<String, Object> toMap(int entry) {
+        final Map<String, Object> map = new HashMap<String, Object>();
+        for (int child = entry + 1; child < index.nexts[entry]; child = index.nexts[child]) {
+            map.put(index.names[child], toMaterialized(child));
+        }
+        return map;
+    }
+
+    private Object toMaterialized(int entry) {
+        final byte kind = index.kinds[entry];
+        if (kind == START_OBJECT) {
+            return toMap(entry);
+        } else if (kind == START_ARRAY) {
+            final List<Object> list = new ArrayList<Object>();
+            for (int child = entry + 1; child < index.nexts[entry]; child = index.nexts[child]) {
+                list.add(toMaterialized(child));
+            }
+            return list;
+        }
+        return index.value(entry);
+    }
+
+    private int[] children(int entry) {
+        int[] children = new int[8];
+        int count = 0;
+        for (int child = entry + 1; child < index.nexts[entry]; child = index.nexts[child]) {
+            children = ArrayUtil.grow(children, count + 1);
+            children[count++] = child;
+        }
+        return Arrays.copyOf(children, count);
+    }
+
+    private final class LazyList extends AbstractList<Object> implements RandomAccess {
+
+        private final int[] entries;
+
+        LazyList(int[] entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public Object get(int i) {
+            if (i < 0 || i >= entries.length) {
+                throw new IndexOutOfBoundsException("index [" + i + "], size [" + entries.length + "]");
+            }
+            return toObject(entries[i]);
+        }
+
+        @Override
+        public int size() {
+            return entries.length;
+        }
+    }
+
+    /**
+     * The structural index of a document, shared by the views over its objects.
+     */
+    private static final class Index {
+
+        final XContentType type;
+        final BytesReference bytes;
+        // whether scalar values are decoded from their offset on access rather than while building the index
+        final boolean decodeOnAccess;
+
+        int size;
+        // the token of each value, as a Token ordinal
+        byte[] kinds = new byte[16];
+        // the name of the field of each value, null for array elements and the root object
+        String[] names = new String[16];
+        // the offset of each value in the bytes, see JsonXContentParser#tokenByteOffset() for JSON
+        int[] starts = new int[16];
+        // the entry that follows the sub-tree of each value
+        int[] nexts = new int[16];
+        // decoded scalar values, null until decoded
+        Object[] values = new Object[16];
+
+        Index(XContentType type, BytesReference bytes) {
+            this.type = type;
+            this.bytes = bytes;
+            this.decodeOnAccess = type == XContentType.JSON || type == XContentType.CBOR;
+        }
+
+        void build(XContentParser parser) throws IOException {
+            final JsonXContentParser offsets = decodeOnAccess ? (JsonXContentParser) parser : null;
+            XContentParser.Token token = parser.nextToken();
+            if (token != XContentParser.Token.START_OBJECT) {
+                throw new ElasticsearchParseException("expected an object at the root of the document but got [" + token + "]");
+            }
+            add(token, null, 0);
+            int[] open = new int[8];
+            int depth = 0;
+            open[depth++] = 0;
+            String name = null;
+            while (depth > 0) {
+                token = parser.nextToken();
+                if (token == null) {
+                    throw new ElasticsearchParseException("unexpected end of document");
+                }
+                switch (token) {
+                    case FIELD_NAME:
+                        name = parser.currentName();
+                        break;
+                    case END_OBJECT:
+                    case END_ARRAY:
+                        nexts[open[--depth]] = size;
+                        break;
+                    default:
+                        final int entry = add(token, name, offsets == null ? 0 : (int) offsets.tokenByteOffset());
+                        name = null;
+                        if (token == XContentParser.Token.START_OBJECT || token == XContentParser.Token.START_ARRAY) {
+                            open = ArrayUtil.grow(open, depth + 1);
+                            open[depth++] = entry;
+                        } else if (!decodeOnAccess) {
+                            values[entry] = AbstractXContentParser.readValue(parser, AbstractXContentParser.SIMPLE_MAP_FACTORY, token);
+                        }
+                }
+            }
+        }
+
+        private int add(XContentParser.Token token, String name, int start) {
+            if (size == kinds.length) {
+                final int newLength = ArrayUtil.oversize(size + 1, RamUsageEstimator.NUM_BYTES_OBJECT_REF);
+                kinds = Arrays.copyOf(kinds, newLength);
+                names = Arrays.copyOf(names, newLength);
+                starts = Arrays.copyOf(starts, newLength);
+                nexts = Arrays.copyOf(nexts, newLength);
+                values = Arrays.copyOf(values, newLength);
+            }
+            kinds[size] = (byte) token.ordinal();
+            names[size] = name;
+            starts[size] = start;
+            nexts[size] = size + 1;
+            return size++;
+        }
+
+        Object value(int entry) {
+            if (kinds[entry] == VALUE_NULL || !decodeOnAccess) {
+                return values[entry];
+            }
+            Object value = values[entry];
+            if (value == null) {
+                try {
+                    value = decode(entry);
+                } catch (IOException e) {
+                    throw new ElasticsearchParseException("failed to decode the value of [" + names[entry] + "]", e);
+                }
+                values[entry] = value;
+            }
+            return value;
+        }
+
+        private Object decode(int entry) throws IOException {
+            int start = starts[entry];
+            final BytesReference source;
+            if (type == XContentType.JSON) {
+                // the offset is the one of the field name or of the comma that precedes the value, so the value
+                // is parsed as the first one of a container of the same kind as its parent
+                if (bytes.get(start) == ',') {
+                    ++start;
+                }
+                final BytesReference containerStart = names[entry] == null ? JSON_ARRAY_START : JSON_OBJECT_START;
+                source = new CompositeBytesReference(containerStart, bytes.slice(start, bytes.length() - start));
+            } else {
+                source = bytes.slice(start, bytes.length() - start);
+            }
+            final XContentParser parser = type.xContent().createParser(source);
+            try {
+                XContentParser.Token token = parser.nextToken();
+                if (type == XContentType.JSON) {
+                    token = parser.nextToken();
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        token = parser.nextToken();
+                    }
+                }
+                return AbstractXContentParser.readValue(parser, AbstractXContentParser.SIMPLE_MAP_FACTORY, token);
+            } finally {
+                parser.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,480 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.xcontent.support;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.ElasticsearchIllegalStateException;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.Base64;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.json.NonBlockingJsonXContentParser;
+import org.elasticsearch.common.xcontent.smile.NonBlockingSmileXContentParser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A parser that is fed with chunks of bytes as they arrive, eg. from a socket, instead of reading from a complete
+ * input, so that a response can be processed before it has been fully received and without blocking a thread
+ * while waiting for the rest of it.
+ * <p/>
+ * {@link #nextToken()} returns <tt>null</tt> both at the end of the document and when the bytes of the next token
+ * have not been fed yet, {@link #needsInput()} tells the two apart. In the latter case, the parser is left as it
+ * was, so that the call can be retried once more bytes have been {@link #feed(byte[], int, int) fed}.
+ * Operations that consume a whole value ({@link #skipChildren()}, {@link #map()}, copying the structure) need
+ * the value to be complete: {@link #hasCompleteValue()} tells whether it is, eg. before reading a whole hit.
+ * <pre>
+ *     parser.feed(chunk);
+ *     XContentParser.Token token;
+ *     while ((token = parser.nextToken()) != null) {
+ *         ...
+ *     }
+ *     if (parser.needsInput()) {
+ *         // wait for the next chunk
+ *     }
+ * </pre>
+ * <p/>
+ * Jackson 2.4 has no non-blocking parser, so the JSON and SMILE formats are tokenized by the implementations of
+ * this class. Instances are not thread-safe.
+ */
+public abstract class NonBlockingXContentParser extends AbstractXContentParser {
+
+    /**
+     * Create a non-blocking parser for the given content type, only JSON and SMILE are supported.
+     */
+    public static NonBlockingXContentParser create(XContentType type) {
+        switch (type) {
+            case JSON:
+                return new NonBlockingJsonXContentParser();
+            case SMILE:
+                return new NonBlockingSmileXContentParser();
+            default:
+                throw new ElasticsearchIllegalArgumentException("non-blocking parsing is not supported for [" + type + "]");
+        }
+    }
+
+    // the bytes that have been fed and not consumed yet are buffer[pos:limit]
+    protected byte[] buffer = new byte[1024];
+    protected int pos;
+    protected int limit;
+    private boolean endOfInput;
+    private boolean needsInput;
+    private boolean done;
+
+    private XContentParser.Token currentToken;
+    private String currentName;
+    // whether each open container is an object, and the last field name of the open objects
+    private boolean[] objects = new boolean[16];
+    private String[] names = new String[16];
+    protected int depth;
+
+    // the value of the current token
+    protected String text;
+    protected XContentParser.NumberType numberType;
+    protected long longValue;
+    protected double doubleValue;
+    protected boolean booleanValue;
+    protected byte[] binaryValue;
+
+    /**
+     * Feed the given bytes to the parser.
+     */
+    public void feed(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, limit, length);
+        limit += length;
+    }
+
+    /**
+     * Feed the remaining bytes of the given buffer to the parser.
+     */
+    public void feed(ByteBuffer bytes) {
+        final int length = bytes.remaining();
+        ensureCapacity(length);
+        bytes.get(buffer, limit, length);
+        limit += length;
+    }
+
+    /**
+     * Feed the given bytes to the parser.
+     */
+    public void feed(BytesReference bytes) {
+        if (bytes.hasArray()) {
+            feed(bytes.array(), bytes.arrayOffset(), bytes.length());
+        } else {
+            final BytesRef ref = bytes.toBytesRef();
+            feed(ref.bytes, ref.offset, ref.length);
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (endOfInput) {
+            throw new ElasticsearchIllegalStateException("can't feed bytes after the end of the input");
+        }
+        if (limit + length > buffer.length && pos > 0) {
+            // drop the bytes that have been consumed, positions that the implementations keep must be relative to pos
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit + length > buffer.length) {
+            buffer = ArrayUtil.grow(buffer, limit + length);
+        }
+    }
+
+    /**
+     * Signal that all the bytes have been fed: a token that is still incomplete is an error from now on.
+     */
+    public void endOfInput() {
+        endOfInput = true;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the last call to {@link #nextToken()} returned <tt>null</tt> because the bytes of
+     * the next token have not been fed yet.
+     */
+    public boolean needsInput() {
+        return needsInput;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the whole value that starts at the current token has been fed: always the case
+     * for scalar values, and the case for objects and arrays once their end has been fed.
+     */
+    public boolean hasCompleteValue() {
+        if (currentToken == XContentParser.Token.START_OBJECT || currentToken == XContentParser.Token.START_ARRAY) {
+            return containerComplete();
+        }
+        return currentToken != null && currentToken != XContentParser.Token.FIELD_NAME;
+    }
+
+    /**
+     * Returns whether <tt>buffer[pos:limit]</tt> holds the end of the container that has just been started.
+     */
+    protected abstract boolean containerComplete();
+
+    /**
+     * Read the next token from <tt>buffer[pos:limit]</tt>, returning <tt>null</tt> at the end of the document or
+     * the result of {@link #needInput()} if the token is not complete. The state of the parser, including
+     * <tt>pos</tt>, must only change once a whole token has been read, except for bytes like whitespace or
+     * separators that don't produce tokens.
+     */
+    protected abstract XContentParser.Token readToken() throws IOException;
+
+    /**
+     * To be returned by {@link #readToken()} when the next token is not complete.
+     */
+    protected final XContentParser.Token needInput() {
+        if (endOfInput) {
+            throw new ElasticsearchParseException("unexpected end of input at offset [" + pos + "]");
+        }
+        needsInput = true;
+        return null;
+    }
+
+    protected final boolean isEndOfInput() {
+        return endOfInput;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the next token is expected to be a field name (or the end of an object).
+     */
+    protected final boolean expectsFieldName() {
+        return depth > 0 && objects[depth - 1] && currentToken != XContentParser.Token.FIELD_NAME;
+    }
+
+    protected final boolean inObject() {
+        return depth > 0 && objects[depth - 1];
+    }
+
+    protected final XContentParser.Token startContainer(boolean object) {
+        if (depth == objects.length) {
+            objects = ArrayUtil.grow(objects, depth + 1);
+            names = Arrays.copyOf(names, ArrayUtil.oversize(depth + 1, RamUsageEstimator.NUM_BYTES_OBJECT_REF));
+        }
+        objects[depth] = object;
+        names[depth] = null;
+        ++depth;
+        return object ? XContentParser.Token.START_OBJECT : XContentParser.Token.START_ARRAY;
+    }
+
+    protected final XContentParser.Token endContainer(boolean object) {
+        if (depth == 0 || objects[depth - 1] != object) {
+            throw new ElasticsearchParseException("unexpected end of " + (object ? "object" : "array") + " at offset [" + pos + "]");
+        }
+        names[--depth] = null;
+        return object ? XContentParser.Token.END_OBJECT : XContentParser.Token.END_ARRAY;
+    }
+
+    @Override
+    public XContentParser.Token nextToken() throws IOException {
+        needsInput = false;
+        if (done) {
+            return null;
+        }
+        final XContentParser.Token token = readToken();
+        if (token == null) {
+            if (!needsInput) {
+                done = true;
+                currentToken = null;
+            }
+            return null;
+        }
+        currentToken = token;
+        switch (token) {
+            case FIELD_NAME:
+                names[depth - 1] = text;
+                currentName = text;
+                break;
+            case START_OBJECT:
+            case START_ARRAY:
+                currentName = depth > 1 && objects[depth - 2] ? names[depth - 2] : null;
+                break;
+            default:
+                currentName = inObject() ? names[depth - 1] : null;
+        }
+        if (depth == 0 && token != XContentParser.Token.START_OBJECT && token != XContentParser.Token.START_ARRAY) {
+            // the root value is complete
+            done = true;
+        }
+        return token;
+    }
+
+    @Override
+    public XContentParser.Token currentToken() {
+        return currentToken;
+    }
+
+    @Override
+    public String currentName() throws IOException {
+        return currentName;
+    }
+
+    @Override
+    public void skipChildren() throws IOException {
+        if (currentToken != XContentParser.Token.START_OBJECT && currentToken != XContentParser.Token.START_ARRAY) {
+            return;
+        }
+        ensureCompleteValue();
+        final int target = depth - 1;
+        while (depth > target) {
+            if (nextToken() == null) {
+                throw new ElasticsearchParseException("unexpected end of input at offset [" + pos + "]");
+            }
+        }
+    }
+
+    private void ensureCompleteValue() {
+        if (!hasCompleteValue()) {
+            throw new ElasticsearchIllegalStateException("the value starting at offset [" + pos + "] has not been fully fed");
+        }
+    }
+
+    private void ensureCompleteObject() throws IOException {
+        if (currentToken == null && nextToken() == null) {
+            throw new ElasticsearchIllegalStateException("no object to read");
+        }
+        if (currentToken == XContentParser.Token.START_OBJECT) {
+            ensureCompleteValue();
+        }
+    }
+
+    @Override
+    public Map<String, Object> map() throws IOException {
+        ensureCompleteObject();
+        return super.map();
+    }
+
+    @Override
+    public Map<String, Object> mapOrdered() throws IOException {
+        ensureCompleteObject();
+        return super.mapOrdered();
+    }
+
+    @Override
+    public Map<String, Object> mapCompact() throws IOException {
+        ensureCompleteObject();
+        return super.mapCompact();
+    }
+
+    @Override
+    public XContentParser.NumberType numberType() throws IOException {
+        return numberType;
+    }
+
+    @Override
+    public String text() throws IOException {
+        if (currentToken == null) {
+            return null;
+        }
+        switch (currentToken) {
+            case FIELD_NAME:
+            case VALUE_STRING:
+                return text;
+            case VALUE_NUMBER:
+                return numberValue().toString();
+            case VALUE_BOOLEAN:
+                return booleanValue ? "true" : "false";
+            case VALUE_NULL:
+                return "null";
+            case START_OBJECT:
+                return "{";
+            case END_OBJECT:
+                return "}";
+            case START_ARRAY:
+                return "[";
+            case END_ARRAY:
+                return "]";
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public BytesRef utf8Bytes() throws IOException {
+        return new BytesRef(text());
+    }
+
+    @Override
+    public Object objectText() throws IOException {
+        return objectValue(false);
+    }
+
+    @Override
+    public Object objectBytes() throws IOException {
+        return objectValue(true);
+    }
+
+    private Object objectValue(boolean utf8) throws IOException {
+        if (currentToken == XContentParser.Token.VALUE_STRING) {
+            return utf8 ? utf8Bytes() : text();
+        } else if (currentToken == XContentParser.Token.VALUE_NUMBER) {
+            return numberValue();
+        } else if (currentToken == XContentParser.Token.VALUE_BOOLEAN) {
+            return booleanValue;
+        } else if (currentToken == XContentParser.Token.VALUE_NULL) {
+            return null;
+        }
+        return text();
+    }
+
+    @Override
+    public boolean hasTextCharacters() {
+        return false;
+    }
+
+    @Override
+    public char[] textCharacters() throws IOException {
+        return text().toCharArray();
+    }
+
+    @Override
+    public int textLength() throws IOException {
+        return text().length();
+    }
+
+    @Override
+    public int textOffset() throws IOException {
+        return 0;
+    }
+
+    @Override
+    public Number numberValue() throws IOException {
+        ensureNumber();
+        switch (numberType) {
+            case INT:
+                return (int) longValue;
+            case LONG:
+                return longValue;
+            default:
+                // like Jackson, floats are returned as doubles
+                return doubleValue;
+        }
+    }
+
+    private void ensureNumber() {
+        if (currentToken != XContentParser.Token.VALUE_NUMBER) {
+            throw new ElasticsearchIllegalStateException("current token [" + currentToken + "] is not a number");
+        }
+    }
+
+    private boolean integral() {
+        ensureNumber();
+        return numberType == XContentParser.NumberType.INT || numberType == XContentParser.NumberType.LONG;
+    }
+
+    @Override
+    protected boolean doBooleanValue() throws IOException {
+        if (currentToken != XContentParser.Token.VALUE_BOOLEAN) {
+            throw new ElasticsearchIllegalStateException("current token [" + currentToken + "] is not a boolean");
+        }
+        return booleanValue;
+    }
+
+    @Override
+    protected short doShortValue() throws IOException {
+        return integral() ? (short) longValue : (short) doubleValue;
+    }
+
+    @Override
+    protected int doIntValue() throws IOException {
+        return integral() ? (int) longValue : (int) doubleValue;
+    }
+
+    @Override
+    protected long doLongValue() throws IOException {
+        return integral() ? longValue : (long) doubleValue;
+    }
+
+    @Override
+    protected float doFloatValue() throws IOException {
+        return integral() ? (float) longValue : (float) doubleValue;
+    }
+
+    @Override
+    protected double doDoubleValue() throws IOException {
+        return integral() ? (double) longValue : doubleValue;
+    }
+
+    @Override
+    public byte[] binaryValue() throws IOException {
+        if (currentToken == XContentParser.Token.VALUE_EMBEDDED_OBJECT) {
+            return binaryValue;
+        } else if (currentToken == XContentParser.Token.VALUE_STRING) {
+            // binary values are base64 encoded in text formats
+            return Base64.decode(text);
+        }
+        throw new ElasticsearchIllegalStateException("current token [" + currentToken + "] is not a binary value");
+    }
+
+    @Override
+    public void close() {
+        buffer = BytesRef.EMPTY_BYTES;
+        pos = limit = 0;
+        done = true;
+    }
+}
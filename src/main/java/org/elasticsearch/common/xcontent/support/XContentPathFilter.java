@@ -0,0 +1,274 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.xcontent.support;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.regex.Regex;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentGenerator;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Copies an object from a parser to a generator, keeping only the fields that match include and exclude path
+ * patterns, with the same syntax and semantics as the <tt>_source</tt> filtering of
+ * {@link org.elasticsearch.search.fetch.source.FetchSourceContext}: paths are dot-separated field names, patterns
+ * may use <tt>*</tt> wildcards, excludes win over includes and the elements of arrays are filtered with the path
+ * of the array.
+ * <p/>
+ * The copy is streamed token by token: excluded sub-trees are skipped with {@link XContentParser#skipChildren()}
+ * without being decoded, and objects are only written once one of their values is included, so that nothing is
+ * ever materialized. This works with all content types.
+ */
+public class XContentPathFilter {
+
+    private final String[] includes;
+    private final String[] excludes;
+
+    public XContentPathFilter(String[] includes, String[] excludes) {
+        this.includes = includes == null ? Strings.EMPTY_ARRAY : includes;
+        this.excludes = excludes == null ? Strings.EMPTY_ARRAY : excludes;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this filter has no include or exclude pattern and keeps the whole content.
+     */
+    public boolean isNoop() {
+        return includes.length == 0 && excludes.length == 0;
+    }
+
+    /**
+     * Filters the given content, the result has the same content type.
+     */
+    public BytesReference filter(BytesReference source) throws IOException {
+        if (isNoop()) {
+            return source;
+        }
+        final XContentType type = XContentFactory.xContentType(source);
+        if (type == null) {
+            throw new ElasticsearchParseException("failed to detect the content type of the source");
+        }
+        final XContentParser parser = type.xContent().createParser(source);
+        try {
+            final XContentBuilder builder = XContentFactory.contentBuilder(type);
+            filter(parser, builder.generator());
+            return builder.bytes();
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Copies the object the parser is positioned on, or the first one if the parser has not been started, to the
+     * generator. The parser is left on the end of the object.
+     */
+    public void filter(XContentParser parser, XContentGenerator generator) throws IOException {
+        XContentParser.Token token = parser.currentToken();
+        if (token == null) {
+            token = parser.nextToken();
+        }
+        if (token != XContentParser.Token.START_OBJECT) {
+            throw new ElasticsearchParseException("expected an object but got [" + token + "]");
+        }
+        final Copy copy = new Copy(generator);
+        // the root object is always written, even if none of its fields is included
+        copy.open(null, false);
+        copy.flush();
+        copy.object(parser, includes, new StringBuilder());
+        copy.close();
+    }
+
+    /**
+     * The state of a copy: objects and arrays that have been opened in the source are only written once one of
+     * their values is included, or straight away if their path is included.
+     */
+    private final class Copy {
+
+        private final XContentGenerator generator;
+
+        private String[] names = new String[8];
+        private boolean[] arrays = new boolean[8];
+        // the number of opened containers
+        private int depth;
+        // the number of opened containers that have been written
+        private int written;
+
+        Copy(XContentGenerator generator) {
+            this.generator = generator;
+        }
+
+        void open(String name, boolean array) {
+            if (depth == names.length) {
+                names = Arrays.copyOf(names, ArrayUtil.oversize(depth + 1, RamUsageEstimator.NUM_BYTES_OBJECT_REF));
+                arrays = ArrayUtil.grow(arrays, names.length);
+            }
+            names[depth] = name;
+            arrays[depth] = array;
+            ++depth;
+        }
+
+        void flush() throws IOException {
+            for (; written < depth; ++written) {
+                if (names[written] != null) {
+                    generator.writeFieldName(names[written]);
+                }
+                if (arrays[written]) {
+                    generator.writeStartArray();
+                } else {
+                    generator.writeStartObject();
+                }
+            }
+        }
+
+        void close() throws IOException {
+            --depth;
+            names[depth] = null;
+            if (written > depth) {
+                written = depth;
+                if (arrays[depth]) {
+                    generator.writeEndArray();
+                } else {
+                    generator.writeEndObject();
+                }
+            }
+        }
+
+        /**
+         * Copies the fields of the object the parser is positioned on, up to its end.
+         */
+        void object(XContentParser parser, String[] includes, StringBuilder path) throws IOException {
+            if (includes.length == 0 && excludes.length == 0) {
+                flush();
+                while (parser.nextToken() != XContentParser.Token.END_OBJECT) {
+                    generator.copyCurrentStructure(parser);
+                }
+                return;
+            }
+            final int pathLength = path.length();
+            while (parser.nextToken() != XContentParser.Token.END_OBJECT) {
+                final String name = parser.currentName();
+                final XContentParser.Token token = parser.nextToken();
+                if (pathLength > 0) {
+                    path.append('.');
+                }
+                path.append(name);
+                final String fullName = path.toString();
+
+                boolean exactIncludeMatch = false; // true if the current position was specifically mentioned
+                boolean pathIsPrefixOfAnInclude = false; // true if potentially a sub scope can be included
+                if (!Regex.simpleMatch(excludes, fullName)) {
+                    if (includes.length == 0) {
+                        // implied match anything
+                        exactIncludeMatch = true;
+                    } else {
+                        for (String include : includes) {
+                            // check for prefix matches as well to see if we need to zero in, something like: obj1.arr1.* or *.field
+                            // note, this does not work well with middle matches, like obj1.*.obj3
+                            if (include.charAt(0) == '*') {
+                                if (Regex.simpleMatch(include, fullName)) {
+                                    exactIncludeMatch = true;
+                                    break;
+                                }
+                                pathIsPrefixOfAnInclude = true;
+                                continue;
+                            }
+                            if (include.startsWith(fullName)) {
+                                if (include.length() == fullName.length()) {
+                                    exactIncludeMatch = true;
+                                    break;
+                                } else if (include.length() > fullName.length() && include.charAt(fullName.length()) == '.') {
+                                    // include might match deeper paths. Dive deeper.
+                                    pathIsPrefixOfAnInclude = true;
+                                    continue;
+                                }
+                            }
+                            if (Regex.simpleMatch(include, fullName)) {
+                                exactIncludeMatch = true;
+                                break;
+                            }
+                        }
+                    }
+                }
+
+                if (!exactIncludeMatch && !pathIsPrefixOfAnInclude) {
+                    parser.skipChildren();
+                } else if (token == XContentParser.Token.START_OBJECT || token == XContentParser.Token.START_ARRAY) {
+                    final boolean array = token == XContentParser.Token.START_ARRAY;
+                    open(name, array);
+                    // like on the server, an array on the path of an include is kept even if nothing is left in it
+                    if (exactIncludeMatch || array) {
+                        flush();
+                    }
+                    final String[] innerIncludes = exactIncludeMatch ? Strings.EMPTY_ARRAY : includes;
+                    if (array) {
+                        array(parser, innerIncludes, path);
+                    } else {
+                        object(parser, innerIncludes, path);
+                    }
+                    close();
+                } else if (exactIncludeMatch) {
+                    flush();
+                    generator.writeFieldName(name);
+                    XContentHelper.copyCurrentEvent(generator, parser);
+                }
+                path.setLength(pathLength);
+            }
+        }
+
+        /**
+         * Copies the elements of the array the parser is positioned on, up to its end. Objects and arrays are
+         * filtered with the path of the array and only written if something is left in them, other values are
+         * always written.
+         */
+        void array(XContentParser parser, String[] includes, StringBuilder path) throws IOException {
+            if (includes.length == 0 && excludes.length == 0) {
+                flush();
+                while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                    generator.copyCurrentStructure(parser);
+                }
+                return;
+            }
+            XContentParser.Token token;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                if (token == XContentParser.Token.START_OBJECT) {
+                    open(null, false);
+                    object(parser, includes, path);
+                    close();
+                } else if (token == XContentParser.Token.START_ARRAY) {
+                    open(null, true);
+                    array(parser, includes, path);
+                    close();
+                } else {
+                    flush();
+                    XContentHelper.copyCurrentEvent(generator, parser);
+                }
+            }
+        }
+    }
+}
@@ -22,16 +22,30 @@ package org.elasticsearch.common.xcontent.yaml;
 import com.fasterxml.jackson.core.JsonParser;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.common.xcontent.json.JsonXContentParser;
+import org.elasticsearch.common.xcontent.support.FieldNameCache;
+
+import java.io.IOException;
 
 /**
  *
  */
 public class YamlXContentParser extends JsonXContentParser {
 
+    private static final FieldNameCache FIELD_NAMES = FieldNameCache.forType(XContentType.YAML);
+
     public YamlXContentParser(JsonParser parser) {
         super(parser);
     }
 
+    /**
+     * Unlike the other parsers, the YAML parser doesn't canonicalize field names, so they are deduplicated across
+     * documents through a {@link FieldNameCache}.
+     */
+    @Override
+    public String currentName() throws IOException {
+        return FIELD_NAMES.canonicalize(super.currentName());
+    }
+
     @Override
     public XContentType contentType() {
         return XContentType.YAML;
@@ -20,11 +20,14 @@
 package org.elasticsearch.index.query;
 
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.stream.StreamXContent;
 
 import java.io.IOException;
 
@@ -56,11 +59,21 @@ public abstract class BaseQueryBuilder implements QueryBuilder {
             XContentBuilder builder = XContentFactory.contentBuilder(contentType);
             toXContent(builder, EMPTY_PARAMS);
             return builder.bytes();
+        } catch (CircuitBreakingException e) {
+            // fail fast, the builder is too large for the client side buffers
+            throw e;
         } catch (Exception e) {
             throw new ElasticsearchException("Failed to build query", e);
         }
     }
 
+    /**
+     * Writes this query in a compact binary form, it can be read back with {@link StreamedQueryBuilder#readQuery(org.elasticsearch.common.io.stream.StreamInput)}.
+     */
+    public void writeTo(StreamOutput out) throws IOException {
+        StreamXContent.writeTo(this, out);
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
         builder.startObject();
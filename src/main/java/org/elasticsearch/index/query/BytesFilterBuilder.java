@@ -21,6 +21,7 @@ package org.elasticsearch.index.query;
 
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentParser;
@@ -34,6 +35,8 @@ import java.io.IOException;
 public class BytesFilterBuilder extends BaseFilterBuilder {
 
     private final BytesReference source;
+    // guessed on first use and kept, the filter is usually rendered more than once
+    private XContent sourceXContent;
 
     public BytesFilterBuilder(BytesReference source) {
         this.source = source;
@@ -45,7 +48,10 @@ public class BytesFilterBuilder extends BaseFilterBuilder {
 
         XContentParser parser = null;
         try {
-            parser = XContentFactory.xContent(source).createParser(source);
+            if (sourceXContent == null) {
+                sourceXContent = XContentFactory.xContent(source);
+            }
+            parser = sourceXContent.createParser(source);
             parser.nextToken();
             parser.nextToken();
             builder.copyCurrentStructure(parser);
@@ -21,6 +21,8 @@ package org.elasticsearch.index.query;
 
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.geo.GeoHashCover;
+import org.elasticsearch.common.geo.GeoHashUtils;
 import org.elasticsearch.common.geo.GeoPoint;
 import org.elasticsearch.common.geo.ShapeRelation;
 import org.elasticsearch.common.geo.builders.ShapeBuilder;
@@ -401,6 +403,34 @@ public abstract class FilterBuilders {
     public static GeohashCellFilter.Builder geoHashCellFilter(String name, String geohash, boolean neighbors) {
         return new GeohashCellFilter.Builder(name, geohash, neighbors);
     }
+
+    /**
+     * A filter that matches the points within a set of geohash cells that covers a shape, see {@link GeoHashCover}.
+     * The field this filter is applied to must have
+     * <code>{&quot;type&quot;:&quot;geo_point&quot;, &quot;geohash_prefix&quot;:true}</code> to work.
+     *
+     * @param name The geo point field name
+     * @param shape The shape to cover
+     * @param precision The maximum length of the geohashes of the cover
+     */
+    public static BoolFilterBuilder geoHashCellCoverFilter(String name, ShapeBuilder shape, int precision) {
+        return geoHashCellCoverFilter(name, GeoHashCover.cover(shape, precision));
+    }
+
+    /**
+     * A filter that matches the points within any of the given geohash cells. The field this filter is applied to
+     * must have <code>{&quot;type&quot;:&quot;geo_point&quot;, &quot;geohash_prefix&quot;:true}</code> to work.
+     *
+     * @param name The geo point field name
+     * @param geohashes The geohashes of the cells, encoded as longs
+     */
+    public static BoolFilterBuilder geoHashCellCoverFilter(String name, long... geohashes) {
+        BoolFilterBuilder filter = boolFilter();
+        for (long geohash : geohashes) {
+            filter.should(geoHashCellFilter(name, GeoHashUtils.toString(geohash)));
+        }
+        return filter;
+    }
     
     /**
      * A filter to filter based on a polygon defined by a set of locations  / points.
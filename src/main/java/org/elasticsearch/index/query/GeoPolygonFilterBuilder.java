@@ -22,10 +22,17 @@ package org.elasticsearch.index.query;
 import com.google.common.collect.Lists;
 import org.elasticsearch.common.geo.GeoHashUtils;
 import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.common.geo.builders.CompactShapeEncoding;
+import org.elasticsearch.common.geo.builders.PackedCoordinates;
+import org.elasticsearch.common.geo.builders.ShapeSimplifier;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.unit.DistanceUnit.Distance;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -68,6 +75,38 @@ public class GeoPolygonFilterBuilder extends BaseFilterBuilder {
         return this;
     }
     
+    /**
+     * Simplify the polygon with the points that have been added so far, see {@link ShapeSimplifier}
+     *
+     * @param tolerance maximum distance between the original and the simplified polygon
+     */
+    public GeoPolygonFilterBuilder simplify(Distance tolerance) {
+        return simplify(tolerance, 0);
+    }
+
+    /**
+     * Simplify the polygon with the points that have been added so far, see {@link ShapeSimplifier}
+     *
+     * @param tolerance maximum distance between the original and the simplified polygon, may be <code>null</code>
+     * @param maxPoints maximum number of points of the simplified polygon including the closing point,
+     *                  <code>0</code> for no limit
+     */
+    public GeoPolygonFilterBuilder simplify(Distance tolerance, int maxPoints) {
+        PackedCoordinates points = new PackedCoordinates(shell.size() + 1);
+        for (GeoPoint point : shell) {
+            points.add(point.lon(), point.lat());
+        }
+        boolean closed = points.isClosed();
+        new ShapeSimplifier(tolerance, maxPoints).simplifyPolygon(points, Collections.<PackedCoordinates>emptyList());
+        shell.clear();
+        // the simplified ring is closed, keep the form the points were given in
+        int size = !closed && points.isClosed() ? points.size() - 1 : points.size();
+        for (int i = 0; i < size; i++) {
+            shell.add(new GeoPoint(points.y(i), points.x(i)));
+        }
+        return this;
+    }
+
     /**
      * Sets the filter name for the filter that can be used when searching for matched_filters per hit.
      */
@@ -89,6 +128,38 @@ public class GeoPolygonFilterBuilder extends BaseFilterBuilder {
         return this;
     }
 
+    /**
+     * Writes this filter in a compact binary form, with the points encoded by {@link CompactShapeEncoding}, eg. to
+     * build the key of a client side cache of queries. Coordinates are rounded to <code>precision</code> decimal
+     * digits.
+     */
+    public void writeTo(StreamOutput out, int precision) throws IOException {
+        out.writeString(name);
+        final PackedCoordinates points = new PackedCoordinates(shell.size());
+        for (GeoPoint point : shell) {
+            points.add(point.lon(), point.lat());
+        }
+        CompactShapeEncoding.writeCoordinates(out, points, precision);
+        out.writeOptionalBoolean(cache);
+        out.writeOptionalString(cacheKey);
+        out.writeOptionalString(filterName);
+    }
+
+    /**
+     * Reads a filter written with {@link #writeTo(StreamOutput, int)}
+     */
+    public static GeoPolygonFilterBuilder readFrom(StreamInput in) throws IOException {
+        final GeoPolygonFilterBuilder builder = new GeoPolygonFilterBuilder(in.readString());
+        final PackedCoordinates points = CompactShapeEncoding.readCoordinates(in);
+        for (int i = 0; i < points.size(); i++) {
+            builder.shell.add(new GeoPoint(points.y(i), points.x(i)));
+        }
+        builder.cache = in.readOptionalBoolean();
+        builder.cacheKey = in.readOptionalString();
+        builder.filterName = in.readOptionalString();
+        return builder;
+    }
+
     @Override
     protected void doXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
         builder.startObject(GeoPolygonFilterParser.NAME);
@@ -21,7 +21,10 @@ package org.elasticsearch.index.query;
 
 import org.elasticsearch.common.geo.ShapeRelation;
 import org.elasticsearch.common.geo.SpatialStrategy;
+import org.elasticsearch.common.geo.builders.CompactShapeEncoding;
 import org.elasticsearch.common.geo.builders.ShapeBuilder;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
@@ -172,6 +175,57 @@ public class GeoShapeFilterBuilder extends BaseFilterBuilder {
         return this;
     }
 
+    /**
+     * Writes this filter in a compact binary form, with the shape encoded by {@link CompactShapeEncoding}, eg. to
+     * build the key of a client side cache of queries. Coordinates are rounded to <code>precision</code> decimal
+     * digits.
+     */
+    public void writeTo(StreamOutput out, int precision) throws IOException {
+        out.writeString(name);
+        if (shape != null) {
+            out.writeBoolean(true);
+            CompactShapeEncoding.writeShape(out, shape, precision);
+        } else {
+            out.writeBoolean(false);
+            out.writeString(indexedShapeId);
+            out.writeString(indexedShapeType);
+            out.writeOptionalString(indexedShapeIndex);
+            out.writeOptionalString(indexedShapePath);
+        }
+        out.writeOptionalString(strategy == null ? null : strategy.name());
+        out.writeOptionalString(relation == null ? null : relation.getRelationName());
+        out.writeOptionalBoolean(cache);
+        out.writeOptionalString(cacheKey);
+        out.writeOptionalString(filterName);
+    }
+
+    /**
+     * Reads a filter written with {@link #writeTo(StreamOutput, int)}
+     */
+    public static GeoShapeFilterBuilder readFrom(StreamInput in) throws IOException {
+        final String name = in.readString();
+        final GeoShapeFilterBuilder builder;
+        if (in.readBoolean()) {
+            builder = new GeoShapeFilterBuilder(name, CompactShapeEncoding.readShape(in));
+        } else {
+            builder = new GeoShapeFilterBuilder(name, in.readString(), in.readString(), null);
+            builder.indexedShapeIndex = in.readOptionalString();
+            builder.indexedShapePath = in.readOptionalString();
+        }
+        final String strategy = in.readOptionalString();
+        if (strategy != null) {
+            builder.strategy = SpatialStrategy.valueOf(strategy);
+        }
+        final String relation = in.readOptionalString();
+        if (relation != null) {
+            builder.relation = ShapeRelation.getRelationByName(relation);
+        }
+        builder.cache = in.readOptionalBoolean();
+        builder.cacheKey = in.readOptionalString();
+        builder.filterName = in.readOptionalString();
+        return builder;
+    }
+
     @Override
     protected void doXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
         builder.startObject(GeoShapeFilterParser.NAME);
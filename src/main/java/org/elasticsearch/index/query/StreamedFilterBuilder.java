@@ -0,0 +1,75 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.query;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.stream.StreamXContent;
+
+import java.io.IOException;
+
+/**
+ * A filter that has been written with {@link BaseFilterBuilder#writeTo(StreamOutput)}, it renders exactly as the
+ * original filter did when it was written.
+ */
+public class StreamedFilterBuilder extends BaseFilterBuilder {
+
+    private final BytesReference encoded;
+
+    public StreamedFilterBuilder(BytesReference encoded) {
+        this.encoded = encoded;
+    }
+
+    public static StreamedFilterBuilder readFilter(StreamInput in) throws IOException {
+        return new StreamedFilterBuilder(StreamXContent.readEncoded(in));
+    }
+
+    /**
+     * Write any filter, not only the ones extending {@link BaseFilterBuilder}.
+     */
+    public static void writeFilter(FilterBuilder filter, StreamOutput out) throws IOException {
+        if (filter instanceof BaseFilterBuilder) {
+            ((BaseFilterBuilder) filter).writeTo(out);
+        } else {
+            StreamXContent.writeTo(filter, out);
+        }
+    }
+
+    /**
+     * @return the encoded form of the filter
+     */
+    public BytesReference encoded() {
+        return encoded;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeBytesReference(encoded);
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
+        // the encoded form holds the whole filter, the enclosing object is rendered by toXContent
+        StreamXContent.replayFields(encoded, builder);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.query;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.stream.StreamXContent;
+
+import java.io.IOException;
+
+/**
+ * A query that has been written with {@link BaseQueryBuilder#writeTo(StreamOutput)}, it renders exactly as the
+ * original query did when it was written.
+ */
+public class StreamedQueryBuilder extends BaseQueryBuilder {
+
+    private final BytesReference encoded;
+
+    public StreamedQueryBuilder(BytesReference encoded) {
+        this.encoded = encoded;
+    }
+
+    public static StreamedQueryBuilder readQuery(StreamInput in) throws IOException {
+        return new StreamedQueryBuilder(StreamXContent.readEncoded(in));
+    }
+
+    /**
+     * Write any query, not only the ones extending {@link BaseQueryBuilder}.
+     */
+    public static void writeQuery(QueryBuilder query, StreamOutput out) throws IOException {
+        if (query instanceof BaseQueryBuilder) {
+            ((BaseQueryBuilder) query).writeTo(out);
+        } else {
+            StreamXContent.writeTo(query, out);
+        }
+    }
+
+    /**
+     * @return the encoded form of the query
+     */
+    public BytesReference encoded() {
+        return encoded;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeBytesReference(encoded);
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
+        // the encoded form holds the whole query, the enclosing object is rendered by toXContent
+        StreamXContent.replayFields(encoded, builder);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices.breaker;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.BigArrays;
+
+/**
+ * A {@link CircuitBreakerService} for the client side that accounts for the
+ * buffers used to build requests (query / filter / search source builders,
+ * bulk bodies) against a single {@link CircuitBreaker.Name#REQUEST} breaker.
+ * <p/>
+ * Once started, the service installs its {@link BigArrays} as the
+ * {@link BigArrays#defaultInstance() default instance}, so that every
+ * {@link org.elasticsearch.common.io.stream.BytesStreamOutput} created without
+ * an explicit {@link BigArrays} fails fast with a
+ * {@link org.elasticsearch.common.breaker.CircuitBreakingException} instead of
+ * running the JVM out of memory. Stopping the service restores the non
+ * recycling, non accounting default.
+ */
+public class ClientCircuitBreakerService extends CircuitBreakerService {
+
+    public static final String REQUEST_CIRCUIT_BREAKER_LIMIT_SETTING = "indices.breaker.request.limit";
+    public static final String REQUEST_CIRCUIT_BREAKER_OVERHEAD_SETTING = "indices.breaker.request.overhead";
+
+    public static final String DEFAULT_REQUEST_BREAKER_LIMIT = "20%";
+    public static final double DEFAULT_REQUEST_BREAKER_OVERHEAD = 1.0;
+
+    private final MemoryCircuitBreaker requestBreaker;
+    private final BigArrays bigArrays;
+
+    @Inject
+    public ClientCircuitBreakerService(Settings settings) {
+        super(settings);
+        this.requestBreaker = new MemoryCircuitBreaker(
+                settings.getAsMemory(REQUEST_CIRCUIT_BREAKER_LIMIT_SETTING, DEFAULT_REQUEST_BREAKER_LIMIT),
+                settings.getAsDouble(REQUEST_CIRCUIT_BREAKER_OVERHEAD_SETTING, DEFAULT_REQUEST_BREAKER_OVERHEAD),
+                CircuitBreaker.Name.REQUEST);
+        // buffers are not recycled on the client side: releasing the accounting of a
+        // finished buffer must leave the bytes it handed out readable
+        this.bigArrays = new BigArrays(settings, null, this, true);
+    }
+
+    @Override
+    public CircuitBreaker getBreaker(CircuitBreaker.Name type) {
+        if (type == CircuitBreaker.Name.REQUEST) {
+            return requestBreaker;
+        }
+        throw new ElasticsearchIllegalArgumentException("No CircuitBreaker registered for [" + type + "]");
+    }
+
+    /**
+     * @return the {@link BigArrays} that accounts for its allocations against the request breaker
+     */
+    public BigArrays bigArrays() {
+        return bigArrays;
+    }
+
+    @Override
+    protected void doStart() throws ElasticsearchException {
+        BigArrays.defaultInstance(bigArrays);
+    }
+
+    @Override
+    protected void doStop() throws ElasticsearchException {
+        if (BigArrays.defaultInstance() == bigArrays) {
+            BigArrays.defaultInstance(BigArrays.NON_RECYCLING_INSTANCE);
+        }
+    }
+}
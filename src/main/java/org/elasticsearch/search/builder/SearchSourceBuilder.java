@@ -28,13 +28,16 @@ import org.elasticsearch.ElasticsearchIllegalArgumentException;
 import org.elasticsearch.client.Requests;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.stream.StreamXContent;
 import org.elasticsearch.index.query.FilterBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
@@ -78,10 +81,13 @@ public class SearchSourceBuilder implements ToXContent {
     private QueryBuilder queryBuilder;
 
     private BytesReference queryBinary;
+    // content types of the raw fragments, guessed once when they are set
+    private XContentType queryBinaryType;
 
     private FilterBuilder postFilterBuilder;
 
     private BytesReference filterBinary;
+    private XContentType filterBinaryType;
 
     private int from = -1;
 
@@ -108,9 +114,11 @@ public class SearchSourceBuilder implements ToXContent {
 
     private List<FacetBuilder> facets;
     private BytesReference facetsBinary;
+    private XContentType facetsBinaryType;
 
     private List<AbstractAggregationBuilder> aggregations;
     private BytesReference aggregationsBinary;
+    private XContentType aggregationsBinaryType;
 
 
     private HighlightBuilder highlightBuilder;
@@ -160,6 +168,7 @@ public class SearchSourceBuilder implements ToXContent {
      */
     public SearchSourceBuilder query(BytesReference queryBinary) {
         this.queryBinary = queryBinary;
+        this.queryBinaryType = queryBinary == null ? null : XContentFactory.xContentType(queryBinary);
         return this;
     }
 
@@ -229,6 +238,7 @@ public class SearchSourceBuilder implements ToXContent {
      */
     public SearchSourceBuilder postFilter(BytesReference postFilterBinary) {
         this.filterBinary = postFilterBinary;
+        this.filterBinaryType = postFilterBinary == null ? null : XContentFactory.xContentType(postFilterBinary);
         return this;
     }
 
@@ -390,6 +400,7 @@ public class SearchSourceBuilder implements ToXContent {
      */
     public SearchSourceBuilder facets(BytesReference facetsBinary) {
         this.facetsBinary = facetsBinary;
+        this.facetsBinaryType = facetsBinary == null ? null : XContentFactory.xContentType(facetsBinary);
         return this;
     }
 
@@ -443,6 +454,7 @@ public class SearchSourceBuilder implements ToXContent {
      */
     public SearchSourceBuilder aggregations(BytesReference aggregationsBinary) {
         this.aggregationsBinary = aggregationsBinary;
+        this.aggregationsBinaryType = aggregationsBinary == null ? null : XContentFactory.xContentType(aggregationsBinary);
         return this;
     }
 
@@ -730,11 +742,22 @@ public class SearchSourceBuilder implements ToXContent {
             XContentBuilder builder = XContentFactory.contentBuilder(contentType);
             toXContent(builder, ToXContent.EMPTY_PARAMS);
             return builder.bytes();
+        } catch (CircuitBreakingException e) {
+            // fail fast, the builder is too large for the client side buffers
+            throw e;
         } catch (Exception e) {
             throw new SearchSourceBuilderException("Failed to build search source", e);
         }
     }
 
+    /**
+     * Writes this search source in a compact binary form, it can be read back with
+     * {@link StreamedSearchSource#readSearchSource(org.elasticsearch.common.io.stream.StreamInput)}.
+     */
+    public void writeTo(StreamOutput out) throws IOException {
+        StreamXContent.writeTo(this, out);
+    }
+
 
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
@@ -761,8 +784,8 @@ public class SearchSourceBuilder implements ToXContent {
         }
 
         if (queryBinary != null) {
-            if (XContentFactory.xContentType(queryBinary) == builder.contentType()) {
-                builder.rawField("query", queryBinary);
+            if (queryBinaryType == builder.contentType()) {
+                builder.rawField("query", queryBinary, queryBinaryType);
             } else {
                 builder.field("query_binary", queryBinary);
             }
@@ -774,8 +797,8 @@ public class SearchSourceBuilder implements ToXContent {
         }
 
         if (filterBinary != null) {
-            if (XContentFactory.xContentType(filterBinary) == builder.contentType()) {
-                builder.rawField("filter", filterBinary);
+            if (filterBinaryType == builder.contentType()) {
+                builder.rawField("filter", filterBinary, filterBinaryType);
             } else {
                 builder.field("filter_binary", filterBinary);
             }
@@ -901,8 +924,8 @@ public class SearchSourceBuilder implements ToXContent {
         }
 
         if (facetsBinary != null) {
-            if (XContentFactory.xContentType(facetsBinary) == builder.contentType()) {
-                builder.rawField("facets", facetsBinary);
+            if (facetsBinaryType == builder.contentType()) {
+                builder.rawField("facets", facetsBinary, facetsBinaryType);
             } else {
                 builder.field("facets_binary", facetsBinary);
             }
@@ -918,8 +941,8 @@ public class SearchSourceBuilder implements ToXContent {
         }
 
         if (aggregationsBinary != null) {
-            if (XContentFactory.xContentType(aggregationsBinary) == builder.contentType()) {
-                builder.rawField("aggregations", aggregationsBinary);
+            if (aggregationsBinaryType == builder.contentType()) {
+                builder.rawField("aggregations", aggregationsBinary, aggregationsBinaryType);
             } else {
                 builder.field("aggregations_binary", aggregationsBinary);
             }
@@ -0,0 +1,95 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.builder;
+
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.stream.StreamXContent;
+
+import java.io.IOException;
+
+/**
+ * A search source that has been written with {@link SearchSourceBuilder#writeTo(StreamOutput)}, it renders
+ * exactly as the original search source did when it was written.
+ */
+public class StreamedSearchSource implements ToXContent {
+
+    private final BytesReference encoded;
+
+    public StreamedSearchSource(BytesReference encoded) {
+        this.encoded = encoded;
+    }
+
+    public static StreamedSearchSource readSearchSource(StreamInput in) throws IOException {
+        return new StreamedSearchSource(StreamXContent.readEncoded(in));
+    }
+
+    /**
+     * @return the encoded form of the search source
+     */
+    public BytesReference encoded() {
+        return encoded;
+    }
+
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeBytesReference(encoded);
+    }
+
+    public BytesReference buildAsBytes() throws SearchSourceBuilderException {
+        return buildAsBytes(Requests.CONTENT_TYPE);
+    }
+
+    public BytesReference buildAsBytes(XContentType contentType) throws SearchSourceBuilderException {
+        try {
+            XContentBuilder builder = XContentFactory.contentBuilder(contentType);
+            toXContent(builder, ToXContent.EMPTY_PARAMS);
+            return builder.bytes();
+        } catch (CircuitBreakingException e) {
+            // fail fast, the builder is too large for the client side buffers
+            throw e;
+        } catch (Exception e) {
+            throw new SearchSourceBuilderException("Failed to build search source", e);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        StreamXContent.replay(encoded, builder);
+        return builder;
+    }
+
+    @Override
+    public String toString() {
+        try {
+            XContentBuilder builder = XContentFactory.contentBuilder(XContentType.JSON).prettyPrint();
+            toXContent(builder, ToXContent.EMPTY_PARAMS);
+            return builder.string();
+        } catch (Exception e) {
+            return "{ \"error\" : \"" + e.getMessage() + "\"}";
+        }
+    }
+}
@@ -22,9 +22,11 @@ package org.elasticsearch.search.fetch.source;
 import org.elasticsearch.Version;
 import org.elasticsearch.common.Booleans;
 import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.xcontent.support.XContentPathFilter;
 import org.elasticsearch.rest.RestRequest;
 
 import java.io.IOException;
@@ -114,6 +116,14 @@ public class FetchSourceContext implements Streamable {
         return this.excludes;
     }
 
+    /**
+     * Filters the given source with the includes and excludes of this context, for sources that have been returned
+     * unfiltered.
+     */
+    public BytesReference filter(BytesReference source) throws IOException {
+        return new XContentPathFilter(includes, excludes).filter(source);
+    }
+
     public FetchSourceContext excludes(String[] excludes) {
         this.excludes = excludes;
         return this;
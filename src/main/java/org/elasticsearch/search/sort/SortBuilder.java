@@ -20,9 +20,13 @@
 package org.elasticsearch.search.sort;
 
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.stream.StreamXContent;
+
+import java.io.IOException;
 
 /**
  *
@@ -41,6 +45,13 @@ public abstract class SortBuilder implements ToXContent {
         }
     }
 
+    /**
+     * Writes this sort in a compact binary form, it can be read back with {@link StreamedSortBuilder#readSort(org.elasticsearch.common.io.stream.StreamInput)}.
+     */
+    public void writeTo(StreamOutput out) throws IOException {
+        StreamXContent.writeTo(this, out);
+    }
+
     /**
      * The order of sorting. Defaults to {@link SortOrder#ASC}.
      */
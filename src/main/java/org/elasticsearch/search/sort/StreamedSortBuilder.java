@@ -0,0 +1,74 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.sort;
+
+import org.elasticsearch.ElasticsearchIllegalStateException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.stream.StreamXContent;
+
+import java.io.IOException;
+
+/**
+ * A sort that has been written with {@link SortBuilder#writeTo(StreamOutput)}, it renders exactly as the
+ * original sort did when it was written and can't be modified.
+ */
+public class StreamedSortBuilder extends SortBuilder {
+
+    private final BytesReference encoded;
+
+    public StreamedSortBuilder(BytesReference encoded) {
+        this.encoded = encoded;
+    }
+
+    public static StreamedSortBuilder readSort(StreamInput in) throws IOException {
+        return new StreamedSortBuilder(StreamXContent.readEncoded(in));
+    }
+
+    /**
+     * @return the encoded form of the sort
+     */
+    public BytesReference encoded() {
+        return encoded;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeBytesReference(encoded);
+    }
+
+    @Override
+    public SortBuilder order(SortOrder order) {
+        throw new ElasticsearchIllegalStateException("can't change the order of a streamed sort");
+    }
+
+    @Override
+    public SortBuilder missing(Object missing) {
+        throw new ElasticsearchIllegalStateException("can't change the missing value of a streamed sort");
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        StreamXContent.replay(encoded, builder);
+        return builder;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.common.geo;
+
+import org.elasticsearch.common.geo.GeoHashUtils;
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.DoubleArray;
+import org.elasticsearch.common.util.LongArray;
+
+import java.util.Random;
+
+/**
+ * Compares geohashing points one at a time with {@link GeoHashUtils#encode(double, double, int)} and
+ * {@link GeoHashUtils#decode(String)} to the batch methods over primitive arrays and big arrays.
+ * <p/>
+ * The number of points can be set with <tt>-Des.benchmark.points</tt>, the number of measured iterations with
+ * <tt>-Des.benchmark.iterations</tt> and the precision with <tt>-Des.benchmark.precision</tt>.
+ */
+public class GeoHashBatchBenchmark {
+
+    private static final int POINTS = Integer.getInteger("es.benchmark.points", 1000000);
+    private static final int ITERATIONS = Integer.getInteger("es.benchmark.iterations", 10);
+    private static final int WARMUP_ITERATIONS = Math.max(1, ITERATIONS / 2);
+    private static final int PRECISION = Integer.getInteger("es.benchmark.precision", 9);
+
+    // results of the measured code, so that it can't be optimized away
+    private static long blackhole;
+
+    public static void main(String[] args) throws Exception {
+        final Random random = new Random(0);
+        final double[] latitudes = new double[POINTS];
+        final double[] longitudes = new double[POINTS];
+        for (int i = 0; i < POINTS; ++i) {
+            latitudes[i] = random.nextDouble() * 180 - 90;
+            longitudes[i] = random.nextDouble() * 360 - 180;
+        }
+        final long[] geohashes = new long[POINTS];
+        final String[] strings = new String[POINTS];
+        final double[] decodedLatitudes = new double[POINTS];
+        final double[] decodedLongitudes = new double[POINTS];
+
+        final BigArrays bigArrays = BigArrays.NON_RECYCLING_INSTANCE;
+        final DoubleArray bigLatitudes = bigArrays.newDoubleArray(POINTS);
+        final DoubleArray bigLongitudes = bigArrays.newDoubleArray(POINTS);
+        final LongArray bigGeohashes = bigArrays.newLongArray(POINTS);
+        final DoubleArray bigDecodedLatitudes = bigArrays.newDoubleArray(POINTS);
+        final DoubleArray bigDecodedLongitudes = bigArrays.newDoubleArray(POINTS);
+        bigLatitudes.set(0, latitudes, 0, POINTS);
+        bigLongitudes.set(0, longitudes, 0, POINTS);
+
+        System.out.println(POINTS + " points, precision " + PRECISION + ", " + ITERATIONS + " iterations");
+        System.out.println(String.format("%-32s %10s", "method", "ns/point"));
+
+        report("encode, per point", new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < POINTS; ++i) {
+                    strings[i] = GeoHashUtils.encode(latitudes[i], longitudes[i], PRECISION);
+                }
+                blackhole += strings[POINTS - 1].hashCode();
+            }
+        });
+        report("encodeAsLong, per point", new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < POINTS; ++i) {
+                    geohashes[i] = GeoHashUtils.encodeAsLong(latitudes[i], longitudes[i], PRECISION);
+                }
+                blackhole += geohashes[POINTS - 1];
+            }
+        });
+        report("encodeAsLong, double[]", new Runnable() {
+            @Override
+            public void run() {
+                GeoHashUtils.encodeAsLong(latitudes, longitudes, PRECISION, geohashes);
+                blackhole += geohashes[POINTS - 1];
+            }
+        });
+        report("encodeAsLong, DoubleArray", new Runnable() {
+            @Override
+            public void run() {
+                GeoHashUtils.encodeAsLong(bigLatitudes, bigLongitudes, POINTS, PRECISION, bigGeohashes);
+                blackhole += bigGeohashes.get(POINTS - 1);
+            }
+        });
+        report("decode, per point", new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < POINTS; ++i) {
+                    GeoPoint point = GeoHashUtils.decode(strings[i]);
+                    decodedLatitudes[i] = point.lat();
+                    decodedLongitudes[i] = point.lon();
+                }
+                blackhole += (long) decodedLatitudes[POINTS - 1];
+            }
+        });
+        report("decode long, per point", new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < POINTS; ++i) {
+                    GeoPoint point = GeoHashUtils.decode(geohashes[i]);
+                    decodedLatitudes[i] = point.lat();
+                    decodedLongitudes[i] = point.lon();
+                }
+                blackhole += (long) decodedLatitudes[POINTS - 1];
+            }
+        });
+        report("decode, long[]", new Runnable() {
+            @Override
+            public void run() {
+                GeoHashUtils.decode(geohashes, decodedLatitudes, decodedLongitudes);
+                blackhole += (long) decodedLatitudes[POINTS - 1];
+            }
+        });
+        report("decode, LongArray", new Runnable() {
+            @Override
+            public void run() {
+                GeoHashUtils.decode(bigGeohashes, POINTS, bigDecodedLatitudes, bigDecodedLongitudes);
+                blackhole += (long) bigDecodedLatitudes.get(POINTS - 1);
+            }
+        });
+        System.out.println("(blackhole " + blackhole + ")");
+    }
+
+    private static void report(String name, Runnable method) {
+        for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+            method.run();
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            method.run();
+        }
+        final long nsPerPoint = (System.nanoTime() - start) / ((long) ITERATIONS * POINTS);
+        System.out.println(String.format("%-32s %10d", name, nsPerPoint));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.common.geo;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.elasticsearch.common.geo.builders.BasePolygonBuilder;
+import org.elasticsearch.common.geo.builders.PolygonBuilder;
+import org.elasticsearch.common.geo.builders.ShapeBuilder;
+
+/**
+ * Measures {@link PolygonBuilder#buildGeometry(GeometryFactory, boolean)} on a polygon with many holes that crosses
+ * the dateline, which has to be split into one component on each side of the dateline and its holes assigned to them.
+ * <p/>
+ * The number of points of the shell can be set with <tt>-Des.benchmark.points</tt>, the number of holes with
+ * <tt>-Des.benchmark.holes</tt> and the number of measured iterations with <tt>-Des.benchmark.iterations</tt>.
+ */
+public class PolygonDecompositionBenchmark {
+
+    private static final int POINTS = Integer.getInteger("es.benchmark.points", 20000);
+    private static final int HOLES = Integer.getInteger("es.benchmark.holes", 2000);
+    private static final int ITERATIONS = Integer.getInteger("es.benchmark.iterations", 10);
+    private static final int WARMUP_ITERATIONS = Math.max(1, ITERATIONS / 2);
+
+    public static void main(String[] args) throws Exception {
+        final PolygonBuilder polygon = polygon();
+        final GeometryFactory factory = ShapeBuilder.FACTORY;
+
+        System.out.println(POINTS + " points, " + HOLES + " holes, " + ITERATIONS + " iterations");
+        for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+            polygon.buildGeometry(factory, true);
+        }
+        Geometry geometry = null;
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            geometry = polygon.buildGeometry(factory, true);
+        }
+        final long msPerBuild = (System.nanoTime() - start) / (ITERATIONS * 1000000L);
+        System.out.println("buildGeometry: " + msPerBuild + " ms, " + geometry.getNumGeometries() + " components, "
+                + geometry.getNumPoints() + " points");
+    }
+
+    /**
+     * An ellipse centered on the dateline, with square holes laid out on a grid around its center.
+     */
+    private static PolygonBuilder polygon() {
+        final PolygonBuilder polygon = ShapeBuilder.newPolygon();
+        for (int i = 0; i < POINTS; ++i) {
+            final double angle = 2 * Math.PI * i / POINTS;
+            polygon.point(wrap(180 + 40 * Math.cos(angle)), 30 * Math.sin(angle));
+        }
+        polygon.close();
+
+        // the grid covers 40 degrees of longitude and 20 of latitude, with one cell out of two being a hole
+        final int columns = (int) Math.ceil(Math.sqrt(HOLES * 2));
+        final int rows = (HOLES + columns / 2 - 1) / (columns / 2);
+        final double width = 40.0 / columns;
+        final double height = 20.0 / rows;
+        int holes = 0;
+        for (int row = 0; row < rows && holes < HOLES; ++row) {
+            for (int column = row % 2; column < columns && holes < HOLES; column += 2, ++holes) {
+                final double left = 160 + column * width + width / 4;
+                final double bottom = -10 + row * height + height / 4;
+                if (left < 180 && left + width / 2 >= 180) {
+                    // keep holes off the dateline
+                    continue;
+                }
+                BasePolygonBuilder.Ring<PolygonBuilder> hole = polygon.hole();
+                hole.point(wrap(left), bottom);
+                hole.point(wrap(left), bottom + height / 2);
+                hole.point(wrap(left + width / 2), bottom + height / 2);
+                hole.point(wrap(left + width / 2), bottom);
+                hole.close();
+            }
+        }
+        return polygon;
+    }
+
+    private static double wrap(double longitude) {
+        return longitude > 180 ? longitude - 360 : longitude;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.common.io.stream;
+
+import org.apache.lucene.util.CharsRefBuilder;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Measures {@link StreamOutput#writeString(String)} and {@link StreamInput#readString()} over ascii, latin and CJK
+ * strings, next to the previous encoding and decoding, which went through {@link StreamOutput#writeByte(byte)} and
+ * {@link StreamInput#readByte()} for every byte.
+ * <p/>
+ * The number of strings can be set with <tt>-Des.benchmark.strings</tt>, their length in chars with
+ * <tt>-Des.benchmark.length</tt> and the number of measured iterations with <tt>-Des.benchmark.iterations</tt>.
+ */
+public class StringStreamBenchmark {
+
+    private static final int STRINGS = Integer.getInteger("es.benchmark.strings", 100000);
+    private static final int LENGTH = Integer.getInteger("es.benchmark.length", 32);
+    private static final int ITERATIONS = Integer.getInteger("es.benchmark.iterations", 20);
+    private static final int WARMUP_ITERATIONS = Math.max(1, ITERATIONS / 2);
+
+    // results of the measured code, so that it can't be optimized away
+    private static long blackhole;
+
+    private interface Method {
+        void run() throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println(STRINGS + " strings of " + LENGTH + " chars, " + ITERATIONS + " iterations");
+        System.out.println(String.format("%-24s %10s %10s %10s %10s", "strings", "write", "write old", "read", "read old"));
+        System.out.println(String.format("%-24s %10s %10s %10s %10s", "", "ns/op", "ns/op", "ns/op", "ns/op"));
+        run("ascii", 'a', 'z' + 1);
+        run("latin", 0xC0, 0x100);
+        run("CJK", 0x4E00, 0x9FA6);
+        System.out.println("(blackhole " + blackhole + ")");
+    }
+
+    private static void run(String name, int from, int to) throws Exception {
+        final Random random = new Random(0);
+        final String[] strings = new String[STRINGS];
+        final char[] chars = new char[LENGTH];
+        for (int i = 0; i < STRINGS; ++i) {
+            for (int j = 0; j < LENGTH; ++j) {
+                chars[j] = (char) (from + random.nextInt(to - from));
+            }
+            strings[i] = new String(chars);
+        }
+        final BytesStreamOutput out = new BytesStreamOutput();
+        final BytesStreamOutput oldOut = new BytesStreamOutput();
+        final long write = measure(new Method() {
+            @Override
+            public void run() throws IOException {
+                out.reset();
+                for (String string : strings) {
+                    out.writeString(string);
+                }
+                blackhole += out.size();
+            }
+        });
+        final long writeOld = measure(new Method() {
+            @Override
+            public void run() throws IOException {
+                oldOut.reset();
+                for (String string : strings) {
+                    writeStringPerByte(oldOut, string);
+                }
+                blackhole += oldOut.size();
+            }
+        });
+        final BytesReference bytes = out.bytes().toBytesArray();
+        if (!bytes.equals(oldOut.bytes())) {
+            throw new AssertionError("the encodings of the " + name + " strings differ");
+        }
+        final StreamInput check = bytes.streamInput();
+        for (String string : strings) {
+            if (!string.equals(check.readString())) {
+                throw new AssertionError("the " + name + " strings are not read back as written");
+            }
+        }
+        final long read = measure(new Method() {
+            @Override
+            public void run() throws IOException {
+                final StreamInput in = bytes.streamInput();
+                for (int i = 0; i < STRINGS; ++i) {
+                    blackhole += in.readString().length();
+                }
+            }
+        });
+        final long readOld = measure(new Method() {
+            @Override
+            public void run() throws IOException {
+                final StreamInput in = bytes.streamInput();
+                for (int i = 0; i < STRINGS; ++i) {
+                    blackhole += readStringPerByte(in).length();
+                }
+            }
+        });
+        System.out.println(String.format("%-24s %10d %10d %10d %10d", name, write, writeOld, read, readOld));
+    }
+
+    private static long measure(Method method) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+            method.run();
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            method.run();
+        }
+        return (System.nanoTime() - start) / ((long) ITERATIONS * STRINGS);
+    }
+
+    private static void writeStringPerByte(StreamOutput out, String str) throws IOException {
+        final int charCount = str.length();
+        out.writeVInt(charCount);
+        for (int i = 0; i < charCount; i++) {
+            final int c = str.charAt(i);
+            if (c <= 0x007F) {
+                out.writeByte((byte) c);
+            } else if (c > 0x07FF) {
+                out.writeByte((byte) (0xE0 | c >> 12 & 0x0F));
+                out.writeByte((byte) (0x80 | c >> 6 & 0x3F));
+                out.writeByte((byte) (0x80 | c >> 0 & 0x3F));
+            } else {
+                out.writeByte((byte) (0xC0 | c >> 6 & 0x1F));
+                out.writeByte((byte) (0x80 | c >> 0 & 0x3F));
+            }
+        }
+    }
+
+    private static final CharsRefBuilder spare = new CharsRefBuilder();
+
+    private static String readStringPerByte(StreamInput in) throws IOException {
+        final int charCount = in.readVInt();
+        spare.clear();
+        spare.grow(charCount);
+        while (spare.length() < charCount) {
+            final int c = in.readByte() & 0xff;
+            switch (c >> 4) {
+                case 0:
+                case 1:
+                case 2:
+                case 3:
+                case 4:
+                case 5:
+                case 6:
+                case 7:
+                    spare.append((char) c);
+                    break;
+                case 12:
+                case 13:
+                    spare.append((char) ((c & 0x1F) << 6 | in.readByte() & 0x3F));
+                    break;
+                case 14:
+                    spare.append((char) ((c & 0x0F) << 12 | (in.readByte() & 0x3F) << 6 | (in.readByte() & 0x3F) << 0));
+                    break;
+            }
+        }
+        return spare.toString();
+    }
+}
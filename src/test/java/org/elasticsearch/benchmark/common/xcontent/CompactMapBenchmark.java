@@ -0,0 +1,157 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.common.xcontent;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.support.CompactXContentReader;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the memory allocated and retained when reading a large search response with
+ * {@link CompactXContentReader#readMap(XContentParser)} to {@link XContentParser#map()} and
+ * {@link XContentParser#mapOrdered()}, for JSON and SMILE, along with the time it takes.
+ * <p/>
+ * Allocations are counted with the per-thread counters of the HotSpot {@link com.sun.management.ThreadMXBean}, the
+ * retained size is the growth of the used heap after a full collection while the read map is held. The number of
+ * hits of the response can be set with <tt>-Des.benchmark.hits</tt>, the default gives about 10MB of JSON, and the
+ * number of measured iterations with <tt>-Des.benchmark.iterations</tt>.
+ */
+public class CompactMapBenchmark {
+
+    private static final int HITS = Integer.getInteger("es.benchmark.hits", 34000);
+    private static final int ITERATIONS = Integer.getInteger("es.benchmark.iterations", 10);
+    private static final int WARMUP_ITERATIONS = Math.max(1, ITERATIONS / 2);
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // results of the measured code, so that it can't be optimized away
+    private static long blackhole;
+
+    private interface Reader {
+        Map<String, Object> read(XContentParser parser) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final XContentType[] formats = {XContentType.JSON, XContentType.SMILE};
+        System.out.println(HITS + " hits, " + ITERATIONS + " iterations");
+        System.out.println(String.format("%-6s %-12s %10s %14s %14s %10s", "format", "method", "bytes", "allocated MB", "retained MB", "ms/op"));
+        for (XContentType format : formats) {
+            final BytesReference response = response(format);
+            report(format, response, "map", new Reader() {
+                @Override
+                public Map<String, Object> read(XContentParser parser) throws IOException {
+                    return parser.map();
+                }
+            });
+            report(format, response, "mapOrdered", new Reader() {
+                @Override
+                public Map<String, Object> read(XContentParser parser) throws IOException {
+                    return parser.mapOrdered();
+                }
+            });
+            report(format, response, "compact", new Reader() {
+                @Override
+                public Map<String, Object> read(XContentParser parser) throws IOException {
+                    return CompactXContentReader.readMap(parser);
+                }
+            });
+        }
+        System.out.println("(blackhole " + blackhole + ")");
+    }
+
+    private static void report(XContentType format, BytesReference response, String method, Reader reader) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+            blackhole += read(format, response, reader).size();
+        }
+
+        final long threadId = Thread.currentThread().getId();
+        final long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        Map<String, Object> map = read(format, response, reader);
+        final long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        final long usedWithMap = usedHeap();
+        blackhole += map.size();
+        map = null;
+        final long retained = usedWithMap - usedHeap();
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            blackhole += read(format, response, reader).size();
+        }
+        final long nanos = System.nanoTime() - start;
+
+        System.out.println(String.format("%-6s %-12s %10d %14.1f %14.1f %10.1f", format.shortName(), method, response.length(),
+                allocated / 1024.0 / 1024.0, retained / 1024.0 / 1024.0, nanos / 1000000.0 / ITERATIONS));
+    }
+
+    private static Map<String, Object> read(XContentType format, BytesReference response, Reader reader) throws IOException {
+        final XContentParser parser = format.xContent().createParser(response);
+        try {
+            return reader.read(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+
+    /**
+     * A search response with hits of the shape returned for a product catalog.
+     */
+    private static BytesReference response(XContentType format) throws IOException {
+        final Random random = new Random(0);
+        final XContentBuilder response = XContentFactory.contentBuilder(format).startObject()
+                .field("took", random.nextInt(100))
+                .field("timed_out", false)
+                .startObject("_shards").field("total", 5).field("successful", 5).field("failed", 0).endObject()
+                .startObject("hits").field("total", HITS).field("max_score", random.nextFloat())
+                .startArray("hits");
+        for (int i = 0; i < HITS; ++i) {
+            response.startObject()
+                    .field("_index", "products").field("_type", "product").field("_id", Integer.toString(random.nextInt()))
+                    .field("_score", random.nextDouble())
+                    .startObject("_source")
+                    .field("title", "product " + random.nextInt(1000000))
+                    .field("category", "category" + random.nextInt(20))
+                    .field("price", random.nextInt(10000) / 100.0)
+                    .field("stock", random.nextInt(1000))
+                    .field("available", random.nextBoolean())
+                    .field("tags", new String[]{"tag" + random.nextInt(100), "tag" + random.nextInt(100)})
+                    .field("ratings", new int[]{random.nextInt(6), random.nextInt(6), random.nextInt(6), random.nextInt(6)})
+                    .startObject("location").field("lat", random.nextDouble() * 90).field("lon", random.nextDouble() * 180).endObject()
+                    .endObject()
+                    .endObject();
+        }
+        response.endArray().endObject().endObject();
+        return response.bytes();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.common.xcontent;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.stream.StreamXContent;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.GeoPolygonFilterBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compares the size of a search source encoded with {@link StreamXContent} to SMILE and JSON, along with the time it
+ * takes to encode it and to render it again as SMILE: replayed for the stream encoding, copied from a parser for the
+ * other formats.
+ * <p/>
+ * The number of terms of the terms filter can be set with <tt>-Des.benchmark.terms</tt>, the number of points of the
+ * geo polygon with <tt>-Des.benchmark.points</tt> and the number of measured iterations with
+ * <tt>-Des.benchmark.iterations</tt>.
+ */
+public class StreamXContentBenchmark {
+
+    private static final int TERMS = Integer.getInteger("es.benchmark.terms", 500);
+    private static final int POINTS = Integer.getInteger("es.benchmark.points", 20);
+    private static final int ITERATIONS = Integer.getInteger("es.benchmark.iterations", 100000);
+    private static final int WARMUP_ITERATIONS = Math.max(1, ITERATIONS / 2);
+
+    // results of the measured code, so that it can't be optimized away
+    private static long blackhole;
+
+    private interface Encoding {
+        BytesReference encode(ToXContent source) throws IOException;
+
+        BytesReference toSmile(BytesReference encoded) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final SearchSourceBuilder source = searchSource();
+        final BytesReference json = source.buildAsBytes(XContentType.JSON);
+        final BytesReference replayed = replay(StreamXContent.encode(source, ToXContent.EMPTY_PARAMS), XContentFactory.jsonBuilder());
+        if (!json.toUtf8().equals(replayed.toUtf8())) {
+            throw new AssertionError("the replayed source differs from the original one:\n" + json.toUtf8() + "\n" + replayed.toUtf8());
+        }
+
+        System.out.println(TERMS + " terms, " + POINTS + " polygon points, " + ITERATIONS + " iterations");
+        System.out.println(String.format("%-8s %10s %14s %14s", "format", "bytes", "encode ns/op", "to smile ns/op"));
+        report("stream", source, new Encoding() {
+            @Override
+            public BytesReference encode(ToXContent source) throws IOException {
+                return StreamXContent.encode(source, ToXContent.EMPTY_PARAMS);
+            }
+
+            @Override
+            public BytesReference toSmile(BytesReference encoded) throws IOException {
+                return replay(encoded, XContentFactory.smileBuilder());
+            }
+        });
+        report("smile", source, new ContentTypeEncoding(XContentType.SMILE));
+        report("json", source, new ContentTypeEncoding(XContentType.JSON));
+        System.out.println("(blackhole " + blackhole + ")");
+    }
+
+    private static void report(String name, ToXContent source, Encoding encoding) throws IOException {
+        final BytesReference encoded = encoding.encode(source);
+        for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+            blackhole += encoding.encode(source).length();
+            blackhole += encoding.toSmile(encoded).length();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            blackhole += encoding.encode(source).length();
+        }
+        final long encodeNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            blackhole += encoding.toSmile(encoded).length();
+        }
+        final long toSmileNanos = System.nanoTime() - start;
+        System.out.println(String.format("%-8s %10d %14d %14d", name, encoded.length(), encodeNanos / ITERATIONS, toSmileNanos / ITERATIONS));
+    }
+
+    private static BytesReference replay(BytesReference encoded, XContentBuilder builder) throws IOException {
+        StreamXContent.replay(encoded, builder);
+        return builder.bytes();
+    }
+
+    private static class ContentTypeEncoding implements Encoding {
+
+        private final XContentType type;
+
+        ContentTypeEncoding(XContentType type) {
+            this.type = type;
+        }
+
+        @Override
+        public BytesReference encode(ToXContent source) throws IOException {
+            final XContentBuilder builder = XContentFactory.contentBuilder(type);
+            source.toXContent(builder, ToXContent.EMPTY_PARAMS);
+            return builder.bytes();
+        }
+
+        @Override
+        public BytesReference toSmile(BytesReference encoded) throws IOException {
+            final XContentParser parser = type.xContent().createParser(encoded);
+            try {
+                parser.nextToken();
+                return XContentFactory.smileBuilder().copyCurrentStructure(parser).bytes();
+            } finally {
+                parser.close();
+            }
+        }
+    }
+
+    /**
+     * A search source with a bool query, a large terms filter, a geo polygon and sorts.
+     */
+    private static SearchSourceBuilder searchSource() {
+        final Random random = new Random(0);
+        final long[] terms = new long[TERMS];
+        for (int i = 0; i < TERMS; ++i) {
+            terms[i] = random.nextInt(1000000);
+        }
+        final GeoPolygonFilterBuilder polygon = FilterBuilders.geoPolygonFilter("location");
+        for (int i = 0; i < POINTS; ++i) {
+            final double angle = 2 * Math.PI * i / POINTS;
+            polygon.addPoint(40 + 5 * Math.sin(angle), -70 + 5 * Math.cos(angle));
+        }
+        return new SearchSourceBuilder()
+                .query(QueryBuilders.filteredQuery(
+                        QueryBuilders.boolQuery()
+                                .must(QueryBuilders.matchQuery("title", "quick brown fox"))
+                                .should(QueryBuilders.termQuery("tag", "featured"))
+                                .mustNot(QueryBuilders.rangeQuery("price").gt(1000)),
+                        FilterBuilders.boolFilter()
+                                .must(FilterBuilders.termsFilter("user_id", terms))
+                                .must(polygon)))
+                .sort(SortBuilders.fieldSort("price").order(SortOrder.ASC))
+                .sort(SortBuilders.scoreSort())
+                .from(20)
+                .size(10);
+    }
+}
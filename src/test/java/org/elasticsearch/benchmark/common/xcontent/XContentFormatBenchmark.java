@@ -0,0 +1,293 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.common.xcontent;
+
+import org.elasticsearch.common.Base64;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Round-trips a corpus of documents through every content type with {@link XContentBuilder} and
+ * {@link XContentParser}, checks that the decoded documents are structurally equal to the original ones and reports
+ * the size and the encoding and decoding times of each format, to pick the content type of a workload.
+ * <p/>
+ * The arguments are the files of the corpus, one document per file, or directories to read them from. A synthetic
+ * corpus of search requests and responses is used when there are none. The number of measured iterations over the
+ * corpus can be set with <tt>-Des.benchmark.iterations</tt>.
+ */
+public class XContentFormatBenchmark {
+
+    private static final XContentType[] FORMATS = {XContentType.JSON, XContentType.SMILE, XContentType.CBOR, XContentType.YAML};
+
+    private static final int ITERATIONS = Integer.getInteger("es.benchmark.iterations", 200);
+    private static final int WARMUP_ITERATIONS = Math.max(1, ITERATIONS / 4);
+
+    // results of the measured code, so that it can't be optimized away
+    private static long blackhole;
+
+    public static void main(String[] args) throws Exception {
+        final List<BytesReference> corpus = args.length == 0 ? syntheticCorpus() : loadCorpus(args);
+        final List<Map<String, Object>> documents = new ArrayList<Map<String, Object>>(corpus.size());
+        for (BytesReference source : corpus) {
+            documents.add(XContentFactory.xContent(source).createParser(source).mapAndClose());
+        }
+        System.out.println("corpus: " + documents.size() + " documents, " + ITERATIONS + " iterations");
+
+        int failures = 0;
+        System.out.println(String.format("%-6s %12s %8s %14s %14s %9s", "format", "bytes", "ratio", "encode ns/op", "decode ns/op", "failures"));
+        long jsonBytes = -1;
+        for (XContentType format : FORMATS) {
+            int formatFailures = 0;
+            long bytes = 0;
+            final List<BytesReference> encoded = new ArrayList<BytesReference>(documents.size());
+            for (int i = 0; i < documents.size(); ++i) {
+                final BytesReference document = encode(format, documents.get(i));
+                encoded.add(document);
+                bytes += document.length();
+                // both encoding an in-memory document and copying the structure of the original bytes must be lossless
+                final String mapDiff = diff("", documents.get(i), decode(format, document));
+                final String copyDiff = diff("", documents.get(i), decode(format, copy(format, corpus.get(i))));
+                if (mapDiff != null || copyDiff != null) {
+                    ++formatFailures;
+                    System.out.println("[" + format + "] document [" + i + "] does not round-trip: " + (mapDiff != null ? mapDiff : copyDiff));
+                }
+            }
+            if (jsonBytes < 0) {
+                jsonBytes = bytes;
+            }
+
+            for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+                encodeAll(format, documents);
+                decodeAll(format, encoded);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; ++i) {
+                encodeAll(format, documents);
+            }
+            final long encodeNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; ++i) {
+                decodeAll(format, encoded);
+            }
+            final long decodeNanos = System.nanoTime() - start;
+
+            final long ops = (long) ITERATIONS * documents.size();
+            System.out.println(String.format("%-6s %12d %8.2f %14d %14d %9d", format.shortName(), bytes, (double) bytes / jsonBytes,
+                    encodeNanos / ops, decodeNanos / ops, formatFailures));
+            failures += formatFailures;
+        }
+        System.out.println("(blackhole " + blackhole + ")");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static BytesReference encode(XContentType format, Map<String, Object> document) throws IOException {
+        return XContentFactory.contentBuilder(format).map(document).bytes();
+    }
+
+    private static BytesReference copy(XContentType format, BytesReference source) throws IOException {
+        final XContentParser parser = XContentFactory.xContent(source).createParser(source);
+        try {
+            parser.nextToken();
+            return XContentFactory.contentBuilder(format).copyCurrentStructure(parser).bytes();
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static Map<String, Object> decode(XContentType format, BytesReference bytes) throws IOException {
+        return format.xContent().createParser(bytes).mapAndClose();
+    }
+
+    private static void encodeAll(XContentType format, List<Map<String, Object>> documents) throws IOException {
+        for (Map<String, Object> document : documents) {
+            blackhole += encode(format, document).length();
+        }
+    }
+
+    private static void decodeAll(XContentType format, List<BytesReference> encoded) throws IOException {
+        for (BytesReference bytes : encoded) {
+            blackhole += decode(format, bytes).size();
+        }
+    }
+
+    /**
+     * Returns a description of the first difference between the two values, or <tt>null</tt> if they are
+     * structurally equal. Numbers are compared by value since formats don't all keep their exact type, and binary
+     * values are compared to their base64 encoding since text formats encode them as strings.
+     */
+    @SuppressWarnings("unchecked")
+    private static String diff(String path, Object expected, Object actual) {
+        if (expected instanceof Map && actual instanceof Map) {
+            final Map<String, Object> expectedMap = (Map<String, Object>) expected;
+            final Map<String, Object> actualMap = (Map<String, Object>) actual;
+            if (expectedMap.size() != actualMap.size()) {
+                return path + ": expected " + expectedMap.keySet() + " but got " + actualMap.keySet();
+            }
+            for (Map.Entry<String, Object> entry : expectedMap.entrySet()) {
+                if (!actualMap.containsKey(entry.getKey())) {
+                    return path + ": missing field [" + entry.getKey() + "]";
+                }
+                final String diff = diff(path + "." + entry.getKey(), entry.getValue(), actualMap.get(entry.getKey()));
+                if (diff != null) {
+                    return diff;
+                }
+            }
+            return null;
+        } else if (expected instanceof List && actual instanceof List) {
+            final List<Object> expectedList = (List<Object>) expected;
+            final List<Object> actualList = (List<Object>) actual;
+            if (expectedList.size() != actualList.size()) {
+                return path + ": expected [" + expectedList.size() + "] elements but got [" + actualList.size() + "]";
+            }
+            final Iterator<Object> actualIterator = actualList.iterator();
+            int i = 0;
+            for (Object element : expectedList) {
+                final String diff = diff(path + "[" + i++ + "]", element, actualIterator.next());
+                if (diff != null) {
+                    return diff;
+                }
+            }
+            return null;
+        } else if (expected instanceof Number && actual instanceof Number) {
+            if (integral((Number) expected) && integral((Number) actual)
+                    ? ((Number) expected).longValue() == ((Number) actual).longValue()
+                    : Double.compare(((Number) expected).doubleValue(), ((Number) actual).doubleValue()) == 0) {
+                return null;
+            }
+        } else if (expected instanceof byte[] || actual instanceof byte[]) {
+            if (binaryText(expected).equals(binaryText(actual))) {
+                return null;
+            }
+        } else if (expected == null ? actual == null : expected.equals(actual)) {
+            return null;
+        }
+        return path + ": expected [" + expected + "] but got [" + actual + "]";
+    }
+
+    private static boolean integral(Number number) {
+        return !(number instanceof Float || number instanceof Double || number instanceof BigDecimal);
+    }
+
+    private static String binaryText(Object value) {
+        return value instanceof byte[] ? Base64.encodeBytes((byte[]) value) : String.valueOf(value);
+    }
+
+    private static List<BytesReference> loadCorpus(String[] paths) throws IOException {
+        final List<File> files = new ArrayList<File>();
+        for (String path : paths) {
+            listFiles(new File(path), files);
+        }
+        final List<BytesReference> corpus = new ArrayList<BytesReference>(files.size());
+        for (File file : files) {
+            final BytesReference bytes = new BytesArray(Streams.copyToByteArray(file));
+            if (XContentFactory.xContentType(bytes) == null) {
+                System.out.println("skipping [" + file + "], unknown content type");
+                continue;
+            }
+            corpus.add(bytes);
+        }
+        return corpus;
+    }
+
+    private static void listFiles(File file, List<File> files) {
+        if (file.isDirectory()) {
+            final File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    listFiles(child, files);
+                }
+            }
+        } else {
+            files.add(file);
+        }
+    }
+
+    /**
+     * Search requests as built by this client, and search responses with hits of various shapes.
+     */
+    private static List<BytesReference> syntheticCorpus() throws IOException {
+        final Random random = new Random(0);
+        final List<BytesReference> corpus = new ArrayList<BytesReference>();
+        for (int i = 0; i < 20; ++i) {
+            final SearchSourceBuilder request = new SearchSourceBuilder()
+                    .query(QueryBuilders.filteredQuery(
+                            QueryBuilders.boolQuery()
+                                    .must(QueryBuilders.matchQuery("title", "quick brown fox " + i))
+                                    .should(QueryBuilders.termQuery("tag", "tag" + random.nextInt(100))),
+                            FilterBuilders.boolFilter()
+                                    .must(FilterBuilders.rangeFilter("price").gte(random.nextInt(100)).lt(100 + random.nextInt(1000)))
+                                    .must(FilterBuilders.termsFilter("category", "c" + i, "c" + (i + 1)))
+                                    .must(FilterBuilders.geoDistanceFilter("location").point(random.nextDouble() * 90, random.nextDouble() * 180).distance("10km"))))
+                    .sort("price", SortOrder.ASC)
+                    .from(i * 10)
+                    .size(10)
+                    .fetchSource(new String[]{"title", "price", "location"}, null);
+            corpus.add(request.buildAsBytes(XContentType.JSON));
+        }
+        for (int i = 0; i < 10; ++i) {
+            final XContentBuilder response = XContentFactory.jsonBuilder().startObject()
+                    .field("took", random.nextInt(100))
+                    .field("timed_out", false)
+                    .startObject("_shards").field("total", 5).field("successful", 5).field("failed", 0).endObject()
+                    .startObject("hits").field("total", random.nextInt(100000)).field("max_score", random.nextFloat())
+                    .startArray("hits");
+            for (int j = 0; j < 10 * (i + 1); ++j) {
+                response.startObject()
+                        .field("_index", "products").field("_type", "product").field("_id", Integer.toString(random.nextInt()))
+                        .field("_score", random.nextDouble())
+                        .startObject("_source")
+                        .field("title", "product " + random.nextInt() + " été 中文")
+                        .field("price", random.nextInt(10000) / 100.0)
+                        .field("stock", random.nextLong())
+                        .field("available", random.nextBoolean())
+                        .field("tags", new String[]{"tag" + random.nextInt(100), "tag" + random.nextInt(100)})
+                        .startObject("location").field("lat", random.nextDouble() * 90).field("lon", random.nextDouble() * 180).endObject()
+                        .nullField("discontinued")
+                        .endObject()
+                        .endObject();
+            }
+            response.endArray().endObject().endObject();
+            corpus.add(response.bytes());
+        }
+        return corpus;
+    }
+}
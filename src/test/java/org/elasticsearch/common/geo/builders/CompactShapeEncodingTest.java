@@ -0,0 +1,257 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.common.geo.builders;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.unit.DistanceUnit;
+import org.elasticsearch.test.RandomSeed;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that shapes read back from their compact encoding are the same shapes, within the precision of the
+ * encoding, and encode to the same bytes.
+ */
+public class CompactShapeEncodingTest {
+
+    @Rule
+    public final RandomSeed seed = new RandomSeed();
+
+    private final Random random = seed.random();
+
+    @Test
+    public void testRandomShapes() throws IOException {
+        for (int iter = 0; iter < 3000; iter++) {
+            final ShapeBuilder shape = randomShape(ShapeBuilder.GeoShapeType.values()[random.nextInt(ShapeBuilder.GeoShapeType.values().length)], 0);
+            final int precision = random.nextInt(CompactShapeEncoding.MAX_PRECISION + 1);
+            final BytesReference bytes = CompactShapeEncoding.encode(shape, precision);
+            final ShapeBuilder decoded = CompactShapeEncoding.decode(bytes);
+            assertSameShape("iteration " + iter + " at precision " + precision, shape, decoded, CompactShapeEncoding.maxError(precision));
+            assertEquals("iteration " + iter + " at precision " + precision, bytes, CompactShapeEncoding.encode(decoded, precision));
+        }
+    }
+
+    @Test
+    public void testMultiPolygonChildOrientation() throws IOException {
+        final MultiPolygonBuilder polygons = ShapeBuilder.newMultiPolygon(ShapeBuilder.Orientation.LEFT);
+        polygons.polygon(ShapeBuilder.Orientation.RIGHT).point(170, 0).point(-170, 0).point(-170, 10).point(170, 10).close();
+        polygons.polygon(ShapeBuilder.Orientation.LEFT).point(0, 0).point(1, 0).point(1, 1).point(0, 0).close();
+        final MultiPolygonBuilder decoded = (MultiPolygonBuilder) CompactShapeEncoding.decode(CompactShapeEncoding.encode(polygons, 7));
+        assertEquals(ShapeBuilder.Orientation.LEFT, decoded.orientation);
+        assertEquals(ShapeBuilder.Orientation.RIGHT, decoded.polygons.get(0).orientation);
+        assertEquals(ShapeBuilder.Orientation.LEFT, decoded.polygons.get(1).orientation);
+        // the orientation decides which side of the dateline the first polygon covers
+        assertTrue(new PreparedShapeCache(1).get(decoded).contains(5, 180));
+    }
+
+    @Test
+    public void testCircleUnit() throws IOException {
+        for (DistanceUnit unit : DistanceUnit.values()) {
+            final CircleBuilder circle = ShapeBuilder.newCircleBuilder().center(12.5, -40.25).radius(3.75, unit);
+            final CircleBuilder decoded = (CircleBuilder) CompactShapeEncoding.decode(CompactShapeEncoding.encode(circle, 2));
+            assertEquals(unit, decoded.unit);
+            assertEquals(3.75, decoded.radius, 0);
+            assertEquals(12.5, decoded.center.x, 0);
+            assertEquals(-40.25, decoded.center.y, 0);
+        }
+    }
+
+    private static void assertSameShape(String message, ShapeBuilder expected, ShapeBuilder actual, double maxError) {
+        final List<Object> expectedValues = new ArrayList<Object>();
+        final List<Object> actualValues = new ArrayList<Object>();
+        flatten(expected, expectedValues);
+        flatten(actual, actualValues);
+        assertEquals(message, expectedValues.size(), actualValues.size());
+        for (int i = 0; i < expectedValues.size(); i++) {
+            if (expectedValues.get(i) instanceof Coordinate) {
+                final double error = ((Coordinate) expectedValues.get(i)).distance((Coordinate) actualValues.get(i));
+                assertTrue(message + ": " + expectedValues.get(i) + " decoded as " + actualValues.get(i), error <= maxError);
+            } else {
+                assertEquals(message, expectedValues.get(i), actualValues.get(i));
+            }
+        }
+    }
+
+    /**
+     * A coordinate, which is compared within the error of the encoding
+     */
+    private static final class Coordinate {
+
+        final double x;
+        final double y;
+
+        Coordinate(double x, double y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        double distance(Coordinate other) {
+            return Math.max(Math.abs(x - other.x), Math.abs(y - other.y));
+        }
+
+        @Override
+        public String toString() {
+            return "[" + x + ", " + y + "]";
+        }
+    }
+
+    /**
+     * Lists the types, orientations, coordinates and circle radiuses of the shape in the order they are encoded
+     */
+    private static void flatten(ShapeBuilder shape, List<Object> values) {
+        values.add(shape.type());
+        switch (shape.type()) {
+            case POINT:
+                final PointBuilder point = (PointBuilder) shape;
+                values.add(new Coordinate(point.longitude(), point.latitude()));
+                break;
+            case MULTIPOINT:
+            case LINESTRING:
+                flatten(((PointCollection<?>) shape).points, values);
+                break;
+            case MULTILINESTRING:
+                for (BaseLineStringBuilder<?> line : ((MultiLineStringBuilder) shape).lines) {
+                    flatten(line.points, values);
+                }
+                break;
+            case POLYGON:
+                final BasePolygonBuilder<?> polygon = (BasePolygonBuilder<?>) shape;
+                values.add(shape.orientation);
+                flatten(polygon.shell.points, values);
+                for (BaseLineStringBuilder<?> hole : polygon.holes) {
+                    flatten(hole.points, values);
+                }
+                break;
+            case MULTIPOLYGON:
+                values.add(shape.orientation);
+                for (BasePolygonBuilder<?> child : ((MultiPolygonBuilder) shape).polygons) {
+                    flatten(child, values);
+                }
+                break;
+            case ENVELOPE:
+                final EnvelopeBuilder envelope = (EnvelopeBuilder) shape;
+                values.add(shape.orientation);
+                values.add(new Coordinate(envelope.topLeft.x, envelope.topLeft.y));
+                values.add(new Coordinate(envelope.bottomRight.x, envelope.bottomRight.y));
+                break;
+            case CIRCLE:
+                final CircleBuilder circle = (CircleBuilder) shape;
+                values.add(new Coordinate(circle.center.x, circle.center.y));
+                values.add(circle.radius);
+                values.add(circle.unit);
+                break;
+            case GEOMETRYCOLLECTION:
+                final GeometryCollectionBuilder collection = (GeometryCollectionBuilder) shape;
+                values.add(shape.orientation);
+                values.add(collection.numShapes());
+                for (int i = 0; i < collection.numShapes(); i++) {
+                    flatten(collection.getShapeAt(i), values);
+                }
+                break;
+            default:
+                throw new AssertionError("unknown shape type [" + shape.type() + "]");
+        }
+    }
+
+    private static void flatten(PackedCoordinates points, List<Object> values) {
+        values.add(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            values.add(new Coordinate(points.x(i), points.y(i)));
+        }
+    }
+
+    private ShapeBuilder.Orientation randomOrientation() {
+        return random.nextBoolean() ? ShapeBuilder.Orientation.RIGHT : ShapeBuilder.Orientation.LEFT;
+    }
+
+    private double randomLon() {
+        return random.nextDouble() * 360 - 180;
+    }
+
+    private double randomLat() {
+        return random.nextDouble() * 180 - 90;
+    }
+
+    private ShapeBuilder randomShape(ShapeBuilder.GeoShapeType type, int depth) {
+        switch (type) {
+            case POINT:
+                return ShapeBuilder.newPoint(randomLon(), randomLat());
+            case MULTIPOINT:
+                final MultiPointBuilder points = ShapeBuilder.newMultiPoint();
+                for (int i = 1 + random.nextInt(10); i > 0; i--) {
+                    points.point(randomLon(), randomLat());
+                }
+                return points;
+            case LINESTRING:
+                final LineStringBuilder line = ShapeBuilder.newLineString();
+                for (int i = 2 + random.nextInt(10); i > 0; i--) {
+                    line.point(randomLon(), randomLat());
+                }
+                return line;
+            case MULTILINESTRING:
+                final MultiLineStringBuilder lines = ShapeBuilder.newMultiLinestring();
+                for (int i = 1 + random.nextInt(4); i > 0; i--) {
+                    lines.linestring((LineStringBuilder) randomShape(ShapeBuilder.GeoShapeType.LINESTRING, depth + 1));
+                }
+                return lines;
+            case POLYGON:
+                final PolygonBuilder polygon = ShapeBuilder.newPolygon(randomOrientation());
+                for (int i = 3 + random.nextInt(10); i > 0; i--) {
+                    polygon.point(randomLon(), randomLat());
+                }
+                for (int i = random.nextInt(3); i > 0; i--) {
+                    final BasePolygonBuilder.Ring<PolygonBuilder> hole = polygon.hole();
+                    for (int j = 3 + random.nextInt(5); j > 0; j--) {
+                        hole.point(randomLon(), randomLat());
+                    }
+                    hole.close();
+                }
+                return polygon.close();
+            case MULTIPOLYGON:
+                final MultiPolygonBuilder polygons = ShapeBuilder.newMultiPolygon(randomOrientation());
+                for (int i = 1 + random.nextInt(4); i > 0; i--) {
+                    polygons.polygon((PolygonBuilder) randomShape(ShapeBuilder.GeoShapeType.POLYGON, depth + 1));
+                }
+                return polygons;
+            case ENVELOPE:
+                return ShapeBuilder.newEnvelope(randomOrientation()).topLeft(randomLon(), randomLat()).bottomRight(randomLon(), randomLat());
+            case CIRCLE:
+                final DistanceUnit unit = DistanceUnit.values()[random.nextInt(DistanceUnit.values().length)];
+                return ShapeBuilder.newCircleBuilder().center(randomLon(), randomLat()).radius(random.nextDouble() * 1000, unit);
+            case GEOMETRYCOLLECTION:
+                final GeometryCollectionBuilder collection = ShapeBuilder.newGeometryCollection(randomOrientation());
+                if (depth < 2) {
+                    for (int i = random.nextInt(4); i > 0; i--) {
+                        collection.shape(randomShape(ShapeBuilder.GeoShapeType.values()[random.nextInt(ShapeBuilder.GeoShapeType.values().length)], depth + 1));
+                    }
+                }
+                return collection;
+            default:
+                throw new AssertionError("unknown shape type [" + type + "]");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.common.geo.builders;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Parsing of GeoJSON coordinates, whose arrays of positions are read straight into packed coordinates.
+ */
+public class GeoJsonParserTest {
+
+    private static final String POLYGON = "{\"type\":\"polygon\",\"coordinates\":[[[0.0,0.0],[10.0,0.0],[10.0,10.0],[0.0,0.0]],"
+            + "[[1.0,1.0],[2.0,1.0],[2.0,2.0],[1.0,1.0]]]}";
+
+    private static ShapeBuilder parse(String json) throws IOException {
+        XContentParser parser = JsonXContent.jsonXContent.createParser(json);
+        try {
+            parser.nextToken();
+            return ShapeBuilder.parse(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static ShapeBuilder.CoordinateNode parseCoordinates(String json, int ringDepth) throws IOException {
+        XContentParser parser = JsonXContent.jsonXContent.createParser(json);
+        try {
+            parser.nextToken();
+            return ShapeBuilder.parseCoordinates(parser, ringDepth);
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static String toJson(ShapeBuilder shape) throws IOException {
+        XContentBuilder builder = XContentFactory.jsonBuilder();
+        shape.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        return builder.string();
+    }
+
+    private static void assertParseFails(String json, String message) throws IOException {
+        try {
+            parse(json);
+            fail("expected [" + json + "] to fail with [" + message + "]");
+        } catch (ElasticsearchParseException e) {
+            assertTrue("[" + json + "] failed with [" + e.getMessage() + "]", e.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void testPositionsArePacked() throws IOException {
+        ShapeBuilder.CoordinateNode node = parseCoordinates("[[1, 2], [3, 4, 5], [6, 7]]", -1);
+        assertNotNull(node.points);
+        assertNull(node.children);
+        assertEquals(3, node.size());
+        assertEquals(new Coordinate(1, 2), node.coordinate(0));
+        // the altitude is ignored
+        assertEquals(new Coordinate(3, 4), node.coordinate(1));
+        assertEquals(new Coordinate(6, 7), node.coordinate(2));
+
+        // the levels above the positions are nodes of packed rings
+        node = parseCoordinates("[[[0, 0], [1, 0], [1, 1], [0, 0]], [[2, 2], [3, 2], [3, 3], [2, 2]]]", 1);
+        assertEquals(2, node.children.size());
+        for (ShapeBuilder.CoordinateNode ring : node.children) {
+            assertNotNull(ring.points);
+            assertEquals(4, ring.size());
+        }
+
+        assertEquals(POLYGON, toJson(parse(POLYGON)));
+        String lineString = "{\"type\":\"linestring\",\"coordinates\":[[0.0,0.0],[1.0,1.0],[2.0,0.0]]}";
+        assertEquals(lineString, toJson(parse(lineString)));
+        String multiPoint = "{\"type\":\"multipoint\",\"coordinates\":[[0.0,0.0],[1.0,1.0]]}";
+        assertEquals(multiPoint, toJson(parse(multiPoint)));
+    }
+
+    @Test
+    public void testMixedArrayFallsBackToNodes() throws IOException {
+        ShapeBuilder.CoordinateNode node = parseCoordinates("[[1, 2], [[3, 4]]]", -1);
+        assertNull(node.points);
+        assertEquals(2, node.children.size());
+        assertEquals(new Coordinate(1, 2), node.children.get(0).coordinate);
+        assertEquals(new Coordinate(3, 4), node.children.get(1).coordinate(0));
+
+        node = parseCoordinates("[[[1, 2]], [3, 4]]", -1);
+        assertNull(node.points);
+        assertEquals(2, node.children.size());
+        assertEquals(new Coordinate(1, 2), node.children.get(0).coordinate(0));
+        assertEquals(new Coordinate(3, 4), node.children.get(1).coordinate);
+
+        assertParseFails("{\"type\":\"multipoint\",\"coordinates\":[[1, 2], [[3, 4]]]}", "multipoint data provided when single point data expected");
+    }
+
+    @Test
+    public void testInvalidRingFailsBeforeTheRestOfTheDocument() throws IOException {
+        // the documents are cut after the invalid ring, the ring is reported rather than the end of the input
+        assertParseFails("{\"type\":\"polygon\",\"coordinates\":[[[0, 0], [1, 0], [1, 1], [0, 1]], [[",
+                "coordinates are not closed");
+        assertParseFails("{\"type\":\"polygon\",\"coordinates\":[[[0, 0], [1, 0], [0, 0]], [[",
+                "Invalid number of points in LinearRing (found 3 - must be >= 4)");
+        assertParseFails("{\"type\":\"multipolygon\",\"coordinates\":[[[[0, 0], [1, 0], [1, 1], [0, 1]]], [[[",
+                "coordinates are not closed");
+        assertParseFails("{\"type\":\"polygon\",\"coordinates\":[[0, 0], [",
+                "Found a single coordinate when expecting a coordinate array");
+        assertParseFails("{\"type\":\"polygon\",\"coordinates\":[[], [",
+                "Invalid number of points in LinearRing (found 0 - must be >= 4)");
+        assertParseFails("{\"type\":\"multipolygon\",\"coordinates\":[[], [",
+                "Linear ring must be an array of coordinates");
+    }
+
+    @Test
+    public void testCoordinatesBeforeType() throws IOException {
+        assertEquals(POLYGON, toJson(parse("{\"coordinates\":[[[0, 0], [10, 0], [10, 10], [0, 0]], [[1, 1], [2, 1], [2, 2], [1, 1]]],"
+                + "\"type\":\"polygon\"}")));
+        String multiPolygon = "{\"type\":\"multipolygon\",\"coordinates\":[[[[0.0,0.0],[1.0,0.0],[1.0,1.0],[0.0,0.0]]],"
+                + "[[[2.0,2.0],[3.0,2.0],[3.0,3.0],[2.0,2.0]]]]}";
+        assertEquals(multiPolygon, toJson(parse("{\"coordinates\":[[[[0, 0], [1, 0], [1, 1], [0, 0]]], [[[2, 2], [3, 2], [3, 3], [2, 2]]]],"
+                + "\"type\":\"multipolygon\"}")));
+
+        // rings are validated once the type is known
+        assertParseFails("{\"coordinates\":[[[0, 0], [1, 0], [1, 1], [0, 1]]],\"type\":\"polygon\"}", "coordinates are not closed");
+        assertParseFails("{\"coordinates\":[[[0, 0], [1, 0], [0, 0]]],\"type\":\"polygon\"}", "must be >= 4");
+        assertParseFails("{\"coordinates\":[[0, 0], [1, 0], [1, 1], [0, 0]],\"type\":\"polygon\"}",
+                "Found a single coordinate when expecting a coordinate array");
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.geo.builders;
+
+import com.spatial4j.core.exception.InvalidShapeException;
+import com.vividsolutions.jts.geom.Coordinate;
+import org.elasticsearch.common.geo.builders.ShapeBuilder.Edge;
+import org.elasticsearch.test.RandomSeed;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks the sweep line assignment of holes against the previous implementation, which intersected all the edges with
+ * the line of each hole and sorted the whole edge array in place each time.
+ */
+public class HoleAssignmentTest {
+
+    @Rule
+    public final RandomSeed seed = new RandomSeed();
+
+    @Test
+    public void testSameAsSuccessiveSorts() {
+        final Random random = seed.random();
+        for (int iter = 0; iter < 20000; iter++) {
+            // coordinates are snapped to a coarse grid so that edges share vertices, are vertical on the lines of the
+            // holes and intersect them at the same point
+            final int grid = 2 + random.nextInt(20);
+            final int numHoles = 1 + random.nextInt(30);
+            final Edge[] holes = new Edge[numHoles];
+            for (int i = 0; i < numHoles; i++) {
+                holes[i] = new Edge(randomCoordinate(random, grid), null);
+            }
+
+            final List<Edge> edges = new ArrayList<Edge>();
+            final int numComponents = 1 + random.nextInt(5);
+            for (int c = 0; c < numComponents; c++) {
+                addRing(random, grid, -(c + numHoles + 1), edges);
+            }
+            if (random.nextBoolean()) {
+                Collections.shuffle(edges, random);
+            }
+            final Edge[] array = edges.toArray(new Edge[edges.size()]);
+
+            final int[] expected = successiveSorts(holes, numHoles, array);
+            final int[] actual = new BasePolygonBuilder.HoleAssignment(holes, numHoles, array).assign();
+            assertArrayEquals("iteration " + iter, expected, actual);
+        }
+    }
+
+    private static Coordinate randomCoordinate(Random random, int grid) {
+        // half of the coordinates on the grid, the others anywhere
+        if (random.nextBoolean()) {
+            return new Coordinate(random.nextInt(grid + 1) - grid / 2, random.nextInt(grid + 1) - grid / 2);
+        }
+        return new Coordinate(random.nextDouble() * grid - grid / 2, random.nextDouble() * grid - grid / 2);
+    }
+
+    private static void addRing(Random random, int grid, int component, List<Edge> edges) {
+        final int length = 3 + random.nextInt(12);
+        final Edge[] ring = new Edge[length];
+        for (int i = 0; i < length; i++) {
+            Coordinate coordinate;
+            do {
+                coordinate = randomCoordinate(random, grid);
+            } while (i > 0 && coordinate.equals(ring[i - 1].coordinate) || i == length - 1 && coordinate.equals(ring[0].coordinate));
+            ring[i] = new Edge(coordinate, null);
+            ring[i].component = component;
+        }
+        for (int i = 0; i < length; i++) {
+            ring[i].next = ring[(i + 1) % length];
+            edges.add(ring[i]);
+        }
+    }
+
+    /**
+     * The previous implementation of the assignment of holes to components, which sorted a copy of the edges by
+     * their intersection with the line of each hole, one hole after the other. Holes that have no edge below them
+     * are reported as not within the polygon, the previous implementation failed with an index out of bounds.
+     */
+    private static int[] successiveSorts(Edge[] holes, int numHoles, Edge[] edges) {
+        edges = edges.clone();
+        final int[] components = new int[numHoles];
+        for (int i = 0; i < numHoles; i++) {
+            final Edge current = new Edge(holes[i].coordinate, holes[i].next);
+            current.intersect = current.coordinate;
+            final int intersections = ShapeBuilder.intersections(current.coordinate.x, edges);
+            final int pos;
+            boolean sharedVertex = false;
+            if (intersections == 0 || ((pos = Arrays.binarySearch(edges, 0, intersections, current, ShapeBuilder.INTERSECTION_ORDER)) >= 0)
+                    && !(sharedVertex = (edges[pos].intersect.compareTo(current.coordinate) == 0))) {
+                components[i] = -1;
+                continue;
+            }
+            final int index = -((sharedVertex) ? 0 : pos + 2);
+            components[i] = index < 0 ? -1 : -edges[index].component - numHoles - 1;
+        }
+        return components;
+    }
+
+    @Test(expected = InvalidShapeException.class)
+    public void testHoleNotWithinPolygon() {
+        ShapeBuilder.newPolygon()
+                .point(-10, -10).point(10, -10).point(10, 10).point(-10, 10).point(-10, -10)
+                .hole()
+                    .point(20, 20).point(21, 20).point(21, 21).point(20, 20)
+                .close()
+                .close()
+                .build();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.common.geo.builders;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The polygons of a multipolygon share the maximum number of points of a simplification.
+ */
+public class MultiPolygonBuilderTest {
+
+    /**
+     * A multipolygon of star-shaped polygons of <code>points</code> points each, with a noisy radius so that no
+     * point can be dropped for free
+     */
+    private static MultiPolygonBuilder multiPolygon(int polygons, int points) {
+        Random random = new Random(0);
+        MultiPolygonBuilder multiPolygon = ShapeBuilder.newMultiPolygon();
+        for (int i = 0; i < polygons; i++) {
+            MultiPolygonBuilder.InternalPolygonBuilder polygon = multiPolygon.polygon();
+            for (int j = 0; j < points - 1; j++) {
+                double angle = 2 * Math.PI * j / (points - 1);
+                double radius = 1 + random.nextDouble() / 100;
+                polygon.point(10 * i + radius * Math.cos(angle), radius * Math.sin(angle));
+            }
+            polygon.close();
+        }
+        return multiPolygon;
+    }
+
+    private static int numPoints(MultiPolygonBuilder multiPolygon) {
+        int numPoints = 0;
+        for (BasePolygonBuilder<?> polygon : multiPolygon.polygons) {
+            numPoints += polygon.numPoints();
+        }
+        return numPoints;
+    }
+
+    @Test
+    public void testBudgetsAddUpToMaxPoints() {
+        // the share of each polygon used to overflow an int before being divided
+        MultiPolygonBuilder multiPolygon = multiPolygon(3, 50001).simplify(null, 60000);
+        int numPoints = numPoints(multiPolygon);
+        assertTrue("simplified to [" + numPoints + "] points", numPoints <= 60000 && numPoints >= 48000);
+        for (BasePolygonBuilder<?> polygon : multiPolygon.polygons) {
+            assertTrue("polygon simplified to [" + polygon.numPoints() + "] points", polygon.numPoints() <= 20000 && polygon.numPoints() >= 16000);
+        }
+    }
+
+    @Test
+    public void testBudgetsAreProportional() {
+        MultiPolygonBuilder multiPolygon = multiPolygon(1, 30001);
+        for (BasePolygonBuilder<?> polygon : multiPolygon(1, 10001).polygons) {
+            multiPolygon.polygon(polygon);
+        }
+        multiPolygon.simplify(null, 4000);
+        int large = multiPolygon.polygons.get(0).numPoints();
+        int small = multiPolygon.polygons.get(1).numPoints();
+        assertTrue("simplified to [" + large + "] and [" + small + "] points", large <= 3000 && large >= 2400 && small <= 1000 && small >= 800);
+    }
+
+    @Test
+    public void testBudgetsHaveFourPointsPerRing() {
+        MultiPolygonBuilder multiPolygon = multiPolygon(1, 100001);
+        MultiPolygonBuilder.InternalPolygonBuilder small = multiPolygon.polygon();
+        for (int i = 0; i < 40; i++) {
+            double angle = 2 * Math.PI * i / 40;
+            small.point(25 + 5 * Math.cos(angle), 5 * Math.sin(angle));
+        }
+        small.hole().point(23, -1).point(24, -1).point(24, 0).point(23, -1).close()
+                .hole().point(26, 1).point(27, 1).point(27, 2).point(26, 1).close()
+                .close();
+        // the share of the small polygon is 0 points, it keeps its 3 rings, simplified as much as the holes let it
+        multiPolygon.simplify(null, 1000);
+        assertEquals(2, small.holes.size());
+        for (BaseLineStringBuilder<?> hole : small.holes) {
+            assertEquals(4, hole.points.size());
+        }
+        assertTrue("shell simplified to [" + small.shell.points.size() + "] points", small.shell.points.size() <= 5);
+    }
+}
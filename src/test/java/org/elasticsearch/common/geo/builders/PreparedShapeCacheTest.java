@@ -0,0 +1,65 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.geo.builders;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Shapes that only differ by the orientation of a nested polygon must not share their prepared form.
+ */
+public class PreparedShapeCacheTest {
+
+    private static MultiPolygonBuilder multiPolygon(ShapeBuilder.Orientation orientation) {
+        // the same coordinates are the 20 degrees around the dateline or the 340 degrees away from it
+        MultiPolygonBuilder polygons = ShapeBuilder.newMultiPolygon();
+        polygons.polygon(orientation).point(170, 0).point(-170, 0).point(-170, 10).point(170, 10).close();
+        return polygons;
+    }
+
+    @Test
+    public void testNestedOrientationInMultiPolygon() {
+        PreparedShapeCache cache = new PreparedShapeCache(10);
+        PreparedShape right = cache.get(multiPolygon(ShapeBuilder.Orientation.RIGHT));
+        PreparedShape left = cache.get(multiPolygon(ShapeBuilder.Orientation.LEFT));
+        assertEquals(2, cache.size());
+        assertTrue(right.contains(5, 180));
+        assertFalse(right.contains(5, 0));
+        assertFalse(left.contains(5, 180));
+        assertTrue(left.contains(5, 0));
+
+        // equal shapes still share their prepared form
+        assertTrue(right == cache.get(multiPolygon(ShapeBuilder.Orientation.RIGHT)));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testNestedOrientationInGeometryCollection() {
+        PreparedShapeCache cache = new PreparedShapeCache(10);
+        PreparedShape right = cache.get(ShapeBuilder.newGeometryCollection().shape(multiPolygon(ShapeBuilder.Orientation.RIGHT)));
+        PreparedShape left = cache.get(ShapeBuilder.newGeometryCollection().shape(multiPolygon(ShapeBuilder.Orientation.LEFT)));
+        assertEquals(2, cache.size());
+        assertTrue(right.contains(5, 180));
+        assertFalse(left.contains(5, 180));
+    }
+}
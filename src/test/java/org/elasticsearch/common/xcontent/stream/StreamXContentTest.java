@@ -0,0 +1,96 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.xcontent.stream;
+
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.StreamedFilterBuilder;
+import org.elasticsearch.index.query.StreamedQueryBuilder;
+import org.elasticsearch.indices.breaker.ClientCircuitBreakerService;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link StreamXContent} and the builders that are read back from it.
+ */
+public class StreamXContentTest {
+
+    @Test
+    public void testEncodingReleasesBreaker() throws Exception {
+        ClientCircuitBreakerService service = new ClientCircuitBreakerService(ImmutableSettings.EMPTY);
+        service.start();
+        try {
+            CircuitBreaker breaker = service.getBreaker(CircuitBreaker.Name.REQUEST);
+            QueryBuilder query = QueryBuilders.boolQuery()
+                    .must(QueryBuilders.termQuery("user", "kimchy"))
+                    .should(QueryBuilders.matchQuery("message", "trying out elasticsearch"));
+            String json = XContentFactory.jsonBuilder().value(query).string();
+            for (int i = 0; i < 1000; i++) {
+                BytesReference encoded = StreamXContent.encode(query, ToXContent.EMPTY_PARAMS);
+                assertEquals(0, breaker.getUsed());
+
+                BytesStreamOutput out = new BytesStreamOutput();
+                StreamedQueryBuilder.writeQuery(query, out);
+                out.close();
+                assertEquals(0, breaker.getUsed());
+
+                // the bytes are still readable once their accounting has been released
+                XContentBuilder builder = XContentFactory.jsonBuilder();
+                StreamXContent.replay(encoded, builder);
+                assertEquals(json, builder.string());
+            }
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void testStreamedBuildersRenderAsOriginal() throws Exception {
+        QueryBuilder query = QueryBuilders.filteredQuery(QueryBuilders.matchQuery("message", "elasticsearch"),
+                FilterBuilders.rangeFilter("age").gte(10).lt(20));
+        BytesStreamOutput out = new BytesStreamOutput();
+        StreamedQueryBuilder.writeQuery(query, out);
+        StreamedQueryBuilder streamedQuery = StreamedQueryBuilder.readQuery(out.bytes().streamInput());
+        assertEquals(query.toString(), streamedQuery.toString());
+        // once more, the streamed query renders through doXContent like any other query
+        out = new BytesStreamOutput();
+        streamedQuery.writeTo(out);
+        assertEquals(query.toString(), StreamedQueryBuilder.readQuery(out.bytes().streamInput()).toString());
+
+        FilterBuilder filter = FilterBuilders.boolFilter()
+                .must(FilterBuilders.termFilter("user", "kimchy"))
+                .mustNot(FilterBuilders.termsFilter("tag", "a", "b"));
+        out = new BytesStreamOutput();
+        StreamedFilterBuilder.writeFilter(filter, out);
+        StreamedFilterBuilder streamedFilter = StreamedFilterBuilder.readFilter(out.bytes().streamInput());
+        assertEquals(filter.toString(), streamedFilter.toString());
+        assertEquals(FilterBuilders.notFilter(filter).toString(), FilterBuilders.notFilter(streamedFilter).toString());
+    }
+}
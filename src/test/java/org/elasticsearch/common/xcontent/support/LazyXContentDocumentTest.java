@@ -0,0 +1,171 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.common.xcontent.support;
+
+import com.google.common.base.Charsets;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the lookups and the maps of the lazy documents against {@link XContentParser#map()}.
+ */
+public class LazyXContentDocumentTest {
+
+    private static final String[] DOCUMENTS = {
+            "{}",
+            "{\"a\":1,\"b\":\"text\",\"c\":true,\"d\":null,\"e\":1.5,\"f\":12345678901234,\"g\":-0.25e-3}",
+            "{\"user\":{\"name\":\"kimchy\",\"address\":{\"city\":\"Amsterdam\",\"zip\":null},\"age\":null},\"tags\":[\"a\",null,\"b\"]}",
+            "{\"名前\":\"値\",\"été\":{\"ключ\":[1,\"é\\u00e9\\n\\\"\"],\"🙂\":null},\"a\":{\"名前\":2}}",
+            "{\"a\":[[1,[2,{\"x\":null,\"y\":[[]]}]],[],[[null]],{\"b\":[{\"c\":3}]}],\"d\":[{},{\"e\":{}}]}",
+            // duplicate fields, the last one wins
+            "{\"a\":1,\"b\":{\"c\":1},\"a\":2,\"b\":{\"d\":2}}",
+            // hand written, with whitespace around the separators
+            "{ \"a\" : 1 ,\n\t\"b\" :\n[ 1 , null , { \"c\" : \"x\" } ] , \"d\" : null\r\n, \"e\":{ } }",
+    };
+
+    @Test
+    public void testJson() throws IOException {
+        for (String document : DOCUMENTS) {
+            check(document, new BytesArray(document.getBytes(Charsets.UTF_8)));
+        }
+    }
+
+    @Test
+    public void testPrettyPrintedJson() throws IOException {
+        for (String document : DOCUMENTS) {
+            check(document, convert(document, XContentFactory.jsonBuilder().prettyPrint()));
+        }
+    }
+
+    @Test
+    public void testBytesArrayWithOffset() throws IOException {
+        for (String document : DOCUMENTS) {
+            final byte[] bytes = document.getBytes(Charsets.UTF_8);
+            // padded with bytes that would break the parsing if the offset was ignored
+            final byte[] padded = new byte[bytes.length + 7];
+            for (int i = 0; i < padded.length; i++) {
+                padded[i] = '}';
+            }
+            System.arraycopy(bytes, 0, padded, 3, bytes.length);
+            check(document, new BytesArray(padded, 3, bytes.length));
+        }
+    }
+
+    @Test
+    public void testOtherContentTypes() throws IOException {
+        for (String document : DOCUMENTS) {
+            check(document, convert(document, XContentFactory.smileBuilder()));
+            check(document, convert(document, XContentFactory.cborBuilder()));
+            check(document, convert(document, XContentFactory.yamlBuilder()));
+        }
+    }
+
+    @Test
+    public void testMissingPaths() throws IOException {
+        final LazyXContentDocument document = LazyXContentDocument.parse(new BytesArray(DOCUMENTS[2]));
+        assertFalse(document.containsKey("missing"));
+        assertFalse(document.containsKey("user.missing"));
+        // paths only go through objects
+        assertFalse(document.containsKey("tags.a"));
+        assertFalse(document.containsKey("user.name.first"));
+        assertNull(document.get("user.address.country"));
+        assertTrue(document.containsKey("user.address.zip"));
+        assertNull(document.get("user.address.zip"));
+        assertEquals("Amsterdam", document.getDocument("user").getDocument("address").get("city"));
+    }
+
+    private static BytesReference convert(String document, XContentBuilder builder) throws IOException {
+        final XContentParser parser = XContentFactory.xContent(XContentType.JSON).createParser(document);
+        try {
+            parser.nextToken();
+            return builder.copyCurrentStructure(parser).bytes();
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static void check(String document, BytesReference bytes) throws IOException {
+        final XContentType type = XContentFactory.xContentType(bytes);
+        final Map<String, Object> expected;
+        final XContentParser parser = type.xContent().createParser(bytes);
+        try {
+            expected = parser.map();
+        } finally {
+            parser.close();
+        }
+        final String message = type + " " + document;
+
+        // lookups first, so that the values are decoded from their offsets rather than while building the map
+        LazyXContentDocument lazy = LazyXContentDocument.parse(bytes);
+        assertEquals(message, type, lazy.contentType());
+        checkLookups(message, expected, lazy, "");
+        assertEquals(message, expected, lazy.map());
+
+        lazy = LazyXContentDocument.parse(bytes);
+        assertEquals(message, expected, lazy.map());
+        checkLookups(message, expected, lazy, "");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void checkLookups(String message, Map<String, Object> expected, LazyXContentDocument document, String prefix) {
+        assertEquals(message, expected.size(), document.size());
+        assertEquals(message, expected.keySet(), new HashSet<String>(document.fieldNames()));
+        for (Map.Entry<String, Object> entry : expected.entrySet()) {
+            final String path = prefix + entry.getKey();
+            // field names with dots can't be looked up with a path
+            if (entry.getKey().indexOf('.') >= 0) {
+                continue;
+            }
+            assertTrue(message + " " + path, document.containsKey(entry.getKey()));
+            assertEquals(message + " " + path, entry.getValue(), materialize(document.get(entry.getKey())));
+            if (entry.getValue() instanceof Map) {
+                checkLookups(message, (Map<String, Object>) entry.getValue(), document.getDocument(entry.getKey()), path + ".");
+            }
+        }
+    }
+
+    private static Object materialize(Object value) {
+        if (value instanceof LazyXContentDocument) {
+            return ((LazyXContentDocument) value).map();
+        } else if (value instanceof List) {
+            final List<Object> list = new ArrayList<Object>();
+            for (Object element : (List<?>) value) {
+                list.add(materialize(element));
+            }
+            return list;
+        }
+        return value;
+    }
+}
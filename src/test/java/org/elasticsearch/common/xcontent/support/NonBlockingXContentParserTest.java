@@ -0,0 +1,499 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.xcontent.support;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.json.JsonXContentParser;
+import org.elasticsearch.test.RandomSeed;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Feeds documents in random chunks to the non-blocking parsers and checks them against the Jackson parsers.
+ */
+public class NonBlockingXContentParserTest {
+
+    private static final XContentParser.Token START_OBJECT = XContentParser.Token.START_OBJECT;
+    private static final XContentParser.Token START_ARRAY = XContentParser.Token.START_ARRAY;
+    private static final XContentParser.Token END_OBJECT = XContentParser.Token.END_OBJECT;
+    private static final XContentParser.Token END_ARRAY = XContentParser.Token.END_ARRAY;
+
+    @Rule
+    public final RandomSeed seed = new RandomSeed();
+
+    private final Random random = seed.random();
+
+    @Test
+    public void testRandomJsonDocuments() throws Exception {
+        for (int i = 0; i < 3000; i++) {
+            checkRandomDocument(XContentType.JSON);
+        }
+    }
+
+    @Test
+    public void testRandomSmileDocuments() throws Exception {
+        for (int i = 0; i < 3000; i++) {
+            checkRandomDocument(XContentType.SMILE);
+        }
+    }
+
+    /**
+     * Compares the tokens, names and values of a random document, whether containers are complete given the bytes
+     * fed so far, and the result of {@link XContentParser#map()} and {@link XContentParser#skipChildren()} on
+     * complete containers.
+     */
+    private void checkRandomDocument(XContentType type) throws Exception {
+        final XContentBuilder builder = XContentFactory.contentBuilder(type);
+        if (type == XContentType.JSON && random.nextInt(4) == 0) {
+            builder.prettyPrint();
+        }
+        if (random.nextInt(10) == 0) {
+            builder.startArray();
+            randomValue(builder, 0);
+            randomValue(builder, 0);
+            builder.endArray();
+        } else {
+            randomObject(builder, 0);
+        }
+        final byte[] data = builder.bytes().toBytes();
+
+        // the tokens of the Jackson parser, with the offset of the end of each container
+        final List<Object[]> expected = new ArrayList<Object[]>();
+        final Deque<Integer> open = new ArrayDeque<Integer>();
+        final XContentParser jackson = XContentFactory.xContent(type).createParser(data);
+        for (XContentParser.Token token = jackson.nextToken(); token != null; token = jackson.nextToken()) {
+            if (token == START_OBJECT || token == START_ARRAY) {
+                open.push(expected.size());
+            }
+            expected.add(new Object[]{token, jackson.currentName(), value(jackson), -1L});
+            if (token == END_OBJECT || token == END_ARRAY) {
+                expected.get(open.pop())[3] = ((JsonXContentParser) jackson).currentByteOffset();
+            }
+        }
+        jackson.close();
+
+        final NonBlockingXContentParser parser = NonBlockingXContentParser.create(type);
+        int fed = 0;
+        int i = 0;
+        while (true) {
+            final XContentParser.Token token = parser.nextToken();
+            if (token == null) {
+                if (!parser.needsInput()) {
+                    break;
+                }
+                if (fed == data.length) {
+                    parser.endOfInput();
+                    continue;
+                }
+                final int length = Math.min(data.length - fed, 1 + random.nextInt(random.nextBoolean() ? 3 : 60));
+                if (random.nextBoolean()) {
+                    parser.feed(data, fed, length);
+                } else {
+                    parser.feed(new BytesArray(data, fed, length));
+                }
+                fed += length;
+                continue;
+            }
+            final Object[] expectedToken = expected.get(i);
+            final String message = type + " document " + new BytesArray(data).toUtf8() + ", token " + i;
+            assertEquals(message, expectedToken[0], token);
+            assertEquals(message, expectedToken[1], parser.currentName());
+            assertEquals(message, expectedToken[2], value(parser));
+            if (token == START_OBJECT || token == START_ARRAY) {
+                final boolean complete = (Long) expectedToken[3] <= fed;
+                assertEquals(message, complete, parser.hasCompleteValue());
+                if (complete && random.nextInt(4) == 0) {
+                    final int end = endOfContainer(expected, i);
+                    if (token == START_OBJECT && random.nextBoolean()) {
+                        final XContentParser object = XContentFactory.xContent(type).createParser(data);
+                        for (int j = 0; j <= i; j++) {
+                            object.nextToken();
+                        }
+                        assertEquals(message, normalize(object.map()), normalize(parser.map()));
+                        object.close();
+                    } else {
+                        parser.skipChildren();
+                    }
+                    i = end;
+                    assertEquals(message, expected.get(i)[0], parser.currentToken());
+                }
+            } else {
+                assertTrue(message, parser.hasCompleteValue() || token == XContentParser.Token.FIELD_NAME
+                        || token == END_OBJECT || token == END_ARRAY);
+            }
+            i++;
+        }
+        assertEquals(expected.size(), i);
+    }
+
+    private static int endOfContainer(List<Object[]> tokens, int start) {
+        int depth = 0;
+        for (int i = start; ; i++) {
+            final Object token = tokens.get(i)[0];
+            if (token == START_OBJECT || token == START_ARRAY) {
+                depth++;
+            } else if (token == END_OBJECT || token == END_ARRAY) {
+                if (--depth == 0) {
+                    return i;
+                }
+            }
+        }
+    }
+
+    private String randomString() {
+        final int length = random.nextInt(10) == 0 ? random.nextInt(200) : random.nextInt(12);
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(20)) {
+                case 0:
+                    builder.append('é');
+                    break;
+                case 1:
+                    builder.append("\"\\\n\t");
+                    break;
+                case 2:
+                    builder.append('中');
+                    break;
+                case 3:
+                    builder.appendCodePoint(0x1F600);
+                    break;
+                case 4:
+                    builder.append((char) 1);
+                    break;
+                default:
+                    builder.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return builder.toString();
+    }
+
+    private void randomValue(XContentBuilder builder, int depth) throws Exception {
+        switch (random.nextInt(depth > 4 ? 9 : 11)) {
+            case 0:
+                builder.value(randomString());
+                break;
+            case 1:
+                builder.value(random.nextInt(40) - 20);
+                break;
+            case 2:
+                builder.value(random.nextLong());
+                break;
+            case 3:
+                builder.value(random.nextDouble() * 1e6);
+                break;
+            case 4:
+                builder.value(random.nextFloat());
+                break;
+            case 5:
+                builder.value(random.nextBoolean());
+                break;
+            case 6:
+                builder.nullValue();
+                break;
+            case 7:
+                final byte[] bytes = new byte[random.nextInt(30)];
+                random.nextBytes(bytes);
+                builder.value(bytes);
+                break;
+            case 8:
+                builder.value(random.nextInt());
+                break;
+            case 9:
+                randomObject(builder, depth + 1);
+                break;
+            default:
+                builder.startArray();
+                for (int i = random.nextInt(5); i > 0; i--) {
+                    randomValue(builder, depth + 1);
+                }
+                builder.endArray();
+        }
+    }
+
+    private void randomObject(XContentBuilder builder, int depth) throws Exception {
+        builder.startObject();
+        for (int i = random.nextInt(6); i > 0; i--) {
+            // short names are repeated, which makes SMILE share them
+            builder.field(random.nextInt(3) == 0 ? "f" + random.nextInt(5) : randomString() + i);
+            randomValue(builder, depth);
+        }
+        builder.endObject();
+    }
+
+    private static Object value(XContentParser parser) throws Exception {
+        switch (parser.currentToken()) {
+            case FIELD_NAME:
+            case VALUE_STRING:
+                return parser.text();
+            case VALUE_NUMBER:
+                return parser.numberType() + ":" + parser.numberValue();
+            case VALUE_BOOLEAN:
+                return parser.booleanValue();
+            case VALUE_EMBEDDED_OBJECT:
+                return Arrays.toString(parser.binaryValue());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Binary values are not comparable with equals, and numbers have to be compared with their type.
+     */
+    private static String normalize(Object value) {
+        if (value instanceof byte[]) {
+            return Arrays.toString((byte[]) value);
+        }
+        if (value instanceof Map) {
+            final StringBuilder builder = new StringBuilder("{");
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                builder.append(entry.getKey()).append('=').append(normalize(entry.getValue())).append(',');
+            }
+            return builder.append('}').toString();
+        }
+        if (value instanceof List) {
+            final StringBuilder builder = new StringBuilder("[");
+            for (Object element : (List<?>) value) {
+                builder.append(normalize(element)).append(',');
+            }
+            return builder.append(']').toString();
+        }
+        return value == null ? "null" : value.getClass().getSimpleName() + value;
+    }
+
+    /**
+     * Shared names and values, 7-bit binary and big numbers are not produced by the SMILE generator of
+     * {@link XContentFactory}, the document is written with a configured Jackson generator.
+     */
+    @Test
+    public void testSmileSharedStringsBinaryAndBigNumbers() throws Exception {
+        final SmileFactory factory = new SmileFactory();
+        factory.configure(SmileGenerator.Feature.CHECK_SHARED_NAMES, true);
+        factory.configure(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES, true);
+        factory.configure(SmileGenerator.Feature.ENCODE_BINARY_AS_7BIT, true);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final JsonGenerator generator = factory.createGenerator(out);
+        generator.writeStartArray();
+        // more distinct names and values than the 1024 shared references, so that the tables are reset
+        for (int i = 0; i < 3000; i++) {
+            generator.writeStartObject();
+            generator.writeStringField("n" + random.nextInt(2500), "v" + random.nextInt(2500));
+            final byte[] bytes = new byte[random.nextInt(40)];
+            random.nextBytes(bytes);
+            generator.writeBinaryField("b" + (i % 7), bytes);
+            generator.writeFieldName("bi");
+            generator.writeNumber(new BigInteger(100, random).negate());
+            generator.writeFieldName("bd");
+            generator.writeNumber(new BigDecimal(new BigInteger(80, random), random.nextInt(20) - 10));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.close();
+        final byte[] data = out.toByteArray();
+
+        final JsonParser jackson = factory.createParser(data);
+        final NonBlockingXContentParser parser = NonBlockingXContentParser.create(XContentType.SMILE);
+        int fed = 0;
+        int tokens = 0;
+        for (JsonToken expected = jackson.nextToken(); expected != null; expected = jackson.nextToken()) {
+            XContentParser.Token token;
+            while ((token = parser.nextToken()) == null) {
+                assertTrue(parser.needsInput());
+                final int length = Math.min(data.length - fed, 1 + random.nextInt(17));
+                parser.feed(data, fed, length);
+                fed += length;
+            }
+            final String message = "token " + tokens + " " + expected;
+            switch (expected) {
+                case FIELD_NAME:
+                    assertEquals(message, XContentParser.Token.FIELD_NAME, token);
+                    assertEquals(message, jackson.getText(), parser.text());
+                    break;
+                case VALUE_STRING:
+                    assertEquals(message, XContentParser.Token.VALUE_STRING, token);
+                    assertEquals(message, jackson.getText(), parser.text());
+                    break;
+                case VALUE_EMBEDDED_OBJECT:
+                    assertEquals(message, XContentParser.Token.VALUE_EMBEDDED_OBJECT, token);
+                    assertEquals(message, Arrays.toString(jackson.getBinaryValue()), Arrays.toString(parser.binaryValue()));
+                    break;
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    // big numbers are exposed as doubles
+                    assertEquals(message, XContentParser.Token.VALUE_NUMBER, token);
+                    assertEquals(message, jackson.getNumberValue().doubleValue(), parser.doubleValue(), 0);
+                    break;
+                default:
+                    assertEquals(message, expected.asString(), token == START_OBJECT ? "{" : token == END_OBJECT ? "}" : token == START_ARRAY ? "[" : "]");
+            }
+            tokens++;
+        }
+        assertNull(parser.nextToken());
+        assertFalse(parser.needsInput());
+    }
+
+    @Test
+    public void testNeedsInput() throws Exception {
+        final NonBlockingXContentParser parser = NonBlockingXContentParser.create(XContentType.JSON);
+        assertNull(parser.nextToken());
+        assertTrue(parser.needsInput());
+
+        feed(parser, "{\"a\":[1, tr");
+        assertEquals(START_OBJECT, parser.nextToken());
+        assertFalse(parser.hasCompleteValue());
+        assertEquals(XContentParser.Token.FIELD_NAME, parser.nextToken());
+        assertFalse(parser.hasCompleteValue());
+        assertEquals(START_ARRAY, parser.nextToken());
+        assertFalse(parser.hasCompleteValue());
+        assertEquals(XContentParser.Token.VALUE_NUMBER, parser.nextToken());
+        assertTrue(parser.hasCompleteValue());
+        assertNull(parser.nextToken());
+        assertTrue(parser.needsInput());
+        // the parser is left on the last complete token
+        assertEquals(XContentParser.Token.VALUE_NUMBER, parser.currentToken());
+        assertEquals(1, parser.intValue());
+
+        feed(parser, "ue], \"b\": 12");
+        assertEquals(XContentParser.Token.VALUE_BOOLEAN, parser.nextToken());
+        assertTrue(parser.booleanValue());
+        assertEquals(END_ARRAY, parser.nextToken());
+        assertEquals(XContentParser.Token.FIELD_NAME, parser.nextToken());
+        // the number might go on in the next chunk
+        assertNull(parser.nextToken());
+        assertTrue(parser.needsInput());
+
+        feed(parser, "3}");
+        assertEquals(XContentParser.Token.VALUE_NUMBER, parser.nextToken());
+        assertEquals(123, parser.intValue());
+        assertEquals(END_OBJECT, parser.nextToken());
+        assertNull(parser.nextToken());
+        assertFalse(parser.needsInput());
+    }
+
+    @Test
+    public void testJsonExtensions() throws Exception {
+        final String json = "/* c */ {a : 1, // x\n \"b\" /*]}*/: [true, null, \"\\u00e9\\\"\"], c_d: -1.5e3}";
+        final byte[] data = json.getBytes("UTF-8");
+        for (int chunk = 1; chunk < 6; chunk++) {
+            final NonBlockingXContentParser parser = NonBlockingXContentParser.create(XContentType.JSON);
+            final StringBuilder tokens = new StringBuilder();
+            int fed = 0;
+            while (true) {
+                final XContentParser.Token token = parser.nextToken();
+                if (token == null) {
+                    if (!parser.needsInput()) {
+                        break;
+                    }
+                    if (fed == data.length) {
+                        parser.endOfInput();
+                        continue;
+                    }
+                    final int length = Math.min(chunk, data.length - fed);
+                    parser.feed(data, fed, length);
+                    fed += length;
+                    continue;
+                }
+                tokens.append(token).append(':').append(parser.text()).append(' ');
+            }
+            assertEquals("START_OBJECT:{ FIELD_NAME:a VALUE_NUMBER:1 FIELD_NAME:b START_ARRAY:[ VALUE_BOOLEAN:true "
+                    + "VALUE_NULL:null VALUE_STRING:é\" END_ARRAY:] FIELD_NAME:c_d VALUE_NUMBER:-1500.0 END_OBJECT:} ",
+                    tokens.toString());
+        }
+
+        // the brackets in the comment don't end the object
+        final NonBlockingXContentParser parser = NonBlockingXContentParser.create(XContentType.JSON);
+        parser.feed(data, 0, data.length - 1);
+        assertEquals(START_OBJECT, parser.nextToken());
+        assertFalse(parser.hasCompleteValue());
+        parser.feed(data, data.length - 1, 1);
+        assertTrue(parser.hasCompleteValue());
+    }
+
+    @Test
+    public void testJsonNumbers() throws Exception {
+        for (String number : new String[]{"0", "-0", "7", "-12", "0.5", "-0.5e-3", "1E+2", "2e10", "12345678901234567890"}) {
+            final XContentParser jackson = XContentFactory.xContent(XContentType.JSON).createParser("[" + number + "]");
+            jackson.nextToken();
+            jackson.nextToken();
+            final NonBlockingXContentParser parser = parse("[" + number + "]");
+            assertEquals(number, XContentParser.Token.VALUE_NUMBER, parser.nextToken());
+            assertEquals(number, jackson.doubleValue(), parser.doubleValue(), 0);
+            assertEquals(number, END_ARRAY, parser.nextToken());
+            jackson.close();
+        }
+        for (String number : new String[]{"1-2", "--1", "-", "01", "-01", "1.", "1.e3", "1e", "1e+", "1.5.5", "1e5e5", "1+2"}) {
+            try {
+                final NonBlockingXContentParser parser = parse("[" + number + "]");
+                while (parser.nextToken() != null) {
+                }
+                fail("[" + number + "] should be malformed");
+            } catch (ElasticsearchParseException e) {
+                // expected
+            }
+            try {
+                final XContentParser jackson = XContentFactory.xContent(XContentType.JSON).createParser("[" + number + "]");
+                while (jackson.nextToken() != null) {
+                }
+                fail("jackson should reject [" + number + "]");
+            } catch (Exception e) {
+                // same as Jackson
+            }
+        }
+    }
+
+    private static NonBlockingXContentParser parse(String json) throws Exception {
+        final NonBlockingXContentParser parser = NonBlockingXContentParser.create(XContentType.JSON);
+        feed(parser, json);
+        parser.endOfInput();
+        assertEquals(START_ARRAY, parser.nextToken());
+        return parser;
+    }
+
+    private static void feed(NonBlockingXContentParser parser, String json) throws Exception {
+        final byte[] bytes = json.getBytes("UTF-8");
+        parser.feed(bytes, 0, bytes.length);
+    }
+}
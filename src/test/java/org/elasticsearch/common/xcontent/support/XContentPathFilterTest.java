@@ -0,0 +1,290 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.common.xcontent.support;
+
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.regex.Regex;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.test.RandomSeed;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the streaming path filter against the map-based filtering of <tt>_source</tt> done on the server.
+ */
+public class XContentPathFilterTest {
+
+    private static final XContentType[] TYPES = {XContentType.JSON, XContentType.SMILE, XContentType.YAML, XContentType.CBOR};
+    private static final String[] NAMES = {"a", "b", "c", "ab"};
+
+    @Rule
+    public final RandomSeed seed = new RandomSeed();
+
+    private final Random random = seed.random();
+
+    private static String filter(String json, String[] includes, String[] excludes) throws IOException {
+        return new XContentPathFilter(includes, excludes).filter(new BytesArray(json)).toUtf8();
+    }
+
+    private static String[] patterns(String... patterns) {
+        return patterns;
+    }
+
+    @Test
+    public void testWildcards() throws IOException {
+        final String json = "{\"a\":{\"b\":1,\"c\":{\"b\":2,\"d\":3}},\"ab\":4,\"b\":5}";
+        assertEquals(json, filter(json, patterns("*"), null));
+        assertEquals(json, filter(json, patterns("**"), null));
+        assertEquals("{\"a\":{\"b\":1,\"c\":{\"b\":2,\"d\":3}},\"ab\":4}", filter(json, patterns("a*"), null));
+        assertEquals("{\"a\":{\"b\":1,\"c\":{\"b\":2}},\"ab\":4,\"b\":5}", filter(json, patterns("*b"), null));
+        assertEquals("{\"a\":{\"b\":1,\"c\":{\"b\":2}},\"b\":5}", filter(json, patterns("**b"), patterns("ab")));
+        assertEquals("{\"a\":{\"b\":1,\"c\":{\"b\":2,\"d\":3}}}", filter(json, patterns("a.*"), null));
+        // like on the server, wildcards in the middle of a pattern don't dive into objects
+        assertEquals("{}", filter(json, patterns("a.*.b"), null));
+        assertEquals("{\"a\":{\"c\":{\"d\":3}}}", filter(json, patterns("*.d"), null));
+        assertEquals("{\"b\":5}", filter(json, null, patterns("a*")));
+        assertEquals("{\"a\":{\"c\":{\"d\":3}}}", filter(json, null, patterns("*b")));
+    }
+
+    @Test
+    public void testExcludeOverridesInclude() throws IOException {
+        final String json = "{\"a\":{\"b\":1,\"c\":2},\"d\":3}";
+        assertEquals("{\"a\":{\"c\":2}}", filter(json, patterns("a"), patterns("a.b")));
+        assertEquals("{\"a\":{\"c\":2}}", filter(json, patterns("a.b", "a.c"), patterns("*.b")));
+        assertEquals("{}", filter(json, patterns("a.b"), patterns("a")));
+        assertEquals("{}", filter(json, patterns("d"), patterns("d")));
+        assertEquals("{\"d\":3}", filter(json, patterns("*"), patterns("a")));
+    }
+
+    @Test
+    public void testArrayOfObjects() throws IOException {
+        final String json = "{\"a\":[{\"b\":1,\"c\":2},{\"c\":3},[{\"b\":4}],5],\"d\":6}";
+        assertEquals("{\"a\":[{\"b\":1},[{\"b\":4}],5]}", filter(json, patterns("a.b"), null));
+        assertEquals("{\"a\":[{\"c\":2},{\"c\":3},5],\"d\":6}", filter(json, null, patterns("a.b")));
+        assertEquals("{\"a\":[{\"b\":1,\"c\":2},{\"c\":3},[{\"b\":4}],5]}", filter(json, patterns("a"), null));
+        // an array on the path of an include is kept, even if none of its objects has anything left
+        assertEquals("{\"a\":[5]}", filter(json, patterns("a.e"), null));
+        assertEquals("{\"a\":[]}", filter("{\"a\":[{\"b\":1}]}", patterns("a.e"), null));
+    }
+
+    @Test
+    public void testSameAsMapFilter() throws IOException {
+        for (int iter = 0; iter < 3000; iter++) {
+            final Map<String, Object> document = randomObject(0);
+            final String[] includes = randomPatterns();
+            final String[] excludes = randomPatterns();
+            final XContentType type = TYPES[random.nextInt(TYPES.length)];
+            final BytesReference source = XContentFactory.contentBuilder(type).map(document).bytes();
+
+            final BytesReference filtered = new XContentPathFilter(includes, excludes).filter(source);
+            assertEquals(type, XContentFactory.xContentType(filtered));
+            final Map<String, Object> expected = mapFilter(map(type, source), includes, excludes);
+            assertEquals(type + " " + document + " includes " + Arrays.toString(includes) + " excludes " + Arrays.toString(excludes),
+                    expected, map(type, filtered));
+        }
+    }
+
+    private static Map<String, Object> map(XContentType type, BytesReference bytes) throws IOException {
+        final XContentParser parser = type.xContent().createParser(bytes);
+        try {
+            return parser.map();
+        } finally {
+            parser.close();
+        }
+    }
+
+    private Map<String, Object> randomObject(int depth) {
+        final Map<String, Object> object = new HashMap<String, Object>();
+        final int size = random.nextInt(4);
+        for (int i = 0; i < size; i++) {
+            object.put(NAMES[random.nextInt(NAMES.length)], randomValue(depth + 1));
+        }
+        return object;
+    }
+
+    private Object randomValue(int depth) {
+        switch (depth < 4 ? random.nextInt(6) : random.nextInt(3)) {
+            case 0:
+                return random.nextInt(100);
+            case 1:
+                return NAMES[random.nextInt(NAMES.length)];
+            case 2:
+                return random.nextBoolean() ? null : random.nextBoolean();
+            case 3:
+            case 4:
+                return randomObject(depth);
+            default:
+                final List<Object> array = new ArrayList<Object>();
+                final int size = random.nextInt(4);
+                for (int i = 0; i < size; i++) {
+                    array.add(randomValue(depth + 1));
+                }
+                return array;
+        }
+    }
+
+    private String[] randomPatterns() {
+        final String[] patterns = new String[random.nextInt(3)];
+        for (int i = 0; i < patterns.length; i++) {
+            final StringBuilder pattern = new StringBuilder();
+            final int length = 1 + random.nextInt(3);
+            for (int j = 0; j < length; j++) {
+                if (j > 0) {
+                    pattern.append('.');
+                }
+                switch (random.nextInt(6)) {
+                    case 0:
+                        pattern.append('*');
+                        break;
+                    case 1:
+                        pattern.append(NAMES[random.nextInt(NAMES.length)]).append('*');
+                        break;
+                    case 2:
+                        pattern.append('*').append(NAMES[random.nextInt(NAMES.length)]);
+                        break;
+                    default:
+                        pattern.append(NAMES[random.nextInt(NAMES.length)]);
+                }
+            }
+            patterns[i] = pattern.toString();
+        }
+        return patterns;
+    }
+
+    /**
+     * The map-based filtering of the server, see <tt>XContentMapValues#filter</tt>.
+     */
+    private static Map<String, Object> mapFilter(Map<String, Object> map, String[] includes, String[] excludes) {
+        final Map<String, Object> result = new HashMap<String, Object>();
+        mapFilter(map, result, includes == null ? Strings.EMPTY_ARRAY : includes, excludes == null ? Strings.EMPTY_ARRAY : excludes,
+                new StringBuilder());
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void mapFilter(Map<String, Object> map, Map<String, Object> into, String[] includes, String[] excludes, StringBuilder sb) {
+        if (includes.length == 0 && excludes.length == 0) {
+            into.putAll(map);
+            return;
+        }
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            final String key = entry.getKey();
+            final int mark = sb.length();
+            if (sb.length() > 0) {
+                sb.append('.');
+            }
+            sb.append(key);
+            final String path = sb.toString();
+
+            if (Regex.simpleMatch(excludes, path)) {
+                sb.setLength(mark);
+                continue;
+            }
+
+            boolean exactIncludeMatch = false;
+            boolean pathIsPrefixOfAnInclude = false;
+            if (includes.length == 0) {
+                exactIncludeMatch = true;
+            } else {
+                for (String include : includes) {
+                    if (include.charAt(0) == '*') {
+                        if (Regex.simpleMatch(include, path)) {
+                            exactIncludeMatch = true;
+                            break;
+                        }
+                        pathIsPrefixOfAnInclude = true;
+                        continue;
+                    }
+                    if (include.startsWith(path)) {
+                        if (include.length() == path.length()) {
+                            exactIncludeMatch = true;
+                            break;
+                        } else if (include.length() > path.length() && include.charAt(path.length()) == '.') {
+                            pathIsPrefixOfAnInclude = true;
+                            continue;
+                        }
+                    }
+                    if (Regex.simpleMatch(include, path)) {
+                        exactIncludeMatch = true;
+                        break;
+                    }
+                }
+            }
+
+            if (!(pathIsPrefixOfAnInclude || exactIncludeMatch)) {
+                sb.setLength(mark);
+                continue;
+            }
+
+            if (entry.getValue() instanceof Map) {
+                final Map<String, Object> innerInto = new HashMap<String, Object>();
+                mapFilter((Map<String, Object>) entry.getValue(), innerInto, exactIncludeMatch ? Strings.EMPTY_ARRAY : includes, excludes, sb);
+                if (exactIncludeMatch || !innerInto.isEmpty()) {
+                    into.put(entry.getKey(), innerInto);
+                }
+            } else if (entry.getValue() instanceof List) {
+                final List<Object> innerInto = new ArrayList<Object>();
+                mapFilter((List<Object>) entry.getValue(), innerInto, exactIncludeMatch ? Strings.EMPTY_ARRAY : includes, excludes, sb);
+                into.put(entry.getKey(), innerInto);
+            } else if (exactIncludeMatch) {
+                into.put(entry.getKey(), entry.getValue());
+            }
+            sb.setLength(mark);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void mapFilter(List<Object> from, List<Object> to, String[] includes, String[] excludes, StringBuilder sb) {
+        if (includes.length == 0 && excludes.length == 0) {
+            to.addAll(from);
+            return;
+        }
+        for (Object o : from) {
+            if (o instanceof Map) {
+                final Map<String, Object> innerInto = new HashMap<String, Object>();
+                mapFilter((Map<String, Object>) o, innerInto, includes, excludes, sb);
+                if (!innerInto.isEmpty()) {
+                    to.add(innerInto);
+                }
+            } else if (o instanceof List) {
+                final List<Object> innerInto = new ArrayList<Object>();
+                mapFilter((List<Object>) o, innerInto, includes, excludes, sb);
+                if (!innerInto.isEmpty()) {
+                    to.add(innerInto);
+                }
+            } else {
+                to.add(o);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.index.query;
+
+import org.elasticsearch.common.geo.ShapeRelation;
+import org.elasticsearch.common.geo.SpatialStrategy;
+import org.elasticsearch.common.geo.builders.MultiPolygonBuilder;
+import org.elasticsearch.common.geo.builders.ShapeBuilder;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.unit.DistanceUnit;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Round trips of the geo filter builders through their compact binary form.
+ */
+public class GeoFilterBuilderEncodingTest {
+
+    private static BytesReference write(GeoShapeFilterBuilder filter, int precision) throws IOException {
+        final BytesStreamOutput out = new BytesStreamOutput();
+        filter.writeTo(out, precision);
+        return out.bytes();
+    }
+
+    private static BytesReference write(GeoPolygonFilterBuilder filter, int precision) throws IOException {
+        final BytesStreamOutput out = new BytesStreamOutput();
+        filter.writeTo(out, precision);
+        return out.bytes();
+    }
+
+    private static GeoShapeFilterBuilder readShapeFilter(BytesReference bytes) throws IOException {
+        final StreamInput in = bytes.streamInput();
+        final GeoShapeFilterBuilder filter = GeoShapeFilterBuilder.readFrom(in);
+        assertEquals("trailing bytes", -1, in.read());
+        return filter;
+    }
+
+    private static GeoPolygonFilterBuilder readPolygonFilter(BytesReference bytes) throws IOException {
+        final StreamInput in = bytes.streamInput();
+        final GeoPolygonFilterBuilder filter = GeoPolygonFilterBuilder.readFrom(in);
+        assertEquals("trailing bytes", -1, in.read());
+        return filter;
+    }
+
+    private static void assertShapeFilterRoundTrip(GeoShapeFilterBuilder filter, int precision) throws IOException {
+        final BytesReference bytes = write(filter, precision);
+        final GeoShapeFilterBuilder decoded = readShapeFilter(bytes);
+        // the coordinates of the filters are exact at the given precision
+        assertEquals(filter.toString(), decoded.toString());
+        assertEquals(bytes, write(decoded, precision));
+    }
+
+    @Test
+    public void testShapeFilter() throws IOException {
+        final MultiPolygonBuilder polygons = ShapeBuilder.newMultiPolygon(ShapeBuilder.Orientation.LEFT);
+        polygons.polygon(ShapeBuilder.Orientation.RIGHT).point(170.25, 0).point(-170.5, 0).point(-170.5, 10.75).point(170.25, 10.75).close();
+        polygons.polygon().point(0, 0).point(1.5, 0).point(1.5, 1.5).point(0, 0).close();
+        assertShapeFilterRoundTrip(new GeoShapeFilterBuilder("location", polygons), 2);
+        assertShapeFilterRoundTrip(new GeoShapeFilterBuilder("location", polygons, ShapeRelation.WITHIN)
+                .strategy(SpatialStrategy.TERM).cache(true).cacheKey("key").filterName("name"), 2);
+        assertShapeFilterRoundTrip(new GeoShapeFilterBuilder("location", ShapeBuilder.newCircleBuilder().center(-12.125, 45.5)
+                .radius(2.5, DistanceUnit.NAUTICALMILES), ShapeRelation.DISJOINT).cache(false), 3);
+        assertShapeFilterRoundTrip(new GeoShapeFilterBuilder("location", ShapeBuilder.newGeometryCollection()
+                .shape(ShapeBuilder.newPoint(1.5, 2.5))
+                .shape(ShapeBuilder.newEnvelope(ShapeBuilder.Orientation.LEFT).topLeft(-10, 10).bottomRight(10, -10))), 1);
+    }
+
+    @Test
+    public void testIndexedShapeFilter() throws IOException {
+        assertShapeFilterRoundTrip(new GeoShapeFilterBuilder("location", "1", "shapes", null), 7);
+        assertShapeFilterRoundTrip(new GeoShapeFilterBuilder("location", "1", "shapes", ShapeRelation.INTERSECTS)
+                .indexedShapeIndex("index").indexedShapePath("path.to.shape").strategy(SpatialStrategy.RECURSIVE).filterName("name"), 7);
+    }
+
+    private static GeoPolygonFilterBuilder polygonFilter() {
+        return new GeoPolygonFilterBuilder("location").addPoint(40.25, -70.5).addPoint(30.75, -80).addPoint(20, -90.125);
+    }
+
+    @Test
+    public void testPolygonFilter() throws IOException {
+        for (GeoPolygonFilterBuilder f : new GeoPolygonFilterBuilder[]{polygonFilter(), polygonFilter().cache(true).cacheKey("key").filterName("name")}) {
+            final BytesReference bytes = write(f, 3);
+            final GeoPolygonFilterBuilder decoded = readPolygonFilter(bytes);
+            assertEquals(f.toString(), decoded.toString());
+            assertEquals(bytes, write(decoded, 3));
+        }
+    }
+
+    @Test
+    public void testRoundedCoordinates() throws IOException {
+        final GeoPolygonFilterBuilder filter = new GeoPolygonFilterBuilder("location")
+                .addPoint(40.123456789, -70.987654321).addPoint(30.000000049, -80.000000051).addPoint(20.5, -90.25);
+        final BytesReference bytes = write(filter, 7);
+        final GeoPolygonFilterBuilder decoded = readPolygonFilter(bytes);
+        assertEquals(new GeoPolygonFilterBuilder("location").addPoint(40.1234568, -70.9876543).addPoint(30, -80.0000001)
+                .addPoint(20.5, -90.25).toString(), decoded.toString());
+        // decoded filters are stable keys
+        assertEquals(bytes, write(decoded, 7));
+    }
+}
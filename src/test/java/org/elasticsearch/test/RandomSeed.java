@@ -0,0 +1,64 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.test;
+
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.Random;
+
+/**
+ * Seed of the randomized tests, taken from <tt>-Dtests.seed</tt> or picked at random. The seed is added to the
+ * message of any failure so that it can be reproduced.
+ */
+public class RandomSeed implements TestRule {
+
+    private final long seed;
+
+    public RandomSeed() {
+        final String seed = System.getProperty("tests.seed");
+        this.seed = seed == null ? new Random().nextLong() : Long.parseLong(seed);
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * @return a new random generator initialized with the seed
+     */
+    public Random random() {
+        return new Random(seed);
+    }
+
+    @Override
+    public Statement apply(final Statement base, final Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    base.evaluate();
+                } catch (Throwable t) {
+                    throw new AssertionError(t.getMessage() + " (reproduce with -Dtests.seed=" + seed + ")", t);
+                }
+            }
+        };
+    }
+}